@@ -0,0 +1,69 @@
+package gov.cabinetoffice.gap.enums;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Groups of backend endpoints that are limited together, see {@link gov.cabinetoffice.gap.service.RateLimit}.
+ */
+public enum EndpointFamily {
+
+    /**
+     * Export record and batch status, location, bulk update and completion writes.
+     */
+    STATUS_UPDATES,
+
+    /**
+     * The remaining, failed and outstanding export counts.
+     */
+    COUNTS,
+
+    /**
+     * Single and batched submission fetches.
+     */
+    SUBMISSIONS,
+
+    /**
+     * The completed export listing read for the super zip.
+     */
+    COMPLETED_EXPORTS,
+
+    /**
+     * The confirmation email.
+     */
+    EMAILS,
+
+    /**
+     * Anything else.
+     */
+    OTHER;
+
+    private static final Set<String> UPDATE_SEGMENTS = Set.of("status", "s3-object-key", "bulk-update", "complete");
+
+    private static final Set<String> SUBMISSION_SEGMENTS = Set.of("submission", "submissions");
+
+    public static EndpointFamily of(final List<String> pathSegments) {
+        if (pathSegments.isEmpty()) {
+            return OTHER;
+        }
+
+        final String last = pathSegments.get(pathSegments.size() - 1);
+        if (UPDATE_SEGMENTS.contains(last)) {
+            return STATUS_UPDATES;
+        }
+        if (last.endsWith("Count")) {
+            return COUNTS;
+        }
+        if (SUBMISSION_SEGMENTS.contains(last) && pathSegments.contains("submissions")) {
+            return SUBMISSIONS;
+        }
+        if (last.equals("completed") && pathSegments.contains("grant-export")) {
+            return COMPLETED_EXPORTS;
+        }
+        if (pathSegments.contains("emails")) {
+            return EMAILS;
+        }
+        return OTHER;
+    }
+
+}
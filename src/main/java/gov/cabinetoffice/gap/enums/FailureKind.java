@@ -0,0 +1,21 @@
+package gov.cabinetoffice.gap.enums;
+
+/**
+ * Whether an export that failed could succeed if its message were delivered again.
+ */
+public enum FailureKind {
+
+    /**
+     * A timeout, dropped connection, throttling or server error on the way to the backend or S3, which may well not
+     * happen next time. The message is handed back to the queue for another attempt.
+     */
+    RETRYABLE,
+
+    /**
+     * Anything that would fail the same way again, such as a malformed message or submission, a request the backend
+     * rejected, or a file in the local workspace that can't be read or written. The export is marked FAILED straight
+     * away.
+     */
+    PERMANENT
+
+}
@@ -0,0 +1,19 @@
+package gov.cabinetoffice.gap.enums;
+
+/**
+ * How much of a submission payload to deserialise.
+ */
+public enum SubmissionProjection {
+
+    /**
+     * Every field of every question.
+     */
+    FULL,
+
+    /**
+     * Only what the export document and file names need. Questions keep their id, title, display text, response
+     * type and responses; hint text, options, validation and the other form-building fields are left null.
+     */
+    EXPORT
+
+}
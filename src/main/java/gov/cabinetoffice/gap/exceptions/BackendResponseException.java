@@ -0,0 +1,18 @@
+package gov.cabinetoffice.gap.exceptions;
+
+/**
+ * Thrown when the backend answers a call with an unsuccessful status.
+ */
+public class BackendResponseException extends RuntimeException {
+
+    private final int statusCode;
+
+    public BackendResponseException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
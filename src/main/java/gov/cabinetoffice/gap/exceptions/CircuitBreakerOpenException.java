@@ -0,0 +1,17 @@
+package gov.cabinetoffice.gap.exceptions;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of calling an endpoint whose circuit breaker is open. It is an {@link IOException} so OkHttp
+ * reports it through the normal failure path for both blocking and enqueued calls.
+ */
+public class CircuitBreakerOpenException extends IOException {
+
+    public CircuitBreakerOpenException() {
+    }
+
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package gov.cabinetoffice.gap.exceptions;
+
+public class EphemeralStorageQuotaExceededException extends RuntimeException {
+
+    public EphemeralStorageQuotaExceededException() {
+    }
+
+    public EphemeralStorageQuotaExceededException(String message) {
+        super(message);
+    }
+}
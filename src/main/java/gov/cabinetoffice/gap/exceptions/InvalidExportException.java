@@ -0,0 +1,14 @@
+package gov.cabinetoffice.gap.exceptions;
+
+/**
+ * Thrown when a message or the submission it names can't be exported as it stands, so trying again won't help.
+ */
+public class InvalidExportException extends RuntimeException {
+
+    public InvalidExportException() {
+    }
+
+    public InvalidExportException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,26 @@
+package gov.cabinetoffice.gap.exceptions;
+
+public class UnsupportedBackendOperationException extends RuntimeException {
+
+    private final int statusCode;
+
+    public UnsupportedBackendOperationException() {
+        this.statusCode = 0;
+    }
+
+    public UnsupportedBackendOperationException(String message) {
+        this(message, 0);
+    }
+
+    public UnsupportedBackendOperationException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * The status the backend answered with, or 0 when the operation was turned down without asking it
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
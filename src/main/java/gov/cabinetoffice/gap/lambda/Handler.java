@@ -8,26 +8,94 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.sns.AmazonSNSClient;
 import com.amazonaws.services.sns.AmazonSNSClientBuilder;
+import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
+import gov.cabinetoffice.gap.enums.FailureKind;
 import gov.cabinetoffice.gap.enums.GrantExportStatus;
+import gov.cabinetoffice.gap.enums.SubmissionProjection;
 import gov.cabinetoffice.gap.exceptions.EmptySqsEventException;
-import gov.cabinetoffice.gap.model.GrantExportListDTO;
+import gov.cabinetoffice.gap.exceptions.InvalidExportException;
 import gov.cabinetoffice.gap.model.Submission;
 import gov.cabinetoffice.gap.service.*;
+import gov.cabinetoffice.gap.utils.EnvUtils;
+import gov.cabinetoffice.gap.utils.ExportValidator;
+import gov.cabinetoffice.gap.utils.FailureClassifier;
 import gov.cabinetoffice.gap.utils.HelperUtils;
 import lombok.SneakyThrows;
 import okhttp3.OkHttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 public class Handler implements RequestHandler<SQSEvent, SQSBatchResponse> {
 
     private static final Logger logger = LoggerFactory.getLogger(Handler.class);
-    private static final AmazonS3 s3client = AmazonS3ClientBuilder.defaultClient();
-    private static final OkHttpClient restClient = new OkHttpClient();
+    private static final AmazonS3 defaultS3Client = AmazonS3ClientBuilder.defaultClient();
+    // built when a failure is first reported, as most invocations never need it
+    private static final Supplier<SnsService> defaultSnsService = () ->
+            new SnsService((AmazonSNSClient) AmazonSNSClientBuilder.defaultClient());
+    private static final RetryPolicy retryPolicy = RetryPolicy.fromEnvironment();
+    private static final ConnectionSettings connectionSettings = ConnectionSettings.fromEnvironment();
+    private static final TransferStats transferStats = new TransferStats();
+    private static final RateLimitInterceptor rateLimiter = new RateLimitInterceptor(RateLimit.fromEnvironment());
+    private static final LatencyInterceptor latencyRecorder = new LatencyInterceptor();
+    private static final OkHttpClient restClient = BackendHttpClientFactory.create(retryPolicy, connectionSettings,
+            transferStats, rateLimiter, latencyRecorder);
+    private static final BackendApi defaultBackendApi = new OkHttpBackendApi(restClient);
+    private static final QueueClient defaultQueueClient = new SqsQueueClient(AmazonSQSClientBuilder::defaultClient);
+    private static final VisibilityHeartbeatSettings defaultHeartbeatSettings =
+            VisibilityHeartbeatSettings.fromEnvironment();
     private static final String ATTACHMENTS_ZIP_FILE_NAME = "attachments";
+    // should match the maxReceiveCount of the queue's redrive policy
+    private static final int maxReceiveCount = EnvUtils.getInt("MAX_RECEIVE_COUNT", 3);
+    private static final WorkspaceManager workspaceManager = new WorkspaceManager(new File("/tmp/exports"),
+            EnvUtils.getLong("EPHEMERAL_STORAGE_QUOTA_MB", 0) * 1024 * 1024, new File("/tmp/s3-object-cache"),
+            EnvUtils.getLong("S3_CACHE_MAX_MB", 128) * 1024 * 1024);
+
+    static {
+        if (connectionSettings.isWarmUpEnabled()) {
+            // runs during init, so the first invocation doesn't pay for the TLS handshake
+            BackendHttpClientFactory.warmUp(restClient, RestService.BACKEND_API_URL);
+        }
+    }
+
+    private final BackendApi backendApi;
+
+    private final AmazonS3 s3client;
+
+    private final Supplier<SnsService> snsService;
+
+    private final QueueClient queueClient;
+
+    private final VisibilityHeartbeatSettings heartbeatSettings;
+
+    public Handler() {
+        this(defaultBackendApi, defaultS3Client, defaultSnsService, defaultQueueClient, defaultHeartbeatSettings);
+    }
+
+    /**
+     * Runs exports against the given backend, reading attachments from and writing zips to the given S3 client,
+     * reporting failed exports through the given SNS service and extending the visibility of messages through the
+     * given queue, so an export can be run without any of the real services, e.g. in tests or when measuring
+     * locally
+     */
+    public Handler(final BackendApi backendApi, final AmazonS3 s3client, final Supplier<SnsService> snsService,
+            final QueueClient queueClient, final VisibilityHeartbeatSettings heartbeatSettings) {
+        this.backendApi = backendApi;
+        this.s3client = s3client;
+        this.snsService = snsService;
+        this.queueClient = queueClient;
+        this.heartbeatSettings = heartbeatSettings;
+    }
 
     @SneakyThrows
     @Override
@@ -36,8 +104,79 @@ public class Handler implements RequestHandler<SQSEvent, SQSBatchResponse> {
             throw new EmptySqsEventException("No records found in SQS event");
         }
 
-        final Map<String, SQSEvent.MessageAttribute> messageAttributes = event.getRecords().get(0)
-                .getMessageAttributes();
+        // export record status and location changes are sent in the background, merged into bulk updates
+        final ExportRecordWriteBehind exportRecordWrites = new ExportRecordWriteBehind(backendApi);
+
+        // a message missing what the export needs is dropped up front, as delivering it again can't help
+        final List<SQSEvent.SQSMessage> messages = new ArrayList<>();
+        for (final SQSEvent.SQSMessage message : event.getRecords()) {
+            try {
+                ExportValidator.validateMessage(message);
+                messages.add(message);
+            } catch (InvalidExportException e) {
+                logger.error("Dropping invalid message: {}", e.getMessage());
+                failDroppedMessage(message, exportRecordWrites);
+            }
+        }
+
+        final Map<String, List<String>> submissionIdsByBatch = new LinkedHashMap<>();
+        for (final SQSEvent.SQSMessage message : messages) {
+            final Map<String, SQSEvent.MessageAttribute> messageAttributes = message.getMessageAttributes();
+            submissionIdsByBatch.computeIfAbsent(messageAttributes.get("exportBatchId").getStringValue(),
+                    exportBatchId -> new ArrayList<>()).add(messageAttributes.get("submissionId").getStringValue());
+        }
+
+        // the submissions of each export batch are requested together up front and handed over as they arrive
+        final Map<String, SubmissionBatch> submissionBatches = new HashMap<>();
+        // batch counts are fetched once and reused until this invocation changes an export's status
+        final Map<String, BatchStateSnapshot> batchStates = new HashMap<>();
+        submissionIdsByBatch.forEach((exportBatchId, submissionIds) -> {
+            submissionBatches.put(exportBatchId, new SubmissionBatch(backendApi, exportBatchId, submissionIds,
+                    SubmissionProjection.EXPORT));
+            batchStates.put(exportBatchId, new BatchStateSnapshot(backendApi, exportBatchId));
+        });
+
+        // every message of the event stays hidden from other consumers until the invocation returns, however long
+        // the exports take, as SQS only deletes the ones that succeeded once it has
+        final VisibilityHeartbeat heartbeat = new VisibilityHeartbeat(queueClient, heartbeatSettings);
+        messages.forEach(heartbeat::track);
+
+        // messages that failed for a reason that may not happen again are handed back to the queue on their own
+        final List<SQSBatchResponse.BatchItemFailure> batchItemFailures = new ArrayList<>();
+        try {
+            for (final SQSEvent.SQSMessage message : messages) {
+                final String exportBatchId = message.getMessageAttributes().get("exportBatchId").getStringValue();
+                try {
+                    heartbeat.recordProgress();
+                    processMessage(message, submissionBatches.get(exportBatchId), batchStates.get(exportBatchId),
+                            exportRecordWrites, heartbeat);
+                } catch (Exception e) {
+                    if (shouldRedeliver(message, e)) {
+                        logger.warn("Handing message " + message.getMessageId() + " back to the queue", e);
+                        batchItemFailures.add(new SQSBatchResponse.BatchItemFailure(message.getMessageId()));
+                        // its visibility runs out as usual, holding it back for a while before it is redelivered
+                        heartbeat.release(message);
+                    } else {
+                        logger.error("Could not finish processing message " + message.getMessageId(), e);
+                    }
+                }
+            }
+        } finally {
+            heartbeat.close();
+            exportRecordWrites.close();
+            submissionBatches.values().forEach(SubmissionBatch::close);
+            transferStats.logAndReset();
+            rateLimiter.logAndReset();
+            latencyRecorder.logAndReset();
+        }
+
+        return new SQSBatchResponse(batchItemFailures);
+    }
+
+    private void processMessage(final SQSEvent.SQSMessage message, final SubmissionBatch submissions,
+            final BatchStateSnapshot batchState, final ExportRecordWriteBehind exportRecordWrites,
+            final VisibilityHeartbeat heartbeat) throws Exception {
+        final Map<String, SQSEvent.MessageAttribute> messageAttributes = message.getMessageAttributes();
         final String submissionId = messageAttributes.get("submissionId").getStringValue();
         final String emailAddress = messageAttributes.get("emailAddress").getStringValue();
         final String exportBatchId = messageAttributes.get("exportBatchId").getStringValue();
@@ -47,16 +186,20 @@ public class Handler implements RequestHandler<SQSEvent, SQSBatchResponse> {
         String filename = "";
         String gapId = "";
         Submission submission = null;
+        final ExportWorkspace workspace = workspaceManager.open(submissionId);
+        boolean redelivering = false;
 
         try {
             logger.info("Received message with submissionId: {} and exportBatchId: {}", submissionId, exportBatchId);
 
-            // STEP 0 - update export record to PROCESSING
-            ExportRecordService.updateExportRecordStatus(restClient, exportBatchId, submissionId, GrantExportStatus.PROCESSING);
+            // STEP 0 - update export record to PROCESSING, in the background while the export is built
+            exportRecordWrites.updateStatus(exportBatchId, submissionId, GrantExportStatus.PROCESSING);
 
-            // STEP 1 - get submission from database
+            // STEP 1 - get submission from database, fetched together with the others of its batch in this event
             // legal name is assigned from the response they give in the essential questions section
-            submission = SubmissionService.getSubmissionData(restClient, exportBatchId, submissionId);
+            submission = submissions.get(submissionId);
+            // checked before any attachment is downloaded, so a submission that can't be exported fails fast
+            ExportValidator.validateSubmission(submissionId, submission);
             String legalName = submission.getSchemeVersion() == 1 ?
                     submission.getSectionById("ESSENTIAL").getQuestionById("APPLICANT_ORG_NAME").getResponse()
                     :
@@ -65,72 +208,88 @@ public class Handler implements RequestHandler<SQSEvent, SQSBatchResponse> {
             submission.setLegalName(legalName);
             schemeName = submission.getSchemeName();
             gapId = submission.getGapId();
+            heartbeat.recordProgress();
 
             // STEP 2 - generate .odt from submission
             filename = HelperUtils.generateFilename(submission.getLegalName(), submission.getGapId());
-            OdtService.generateSingleOdt(submission, filename);
+            OdtService.generateSingleOdt(submission, filename, workspace);
+            heartbeat.recordProgress();
 
             // STEP 3 - download all relevant attachments and zip along with .odt
-            ZipService.createZip(s3client, filename, applicationId, submissionId, true);
+            ZipService.createZip(s3client, workspace, filename, applicationId, submissionId, true);
+            heartbeat.recordProgress();
 
             // STEP 4 - upload zip to S3
-            String zipObjectKey = ZipService.uploadZip(submission.getGapId(), filename);
+            String zipObjectKey = ZipService.uploadZip(workspace, submission.getGapId(), filename);
+            heartbeat.recordProgress();
 
-            // Step 5 - Add S3 object key to export
-            ExportRecordService.addS3ObjectKeyToExportRecord(restClient, exportBatchId, submissionId, zipObjectKey);
+            // the PROCESSING update has to land before the export is completed
+            exportRecordWrites.await(exportBatchId, submissionId);
 
-            // STEP 6 - update export record to COMPLETE
-            ExportRecordService.updateExportRecordStatus(restClient, exportBatchId, submissionId, GrantExportStatus.COMPLETE);
+            // STEPS 5 & 6 - add S3 object key to export and update it to COMPLETE, getting the remaining count back
+            final Long outstandingCount = batchState.completeExportRecord(submissionId, zipObjectKey);
+            heartbeat.recordProgress();
 
             // STEP 7 - if final submission, email admin
-            final Long outstandingCount = ExportRecordService.getRemainingExportsCount(restClient, exportBatchId);
 
             if (Objects.equals(outstandingCount, 0L)) {
 
-                ZipService.deleteTmpDirContents();
-                logger.info("Tmp dir cleared before creating super zip");
-                try {
-                    ExportRecordService.updateGrantExportBatchRecordStatus(restClient, exportBatchId, GrantExportStatus.PROCESSING);
-
-                    final GrantExportListDTO completedGrantExports = ExportRecordService.getCompletedExportRecordsByBatchId(restClient, exportBatchId);
-                    logger.info("Finished fetching completedGrantExports with size of: {}", completedGrantExports.getGrantExports().size());
+                workspace.clear();
+                logger.info("Workspace cleared before creating super zip");
+                CompletableFuture<Void> batchProcessingUpdate = CompletableFuture.completedFuture(null);
+                try (final ExportWorkspace superZipWorkspace = workspaceManager.open(exportBatchId)) {
+                    batchProcessingUpdate = backendApi.updateGrantExportBatchRecordStatusAsync(exportBatchId,
+                            GrantExportStatus.PROCESSING);
 
-                    ZipService.createSuperZip(completedGrantExports.getGrantExports());
+                    // completed exports are read a page at a time and each page is zipped once it has been read
+                    try (final CompletedExportPages completedGrantExports =
+                            backendApi.streamCompletedExportRecordsByBatchId(exportBatchId)) {
+                        ZipService.createSuperZip(superZipWorkspace, completedGrantExports);
+                    }
+                    heartbeat.recordProgress();
 
                     final String superZipFilename = HelperUtils.generateFilename(schemeName, "");
 
-                    final String superZipObjectKey = ZipService.uploadZip(schemeId + "/" + exportBatchId, superZipFilename);
+                    final String superZipObjectKey = ZipService.uploadZip(superZipWorkspace,
+                            schemeId + "/" + exportBatchId, superZipFilename);
+                    heartbeat.recordProgress();
 
-                    ExportRecordService.addS3ObjectKeyToGrantExportBatchRecord(restClient, exportBatchId, superZipObjectKey);
-                    ExportRecordService.updateGrantExportBatchRecordStatus(restClient, exportBatchId, GrantExportStatus.COMPLETE);
+                    await(batchProcessingUpdate);
+                    backendApi.addS3ObjectKeyToGrantExportBatchRecord(exportBatchId, superZipObjectKey);
+                    backendApi.updateGrantExportBatchRecordStatus(exportBatchId, GrantExportStatus.COMPLETE);
                 } catch (Exception e) {
                     logger.error("Could not process message while trying to create super zip", e);
-                    ExportRecordService.updateGrantExportBatchRecordStatus(restClient, exportBatchId, GrantExportStatus.FAILED);
+                    batchProcessingUpdate.exceptionally(error -> null).join();
+                    backendApi.updateGrantExportBatchRecordStatus(exportBatchId, GrantExportStatus.FAILED);
                 }
             } else {
                 logger.info(
                         "Outstanding exports for export batch {}: {}", exportBatchId, outstandingCount);
             }
-
-            // STEP 9 - clear tmp dir as this is preserved between frequent invocations
-            ZipService.deleteTmpDirContents();
-            logger.info("Tmp dir cleared");
         } catch (Exception e) {
+            if (shouldRedeliver(message, e)) {
+                // the export stays PROCESSING and starts again from scratch when the message comes back
+                redelivering = true;
+                throw e;
+            }
             logger.error("Could not process message", e);
-            ExportRecordService.updateExportRecordStatus(restClient, exportBatchId, submissionId, GrantExportStatus.FAILED);
+            // sent after the PROCESSING update, in the background while the attachments are zipped
+            exportRecordWrites.updateStatus(exportBatchId, submissionId, GrantExportStatus.FAILED);
+            batchState.invalidate();
 
             try {
                 logger.info("Trying to create attachment zip");
 
                 if(submission !=null && submission.isHasAttachments()) {
                     logger.info("Creating attachments zip for failed submission with ID {}", submissionId);
-                    // download all relevant attachments and zip without the .odt
-                    ZipService.createZip(s3client, filename, applicationId, submissionId, false);
-                    final String zipObjectKey = ZipService.uploadZip(gapId, ATTACHMENTS_ZIP_FILE_NAME);
-                    ExportRecordService.addS3ObjectKeyToExportRecord(restClient, exportBatchId, submissionId, zipObjectKey);
+                    // zip the attachments without the .odt, reusing whatever STEP 3 already downloaded
+                    ZipService.createZip(s3client, workspace, filename, applicationId, submissionId, false);
+                    heartbeat.recordProgress();
+                    final String zipObjectKey = ZipService.uploadZip(workspace, gapId, ATTACHMENTS_ZIP_FILE_NAME);
+                    exportRecordWrites.updateS3ObjectKey(exportBatchId, submissionId, zipObjectKey);
                 } else if(submission !=null) {
                     logger.info("Updating location to null for submission {}", submissionId);
-                    ExportRecordService.addS3ObjectKeyToExportRecord(restClient, exportBatchId, submissionId, null);
+                    exportRecordWrites.updateS3ObjectKey(exportBatchId, submissionId, null);
                 }
             }
             catch (Exception error) {
@@ -138,25 +297,120 @@ public class Handler implements RequestHandler<SQSEvent, SQSBatchResponse> {
             }
 
         } finally {
-            final Long remainingExports = ExportRecordService.getRemainingExportsCount(restClient, exportBatchId);
-            logger.info(String.format("Submissions export complete. There are %s remaining exports.", remainingExports));
-
-            if(Objects.equals(remainingExports, 0L)) {
-                final Long failedSubmissionsCount = ExportRecordService.getFailedExportsCount(restClient, exportBatchId);
-                logger.info("There are {} failed submissions.", failedSubmissionsCount);
-                if (failedSubmissionsCount > 0L) {
-                    String outcome = new SnsService((AmazonSNSClient) AmazonSNSClientBuilder.defaultClient())
-                            .failureInExport(schemeName, failedSubmissionsCount);
-                    logger.info(outcome);
-                }
-                logger.info("Sending confirmation email to admin");
-                NotifyService.sendConfirmationEmail(restClient, emailAddress, exportBatchId, schemeId,
-                        submissionId);
+            // STEP 9 - delete this export's files, as /tmp is preserved between frequent invocations
+            workspace.close();
+
+            // an export handed back to the queue isn't finished, so it can't be the batch's last
+            if (!redelivering) {
+                // the counts below have to include this export's own changes, e.g. FAILED and its location
+                exportRecordWrites.await(exportBatchId, submissionId);
+                finishBatchIfComplete(batchState, exportBatchId, submissionId, emailAddress, schemeId, schemeName);
             }
         }
 
         logger.info("Message processed successfully");
-        return new SQSBatchResponse();
+    }
+
+    /**
+     * Marks the export of a dropped message FAILED and, as for any other export that ends, finishes its batch if
+     * that was the last one remaining. Without the message's email address and scheme ID the batch can't be
+     * finished here, and is left for the backend to finish.
+     */
+    private void failDroppedMessage(final SQSEvent.SQSMessage message,
+            final ExportRecordWriteBehind exportRecordWrites) {
+        final String exportBatchId = stringAttribute(message, "exportBatchId");
+        final String submissionId = stringAttribute(message, "submissionId");
+        if (exportBatchId == null || submissionId == null) {
+            return;
+        }
+        exportRecordWrites.updateStatus(exportBatchId, submissionId, GrantExportStatus.FAILED);
+
+        final String emailAddress = stringAttribute(message, "emailAddress");
+        final String schemeId = stringAttribute(message, "schemeId");
+        if (emailAddress == null || schemeId == null) {
+            logger.warn("Message {} has no email address or scheme ID, leaving export batch {} for the backend to "
+                    + "finish", message.getMessageId(), exportBatchId);
+            return;
+        }
+        try {
+            exportRecordWrites.await(exportBatchId, submissionId);
+            finishBatchIfComplete(new BatchStateSnapshot(backendApi, exportBatchId), exportBatchId, submissionId,
+                    emailAddress, schemeId, "");
+        } catch (Exception e) {
+            logger.error("Could not finish export batch " + exportBatchId + " after dropping message "
+                    + message.getMessageId(), e);
+        }
+    }
+
+    /**
+     * Once no export of the batch remains, reports any that failed and emails the admin
+     */
+    private void finishBatchIfComplete(final BatchStateSnapshot batchState, final String exportBatchId,
+            final String submissionId, final String emailAddress, final String schemeId, final String schemeName)
+            throws Exception {
+        final Long remainingExports = batchState.getRemainingCount();
+        logger.info(String.format("Submissions export complete. There are %s remaining exports.",
+                remainingExports));
+
+        if(Objects.equals(remainingExports, 0L)) {
+            final Long failedSubmissionsCount = batchState.getFailedCount();
+            logger.info("There are {} failed submissions.", failedSubmissionsCount);
+            if (failedSubmissionsCount > 0L) {
+                String outcome = snsService.get().failureInExport(schemeName, failedSubmissionsCount);
+                logger.info(outcome);
+            }
+            logger.info("Sending confirmation email to admin");
+            backendApi.sendConfirmationEmail(emailAddress, exportBatchId, schemeId, submissionId);
+        }
+    }
+
+    private static String stringAttribute(final SQSEvent.SQSMessage message, final String name) {
+        final Map<String, SQSEvent.MessageAttribute> attributes = message.getMessageAttributes();
+        if (attributes == null || attributes.get(name) == null) {
+            return null;
+        }
+        return attributes.get(name).getStringValue();
+    }
+
+    /**
+     * Whether a failed message should go back to the queue: only if the failure may not happen again, and the queue
+     * will deliver it at least once more. On its last delivery an export is marked FAILED like any other.
+     */
+    private static boolean shouldRedeliver(final SQSEvent.SQSMessage message, final Exception failure) {
+        if (FailureClassifier.classify(failure) != FailureKind.RETRYABLE) {
+            return false;
+        }
+        final int receiveCount = receiveCount(message);
+        if (receiveCount >= maxReceiveCount) {
+            logger.warn("Not handing message {} back to the queue, it has been delivered {} times",
+                    message.getMessageId(), receiveCount);
+            return false;
+        }
+        return true;
+    }
+
+    private static int receiveCount(final SQSEvent.SQSMessage message) {
+        final String receiveCount = message.getAttributes() == null ? null
+                : message.getAttributes().get("ApproximateReceiveCount");
+        try {
+            return receiveCount == null ? 1 : Integer.parseInt(receiveCount);
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Waits for a background backend call, rethrowing its failure as if the call had been made in place
+     */
+    private static <T> T await(final CompletableFuture<T> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package gov.cabinetoffice.gap.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class BulkExportRecordUpdateDTO {
+
+    private List<ExportRecordUpdateDTO> updates;
+
+}
@@ -0,0 +1,12 @@
+package gov.cabinetoffice.gap.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class BulkExportRecordUpdateResultDTO {
+
+    private Integer updatedCount;
+
+}
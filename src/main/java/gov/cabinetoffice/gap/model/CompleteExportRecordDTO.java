@@ -0,0 +1,15 @@
+package gov.cabinetoffice.gap.model;
+
+import gov.cabinetoffice.gap.enums.GrantExportStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class CompleteExportRecordDTO {
+
+    private String s3ObjectKey;
+
+    private GrantExportStatus status;
+
+}
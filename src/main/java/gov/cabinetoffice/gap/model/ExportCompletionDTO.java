@@ -0,0 +1,14 @@
+package gov.cabinetoffice.gap.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ExportCompletionDTO {
+
+    private Long remainingCount;
+
+    private Long failedCount;
+
+}
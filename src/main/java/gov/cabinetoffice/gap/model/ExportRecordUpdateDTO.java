@@ -0,0 +1,25 @@
+package gov.cabinetoffice.gap.model;
+
+import gov.cabinetoffice.gap.enums.GrantExportStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Changes to one export record. A null status leaves the status alone; the S3 object key is only changed when
+ * s3ObjectKeyChanged is set, since null is a valid location.
+ */
+@Data
+@AllArgsConstructor
+public class ExportRecordUpdateDTO {
+
+    private String exportBatchId;
+
+    private String submissionId;
+
+    private GrantExportStatus status;
+
+    private String s3ObjectKey;
+
+    private boolean s3ObjectKeyChanged;
+
+}
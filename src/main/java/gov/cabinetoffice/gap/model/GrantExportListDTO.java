@@ -3,12 +3,18 @@ package gov.cabinetoffice.gap.model;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 
 @Data
 @AllArgsConstructor
-public class GrantExportListDTO {
+public class GrantExportListDTO implements Iterable<GrantExportDTO> {
     private UUID exportBatchId;
     private List<GrantExportDTO> grantExports;
+
+    @Override
+    public Iterator<GrantExportDTO> iterator() {
+        return grantExports.iterator();
+    }
 }
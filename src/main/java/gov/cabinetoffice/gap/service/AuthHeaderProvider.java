@@ -0,0 +1,110 @@
+package gov.cabinetoffice.gap.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Supplies the encrypted ADMIN_API_SECRET sent as the Authorization header on backend calls.
+ * <p>
+ * The public key is parsed once, each thread keeps its own initialised cipher, and the encrypted header is reused
+ * until its time to live runs out, so most calls cost a volatile read instead of an RSA encryption. Encryption
+ * happens outside any lock, so threads that need a fresh header at the same time encrypt in parallel rather than
+ * queueing; only publishing the result is synchronised. A TTL of zero encrypts on every call, as before.
+ */
+public class AuthHeaderProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuthHeaderProvider.class);
+
+    private final byte[] secret;
+
+    private final PublicKey publicKey;
+
+    private final Duration ttl;
+
+    private final Clock clock;
+
+    private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(this::newCipher);
+
+    private volatile CachedHeader cachedHeader;
+
+    private record CachedHeader(String value, Instant expiresAt) {
+    }
+
+    public AuthHeaderProvider(final String secret, final String publicKey, final Duration ttl) {
+        this(secret, publicKey, ttl, Clock.systemUTC());
+    }
+
+    AuthHeaderProvider(final String secret, final String publicKey, final Duration ttl, final Clock clock) {
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.publicKey = parsePublicKey(publicKey);
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the cached header, encrypting a fresh one if it has expired.
+     */
+    public String getHeader() {
+        final CachedHeader current = cachedHeader;
+        if (current != null && clock.instant().isBefore(current.expiresAt())) {
+            return current.value();
+        }
+
+        final String header = encrypt();
+        logger.info("Secret successfully encrypted");
+        if (!ttl.isZero()) {
+            publish(header);
+        }
+        return header;
+    }
+
+    private synchronized void publish(final String header) {
+        final Instant expiresAt = clock.instant().plus(ttl);
+        final CachedHeader latest = cachedHeader;
+        // threads that encrypted at the same time keep whichever header lasts longest
+        if (latest == null || latest.expiresAt().isBefore(expiresAt)) {
+            cachedHeader = new CachedHeader(header, expiresAt);
+        }
+    }
+
+    private String encrypt() {
+        try {
+            final byte[] cipherText = ciphers.get().doFinal(secret);
+            return Base64.getEncoder().encodeToString(cipherText);
+        } catch (Exception e) {
+            // a failed doFinal can leave the cipher in an unusable state
+            ciphers.remove();
+            throw new RuntimeException("Error occurred while encrypting the secret " + e);
+        }
+    }
+
+    private Cipher newCipher() {
+        try {
+            final Cipher cipher = Cipher.getInstance("RSA");
+            cipher.init(Cipher.ENCRYPT_MODE, publicKey);
+            return cipher;
+        } catch (Exception e) {
+            throw new RuntimeException("Error occurred while initialising the encryption cipher " + e);
+        }
+    }
+
+    private static PublicKey parsePublicKey(final String publicKey) {
+        try {
+            final byte[] publicKeyBytes = Base64.getDecoder().decode(publicKey);
+            return KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(publicKeyBytes));
+        } catch (Exception e) {
+            throw new RuntimeException("Error occurred while parsing the public key " + e);
+        }
+    }
+
+}
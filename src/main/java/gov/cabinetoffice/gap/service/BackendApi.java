@@ -0,0 +1,95 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.enums.GrantExportStatus;
+import gov.cabinetoffice.gap.enums.SubmissionProjection;
+import gov.cabinetoffice.gap.model.ExportCompletionDTO;
+import gov.cabinetoffice.gap.model.ExportRecordUpdateDTO;
+import gov.cabinetoffice.gap.model.Submission;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongConsumer;
+
+/**
+ * Every backend call the export makes: export records, export batches, submissions and the confirmation email.
+ * <p>
+ * Each call that answers with a single result comes both as a blocking method and as an {@code Async} one whose
+ * future completes with the same result, or exceptionally with the same error. The two streaming calls,
+ * {@link #streamCompletedExportRecordsByBatchId} and {@link #streamSubmissionData}, hand results over as they
+ * arrive instead. Each method behaves as the {@link ExportRecordService}, {@link SubmissionService} or
+ * {@link NotifyService} method of the same name.
+ * <p>
+ * {@link OkHttpBackendApi} makes the calls against the real backend. Tests and local runs can answer them in memory
+ * instead.
+ */
+public interface BackendApi {
+
+    void updateExportRecordStatus(String exportBatchId, String submissionId, GrantExportStatus newStatus)
+            throws Exception;
+
+    CompletableFuture<Void> updateExportRecordStatusAsync(String exportBatchId, String submissionId,
+            GrantExportStatus newStatus);
+
+    void addS3ObjectKeyToExportRecord(String exportBatchId, String submissionId, String s3ObjectKey)
+            throws Exception;
+
+    CompletableFuture<Void> addS3ObjectKeyToExportRecordAsync(String exportBatchId, String submissionId,
+            String s3ObjectKey);
+
+    void updateExportRecords(List<ExportRecordUpdateDTO> updates) throws Exception;
+
+    CompletableFuture<Void> updateExportRecordsAsync(List<ExportRecordUpdateDTO> updates);
+
+    ExportCompletionDTO completeExportRecord(String exportBatchId, String submissionId, String s3ObjectKey)
+            throws Exception;
+
+    CompletableFuture<ExportCompletionDTO> completeExportRecordAsync(String exportBatchId, String submissionId,
+            String s3ObjectKey);
+
+    long getRemainingExportsCount(String exportBatchId) throws Exception;
+
+    CompletableFuture<Long> getRemainingExportsCountAsync(String exportBatchId);
+
+    long getFailedExportsCount(String exportBatchId) throws Exception;
+
+    CompletableFuture<Long> getFailedExportsCountAsync(String exportBatchId);
+
+    long getOutstandingExportsCount(String exportBatchId) throws Exception;
+
+    CompletableFuture<Long> getOutstandingExportsCountAsync(String exportBatchId);
+
+    /**
+     * The caller must close the returned iterator.
+     */
+    CompletedExportPages streamCompletedExportRecordsByBatchId(String exportBatchId);
+
+    void updateGrantExportBatchRecordStatus(String exportBatchId, GrantExportStatus newStatus) throws Exception;
+
+    CompletableFuture<Void> updateGrantExportBatchRecordStatusAsync(String exportBatchId,
+            GrantExportStatus newStatus);
+
+    void addS3ObjectKeyToGrantExportBatchRecord(String exportBatchId, String s3ObjectKey) throws Exception;
+
+    CompletableFuture<Void> addS3ObjectKeyToGrantExportBatchRecordAsync(String exportBatchId, String s3ObjectKey);
+
+    default Submission getSubmissionData(String exportBatchId, String submissionId, SubmissionProjection projection)
+            throws Exception {
+        return getSubmissionData(exportBatchId, submissionId, projection, size -> { });
+    }
+
+    Submission getSubmissionData(String exportBatchId, String submissionId, SubmissionProjection projection,
+            LongConsumer onSize) throws Exception;
+
+    CompletableFuture<Submission> getSubmissionDataAsync(String exportBatchId, String submissionId,
+            SubmissionProjection projection, LongConsumer onSize);
+
+    CompletableFuture<Integer> streamSubmissionData(String exportBatchId, List<String> submissionIds,
+            SubmissionProjection projection, SubmissionService.StreamedSubmissionHandler onSubmission);
+
+    void sendConfirmationEmail(String emailAddress, String exportBatchId, String schemeId, String submissionId)
+            throws Exception;
+
+    CompletableFuture<Void> sendConfirmationEmailAsync(String emailAddress, String exportBatchId, String schemeId,
+            String submissionId);
+
+}
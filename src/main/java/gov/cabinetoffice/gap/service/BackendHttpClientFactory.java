@@ -0,0 +1,123 @@
+package gov.cabinetoffice.gap.service;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the OkHttp client used for every backend call.
+ * <p>
+ * Timeouts are explicit, and the dispatcher and connection pool are sized together so every call that may run at
+ * once can have its own connection and keep it for the next one. Each call is timed as a whole by
+ * {@link LatencyInterceptor}. Connections left over from before the environment was frozen are evicted by
+ * {@link StaleConnectionInterceptor}, failed calls are retried by
+ * {@link ResilienceInterceptor}, each attempt is held back by {@link RateLimitInterceptor} and compressed by
+ * {@link CompressionInterceptor}, and the whole call, retries included, is bounded by the retry policy's deadline.
+ */
+public class BackendHttpClientFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackendHttpClientFactory.class);
+
+    private BackendHttpClientFactory() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static OkHttpClient create(final RetryPolicy retryPolicy, final ConnectionSettings settings) {
+        return create(retryPolicy, settings, new TransferStats());
+    }
+
+    /**
+     * As {@link #create(RetryPolicy, ConnectionSettings)}, recording the bytes each endpoint transfers in
+     * {@code transferStats}.
+     */
+    public static OkHttpClient create(final RetryPolicy retryPolicy, final ConnectionSettings settings,
+            final TransferStats transferStats) {
+        return create(retryPolicy, settings, transferStats, new RateLimitInterceptor(RateLimit.fromEnvironment()));
+    }
+
+    /**
+     * As {@link #create(RetryPolicy, ConnectionSettings, TransferStats)}, holding calls back through the given
+     * {@code rateLimiter}.
+     */
+    public static OkHttpClient create(final RetryPolicy retryPolicy, final ConnectionSettings settings,
+            final TransferStats transferStats, final RateLimitInterceptor rateLimiter) {
+        return create(retryPolicy, settings, transferStats, rateLimiter, new LatencyInterceptor());
+    }
+
+    /**
+     * As {@link #create(RetryPolicy, ConnectionSettings, TransferStats, RateLimitInterceptor)}, timing calls with
+     * the given {@code latencyRecorder}.
+     */
+    public static OkHttpClient create(final RetryPolicy retryPolicy, final ConnectionSettings settings,
+            final TransferStats transferStats, final RateLimitInterceptor rateLimiter,
+            final LatencyInterceptor latencyRecorder) {
+        final int maxConcurrentRequests = Math.max(1, settings.getMaxConcurrentRequests());
+
+        final Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxConcurrentRequests);
+        dispatcher.setMaxRequestsPerHost(maxConcurrentRequests);
+
+        final ConnectionPool connectionPool = new ConnectionPool(maxConcurrentRequests,
+                settings.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS);
+
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(connectionPool)
+                .protocols(settings.isHttp2Enabled() ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : List.of(Protocol.HTTP_1_1))
+                .connectTimeout(settings.getConnectTimeout())
+                .readTimeout(settings.getReadTimeout())
+                .writeTimeout(settings.getWriteTimeout())
+                .callTimeout(retryPolicy.getCallDeadline())
+                .retryOnConnectionFailure(true)
+                .addInterceptor(latencyRecorder)
+                .addInterceptor(new StaleConnectionInterceptor(connectionPool, settings.getStaleAfter()))
+                .addInterceptor(new ResilienceInterceptor(retryPolicy))
+                .addInterceptor(rateLimiter)
+                .addInterceptor(new CompressionInterceptor(settings.getGzipRequestMinBytes(), transferStats))
+                .build();
+    }
+
+    /**
+     * Opens a connection to the backend in the background, so the first real call finds it in the pool. The
+     * response is ignored, and failures are only logged: the call goes around the client's interceptors so it
+     * can't be retried or count against a circuit breaker.
+     */
+    public static void warmUp(final OkHttpClient client, final String baseUrl) {
+        final HttpUrl url = baseUrl == null ? null : HttpUrl.parse(baseUrl);
+        if (url == null) {
+            logger.warn("Not warming up backend connections, '{}' is not a URL", baseUrl);
+            return;
+        }
+
+        final OkHttpClient.Builder warmUpClient = client.newBuilder();
+        warmUpClient.interceptors().clear();
+        warmUpClient.build().newCall(new Request.Builder().url(url).head().build()).enqueue(new Callback() {
+
+            @Override
+            public void onResponse(@NotNull final Call call, @NotNull final Response response) {
+                response.close();
+                logger.info("Warmed up backend connection to {} over {}", url.host(), response.protocol());
+            }
+
+            @Override
+            public void onFailure(@NotNull final Call call, @NotNull final IOException e) {
+                logger.warn("Could not warm up backend connection to {}: {}", url.host(), e.toString());
+            }
+        });
+    }
+
+}
@@ -0,0 +1,99 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.model.ExportCompletionDTO;
+import okhttp3.OkHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The remaining, failed and outstanding export counts for one batch, as seen by a single invocation.
+ * <p>
+ * Each count is requested the first time it is asked for and reused until {@link #invalidate() invalidated}. Status
+ * changes go through the invocation's {@link ExportRecordWriteBehind}; callers wait for them to land and invalidate
+ * the snapshot before reading the counts again, so they include this invocation's own writes. Completing an export
+ * through {@link #completeExportRecord} replaces the counts with the ones the backend reports alongside the update.
+ * Writes made by other invocations are not tracked; the snapshot lives only as long as the invocation that created
+ * it.
+ */
+public class BatchStateSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchStateSnapshot.class);
+
+    private final BackendApi backendApi;
+
+    private final String exportBatchId;
+
+    // each count is null until it has been fetched, or reported with a completion
+
+    private Long remaining;
+
+    private Long failed;
+
+    private Long outstanding;
+
+    public BatchStateSnapshot(final OkHttpClient restClient, final String exportBatchId) {
+        this(new OkHttpBackendApi(restClient), exportBatchId);
+    }
+
+    public BatchStateSnapshot(final BackendApi backendApi, final String exportBatchId) {
+        this.backendApi = backendApi;
+        this.exportBatchId = exportBatchId;
+    }
+
+    public long getRemainingCount() throws Exception {
+        if (remaining == null) {
+            remaining = fetch("remaining", backendApi.getRemainingExportsCountAsync(exportBatchId));
+        }
+        return remaining;
+    }
+
+    public long getFailedCount() throws Exception {
+        if (failed == null) {
+            failed = fetch("failed", backendApi.getFailedExportsCountAsync(exportBatchId));
+        }
+        return failed;
+    }
+
+    public long getOutstandingCount() throws Exception {
+        if (outstanding == null) {
+            outstanding = fetch("outstanding", backendApi.getOutstandingExportsCountAsync(exportBatchId));
+        }
+        return outstanding;
+    }
+
+    /**
+     * Marks the export COMPLETE with its zip location and returns the remaining count reported with the update.
+     */
+    public long completeExportRecord(final String submissionId, final String s3ObjectKey) throws Exception {
+        invalidate();
+        final ExportCompletionDTO completion = backendApi.completeExportRecord(exportBatchId, submissionId,
+                s3ObjectKey);
+        remaining = completion.getRemainingCount();
+        failed = completion.getFailedCount();
+        return remaining;
+    }
+
+    public void invalidate() {
+        remaining = null;
+        failed = null;
+        outstanding = null;
+    }
+
+    private long fetch(final String countName, final CompletableFuture<Long> count) throws Exception {
+        final long value;
+        try {
+            value = count.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        logger.info("Fetched {} count of export batch {}: {}", countName, exportBatchId, value);
+        return value;
+    }
+
+}
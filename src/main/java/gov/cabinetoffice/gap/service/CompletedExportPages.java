@@ -0,0 +1,92 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.model.GrantExportDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks a batch's completed exports page by page.
+ * <p>
+ * Each page is read to the end and its response closed before any of its exports are handed out, so a slow consumer,
+ * such as the super zip downloading every export of the page, never holds a response open or runs it past the
+ * backend call's deadline. At most one page, bounded by the page size, is held in memory, and the next page is only
+ * requested once the previous one has been consumed. Paging stops at the first page the backend marks as last, or
+ * that carries no exports.
+ */
+public class CompletedExportPages implements Iterator<GrantExportDTO>, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompletedExportPages.class);
+
+    @FunctionalInterface
+    public interface PageOpener {
+
+        GrantExportIterator open(int page) throws Exception;
+
+    }
+
+    private final PageOpener pageOpener;
+
+    private Iterator<GrantExportDTO> currentPage;
+
+    private boolean currentPageIsLast;
+
+    private int nextPage;
+
+    private boolean exhausted;
+
+    public CompletedExportPages(final PageOpener pageOpener) {
+        this.pageOpener = pageOpener;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!exhausted) {
+            if (currentPage == null) {
+                readNextPage();
+            }
+            if (currentPage.hasNext()) {
+                return true;
+            }
+            currentPage = null;
+            exhausted = currentPageIsLast;
+        }
+        return false;
+    }
+
+    @Override
+    public GrantExportDTO next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentPage.next();
+    }
+
+    @Override
+    public void close() {
+        exhausted = true;
+        currentPage = null;
+    }
+
+    private void readNextPage() {
+        final int page = nextPage++;
+        logger.info("Reading page {} of completed exports", page);
+        final List<GrantExportDTO> exports = new ArrayList<>();
+        try (GrantExportIterator pageExports = pageOpener.open(page)) {
+            pageExports.forEachRemaining(exports::add);
+            // an empty page also ends the listing, so a backend that miscounts can't keep us paging forever
+            currentPageIsLast = pageExports.isLastPage() || exports.isEmpty();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Could not read page " + page + " of completed exports", e);
+        }
+        currentPage = exports.iterator();
+    }
+
+}
@@ -0,0 +1,115 @@
+package gov.cabinetoffice.gap.service;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSource;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
+import okio.Source;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.function.LongConsumer;
+
+/**
+ * Compresses backend traffic with gzip and records how much of it there is.
+ * <p>
+ * Responses are requested gzipped and decompressed here, rather than by OkHttp, so both sizes can be counted as
+ * the body is read. Request bodies of at least {@code minRequestBytes} are gzipped before they are sent; the
+ * backend has to accept {@code Content-Encoding: gzip} for that, so it is off when the threshold is zero. A request
+ * that sets its own encoding headers is passed through untouched. Sizes are recorded in {@link TransferStats}.
+ */
+public class CompressionInterceptor implements Interceptor {
+
+    private static final String GZIP = "gzip";
+
+    private final long minRequestBytes;
+
+    private final TransferStats transferStats;
+
+    public CompressionInterceptor(final long minRequestBytes, final TransferStats transferStats) {
+        this.minRequestBytes = minRequestBytes;
+        this.transferStats = transferStats;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull final Chain chain) throws IOException {
+        final Request request = chain.request();
+        final String endpoint = ResilienceInterceptor.endpointKey(request);
+        final Request.Builder compressed = request.newBuilder();
+
+        final RequestBody body = request.body();
+        if (body != null && request.header("Content-Encoding") == null) {
+            final long length = body.contentLength();
+            if (minRequestBytes > 0 && length >= minRequestBytes) {
+                final Buffer gzipped = new Buffer();
+                try (BufferedSink sink = Okio.buffer(new GzipSink(gzipped))) {
+                    body.writeTo(sink);
+                }
+                transferStats.recordRequest(endpoint, length, gzipped.size());
+                compressed.header("Content-Encoding", GZIP)
+                        .method(request.method(), RequestBody.create(gzipped.readByteString(), body.contentType()));
+            } else if (length >= 0) {
+                transferStats.recordRequest(endpoint, length, length);
+            }
+        }
+
+        // with its own Accept-Encoding the caller reads the body as it comes
+        final boolean negotiate = request.header("Accept-Encoding") == null;
+        if (negotiate) {
+            compressed.header("Accept-Encoding", GZIP);
+        }
+
+        final Response response = chain.proceed(compressed.build());
+        final ResponseBody responseBody = response.body();
+        if (!negotiate || responseBody == null) {
+            return response;
+        }
+
+        final Source wire = counting(responseBody.source(),
+                bytes -> transferStats.recordResponse(endpoint, 0, bytes));
+        if (!GZIP.equalsIgnoreCase(response.header("Content-Encoding")) || !hasBody(response)) {
+            final Source plain = counting(wire, bytes -> transferStats.recordResponse(endpoint, bytes, 0));
+            return response.newBuilder()
+                    .body(ResponseBody.create(Okio.buffer(plain), responseBody.contentType(),
+                            responseBody.contentLength()))
+                    .build();
+        }
+
+        final Source decompressed = counting(new GzipSource(wire),
+                bytes -> transferStats.recordResponse(endpoint, bytes, 0));
+        return response.newBuilder()
+                .removeHeader("Content-Encoding")
+                .removeHeader("Content-Length")
+                .body(ResponseBody.create(Okio.buffer(decompressed), responseBody.contentType(), -1))
+                .build();
+    }
+
+    private static boolean hasBody(final Response response) {
+        final int code = response.code();
+        return !"HEAD".equals(response.request().method()) && code != 204 && code != 304
+                && (code < 100 || code >= 200);
+    }
+
+    private static Source counting(final Source source, final LongConsumer onRead) {
+        return new ForwardingSource(source) {
+
+            @Override
+            public long read(@NotNull final Buffer sink, final long byteCount) throws IOException {
+                final long read = super.read(sink, byteCount);
+                if (read > 0) {
+                    onRead.accept(read);
+                }
+                return read;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,69 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.utils.EnvUtils;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * Connection settings for the backend client built by {@link BackendHttpClientFactory}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class ConnectionSettings {
+
+    /** Time allowed to open a connection, including the TLS handshake. */
+    @Builder.Default
+    Duration connectTimeout = Duration.ofSeconds(5);
+
+    /** Longest gap allowed between reads of a response. */
+    @Builder.Default
+    Duration readTimeout = Duration.ofSeconds(15);
+
+    /** Longest gap allowed between writes of a request. */
+    @Builder.Default
+    Duration writeTimeout = Duration.ofSeconds(15);
+
+    /** Calls in flight to the backend at once; the pool keeps as many idle connections for reuse. */
+    @Builder.Default
+    int maxConcurrentRequests = 16;
+
+    /** How long an idle connection is kept. Below the backend load balancer's idle timeout, so it closes first. */
+    @Builder.Default
+    Duration keepAlive = Duration.ofSeconds(50);
+
+    /**
+     * A quiet spell after which pooled connections are assumed dead and evicted before the next call, as happens
+     * when the Lambda environment is frozen between invocations.
+     */
+    @Builder.Default
+    Duration staleAfter = Duration.ofSeconds(10);
+
+    /** Whether HTTP/2 may be negotiated, multiplexing calls over a single connection. */
+    @Builder.Default
+    boolean http2Enabled = true;
+
+    /** Request bodies of at least this many bytes are sent gzipped; zero sends every body as it is. */
+    @Builder.Default
+    long gzipRequestMinBytes = 0;
+
+    /** Whether a connection to the backend is opened while the function initialises. */
+    @Builder.Default
+    boolean warmUpEnabled = true;
+
+    public static ConnectionSettings fromEnvironment() {
+        return ConnectionSettings.builder()
+                .connectTimeout(Duration.ofMillis(EnvUtils.getLong("BACKEND_CONNECT_TIMEOUT_MS", 5000)))
+                .readTimeout(Duration.ofMillis(EnvUtils.getLong("BACKEND_READ_TIMEOUT_MS", 15000)))
+                .writeTimeout(Duration.ofMillis(EnvUtils.getLong("BACKEND_WRITE_TIMEOUT_MS", 15000)))
+                .maxConcurrentRequests(EnvUtils.getInt("BACKEND_MAX_CONCURRENT_REQUESTS", 16))
+                .keepAlive(Duration.ofMillis(EnvUtils.getLong("BACKEND_KEEP_ALIVE_MS", 50000)))
+                .staleAfter(Duration.ofMillis(EnvUtils.getLong("BACKEND_STALE_CONNECTION_MS", 10000)))
+                .http2Enabled(EnvUtils.getBoolean("BACKEND_HTTP2_ENABLED", true))
+                .gzipRequestMinBytes(EnvUtils.getLong("BACKEND_GZIP_REQUEST_MIN_BYTES", 0))
+                .warmUpEnabled(EnvUtils.getBoolean("BACKEND_WARM_UP_ENABLED", true))
+                .build();
+    }
+
+}
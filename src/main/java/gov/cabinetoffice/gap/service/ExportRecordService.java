@@ -1,19 +1,46 @@
 package gov.cabinetoffice.gap.service;
 
 import gov.cabinetoffice.gap.enums.GrantExportStatus;
+import gov.cabinetoffice.gap.exceptions.UnsupportedBackendOperationException;
 import gov.cabinetoffice.gap.lambda.Handler;
 import gov.cabinetoffice.gap.model.AddingS3ObjectKeyDTO;
+import gov.cabinetoffice.gap.model.BulkExportRecordUpdateDTO;
+import gov.cabinetoffice.gap.model.BulkExportRecordUpdateResultDTO;
+import gov.cabinetoffice.gap.model.CompleteExportRecordDTO;
+import gov.cabinetoffice.gap.model.ExportCompletionDTO;
+import gov.cabinetoffice.gap.model.ExportRecordUpdateDTO;
 import gov.cabinetoffice.gap.model.FailedExportCountDTO;
 import gov.cabinetoffice.gap.model.GrantExportListDTO;
 import gov.cabinetoffice.gap.model.OutstandingExportCountDTO;
+import gov.cabinetoffice.gap.utils.EnvUtils;
 import okhttp3.OkHttpClient;
+import okhttp3.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
 public class ExportRecordService {
 
     private static final Logger logger = LoggerFactory.getLogger(Handler.class);
 
+    /**
+     * Cleared once the backend has turned the combined completion or bulk update call down, so later invocations
+     * in this container go straight to the separate calls
+     */
+    private static final AtomicBoolean completeEndpointSupported = new AtomicBoolean(true);
+
+    private static final AtomicBoolean bulkUpdateEndpointSupported = new AtomicBoolean(true);
+
+    private static final int COMPLETED_EXPORTS_PAGE_SIZE = Math.max(1,
+            EnvUtils.getInt("COMPLETED_EXPORTS_PAGE_SIZE", 500));
+
     public static void updateExportRecordStatus(OkHttpClient restClient, String exportId, String submissionId, GrantExportStatus newStatus)
             throws Exception {
 
@@ -42,6 +69,25 @@ public class ExportRecordService {
         return  RestService.sendGetRequest(restClient, null, getEndpoint, GrantExportListDTO.class);
     }
 
+    /**
+     * Lists the completed exports of a batch a page at a time, each page read in full and its response closed before
+     * its exports are handed out. A backend that ignores the paging parameters answers the first request with the
+     * whole listing, which is then the only page read. The caller must close the returned iterator.
+     */
+    public static CompletedExportPages streamCompletedExportRecordsByBatchId(OkHttpClient restClient, String exportId) {
+        return new CompletedExportPages(page -> openCompletedExportRecordsPage(restClient, exportId, page));
+    }
+
+    private static GrantExportIterator openCompletedExportRecordsPage(OkHttpClient restClient, String exportId,
+            int page) throws Exception {
+        final String getEndpoint = "/grant-export/" + exportId + "/completed";
+        logger.info("Sending getRequest to {} for page {}", getEndpoint, page);
+        final Response response = RestService.openGetRequest(restClient,
+                Map.of("page", String.valueOf(page), "size", String.valueOf(COMPLETED_EXPORTS_PAGE_SIZE)),
+                getEndpoint);
+        return new GrantExportIterator(response.body().charStream());
+    }
+
     public static long getFailedExportsCount(OkHttpClient restClient, String exportId) throws Exception {
         final String getEndpoint = "/grant-export/" + exportId + "/failedCount";
         logger.info("Sending getRequest to {}", getEndpoint);
@@ -54,6 +100,149 @@ public class ExportRecordService {
         return RestService.sendGetRequest(restClient, null, getEndpoint, OutstandingExportCountDTO.class).getOutstandingCount();
     }
 
+    /**
+     * Records the export's zip location and COMPLETE status and returns the batch's remaining and failed counts.
+     * <p>
+     * The backend does all of this in one transaction, so exactly one invocation sees the last export complete.
+     * Against a backend without the combined endpoint it falls back to the separate location, status and count
+     * calls, which don't have that guarantee. Any other failure, including a 404 for the record itself, is thrown.
+     */
+    public static ExportCompletionDTO completeExportRecord(OkHttpClient restClient, String exportId,
+            String submissionId, String s3ObjectKey) throws Exception {
+        if (completeEndpointSupported.get()) {
+            final String postEndpoint = "/submissions/" + submissionId + "/export-batch/" + exportId + "/complete";
+            logger.info("Sending postRequest to {}", postEndpoint);
+            try {
+                return RestService.sendPostRequest(restClient,
+                        new CompleteExportRecordDTO(s3ObjectKey, GrantExportStatus.COMPLETE), postEndpoint,
+                        ExportCompletionDTO.class);
+            } catch (UnsupportedBackendOperationException e) {
+                completeEndpointSupported.set(false);
+                logger.warn("Falling back to separate completion calls, {} answered with status {}", postEndpoint,
+                        e.getStatusCode());
+            }
+        }
+
+        addS3ObjectKeyToExportRecord(restClient, exportId, submissionId, s3ObjectKey);
+        updateExportRecordStatus(restClient, exportId, submissionId, GrantExportStatus.COMPLETE);
+        final long remainingCount = getRemainingExportsCount(restClient, exportId);
+        final long failedCount = getFailedExportsCount(restClient, exportId);
+        return new ExportCompletionDTO(remainingCount, failedCount);
+    }
+
+    /**
+     * Non-blocking counterpart of {@link #completeExportRecord}. Without the combined endpoint, the location, status
+     * and count calls are made one after the other, the two counts side by side.
+     */
+    public static CompletableFuture<ExportCompletionDTO> completeExportRecordAsync(OkHttpClient restClient,
+            String exportId, String submissionId, String s3ObjectKey) {
+        if (!completeEndpointSupported.get()) {
+            return completeExportRecordSeparatelyAsync(restClient, exportId, submissionId, s3ObjectKey);
+        }
+
+        final String postEndpoint = "/submissions/" + submissionId + "/export-batch/" + exportId + "/complete";
+        logger.info("Sending async postRequest to {}", postEndpoint);
+        return RestService.sendPostRequestAsync(restClient,
+                        new CompleteExportRecordDTO(s3ObjectKey, GrantExportStatus.COMPLETE), postEndpoint,
+                        ExportCompletionDTO.class)
+                .handle((completion, error) -> {
+                    final Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (cause instanceof UnsupportedBackendOperationException unsupported) {
+                        completeEndpointSupported.set(false);
+                        logger.warn("Falling back to separate completion calls, {} answered with status {}",
+                                postEndpoint, unsupported.getStatusCode());
+                        return completeExportRecordSeparatelyAsync(restClient, exportId, submissionId, s3ObjectKey);
+                    }
+                    if (cause != null) {
+                        return CompletableFuture.<ExportCompletionDTO>failedFuture(cause);
+                    }
+                    return CompletableFuture.completedFuture(completion);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private static CompletableFuture<ExportCompletionDTO> completeExportRecordSeparatelyAsync(OkHttpClient restClient,
+            String exportId, String submissionId, String s3ObjectKey) {
+        return addS3ObjectKeyToExportRecordAsync(restClient, exportId, submissionId, s3ObjectKey)
+                .thenCompose(ignored -> updateExportRecordStatusAsync(restClient, exportId, submissionId,
+                        GrantExportStatus.COMPLETE))
+                .thenCompose(ignored -> getRemainingExportsCountAsync(restClient, exportId)
+                        .thenCombine(getFailedExportsCountAsync(restClient, exportId), ExportCompletionDTO::new));
+    }
+
+    /**
+     * Applies status and location changes to many export records in one request. Against a backend without the
+     * bulk endpoint it falls back to one location and one status call per record.
+     */
+    public static void updateExportRecords(OkHttpClient restClient, List<ExportRecordUpdateDTO> updates)
+            throws Exception {
+        try {
+            updateExportRecordsAsync(restClient, updates).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Non-blocking counterpart of {@link #updateExportRecords}. Without the bulk endpoint, each record's location and
+     * status calls are made one after the other, and different records' calls side by side.
+     */
+    public static CompletableFuture<Void> updateExportRecordsAsync(OkHttpClient restClient,
+            List<ExportRecordUpdateDTO> updates) {
+        if (updates.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (!bulkUpdateEndpointSupported.get()) {
+            return updateExportRecordsSeparatelyAsync(restClient, updates);
+        }
+
+        final String postEndpoint = "/submissions/export-batch/bulk-update";
+        logger.info("Sending async postRequest to {} with {} export record updates", postEndpoint, updates.size());
+        return RestService.sendPostRequestAsync(restClient, new BulkExportRecordUpdateDTO(updates), postEndpoint,
+                        BulkExportRecordUpdateResultDTO.class)
+                .handle((result, error) -> {
+                    final Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (cause instanceof UnsupportedBackendOperationException unsupported) {
+                        bulkUpdateEndpointSupported.set(false);
+                        logger.warn("Falling back to separate export record updates, {} answered with status {}",
+                                postEndpoint, unsupported.getStatusCode());
+                        return updateExportRecordsSeparatelyAsync(restClient, updates);
+                    }
+                    if (cause != null) {
+                        return CompletableFuture.<Void>failedFuture(cause);
+                    }
+                    logger.info("Backend updated {} export records", result == null ? null : result.getUpdatedCount());
+                    return CompletableFuture.<Void>completedFuture(null);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private static CompletableFuture<Void> updateExportRecordsSeparatelyAsync(OkHttpClient restClient,
+            List<ExportRecordUpdateDTO> updates) {
+        final List<CompletableFuture<Void>> records = new ArrayList<>();
+        for (ExportRecordUpdateDTO update : updates) {
+            CompletableFuture<Void> record = CompletableFuture.completedFuture(null);
+            if (update.isS3ObjectKeyChanged()) {
+                record = record.thenCompose(ignored -> addS3ObjectKeyToExportRecordAsync(restClient,
+                        update.getExportBatchId(), update.getSubmissionId(), update.getS3ObjectKey()));
+            }
+            if (update.getStatus() != null) {
+                record = record.thenCompose(ignored -> updateExportRecordStatusAsync(restClient,
+                        update.getExportBatchId(), update.getSubmissionId(), update.getStatus()));
+            }
+            records.add(record);
+        }
+        return CompletableFuture.allOf(records.toArray(CompletableFuture[]::new));
+    }
+
+    static void resetEndpointSupport() {
+        completeEndpointSupported.set(true);
+        bulkUpdateEndpointSupported.set(true);
+    }
+
     public static void updateGrantExportBatchRecordStatus(OkHttpClient restClient, String exportId, GrantExportStatus newStatus)
             throws Exception {
         final String patchEndpoint = "/grant-export/" + exportId + "/batch/status";
@@ -70,4 +259,62 @@ public class ExportRecordService {
         RestService.sendPatchRequest(restClient, new AddingS3ObjectKeyDTO(s3ObjectKey), patchEndpoint);
     }
 
+    public static CompletableFuture<Void> updateExportRecordStatusAsync(OkHttpClient restClient, String exportId,
+            String submissionId, GrantExportStatus newStatus) {
+        final String postEndpoint = "/submissions/" + submissionId + "/export-batch/" + exportId + "/status";
+        logger.info("Sending async postRequest to {}", postEndpoint);
+        return RestService.sendPostRequestAsync(restClient, "\"" + newStatus.toString() + "\"", postEndpoint);
+    }
+
+    public static CompletableFuture<Void> addS3ObjectKeyToExportRecordAsync(OkHttpClient restClient, String exportId,
+            String submissionId, String s3ObjectKey) {
+        final String patchEndpoint = "/submissions/" + submissionId + "/export-batch/" + exportId + "/s3-object-key";
+        logger.info("Sending async patchRequest to {}", patchEndpoint);
+        return RestService.sendPatchRequestAsync(restClient, new AddingS3ObjectKeyDTO(s3ObjectKey), patchEndpoint);
+    }
+
+    public static CompletableFuture<GrantExportListDTO> getCompletedExportRecordsByBatchIdAsync(OkHttpClient restClient,
+            String exportId) {
+        final String getEndpoint = "/grant-export/" + exportId + "/completed";
+        logger.info("Sending async getRequest to {}", getEndpoint);
+        return RestService.sendGetRequestAsync(restClient, null, getEndpoint, GrantExportListDTO.class);
+    }
+
+    public static CompletableFuture<Long> getFailedExportsCountAsync(OkHttpClient restClient, String exportId) {
+        final String getEndpoint = "/grant-export/" + exportId + "/failedCount";
+        logger.info("Sending async getRequest to {}", getEndpoint);
+        return RestService.sendGetRequestAsync(restClient, null, getEndpoint, FailedExportCountDTO.class)
+                .thenApply(FailedExportCountDTO::getFailedCount);
+    }
+
+    public static CompletableFuture<Long> getOutstandingExportsCountAsync(OkHttpClient restClient, String exportId) {
+        final String getEndpoint = "/grant-export/" + exportId + "/outstandingCount";
+        logger.info("Sending async getRequest to {}", getEndpoint);
+        return RestService.sendGetRequestAsync(restClient, null, getEndpoint, OutstandingExportCountDTO.class)
+                .thenApply(OutstandingExportCountDTO::getOutstandingCount);
+    }
+
+    public static CompletableFuture<Long> getRemainingExportsCountAsync(OkHttpClient restClient, String exportId) {
+        final String getEndpoint = "/grant-export/" + exportId + "/remainingCount";
+        logger.info("Sending async getRequest to {}", getEndpoint);
+        return RestService.sendGetRequestAsync(restClient, null, getEndpoint, OutstandingExportCountDTO.class)
+                .thenApply(OutstandingExportCountDTO::getOutstandingCount);
+    }
+
+    public static CompletableFuture<Void> updateGrantExportBatchRecordStatusAsync(OkHttpClient restClient,
+            String exportId, GrantExportStatus newStatus) {
+        final String patchEndpoint = "/grant-export/" + exportId + "/batch/status";
+        logger.info("Sending async patch request to {} to update status to: {} for export batch with ID: {}",
+                patchEndpoint, newStatus.toString(), exportId);
+        return RestService.sendPatchRequestAsync(restClient, newStatus, patchEndpoint);
+    }
+
+    public static CompletableFuture<Void> addS3ObjectKeyToGrantExportBatchRecordAsync(OkHttpClient restClient,
+            String exportId, String s3ObjectKey) {
+        final String patchEndpoint = "/grant-export/" + exportId + "/batch/s3-object-key";
+        logger.info("Sending async patch request to {} to update location to: {} for export batch with ID: {}",
+                patchEndpoint, s3ObjectKey, exportId);
+        return RestService.sendPatchRequestAsync(restClient, new AddingS3ObjectKeyDTO(s3ObjectKey), patchEndpoint);
+    }
+
 }
@@ -0,0 +1,140 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.enums.GrantExportStatus;
+import gov.cabinetoffice.gap.model.ExportRecordUpdateDTO;
+import okhttp3.OkHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Holds export record status and location changes for an invocation and sends them together through
+ * {@link BackendApi#updateExportRecordsAsync}.
+ * <p>
+ * Changes to the same export record are merged, the latest status and location winning. Nothing is sent until
+ * {@link #flushAsync()}, and flushes go out one at a time: one asked for while another is in flight starts once it
+ * has finished, and takes every change made in the meantime. A change stays pending until a flush carrying it
+ * succeeds, so a failed flush leaves its changes for the next one, and a record changed again while its earlier
+ * change was being sent keeps the newer one; every change sets an absolute value, so repeating one is harmless.
+ */
+public class ExportRecordUpdateBuffer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportRecordUpdateBuffer.class);
+
+    private final BackendApi backendApi;
+
+    // the fields below are guarded by this
+
+    private final Map<String, ExportRecordUpdateDTO> pending = new LinkedHashMap<>();
+
+    private CompletableFuture<Void> lastFlush = CompletableFuture.completedFuture(null);
+
+    private boolean flushQueued;
+
+    public ExportRecordUpdateBuffer(final OkHttpClient restClient) {
+        this(new OkHttpBackendApi(restClient));
+    }
+
+    public ExportRecordUpdateBuffer(final BackendApi backendApi) {
+        this.backendApi = backendApi;
+    }
+
+    public synchronized void updateStatus(final String exportBatchId, final String submissionId,
+            final GrantExportStatus status) {
+        pendingUpdate(exportBatchId, submissionId).setStatus(status);
+    }
+
+    public synchronized void updateS3ObjectKey(final String exportBatchId, final String submissionId,
+            final String s3ObjectKey) {
+        final ExportRecordUpdateDTO update = pendingUpdate(exportBatchId, submissionId);
+        update.setS3ObjectKey(s3ObjectKey);
+        update.setS3ObjectKeyChanged(true);
+    }
+
+    public synchronized boolean hasPendingUpdates() {
+        return !pending.isEmpty();
+    }
+
+    public synchronized boolean hasPendingUpdate(final String exportBatchId, final String submissionId) {
+        return pending.containsKey(key(exportBatchId, submissionId));
+    }
+
+    /**
+     * Sends every pending change in one bulk request, once the flush before it has finished. The future fails if
+     * the request does.
+     */
+    public synchronized CompletableFuture<Void> flushAsync() {
+        if (!flushQueued) {
+            flushQueued = true;
+            lastFlush = lastFlush.handle((ignored, error) -> null).thenCompose(ignored -> sendPending());
+        }
+        return lastFlush;
+    }
+
+    /**
+     * Blocking counterpart of {@link #flushAsync()}, rethrowing the failure of the request.
+     */
+    public void flush() throws Exception {
+        try {
+            flushAsync().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        flush();
+    }
+
+    private CompletableFuture<Void> sendPending() {
+        final Map<String, ExportRecordUpdateDTO> sent = new LinkedHashMap<>();
+        synchronized (this) {
+            flushQueued = false;
+            // copies, so changes made while they are in flight stay pending
+            pending.forEach((key, update) -> sent.put(key, new ExportRecordUpdateDTO(update.getExportBatchId(),
+                    update.getSubmissionId(), update.getStatus(), update.getS3ObjectKey(),
+                    update.isS3ObjectKeyChanged())));
+        }
+        if (sent.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> request;
+        try {
+            request = backendApi.updateExportRecordsAsync(new ArrayList<>(sent.values()));
+        } catch (RuntimeException e) {
+            request = CompletableFuture.failedFuture(e);
+        }
+        return request.whenComplete((ignored, error) -> {
+            if (error != null) {
+                final Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                logger.warn("Could not flush {} export record updates, keeping them for the next flush: {}",
+                        sent.size(), cause.toString());
+                return;
+            }
+            synchronized (this) {
+                sent.forEach(pending::remove);
+            }
+            logger.info("Flushed {} export record updates", sent.size());
+        });
+    }
+
+    private ExportRecordUpdateDTO pendingUpdate(final String exportBatchId, final String submissionId) {
+        return pending.computeIfAbsent(key(exportBatchId, submissionId),
+                key -> new ExportRecordUpdateDTO(exportBatchId, submissionId, null, null, false));
+    }
+
+    private static String key(final String exportBatchId, final String submissionId) {
+        return exportBatchId + "/" + submissionId;
+    }
+
+}
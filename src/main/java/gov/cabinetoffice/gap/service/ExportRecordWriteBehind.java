@@ -0,0 +1,74 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.enums.GrantExportStatus;
+
+import java.util.concurrent.CompletionException;
+
+/**
+ * Sends export record status and location changes in the background, so the export only waits for them where it
+ * needs them to have landed.
+ * <p>
+ * Each change is made at the end of a stage and goes into the invocation's {@link ExportRecordUpdateBuffer}, which
+ * starts a bulk flush straight away. While one flush is in flight the changes made by later stages, of this export
+ * or the next, wait and go out together in the following one. {@link #await} waits for one record's changes and
+ * rethrows the failure that kept them from landing, and must be called before reading anything they could affect,
+ * such as the batch counts. {@link #close()} waits for every change still pending, so none is in flight when the
+ * invocation returns.
+ */
+public class ExportRecordWriteBehind implements AutoCloseable {
+
+    private final ExportRecordUpdateBuffer updates;
+
+    public ExportRecordWriteBehind(final BackendApi backendApi) {
+        this(new ExportRecordUpdateBuffer(backendApi));
+    }
+
+    public ExportRecordWriteBehind(final ExportRecordUpdateBuffer updates) {
+        this.updates = updates;
+    }
+
+    public void updateStatus(final String exportBatchId, final String submissionId, final GrantExportStatus status) {
+        updates.updateStatus(exportBatchId, submissionId, status);
+        // failures are logged by the buffer and rethrown by await
+        updates.flushAsync();
+    }
+
+    public void updateS3ObjectKey(final String exportBatchId, final String submissionId, final String s3ObjectKey) {
+        updates.updateS3ObjectKey(exportBatchId, submissionId, s3ObjectKey);
+        updates.flushAsync();
+    }
+
+    /**
+     * Waits for every change made so far to the given export record to land, sending again any that failed, and
+     * rethrows the failure if they still haven't.
+     */
+    public void await(final String exportBatchId, final String submissionId) throws Exception {
+        if (!updates.hasPendingUpdate(exportBatchId, submissionId)) {
+            return;
+        }
+
+        Throwable failure = null;
+        try {
+            updates.flushAsync().join();
+        } catch (CompletionException e) {
+            failure = e.getCause();
+        }
+        if (failure == null || !updates.hasPendingUpdate(exportBatchId, submissionId)) {
+            return;
+        }
+        if (failure instanceof Exception exception) {
+            throw exception;
+        }
+        throw new CompletionException(failure);
+    }
+
+    /**
+     * Sends every change still pending and waits for it. Failures have already been logged, and are only rethrown
+     * by {@link #await}.
+     */
+    @Override
+    public void close() {
+        updates.flushAsync().exceptionally(error -> null).join();
+    }
+
+}
@@ -0,0 +1,176 @@
+package gov.cabinetoffice.gap.service;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The directory one export writes its files into, along with a record of what it has already fetched from S3,
+ * so a second pass over the same submission (the attachments-only zip built when the export fails) only lists
+ * and downloads what isn't already on disk.
+ * <p>
+ * Workspaces opened through a {@link WorkspaceManager} count their bytes against its quota and delete their
+ * directory on close. A workspace created directly over an existing directory is neither tracked nor deleted.
+ */
+public class ExportWorkspace implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportWorkspace.class);
+
+    private final String name;
+
+    private final File directory;
+
+    private final WorkspaceManager manager;
+
+    private final Set<String> fetchedKeys = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, Long> trackedFileSizes = new HashMap<>();
+
+    private long bytesHeld;
+
+    private boolean closed;
+
+    private volatile List<S3ObjectSummary> attachmentListing;
+
+    public ExportWorkspace(final String name, final File directory) {
+        this(name, directory, null);
+    }
+
+    ExportWorkspace(final String name, final File directory, final WorkspaceManager manager) {
+        this.name = name;
+        this.directory = directory;
+        this.manager = manager;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public File resolve(final String relativePath) {
+        return new File(directory, relativePath);
+    }
+
+    /**
+     * Accounts for a file about to be written in this workspace whose size is already known, checking the quota
+     * before any of it is written. The file must be {@link #track tracked} once written, or once writing it failed,
+     * to settle the reservation against its actual size.
+     */
+    public void reserve(final File file, final long expectedBytes) {
+        if (manager == null) {
+            return;
+        }
+
+        synchronized (this) {
+            final Long previousSize = trackedFileSizes.get(file.getAbsolutePath());
+            final long delta = expectedBytes - (previousSize == null ? 0 : previousSize);
+            manager.reserve(this, file, delta);
+            trackedFileSizes.put(file.getAbsolutePath(), expectedBytes);
+            bytesHeld += delta;
+        }
+    }
+
+    /**
+     * Accounts for a file that has just been written (or rewritten) in this workspace.
+     */
+    public void track(final File file) {
+        if (manager == null) {
+            return;
+        }
+
+        final long delta;
+        synchronized (this) {
+            final long size = file.length();
+            final Long previousSize = trackedFileSizes.put(file.getAbsolutePath(), size);
+            delta = size - (previousSize == null ? 0 : previousSize);
+            bytesHeld += delta;
+        }
+        manager.recordWrite(this, delta);
+    }
+
+    public synchronized long getBytesHeld() {
+        return bytesHeld;
+    }
+
+    /**
+     * Deletes everything written so far but keeps the workspace open, freeing space for a later stage.
+     */
+    public void clear() {
+        if (manager == null) {
+            return;
+        }
+
+        final long released;
+        synchronized (this) {
+            try {
+                FileUtils.cleanDirectory(directory);
+            } catch (IOException e) {
+                logger.error("Could not delete the contents of workspace " + directory, e);
+            }
+            released = bytesHeld;
+            bytesHeld = 0;
+            trackedFileSizes.clear();
+        }
+        fetchedKeys.clear();
+        attachmentListing = null;
+        manager.recordWrite(this, -released);
+    }
+
+    @Override
+    public void close() {
+        if (manager == null) {
+            return;
+        }
+
+        final long released;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            released = bytesHeld;
+            bytesHeld = 0;
+        }
+        manager.release(this, released);
+    }
+
+    /**
+     * The object cache shared by the workspaces of this workspace's manager, or null if there is none.
+     */
+    S3ObjectCache getObjectCache() {
+        return manager == null ? null : manager.getObjectCache();
+    }
+
+    List<S3ObjectSummary> getAttachmentListing() {
+        return attachmentListing;
+    }
+
+    void setAttachmentListing(final List<S3ObjectSummary> attachmentListing) {
+        this.attachmentListing = List.copyOf(attachmentListing);
+    }
+
+    /**
+     * An object counts as fetched only while its local copy is still there, so a cleared directory is never
+     * mistaken for a complete download.
+     */
+    boolean isFetched(final String key) {
+        return fetchedKeys.contains(key) && resolve(key).isFile();
+    }
+
+    void markFetched(final String key) {
+        fetchedKeys.add(key);
+    }
+
+}
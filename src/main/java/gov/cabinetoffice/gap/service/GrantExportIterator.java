@@ -0,0 +1,115 @@
+package gov.cabinetoffice.gap.service;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import gov.cabinetoffice.gap.model.GrantExportDTO;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the {@code grantExports} array of a {@link gov.cabinetoffice.gap.model.GrantExportListDTO} body one element
+ * at a time, so only the current export is held in memory rather than the whole response and list.
+ * <p>
+ * Other fields of the enclosing object are skipped, apart from the {@code last} flag of a paged listing, which
+ * {@link #isLastPage()} reports once the exports have been read. Closing the iterator closes the underlying reader.
+ */
+public class GrantExportIterator implements Iterator<GrantExportDTO>, Closeable {
+
+    private static final String GRANT_EXPORTS_FIELD = "grantExports";
+
+    private static final String LAST_PAGE_FIELD = "last";
+
+    private final JsonReader reader;
+
+    private boolean inArray;
+
+    private boolean exhausted;
+
+    // a body without the flag is the whole listing
+    private boolean lastPage = true;
+
+    public GrantExportIterator(final Reader reader) {
+        this.reader = new JsonReader(reader);
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            if (exhausted) {
+                return false;
+            }
+            if (!inArray && !openArray()) {
+                exhausted = true;
+                return false;
+            }
+            if (reader.hasNext()) {
+                return true;
+            }
+            reader.endArray();
+            readFieldsAfterArray();
+            exhausted = true;
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public GrantExportDTO next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return RestService.gson.fromJson(reader, GrantExportDTO.class);
+    }
+
+    /**
+     * Whether the backend has no exports after this page. Only meaningful once {@link #hasNext()} has returned false.
+     */
+    public boolean isLastPage() {
+        return lastPage;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Advances to the first element of the grantExports array, returning false if the body has none.
+     */
+    private boolean openArray() throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (GRANT_EXPORTS_FIELD.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                inArray = true;
+                return true;
+            }
+            readOrSkip(name);
+        }
+        reader.endObject();
+        return false;
+    }
+
+    private void readFieldsAfterArray() throws IOException {
+        while (reader.hasNext()) {
+            readOrSkip(reader.nextName());
+        }
+        reader.endObject();
+    }
+
+    private void readOrSkip(final String name) throws IOException {
+        if (LAST_PAGE_FIELD.equals(name) && reader.peek() == JsonToken.BOOLEAN) {
+            lastPage = reader.nextBoolean();
+        } else {
+            reader.skipValue();
+        }
+    }
+
+}
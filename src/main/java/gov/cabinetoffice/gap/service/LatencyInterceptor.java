@@ -0,0 +1,157 @@
+package gov.cabinetoffice.gap.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import gov.cabinetoffice.gap.exceptions.CircuitBreakerOpenException;
+import gov.cabinetoffice.gap.utils.JsonCodec;
+import gov.cabinetoffice.gap.utils.LatencyHistogram;
+import lombok.Value;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times every backend call, retries and queueing included, from being handed to the client until its response
+ * headers arrive, and counts the ones that failed. Endpoints are keyed as in {@link ResilienceInterceptor}, without
+ * the host.
+ * <p>
+ * {@link #logAndReset()} writes everything recorded as a single JSON line, so latency percentiles can be compared
+ * across releases from the logs alone.
+ */
+public class LatencyInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(LatencyInterceptor.class);
+
+    @Value
+    public static class EndpointLatency {
+
+        long calls;
+
+        long p50Micros;
+
+        long p90Micros;
+
+        long p99Micros;
+
+        long p999Micros;
+
+        long maxMicros;
+
+        long meanMicros;
+
+        long clientErrors;
+
+        long serverErrors;
+
+        long networkErrors;
+
+        long rejected;
+
+    }
+
+    private static class Recorder {
+
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private final LongAdder clientErrors = new LongAdder();
+
+        private final LongAdder serverErrors = new LongAdder();
+
+        private final LongAdder networkErrors = new LongAdder();
+
+        private final LongAdder rejected = new LongAdder();
+
+    }
+
+    private final Map<String, Recorder> endpoints = new ConcurrentHashMap<>();
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull final Chain chain) throws IOException {
+        final Request request = chain.request();
+        final Recorder recorder = endpoints.computeIfAbsent(endpointKey(request), key -> new Recorder());
+        final long start = System.nanoTime();
+        try {
+            final Response response = chain.proceed(request);
+            if (response.code() >= 500) {
+                recorder.serverErrors.increment();
+            } else if (response.code() >= 400) {
+                recorder.clientErrors.increment();
+            }
+            return response;
+        } catch (CircuitBreakerOpenException e) {
+            recorder.rejected.increment();
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            recorder.networkErrors.increment();
+            throw e;
+        } finally {
+            recorder.histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    public Map<String, EndpointLatency> snapshot() {
+        final Map<String, EndpointLatency> snapshot = new TreeMap<>();
+        endpoints.forEach((endpoint, recorder) -> {
+            final LatencyHistogram histogram = recorder.histogram;
+            snapshot.put(endpoint, new EndpointLatency(histogram.count(), histogram.percentileMicros(50),
+                    histogram.percentileMicros(90), histogram.percentileMicros(99), histogram.percentileMicros(99.9),
+                    histogram.maxMicros(), histogram.meanMicros(), recorder.clientErrors.sum(),
+                    recorder.serverErrors.sum(), recorder.networkErrors.sum(), recorder.rejected.sum()));
+        });
+        return snapshot;
+    }
+
+    /**
+     * Logs each endpoint's latencies and failures since the last call as one JSON line and starts counting again.
+     * Nothing is logged if no calls were made.
+     */
+    public void logAndReset() {
+        final Map<String, EndpointLatency> snapshot = snapshot();
+        endpoints.clear();
+        if (!snapshot.isEmpty()) {
+            logger.info(toJson(snapshot));
+        }
+    }
+
+    static String toJson(final Map<String, EndpointLatency> snapshot) {
+        final JsonArray endpoints = new JsonArray();
+        snapshot.forEach((endpoint, latency) -> {
+            final JsonObject entry = new JsonObject();
+            entry.addProperty("endpoint", endpoint);
+            entry.addProperty("calls", latency.getCalls());
+            entry.addProperty("p50Micros", latency.getP50Micros());
+            entry.addProperty("p90Micros", latency.getP90Micros());
+            entry.addProperty("p99Micros", latency.getP99Micros());
+            entry.addProperty("p999Micros", latency.getP999Micros());
+            entry.addProperty("maxMicros", latency.getMaxMicros());
+            entry.addProperty("meanMicros", latency.getMeanMicros());
+            entry.addProperty("clientErrors", latency.getClientErrors());
+            entry.addProperty("serverErrors", latency.getServerErrors());
+            entry.addProperty("networkErrors", latency.getNetworkErrors());
+            entry.addProperty("rejected", latency.getRejected());
+            endpoints.add(entry);
+        });
+
+        final JsonObject metrics = new JsonObject();
+        metrics.addProperty("metric", "backendLatency");
+        metrics.add("endpoints", endpoints);
+        return JsonCodec.gson().toJson(metrics);
+    }
+
+    private static String endpointKey(final Request request) {
+        final String key = ResilienceInterceptor.endpointKey(request);
+        final int pathStart = request.method().length() + 1 + request.url().host().length();
+        return request.method() + ' ' + key.substring(pathStart);
+    }
+
+}
@@ -7,19 +7,35 @@ import okhttp3.OkHttpClient;
 import java.util.Collections;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public class NotifyService {
 
     public static void sendConfirmationEmail(final OkHttpClient restClient, final String emailAddress, final String exportBatchId,
                                              final String schemeId, final String submissionId) throws Exception {
+        final SendLambdaExportEmailDTO sendLambdaExportEmailDTO = buildConfirmationEmail(emailAddress, exportBatchId,
+                schemeId, submissionId);
+
+        RestService.sendPostRequest(restClient, sendLambdaExportEmailDTO, "/emails/sendLambdaConfirmationEmail");
+
+    }
+
+    public static CompletableFuture<Void> sendConfirmationEmailAsync(final OkHttpClient restClient, final String emailAddress,
+                                                                     final String exportBatchId, final String schemeId,
+                                                                     final String submissionId) {
+        final SendLambdaExportEmailDTO sendLambdaExportEmailDTO = buildConfirmationEmail(emailAddress, exportBatchId,
+                schemeId, submissionId);
+
+        return RestService.sendPostRequestAsync(restClient, sendLambdaExportEmailDTO, "/emails/sendLambdaConfirmationEmail");
+    }
+
+    private static SendLambdaExportEmailDTO buildConfirmationEmail(final String emailAddress, final String exportBatchId,
+                                                                   final String schemeId, final String submissionId) {
         final String redirectURL = HelperUtils.getRedirectUrl(schemeId, exportBatchId);
         final Map<String, String> personalisation = Collections.singletonMap("REDIRECT_URL", redirectURL);
-        final SendLambdaExportEmailDTO sendLambdaExportEmailDTO = SendLambdaExportEmailDTO.builder()
+        return SendLambdaExportEmailDTO.builder()
                 .exportId(UUID.fromString(exportBatchId)).emailAddress(emailAddress)
                 .submissionId(UUID.fromString(submissionId)).personalisation(personalisation).build();
-
-        RestService.sendPostRequest(restClient, sendLambdaExportEmailDTO, "/emails/sendLambdaConfirmationEmail");
-
     }
 
 }
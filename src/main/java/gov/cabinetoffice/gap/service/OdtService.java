@@ -24,6 +24,7 @@ import org.odftoolkit.odfdom.incubator.doc.text.OdfTextParagraph;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.Objects;
@@ -60,7 +61,8 @@ public class OdtService {
     OdtService() {
     }
 
-    public static void generateSingleOdt(final Submission submission, final String filename) throws Exception {
+    public static void generateSingleOdt(final Submission submission, final String filename,
+                                         final ExportWorkspace workspace) throws Exception {
             try {
                 OdfStyleProcessor styleProcessor = new OdfStyleProcessor();
                 int schemeVersion = submission.getSchemeVersion();
@@ -107,8 +109,10 @@ public class OdtService {
                         populateQuestionResponseTable(count, section, documentText, contentDom, odt);
                     }
                 });
-                odt.save(String.format("/tmp/%s.odt", filename));
+                final File odtFile = workspace.resolve(filename + ".odt");
+                odt.save(odtFile);
                 odt.close();
+                workspace.track(odtFile);
             } catch (Exception e) {
                 logger.error("Could not generate ODT for given submission", e);
                 throw e;
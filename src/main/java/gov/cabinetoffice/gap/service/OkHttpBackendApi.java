@@ -0,0 +1,171 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.enums.GrantExportStatus;
+import gov.cabinetoffice.gap.enums.SubmissionProjection;
+import gov.cabinetoffice.gap.model.ExportCompletionDTO;
+import gov.cabinetoffice.gap.model.ExportRecordUpdateDTO;
+import gov.cabinetoffice.gap.model.Submission;
+import okhttp3.OkHttpClient;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongConsumer;
+
+/**
+ * Makes the backend calls over HTTP through the static services and the given client.
+ */
+public class OkHttpBackendApi implements BackendApi {
+
+    private final OkHttpClient restClient;
+
+    public OkHttpBackendApi(final OkHttpClient restClient) {
+        this.restClient = restClient;
+    }
+
+    @Override
+    public void updateExportRecordStatus(final String exportBatchId, final String submissionId,
+            final GrantExportStatus newStatus) throws Exception {
+        ExportRecordService.updateExportRecordStatus(restClient, exportBatchId, submissionId, newStatus);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateExportRecordStatusAsync(final String exportBatchId,
+            final String submissionId, final GrantExportStatus newStatus) {
+        return ExportRecordService.updateExportRecordStatusAsync(restClient, exportBatchId, submissionId, newStatus);
+    }
+
+    @Override
+    public void addS3ObjectKeyToExportRecord(final String exportBatchId, final String submissionId,
+            final String s3ObjectKey) throws Exception {
+        ExportRecordService.addS3ObjectKeyToExportRecord(restClient, exportBatchId, submissionId, s3ObjectKey);
+    }
+
+    @Override
+    public CompletableFuture<Void> addS3ObjectKeyToExportRecordAsync(final String exportBatchId,
+            final String submissionId, final String s3ObjectKey) {
+        return ExportRecordService.addS3ObjectKeyToExportRecordAsync(restClient, exportBatchId, submissionId,
+                s3ObjectKey);
+    }
+
+    @Override
+    public void updateExportRecords(final List<ExportRecordUpdateDTO> updates) throws Exception {
+        ExportRecordService.updateExportRecords(restClient, updates);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateExportRecordsAsync(final List<ExportRecordUpdateDTO> updates) {
+        return ExportRecordService.updateExportRecordsAsync(restClient, updates);
+    }
+
+    @Override
+    public ExportCompletionDTO completeExportRecord(final String exportBatchId, final String submissionId,
+            final String s3ObjectKey) throws Exception {
+        return ExportRecordService.completeExportRecord(restClient, exportBatchId, submissionId, s3ObjectKey);
+    }
+
+    @Override
+    public CompletableFuture<ExportCompletionDTO> completeExportRecordAsync(final String exportBatchId,
+            final String submissionId, final String s3ObjectKey) {
+        return ExportRecordService.completeExportRecordAsync(restClient, exportBatchId, submissionId, s3ObjectKey);
+    }
+
+    @Override
+    public long getRemainingExportsCount(final String exportBatchId) throws Exception {
+        return ExportRecordService.getRemainingExportsCount(restClient, exportBatchId);
+    }
+
+    @Override
+    public CompletableFuture<Long> getRemainingExportsCountAsync(final String exportBatchId) {
+        return ExportRecordService.getRemainingExportsCountAsync(restClient, exportBatchId);
+    }
+
+    @Override
+    public long getFailedExportsCount(final String exportBatchId) throws Exception {
+        return ExportRecordService.getFailedExportsCount(restClient, exportBatchId);
+    }
+
+    @Override
+    public CompletableFuture<Long> getFailedExportsCountAsync(final String exportBatchId) {
+        return ExportRecordService.getFailedExportsCountAsync(restClient, exportBatchId);
+    }
+
+    @Override
+    public long getOutstandingExportsCount(final String exportBatchId) throws Exception {
+        return ExportRecordService.getOutstandingExportsCount(restClient, exportBatchId);
+    }
+
+    @Override
+    public CompletableFuture<Long> getOutstandingExportsCountAsync(final String exportBatchId) {
+        return ExportRecordService.getOutstandingExportsCountAsync(restClient, exportBatchId);
+    }
+
+    @Override
+    public CompletedExportPages streamCompletedExportRecordsByBatchId(final String exportBatchId) {
+        return ExportRecordService.streamCompletedExportRecordsByBatchId(restClient, exportBatchId);
+    }
+
+    @Override
+    public void updateGrantExportBatchRecordStatus(final String exportBatchId, final GrantExportStatus newStatus)
+            throws Exception {
+        ExportRecordService.updateGrantExportBatchRecordStatus(restClient, exportBatchId, newStatus);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateGrantExportBatchRecordStatusAsync(final String exportBatchId,
+            final GrantExportStatus newStatus) {
+        return ExportRecordService.updateGrantExportBatchRecordStatusAsync(restClient, exportBatchId, newStatus);
+    }
+
+    @Override
+    public void addS3ObjectKeyToGrantExportBatchRecord(final String exportBatchId, final String s3ObjectKey)
+            throws Exception {
+        ExportRecordService.addS3ObjectKeyToGrantExportBatchRecord(restClient, exportBatchId, s3ObjectKey);
+    }
+
+    @Override
+    public CompletableFuture<Void> addS3ObjectKeyToGrantExportBatchRecordAsync(final String exportBatchId,
+            final String s3ObjectKey) {
+        return ExportRecordService.addS3ObjectKeyToGrantExportBatchRecordAsync(restClient, exportBatchId,
+                s3ObjectKey);
+    }
+
+    @Override
+    public Submission getSubmissionData(final String exportBatchId, final String submissionId,
+            final SubmissionProjection projection) throws Exception {
+        return SubmissionService.getSubmissionData(restClient, exportBatchId, submissionId, projection);
+    }
+
+    @Override
+    public Submission getSubmissionData(final String exportBatchId, final String submissionId,
+            final SubmissionProjection projection, final LongConsumer onSize) throws Exception {
+        return SubmissionService.getSubmissionData(restClient, exportBatchId, submissionId, projection, onSize);
+    }
+
+    @Override
+    public CompletableFuture<Submission> getSubmissionDataAsync(final String exportBatchId,
+            final String submissionId, final SubmissionProjection projection, final LongConsumer onSize) {
+        return SubmissionService.getSubmissionDataAsync(restClient, exportBatchId, submissionId, projection, onSize);
+    }
+
+    @Override
+    public CompletableFuture<Integer> streamSubmissionData(final String exportBatchId,
+            final List<String> submissionIds, final SubmissionProjection projection,
+            final SubmissionService.StreamedSubmissionHandler onSubmission) {
+        return SubmissionService.streamSubmissionData(restClient, exportBatchId, submissionIds, projection,
+                onSubmission);
+    }
+
+    @Override
+    public void sendConfirmationEmail(final String emailAddress, final String exportBatchId, final String schemeId,
+            final String submissionId) throws Exception {
+        NotifyService.sendConfirmationEmail(restClient, emailAddress, exportBatchId, schemeId, submissionId);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendConfirmationEmailAsync(final String emailAddress, final String exportBatchId,
+            final String schemeId, final String submissionId) {
+        return NotifyService.sendConfirmationEmailAsync(restClient, emailAddress, exportBatchId, schemeId,
+                submissionId);
+    }
+
+}
@@ -0,0 +1,24 @@
+package gov.cabinetoffice.gap.service;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The calls the export makes to the queue its messages come from, kept behind an interface so a queue held in
+ * memory can stand in for SQS when testing.
+ */
+public interface QueueClient {
+
+    /**
+     * Hides the given received messages from other consumers for {@code timeout}, counted from now. Messages the
+     * queue refuses to change, e.g. because they have already been deleted, are logged and skipped; a failure to
+     * reach the queue at all is thrown.
+     */
+    void changeVisibility(String queueUrl, List<String> receiptHandles, Duration timeout);
+
+    /**
+     * The visibility timeout the queue gives the messages it delivers, or null if it can't be told.
+     */
+    Duration getVisibilityTimeout(String queueUrl);
+
+}
@@ -0,0 +1,57 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.enums.EndpointFamily;
+import gov.cabinetoffice.gap.utils.EnvUtils;
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Client-side limits on calls to one {@link EndpointFamily}, applied by {@link RateLimitInterceptor}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class RateLimit {
+
+    /** Calls started per second once the burst is used up; zero for no rate limit. */
+    @Builder.Default
+    int permitsPerSecond = 0;
+
+    /** Calls that may start at once after a quiet spell. */
+    @Builder.Default
+    int burst = 1;
+
+    /** Calls in flight at once, counting until the response body is closed; zero for no limit. */
+    @Builder.Default
+    int maxConcurrent = 0;
+
+    private static final Map<EndpointFamily, RateLimit> DEFAULTS = Map.of(
+            EndpointFamily.STATUS_UPDATES, new RateLimit(20, 10, 4),
+            EndpointFamily.COUNTS, new RateLimit(30, 6, 3),
+            EndpointFamily.SUBMISSIONS, new RateLimit(10, 4, 3),
+            EndpointFamily.COMPLETED_EXPORTS, new RateLimit(5, 2, 1),
+            EndpointFamily.EMAILS, new RateLimit(2, 2, 1),
+            EndpointFamily.OTHER, new RateLimit(0, 1, 0));
+
+    /**
+     * The limits for every family, each setting overridable through
+     * {@code BACKEND_<FAMILY>_RATE_PER_SECOND}, {@code BACKEND_<FAMILY>_BURST} and
+     * {@code BACKEND_<FAMILY>_MAX_CONCURRENT}.
+     */
+    public static Map<EndpointFamily, RateLimit> fromEnvironment() {
+        final Map<EndpointFamily, RateLimit> limits = new EnumMap<>(EndpointFamily.class);
+        for (final EndpointFamily family : EndpointFamily.values()) {
+            final RateLimit defaults = DEFAULTS.get(family);
+            final String prefix = "BACKEND_" + family.name() + "_";
+            limits.put(family, RateLimit.builder()
+                    .permitsPerSecond(EnvUtils.getInt(prefix + "RATE_PER_SECOND", defaults.getPermitsPerSecond()))
+                    .burst(EnvUtils.getInt(prefix + "BURST", defaults.getBurst()))
+                    .maxConcurrent(EnvUtils.getInt(prefix + "MAX_CONCURRENT", defaults.getMaxConcurrent()))
+                    .build());
+        }
+        return limits;
+    }
+
+}
@@ -0,0 +1,221 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.enums.EndpointFamily;
+import gov.cabinetoffice.gap.utils.TokenBucket;
+import lombok.Value;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds backend calls back so each {@link EndpointFamily} stays within its {@link RateLimit}.
+ * <p>
+ * A call first waits for a permit from the family's {@link TokenBucket}, then for one of its concurrency slots,
+ * which it keeps until its response body is closed, so a streamed response counts for as long as it is read. Each
+ * attempt of a retried call is limited on its own. A call cancelled while it waits fails without being sent. How
+ * long calls waited, and how many ran at once, are kept per family; see {@link #snapshot()}.
+ */
+public class RateLimitInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitInterceptor.class);
+
+    private static final long SLOT_POLL_MILLIS = 100;
+
+    @Value
+    public static class FamilyMetrics {
+
+        RateLimit limit;
+
+        long calls;
+
+        long delayedCalls;
+
+        Duration totalQueueTime;
+
+        Duration maxQueueTime;
+
+        int peakInFlight;
+
+    }
+
+    private static class Limiter {
+
+        private final RateLimit limit;
+
+        private final TokenBucket tokenBucket;
+
+        private final Semaphore slots;
+
+        private final LongAdder calls = new LongAdder();
+
+        private final LongAdder delayedCalls = new LongAdder();
+
+        private final LongAdder queueNanos = new LongAdder();
+
+        private final AtomicLong maxQueueNanos = new AtomicLong();
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final AtomicInteger peakInFlight = new AtomicInteger();
+
+        private Limiter(final RateLimit limit) {
+            this.limit = limit;
+            this.tokenBucket = limit.getPermitsPerSecond() > 0
+                    ? new TokenBucket(limit.getPermitsPerSecond(), limit.getBurst())
+                    : null;
+            this.slots = limit.getMaxConcurrent() > 0 ? new Semaphore(limit.getMaxConcurrent(), true) : null;
+        }
+
+    }
+
+    private final Map<EndpointFamily, Limiter> limiters = new EnumMap<>(EndpointFamily.class);
+
+    public RateLimitInterceptor(final Map<EndpointFamily, RateLimit> limits) {
+        limits.forEach((family, limit) -> limiters.put(family, new Limiter(limit)));
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull final Chain chain) throws IOException {
+        final EndpointFamily family = EndpointFamily.of(chain.request().url().pathSegments());
+        final Limiter limiter = limiters.get(family);
+        if (limiter == null) {
+            return chain.proceed(chain.request());
+        }
+
+        final long queuedAt = System.nanoTime();
+        if (limiter.tokenBucket != null) {
+            sleep(limiter.tokenBucket.reserve());
+        }
+        if (limiter.slots != null) {
+            acquireSlot(chain, limiter.slots, family);
+        }
+        recordQueueTime(limiter, System.nanoTime() - queuedAt);
+
+        final Runnable release = releaseOnce(limiter);
+        final Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException | RuntimeException e) {
+            release.run();
+            throw e;
+        }
+
+        final ResponseBody body = response.body();
+        if (body == null) {
+            release.run();
+            return response;
+        }
+        final ForwardingSource releasingSource = new ForwardingSource(body.source()) {
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    release.run();
+                }
+            }
+        };
+        return response.newBuilder()
+                .body(ResponseBody.create(Okio.buffer(releasingSource), body.contentType(), body.contentLength()))
+                .build();
+    }
+
+    public Map<EndpointFamily, FamilyMetrics> snapshot() {
+        final Map<EndpointFamily, FamilyMetrics> snapshot = new EnumMap<>(EndpointFamily.class);
+        limiters.forEach((family, limiter) -> snapshot.put(family, new FamilyMetrics(limiter.limit,
+                limiter.calls.sum(), limiter.delayedCalls.sum(), Duration.ofNanos(limiter.queueNanos.sum()),
+                Duration.ofNanos(limiter.maxQueueNanos.get()), limiter.peakInFlight.get())));
+        return snapshot;
+    }
+
+    /**
+     * Logs each family's limits and queueing since the last call and starts counting again.
+     */
+    public void logAndReset() {
+        snapshot().forEach((family, metrics) -> {
+            if (metrics.getCalls() > 0) {
+                logger.info("Backend calls to {}: {} calls, {} delayed, {} ms queued in total and {} ms at most, "
+                                + "{} at once at peak, limit {}/s with burst {} and {} at once", family,
+                        metrics.getCalls(), metrics.getDelayedCalls(), metrics.getTotalQueueTime().toMillis(),
+                        metrics.getMaxQueueTime().toMillis(), metrics.getPeakInFlight(),
+                        metrics.getLimit().getPermitsPerSecond(), metrics.getLimit().getBurst(),
+                        metrics.getLimit().getMaxConcurrent());
+            }
+        });
+        limiters.values().forEach(limiter -> {
+            limiter.calls.reset();
+            limiter.delayedCalls.reset();
+            limiter.queueNanos.reset();
+            limiter.maxQueueNanos.set(0);
+            limiter.peakInFlight.set(limiter.inFlight.get());
+        });
+    }
+
+    private static void acquireSlot(final Chain chain, final Semaphore slots, final EndpointFamily family)
+            throws IOException {
+        try {
+            while (!slots.tryAcquire(SLOT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (chain.call().isCanceled()) {
+                    throw new InterruptedIOException("Canceled while waiting to call " + family);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to call " + family);
+        }
+    }
+
+    private static void recordQueueTime(final Limiter limiter, final long queueNanos) {
+        limiter.calls.increment();
+        if (queueNanos >= TimeUnit.MILLISECONDS.toNanos(1)) {
+            limiter.delayedCalls.increment();
+        }
+        limiter.queueNanos.add(queueNanos);
+        limiter.maxQueueNanos.accumulateAndGet(queueNanos, Math::max);
+        limiter.peakInFlight.accumulateAndGet(limiter.inFlight.incrementAndGet(), Math::max);
+    }
+
+    private static Runnable releaseOnce(final Limiter limiter) {
+        final AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                limiter.inFlight.decrementAndGet();
+                if (limiter.slots != null) {
+                    limiter.slots.release();
+                }
+            }
+        };
+    }
+
+    private static void sleep(final Duration delay) throws InterruptedIOException {
+        if (delay.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(delay.toMillis(), delay.toNanosPart() % 1_000_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a rate limit permit");
+        }
+    }
+
+}
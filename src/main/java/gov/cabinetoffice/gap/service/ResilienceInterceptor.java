@@ -0,0 +1,187 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.exceptions.CircuitBreakerOpenException;
+import gov.cabinetoffice.gap.utils.CircuitBreaker;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Retries failed backend calls and stops calling endpoints that keep failing.
+ * <p>
+ * Idempotent requests (by method, or tagged with {@link Idempotency#SAFE_TO_RETRY}) are retried on I/O errors and
+ * on 408, 429, 500, 502, 503 and 504. Other requests are only retried when the backend cannot have acted on them:
+ * a connection that was never made, or a 429/503 rejection. Backoff is exponential with full jitter, except that a
+ * {@code Retry-After} header on a 429/503 is honoured as given. No retry is started that would overrun the
+ * policy's call deadline.
+ * <p>
+ * Each endpoint (method and path, with ID segments collapsed) has its own {@link CircuitBreaker}. While it is open,
+ * calls fail straight away with {@link CircuitBreakerOpenException}.
+ */
+public class ResilienceInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResilienceInterceptor.class);
+
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD", "PUT", "DELETE", "OPTIONS");
+
+    private static final Set<Integer> RETRYABLE_STATUSES = Set.of(408, 429, 500, 502, 503, 504);
+
+    private static final Set<Integer> REJECTED_STATUSES = Set.of(429, 503);
+
+    private static final Pattern ID_SEGMENT = Pattern
+            .compile("\\d+|[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    /**
+     * Request tag marking a non-idempotent method as safe to repeat, e.g. a PATCH that sets an absolute value.
+     */
+    public enum Idempotency {
+        SAFE_TO_RETRY
+    }
+
+    private final RetryPolicy policy;
+
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    public ResilienceInterceptor(final RetryPolicy policy) {
+        this.policy = policy;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull final Chain chain) throws IOException {
+        final Request request = chain.request();
+        final String endpoint = endpointKey(request);
+        final CircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(endpoint,
+                key -> new CircuitBreaker(policy.getFailureThreshold(), policy.getOpenDuration()));
+        final boolean idempotent = isIdempotent(request);
+        final long deadline = System.nanoTime() + policy.getCallDeadline().toNanos();
+
+        for (int attempt = 1; ; attempt++) {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                throw new CircuitBreakerOpenException("Circuit breaker is open for " + endpoint);
+            }
+
+            final Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                circuitBreaker.recordFailure();
+                final boolean neverSent = e instanceof ConnectException || e instanceof UnknownHostException;
+                final long delayMillis = backoffMillis(attempt);
+                if (!(idempotent || neverSent) || !canRetry(chain, attempt, delayMillis, deadline)) {
+                    throw e;
+                }
+                logger.warn("Retrying {} in {} ms after attempt {} of {} failed: {}", endpoint, delayMillis, attempt,
+                        policy.getMaxAttempts(), e.toString());
+                sleep(delayMillis);
+                continue;
+            } catch (RuntimeException | Error e) {
+                // a half-open breaker only lets its trial call through, so every outcome has to be recorded
+                circuitBreaker.recordFailure();
+                throw e;
+            }
+
+            final int code = response.code();
+            if (!RETRYABLE_STATUSES.contains(code)) {
+                circuitBreaker.recordSuccess();
+                return response;
+            }
+            circuitBreaker.recordFailure();
+
+            if (!idempotent && !REJECTED_STATUSES.contains(code)) {
+                return response;
+            }
+            final Long retryAfterMillis = REJECTED_STATUSES.contains(code) ? retryAfterMillis(response) : null;
+            final long delayMillis = retryAfterMillis != null ? retryAfterMillis : backoffMillis(attempt);
+            if (delayMillis > policy.getMaxDelay().toMillis() || !canRetry(chain, attempt, delayMillis, deadline)) {
+                return response;
+            }
+
+            logger.warn("Retrying {} in {} ms after attempt {} of {} returned {}", endpoint, delayMillis, attempt,
+                    policy.getMaxAttempts(), code);
+            response.close();
+            sleep(delayMillis);
+        }
+    }
+
+    public CircuitBreaker.State getCircuitState(final String endpoint) {
+        final CircuitBreaker circuitBreaker = circuitBreakers.get(endpoint);
+        return circuitBreaker == null ? CircuitBreaker.State.CLOSED : circuitBreaker.getState();
+    }
+
+    /**
+     * Method plus URL path with numeric and UUID segments replaced, so every export shares one breaker per API.
+     */
+    static String endpointKey(final Request request) {
+        final StringBuilder key = new StringBuilder(request.method()).append(' ').append(request.url().host());
+        for (final String segment : request.url().pathSegments()) {
+            key.append('/').append(ID_SEGMENT.matcher(segment).matches() ? "{id}" : segment);
+        }
+        return key.toString();
+    }
+
+    private boolean canRetry(final Chain chain, final int attempt, final long delayMillis, final long deadline) {
+        return attempt < policy.getMaxAttempts()
+                && !chain.call().isCanceled()
+                && System.nanoTime() + Duration.ofMillis(delayMillis).toNanos() < deadline;
+    }
+
+    private long backoffMillis(final int attempt) {
+        final long exponential = policy.getBaseDelay().toMillis() << Math.min(attempt - 1, 20);
+        final long cap = Math.min(policy.getMaxDelay().toMillis(), exponential);
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private static boolean isIdempotent(final Request request) {
+        return IDEMPOTENT_METHODS.contains(request.method()) || request.tag(Idempotency.class) != null;
+    }
+
+    /**
+     * Reads Retry-After as either delay-seconds or an HTTP date. Returns null when it is absent or malformed.
+     */
+    private static Long retryAfterMillis(final Response response) {
+        final String retryAfter = response.header("Retry-After");
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return null;
+        }
+
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                final ZonedDateTime retryAt = ZonedDateTime.parse(retryAfter.trim(),
+                        DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(retryAt.getZone()), retryAt).toMillis());
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+
+    private static void sleep(final long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+}
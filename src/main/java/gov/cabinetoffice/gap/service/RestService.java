@@ -1,8 +1,16 @@
 package gov.cabinetoffice.gap.service;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import gov.cabinetoffice.gap.exceptions.BackendResponseException;
+import gov.cabinetoffice.gap.exceptions.UnsupportedBackendOperationException;
+import gov.cabinetoffice.gap.utils.EnvUtils;
+import gov.cabinetoffice.gap.utils.JsonCodec;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
@@ -13,15 +21,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.crypto.Cipher;
+import java.io.IOException;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.security.KeyFactory;
 import java.security.PublicKey;
 import java.security.spec.X509EncodedKeySpec;
-import java.time.Instant;
-import java.time.OffsetDateTime;
-import java.time.ZonedDateTime;
+import java.time.Duration;
 import java.util.Base64;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public class RestService {
 
@@ -29,20 +40,31 @@ public class RestService {
 
     public static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
 
-    public static final Gson gson = new GsonBuilder().registerTypeAdapter(Instant.class,
-            (JsonDeserializer<Instant>) (json, type, jsonDeserializationContext) -> OffsetDateTime
-                    .parse(json.getAsJsonPrimitive().getAsString()).toInstant())
-            .registerTypeAdapter(ZonedDateTime.class,
-                    (JsonDeserializer<ZonedDateTime>) (json, type, jsonDeserializationContext) -> OffsetDateTime
-                            .parse(json.getAsJsonPrimitive().getAsString()).toZonedDateTime())
-            .create();
+    public static final Gson gson = JsonCodec.gson();
 
     private static final Logger logger = LoggerFactory.getLogger(RestService.class);
 
+    private static final Set<Integer> UNSUPPORTED_STATUSES = Set.of(405, 501);
+
+    /**
+     * Messages the backend's framework answers with when no handler matches the request
+     */
+    private static final List<String> MISSING_ROUTE_MESSAGES = List.of("No static resource", "No handler found");
+
     private static final String ADMIN_API_SECRET = getEnvOrProperty("ADMIN_API_SECRET");
 
     private static final String PUBLIC_KEY = getEnvOrProperty("PUBLIC_KEY");
 
+    /**
+     * Created on first use so a missing or malformed key only fails the calls that need it
+     */
+    private static final class AuthHeaderHolder {
+
+        private static final AuthHeaderProvider INSTANCE = new AuthHeaderProvider(ADMIN_API_SECRET, PUBLIC_KEY,
+                Duration.ofSeconds(EnvUtils.getLong("AUTH_HEADER_TTL_SECONDS", 300)));
+
+    }
+
     /**
      * Get environment variable or system property (for local testing)
      * Checks environment variable first, then falls back to system property
@@ -58,25 +80,33 @@ public class RestService {
     public static <T> T sendGetRequest(OkHttpClient restClient, Map<String, String> params, String endpoint,
             Class<T> clazz) throws Exception {
 
-        HttpUrl.Builder httpBuilder = HttpUrl.get(BACKEND_API_URL + endpoint).newBuilder();
-        if (params != null) {
-            for (Map.Entry<String, String> param : params.entrySet()) {
-                httpBuilder.addQueryParameter(param.getKey(), param.getValue());
+        final Request request = buildRequest(endpoint, params, "GET", null).build();
+
+        try (Response response = restClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw failureFor(response, endpoint, false);
             }
+            logger.info("Successfully fetched from " + endpoint);
+            return gson.fromJson(response.body().charStream(), clazz);
         }
+    }
 
-        final Request request = defaultRequestBuilder().url(httpBuilder.build()).build();
+    /**
+     * Sends a GET request and hands back the open response, so large bodies can be read incrementally. The caller
+     * must close it.
+     */
+    public static Response openGetRequest(OkHttpClient restClient, Map<String, String> params, String endpoint)
+            throws Exception {
 
-        try (Response response = restClient.newCall(request).execute()) {
-            if (response.isSuccessful()) {
-                logger.info("Successfully fetched from " + endpoint);
-                return gson.fromJson(response.body().string(), clazz);
-            } else {
-                String errorBody = response.body() != null ? response.body().string() : "No error body";
-                throw new RuntimeException(
-                        String.format("Error occurred while fetching from %s. Status: %d, Response: %s", endpoint,
-                                response.code(), errorBody));
-            }
+        final Request request = buildRequest(endpoint, params, "GET", null).build();
+
+        final Response response = restClient.newCall(request).execute();
+        if (response.isSuccessful()) {
+            logger.info("Successfully opened " + endpoint);
+            return response;
+        }
+        try (response) {
+            throw failureFor(response, endpoint, false);
         }
     }
 
@@ -96,17 +126,34 @@ public class RestService {
     }
 
     public static void executePost(OkHttpClient restClient, RequestBody body, String endpoint) throws Exception {
-        final Request request = defaultRequestBuilder().url(BACKEND_API_URL + endpoint).post(body).build();
+        final Request request = buildRequest(endpoint, null, "POST", body).build();
 
         try (Response response = restClient.newCall(request).execute()) {
-            if (response.isSuccessful()) {
-                logger.info("Successfully posted to " + endpoint);
-            } else {
-                String errorBody = response.body() != null ? response.body().string() : "No error body";
-                throw new RuntimeException(
-                        String.format("Error occurred while posting to %s. Status: %d, Response: %s", endpoint,
-                                response.code(), errorBody));
+            if (!response.isSuccessful()) {
+                throw failureFor(response, endpoint, false);
             }
+            logger.info("Successfully posted to " + endpoint);
+        }
+    }
+
+    /**
+     * Posts a DTO and deserialises the response. The request is marked safe to retry, so only use this for
+     * operations that set absolute values. A response showing the backend doesn't offer the endpoint, see
+     * {@link #isUnsupportedEndpoint}, is reported as {@link UnsupportedBackendOperationException}.
+     */
+    public static <T, R> R sendPostRequest(OkHttpClient restClient, T requestBodyDTO, String endpoint,
+            Class<R> responseClass) throws Exception {
+
+        final RequestBody body = RequestBody.create(gson.toJson(requestBodyDTO), JSON);
+        final Request request = buildRequest(endpoint, null, "POST", body)
+                .tag(ResilienceInterceptor.Idempotency.class, ResilienceInterceptor.Idempotency.SAFE_TO_RETRY).build();
+
+        try (Response response = restClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw failureFor(response, endpoint, true);
+            }
+            logger.info("Successfully posted to " + endpoint);
+            return gson.fromJson(response.body().charStream(), responseClass);
         }
     }
 
@@ -115,26 +162,198 @@ public class RestService {
 
         final RequestBody body = RequestBody.create(gson.toJson(requestBodyDTO), JSON);
 
-        final Request request = defaultRequestBuilder().url(BACKEND_API_URL + endpoint).patch(body).build();
+        // every PATCH in this lambda sets an absolute value, so repeating one is safe
+        final Request request = buildRequest(endpoint, null, "PATCH", body)
+                .tag(ResilienceInterceptor.Idempotency.class, ResilienceInterceptor.Idempotency.SAFE_TO_RETRY).build();
 
         try (Response response = restClient.newCall(request).execute()) {
-            if (response.isSuccessful()) {
-                logger.info("Successfully patched to " + endpoint);
-            } else {
-                throw new RuntimeException("Error occured while patching to " + endpoint);
+            if (!response.isSuccessful()) {
+                throw failureFor(response, endpoint, false);
+            }
+            logger.info("Successfully patched to " + endpoint);
+        }
+    }
+
+    /**
+     * Non-blocking counterpart of {@link #sendGetRequest}. The request runs on OkHttp's dispatcher and the future
+     * completes with the deserialised body, or exceptionally with the same errors the blocking call throws.
+     */
+    public static <T> CompletableFuture<T> sendGetRequestAsync(OkHttpClient restClient, Map<String, String> params,
+            String endpoint, Class<T> clazz) {
+
+        final Request request = buildRequest(endpoint, params, "GET", null).build();
+
+        return enqueue(restClient, request, response -> {
+            if (!response.isSuccessful()) {
+                throw failureFor(response, endpoint, false);
+            }
+            logger.info("Successfully fetched from " + endpoint);
+            return gson.fromJson(response.body().charStream(), clazz);
+        });
+    }
+
+    /**
+     * Non-blocking GET whose body is handed to {@code bodyReader} on OkHttp's dispatcher as it arrives, rather than
+     * deserialised in one go. A response showing the backend doesn't offer the endpoint, see
+     * {@link #isUnsupportedEndpoint}, fails the future with {@link UnsupportedBackendOperationException}.
+     */
+    public static <T> CompletableFuture<T> streamGetRequestAsync(OkHttpClient restClient, Map<String, String> params,
+            String endpoint, BodyReader<T> bodyReader) {
+        return readGetRequestAsync(restClient, params, endpoint, bodyReader, true);
+    }
+
+    /**
+     * As {@link #streamGetRequestAsync}, for an endpoint the backend always offers, so every unsuccessful response
+     * fails the future with {@link BackendResponseException}.
+     */
+    public static <T> CompletableFuture<T> sendGetRequestAsync(OkHttpClient restClient, Map<String, String> params,
+            String endpoint, BodyReader<T> bodyReader) {
+        return readGetRequestAsync(restClient, params, endpoint, bodyReader, false);
+    }
+
+    private static <T> CompletableFuture<T> readGetRequestAsync(OkHttpClient restClient, Map<String, String> params,
+            String endpoint, BodyReader<T> bodyReader, boolean optionalEndpoint) {
+
+        final Request request = buildRequest(endpoint, params, "GET", null).build();
+
+        return enqueue(restClient, request, response -> {
+            if (!response.isSuccessful()) {
+                throw failureFor(response, endpoint, optionalEndpoint);
+            }
+            logger.info("Streaming response from " + endpoint);
+            return bodyReader.read(response.body().charStream());
+        });
+    }
+
+    /**
+     * Non-blocking counterpart of {@link #sendPostRequest(OkHttpClient, Object, String, Class)}, failing the future
+     * with the same errors the blocking call throws.
+     */
+    public static <T, R> CompletableFuture<R> sendPostRequestAsync(OkHttpClient restClient, T requestBodyDTO,
+            String endpoint, Class<R> responseClass) {
+        final RequestBody body = RequestBody.create(gson.toJson(requestBodyDTO), JSON);
+        final Request request = buildRequest(endpoint, null, "POST", body)
+                .tag(ResilienceInterceptor.Idempotency.class, ResilienceInterceptor.Idempotency.SAFE_TO_RETRY).build();
+
+        return enqueue(restClient, request, response -> {
+            if (!response.isSuccessful()) {
+                throw failureFor(response, endpoint, true);
+            }
+            logger.info("Successfully posted to " + endpoint);
+            return gson.fromJson(response.body().charStream(), responseClass);
+        });
+    }
+
+    public static <T> CompletableFuture<Void> sendPostRequestAsync(OkHttpClient restClient, T requestBodyDTO,
+            String endpoint) {
+        return executePostAsync(restClient, RequestBody.create(gson.toJson(requestBodyDTO), JSON), endpoint);
+    }
+
+    public static CompletableFuture<Void> sendPostRequestAsync(OkHttpClient restClient, String body, String endpoint) {
+        return executePostAsync(restClient, RequestBody.create(body, JSON), endpoint);
+    }
+
+    public static CompletableFuture<Void> executePostAsync(OkHttpClient restClient, RequestBody body,
+            String endpoint) {
+        final Request request = buildRequest(endpoint, null, "POST", body).build();
+
+        return enqueue(restClient, request, response -> {
+            if (!response.isSuccessful()) {
+                throw failureFor(response, endpoint, false);
+            }
+            logger.info("Successfully posted to " + endpoint);
+            return null;
+        });
+    }
+
+    public static <T> CompletableFuture<Void> sendPatchRequestAsync(OkHttpClient restClient, T requestBodyDTO,
+            String endpoint) {
+        final RequestBody body = RequestBody.create(gson.toJson(requestBodyDTO), JSON);
+
+        // every PATCH in this lambda sets an absolute value, so repeating one is safe
+        final Request request = buildRequest(endpoint, null, "PATCH", body)
+                .tag(ResilienceInterceptor.Idempotency.class, ResilienceInterceptor.Idempotency.SAFE_TO_RETRY).build();
+
+        return enqueue(restClient, request, response -> {
+            if (!response.isSuccessful()) {
+                throw failureFor(response, endpoint, false);
+            }
+            logger.info("Successfully patched to " + endpoint);
+            return null;
+        });
+    }
+
+    /**
+     * Starts a request to a backend endpoint with the query parameters and the Authorization header every call
+     * carries. The body is null for a GET.
+     */
+    static Request.Builder buildRequest(String endpoint, Map<String, String> params, String method,
+            RequestBody body) {
+        final HttpUrl.Builder url = HttpUrl.get(BACKEND_API_URL + endpoint).newBuilder();
+        if (params != null) {
+            for (Map.Entry<String, String> param : params.entrySet()) {
+                url.addQueryParameter(param.getKey(), param.getValue());
             }
         }
+        return defaultRequestBuilder().url(url.build()).method(method, body);
+    }
+
+    /**
+     * The exception an unsuccessful response is reported as, carrying its status and error body. When
+     * {@code optionalEndpoint} is set, a response showing the backend doesn't offer the endpoint, see
+     * {@link #isUnsupportedEndpoint}, becomes an {@link UnsupportedBackendOperationException} so the caller can fall
+     * back.
+     */
+    static RuntimeException failureFor(Response response, String endpoint, boolean optionalEndpoint)
+            throws IOException {
+        final String errorBody = response.body() != null ? response.body().string() : "";
+        if (optionalEndpoint && isUnsupportedEndpoint(response.code(), errorBody)) {
+            return new UnsupportedBackendOperationException(
+                    String.format("%s is not supported by the backend. Status: %d", endpoint, response.code()),
+                    response.code());
+        }
+        return new BackendResponseException(String.format("Error occurred while calling %s. Status: %d, Response: %s",
+                endpoint, response.code(), errorBody.isEmpty() ? "No error body" : errorBody), response.code());
+    }
+
+    /**
+     * Whether an unsuccessful response means the backend doesn't offer the endpoint at all, rather than that this
+     * call failed. A 405 or 501 always does. A 404 only does when no handler took the request: the body is empty,
+     * names a missing route, or is the framework's default error, which has a path but no message. A 404 from one
+     * of the backend's own handlers, e.g. for an export record it can't find, is an ordinary failure.
+     */
+    static boolean isUnsupportedEndpoint(int statusCode, String body) {
+        if (UNSUPPORTED_STATUSES.contains(statusCode)) {
+            return true;
+        }
+        if (statusCode != 404) {
+            return false;
+        }
+        if (body == null || body.isBlank()) {
+            return true;
+        }
+        if (MISSING_ROUTE_MESSAGES.stream().anyMatch(body::contains)) {
+            return true;
+        }
+        try {
+            final JsonElement error = JsonParser.parseString(body);
+            if (!error.isJsonObject()) {
+                return false;
+            }
+            final JsonObject fields = error.getAsJsonObject();
+            final JsonElement message = fields.get("message");
+            return fields.has("path") && (message == null || message.isJsonNull() || message.getAsString().isBlank());
+        } catch (JsonParseException | UnsupportedOperationException | IllegalStateException e) {
+            return false;
+        }
     }
 
     /**
      * Adds encrypted ADMIN_API_SECRET as an Authorization header to every outbound
-     * REST call
+     * REST call, reusing the cached header until AUTH_HEADER_TTL_SECONDS have passed
      */
     public static Request.Builder defaultRequestBuilder() {
-        final String encryptedSecret = encrypt(ADMIN_API_SECRET, PUBLIC_KEY);
-        logger.info("Secret successfully encrypted");
-
-        return new Request.Builder().addHeader("Authorization", encryptedSecret);
+        return new Request.Builder().addHeader("Authorization", AuthHeaderHolder.INSTANCE.getHeader());
     }
 
     public static String encrypt(String secret, String publicKey) {
@@ -155,4 +374,53 @@ public class RestService {
         }
     }
 
+    @FunctionalInterface
+    public interface BodyReader<T> {
+
+        T read(Reader body) throws IOException;
+
+    }
+
+    @FunctionalInterface
+    private interface ResponseHandler<T> {
+
+        T handle(Response response) throws IOException;
+
+    }
+
+    /**
+     * Enqueues the call and completes the returned future from OkHttp's callback thread. Cancelling the future
+     * cancels the call.
+     */
+    private static <T> CompletableFuture<T> enqueue(OkHttpClient restClient, Request request,
+            ResponseHandler<T> handler) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final Call call = restClient.newCall(request);
+
+        call.enqueue(new Callback() {
+
+            @Override
+            public void onFailure(Call failedCall, IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call completedCall, Response response) {
+                try (response) {
+                    future.complete(handler.handle(response));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+        });
+
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        return future;
+    }
+
 }
@@ -0,0 +1,51 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.utils.EnvUtils;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * Settings for {@link ResilienceInterceptor}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class RetryPolicy {
+
+    /** Attempts per call, including the first. */
+    @Builder.Default
+    int maxAttempts = 3;
+
+    /** Backoff before the first retry; doubles on each further retry, before jitter. */
+    @Builder.Default
+    Duration baseDelay = Duration.ofMillis(200);
+
+    /** Upper bound on a single backoff, including one requested through Retry-After. */
+    @Builder.Default
+    Duration maxDelay = Duration.ofSeconds(5);
+
+    /** Time budget for a call and all its retries. */
+    @Builder.Default
+    Duration callDeadline = Duration.ofSeconds(30);
+
+    /** Consecutive failures that open an endpoint's circuit breaker. */
+    @Builder.Default
+    int failureThreshold = 5;
+
+    /** How long an open circuit breaker rejects calls before letting a trial call through. */
+    @Builder.Default
+    Duration openDuration = Duration.ofSeconds(30);
+
+    public static RetryPolicy fromEnvironment() {
+        return RetryPolicy.builder()
+                .maxAttempts(EnvUtils.getInt("BACKEND_MAX_ATTEMPTS", 3))
+                .baseDelay(Duration.ofMillis(EnvUtils.getLong("BACKEND_RETRY_BASE_DELAY_MS", 200)))
+                .maxDelay(Duration.ofMillis(EnvUtils.getLong("BACKEND_RETRY_MAX_DELAY_MS", 5000)))
+                .callDeadline(Duration.ofMillis(EnvUtils.getLong("BACKEND_CALL_DEADLINE_MS", 30000)))
+                .failureThreshold(EnvUtils.getInt("BACKEND_BREAKER_FAILURE_THRESHOLD", 5))
+                .openDuration(Duration.ofMillis(EnvUtils.getLong("BACKEND_BREAKER_OPEN_MS", 30000)))
+                .build();
+    }
+
+}
@@ -0,0 +1,199 @@
+package gov.cabinetoffice.gap.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Size-bounded LRU cache of S3 objects kept on local disk for the lifetime of a warm container.
+ * <p>
+ * Only objects {@link #put} there explicitly are cached, such as the per-submission zips this container uploads
+ * and reads back moments later for the super zip. Downloads of anything else, like attachments, which are almost
+ * never read twice, aren't copied into the cache. Entries are keyed by bucket and object key and remember the ETag
+ * they were stored with. A cached object is always revalidated with a conditional GET, so S3 only sends the body
+ * again when the object has changed, in which case the new body replaces the cached one.
+ * <p>
+ * A cache owned by a {@link WorkspaceManager} counts its bytes against the manager's quota, and skips an object
+ * rather than take usage over it.
+ */
+public class S3ObjectCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3ObjectCache.class);
+
+    private final File cacheDir;
+
+    private final long maxBytes;
+
+    private final WorkspaceManager storage;
+
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long currentBytes;
+
+    private long hits;
+
+    private long misses;
+
+    private record CacheEntry(String eTag, File file, long size) {
+    }
+
+    public S3ObjectCache(final File cacheDir, final long maxBytes) {
+        this(cacheDir, maxBytes, null);
+    }
+
+    S3ObjectCache(final File cacheDir, final long maxBytes, final WorkspaceManager storage) {
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+        this.storage = storage;
+        // anything left on disk has no index entry after a restart, so start from an empty directory
+        FileUtils.deleteQuietly(cacheDir);
+    }
+
+    /**
+     * Downloads {@code bucketName/key} into {@code destination}, copying the cached body instead when S3 reports
+     * that the cached ETag is still current. An object that isn't cached is downloaded without being cached.
+     */
+    public void fetch(final AmazonS3 s3Client, final String bucketName, final String key, final File destination) {
+        final CacheEntry cached = lookup(bucketName, key);
+        final GetObjectRequest request = new GetObjectRequest(bucketName, key);
+        if (cached != null) {
+            request.withNonmatchingETagConstraint(cached.eTag());
+        }
+
+        final ObjectMetadata metadata = s3Client.getObject(request, destination);
+
+        if (metadata == null && cached != null) {
+            if (copyFromCache(cached, destination)) {
+                recordHit();
+                logger.info("Object {} in bucket {} served from local cache", key, bucketName);
+                return;
+            }
+            evict(bucketName, key);
+            s3Client.getObject(new GetObjectRequest(bucketName, key), destination);
+            recordMiss();
+            return;
+        }
+
+        recordMiss();
+        if (cached != null && metadata != null && metadata.getETag() != null) {
+            put(bucketName, key, metadata.getETag(), destination);
+        }
+    }
+
+    /**
+     * Stores a copy of {@code source} as the current version of {@code bucketName/key}. Objects that would not fit
+     * in the cache on their own are skipped.
+     */
+    public void put(final String bucketName, final String key, final String eTag, final File source) {
+        final long size = source.length();
+        if (eTag == null || !source.isFile() || size > maxBytes) {
+            return;
+        }
+        if (storage != null && !storage.tryReserve(size)) {
+            logger.info("Not caching object {} from bucket {}, tmp usage is at its quota: {}", key, bucketName,
+                    storage);
+            return;
+        }
+
+        final File cachedFile = new File(cacheDir, UUID.randomUUID().toString());
+        try {
+            Files.createDirectories(cacheDir.toPath());
+            Files.copy(source.toPath(), cachedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.error("Could not cache object " + key + " from bucket " + bucketName, e);
+            FileUtils.deleteQuietly(cachedFile);
+            releaseStorage(size);
+            return;
+        }
+
+        synchronized (this) {
+            final CacheEntry previous = entries.put(cacheKey(bucketName, key), new CacheEntry(eTag, cachedFile, size));
+            if (previous != null) {
+                remove(previous);
+            }
+            currentBytes += size;
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("entries=%d bytes=%d maxBytes=%d hits=%d misses=%d",
+                entries.size(), currentBytes, maxBytes, hits, misses);
+    }
+
+    private synchronized CacheEntry lookup(final String bucketName, final String key) {
+        final CacheEntry entry = entries.get(cacheKey(bucketName, key));
+        return entry != null && entry.file().isFile() ? entry : null;
+    }
+
+    private synchronized void evict(final String bucketName, final String key) {
+        final CacheEntry removed = entries.remove(cacheKey(bucketName, key));
+        if (removed != null) {
+            remove(removed);
+        }
+    }
+
+    private void evictLeastRecentlyUsed() {
+        final Iterator<Map.Entry<String, CacheEntry>> iterator = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            final CacheEntry eldest = iterator.next().getValue();
+            iterator.remove();
+            remove(eldest);
+        }
+    }
+
+    private void remove(final CacheEntry entry) {
+        currentBytes -= entry.size();
+        FileUtils.deleteQuietly(entry.file());
+        releaseStorage(entry.size());
+    }
+
+    private void releaseStorage(final long bytes) {
+        if (storage != null) {
+            storage.releaseBytes(bytes);
+        }
+    }
+
+    private static boolean copyFromCache(final CacheEntry cached, final File destination) {
+        try {
+            if (destination.getParentFile() != null) {
+                Files.createDirectories(destination.getParentFile().toPath());
+            }
+            Files.copy(cached.file().toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            logger.error("Could not copy cached object to " + destination, e);
+            return false;
+        }
+    }
+
+    private synchronized void recordHit() {
+        hits++;
+    }
+
+    private synchronized void recordMiss() {
+        misses++;
+    }
+
+    private static String cacheKey(final String bucketName, final String key) {
+        return bucketName + "/" + key;
+    }
+
+}
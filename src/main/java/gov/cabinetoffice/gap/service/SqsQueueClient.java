@@ -0,0 +1,79 @@
+package gov.cabinetoffice.gap.service;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.QueueAttributeName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * A {@link QueueClient} backed by SQS. Messages are changed ten at a time, the most one batch call takes.
+ * <p>
+ * The SQS client is built on first use, so an invocation that never needs to call the queue doesn't pay for it.
+ * Each queue's visibility timeout is read once and kept for the life of the container.
+ */
+public class SqsQueueClient implements QueueClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(SqsQueueClient.class);
+
+    private static final int MAX_BATCH_SIZE = 10;
+
+    private final Supplier<AmazonSQS> sqsSupplier;
+
+    private final Map<String, Duration> visibilityTimeouts = new ConcurrentHashMap<>();
+
+    private AmazonSQS sqs;
+
+    public SqsQueueClient(final Supplier<AmazonSQS> sqsSupplier) {
+        this.sqsSupplier = sqsSupplier;
+    }
+
+    @Override
+    public void changeVisibility(final String queueUrl, final List<String> receiptHandles, final Duration timeout) {
+        for (int start = 0; start < receiptHandles.size(); start += MAX_BATCH_SIZE) {
+            final List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>();
+            final List<String> batch = receiptHandles.subList(start,
+                    Math.min(start + MAX_BATCH_SIZE, receiptHandles.size()));
+            for (int i = 0; i < batch.size(); i++) {
+                entries.add(new ChangeMessageVisibilityBatchRequestEntry(String.valueOf(i), batch.get(i))
+                        .withVisibilityTimeout((int) timeout.toSeconds()));
+            }
+
+            final ChangeMessageVisibilityBatchResult result = sqs().changeMessageVisibilityBatch(
+                    new ChangeMessageVisibilityBatchRequest(queueUrl, entries));
+            for (final BatchResultErrorEntry failed : result.getFailed()) {
+                logger.warn("Could not change the visibility of a message on {}: {} {}", queueUrl,
+                        failed.getCode(), failed.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public Duration getVisibilityTimeout(final String queueUrl) {
+        return visibilityTimeouts.computeIfAbsent(queueUrl, url -> {
+            final String seconds = sqs().getQueueAttributes(new GetQueueAttributesRequest(url)
+                    .withAttributeNames(QueueAttributeName.VisibilityTimeout))
+                    .getAttributes().get(QueueAttributeName.VisibilityTimeout.toString());
+            return seconds == null ? null : Duration.ofSeconds(Long.parseLong(seconds));
+        });
+    }
+
+    private synchronized AmazonSQS sqs() {
+        if (sqs == null) {
+            sqs = sqsSupplier.get();
+        }
+        return sqs;
+    }
+
+}
@@ -0,0 +1,65 @@
+package gov.cabinetoffice.gap.service;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Evicts pooled connections that have sat unused for longer than {@code staleAfter} before the next call goes out.
+ * <p>
+ * A frozen Lambda environment keeps its pool but not the connections behind it: the load balancer closes them
+ * while nothing runs to notice. Reusing one costs a failed attempt before a new connection is opened, so after a
+ * quiet spell the pool is emptied up front instead. The gap is measured on the wall clock, which keeps running
+ * while the environment is frozen.
+ */
+public class StaleConnectionInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(StaleConnectionInterceptor.class);
+
+    private final ConnectionPool connectionPool;
+
+    private final Duration staleAfter;
+
+    private final Clock clock;
+
+    private final AtomicLong lastActivityMillis;
+
+    public StaleConnectionInterceptor(final ConnectionPool connectionPool, final Duration staleAfter) {
+        this(connectionPool, staleAfter, Clock.systemUTC());
+    }
+
+    public StaleConnectionInterceptor(final ConnectionPool connectionPool, final Duration staleAfter,
+            final Clock clock) {
+        this.connectionPool = connectionPool;
+        this.staleAfter = staleAfter;
+        this.clock = clock;
+        this.lastActivityMillis = new AtomicLong(clock.millis());
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull final Chain chain) throws IOException {
+        final long now = clock.millis();
+        final long idleMillis = now - lastActivityMillis.getAndSet(now);
+        if (idleMillis > staleAfter.toMillis() && connectionPool.connectionCount() > 0) {
+            logger.info("Evicting {} pooled connections after {} ms without backend calls",
+                    connectionPool.connectionCount(), idleMillis);
+            connectionPool.evictAll();
+        }
+
+        try {
+            return chain.proceed(chain.request());
+        } finally {
+            lastActivityMillis.set(clock.millis());
+        }
+    }
+
+}
@@ -0,0 +1,289 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.enums.SubmissionProjection;
+import gov.cabinetoffice.gap.model.Submission;
+import gov.cabinetoffice.gap.utils.EnvUtils;
+import okhttp3.OkHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The submissions one invocation exports from a batch, fetched ahead of the one being worked on.
+ * <p>
+ * When there is more than one, they are requested together through
+ * {@link BackendApi#streamSubmissionData} as soon as the batch is created, and {@link #get} hands each one
+ * over as soon as it has been read off the response. A submission the batch request couldn't provide, because the
+ * backend left it out, doesn't offer the endpoint or the request failed, is fetched on its own instead, so callers
+ * see the same result and errors as a single fetch. Those single fetches are started in the background for the
+ * submissions after the one just handed over, so the next one is usually waiting by the time it is needed.
+ * <p>
+ * Read-ahead is bounded by {@code prefetchDepth} submissions and a soft limit of {@code prefetchSoftLimitChars}
+ * characters of JSON between the submissions that haven't been handed over yet. The limit is soft: a submission's
+ * size is only known once its body has been read into memory, so it is checked after each one is read, and the
+ * submission that crosses it is still held. Characters are counted rather than bytes, as the body is measured after
+ * decoding; for the mostly ASCII JSON the backend sends the two are close. The batch response is never paused, since
+ * it is read on the HTTP client's dispatcher within the call's deadline, so once the limit is crossed the rest of it
+ * is left unread and those submissions are fetched on their own. Single fetches run at most {@code prefetchDepth}
+ * submissions ahead of the one handed over, and once read wait to be held until there is room within both limits,
+ * unless a caller is waiting for a submission that hasn't arrived yet, so an oversized or out-of-order submission is
+ * still read. Closing the batch cancels a request still being read.
+ */
+public class SubmissionBatch implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubmissionBatch.class);
+
+    public static final int PREFETCH_DEPTH = Math.max(1, EnvUtils.getInt("SUBMISSION_PREFETCH_DEPTH", 2));
+
+    public static final long PREFETCH_SOFT_LIMIT_CHARS = Math.max(1,
+            EnvUtils.getLong("SUBMISSION_PREFETCH_SOFT_LIMIT_CHARS", 16L * 1024 * 1024));
+
+    private static final ExecutorService prefetchExecutor = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "submission-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final BackendApi backendApi;
+
+    private final String exportBatchId;
+
+    private final SubmissionProjection projection;
+
+    private final int prefetchDepth;
+
+    private final long prefetchSoftLimitChars;
+
+    private final List<String> submissionIds;
+
+    private final CompletableFuture<Integer> batchFetch;
+
+    // the fields below are guarded by this
+
+    /**
+     * Completes with the submission, or with null when the batch request couldn't provide it
+     */
+    private final Map<String, CompletableFuture<Submission>> arrivals = new HashMap<>();
+
+    private final Map<String, Long> held = new HashMap<>();
+
+    private long heldChars;
+
+    private long peakHeldChars;
+
+    private String awaited;
+
+    private int handedOver = -1;
+
+    private boolean closed;
+
+    public SubmissionBatch(final OkHttpClient restClient, final String exportBatchId,
+            final List<String> submissionIds, final SubmissionProjection projection) {
+        this(new OkHttpBackendApi(restClient), exportBatchId, submissionIds, projection);
+    }
+
+    public SubmissionBatch(final OkHttpClient restClient, final String exportBatchId,
+            final List<String> submissionIds, final SubmissionProjection projection, final int prefetchDepth,
+            final long prefetchSoftLimitChars) {
+        this(new OkHttpBackendApi(restClient), exportBatchId, submissionIds, projection, prefetchDepth,
+                prefetchSoftLimitChars);
+    }
+
+    public SubmissionBatch(final BackendApi backendApi, final String exportBatchId,
+            final List<String> submissionIds, final SubmissionProjection projection) {
+        this(backendApi, exportBatchId, submissionIds, projection, PREFETCH_DEPTH, PREFETCH_SOFT_LIMIT_CHARS);
+    }
+
+    public SubmissionBatch(final BackendApi backendApi, final String exportBatchId,
+            final List<String> submissionIds, final SubmissionProjection projection, final int prefetchDepth,
+            final long prefetchSoftLimitChars) {
+        this.backendApi = backendApi;
+        this.exportBatchId = exportBatchId;
+        this.projection = projection;
+        this.prefetchDepth = Math.max(1, prefetchDepth);
+        this.prefetchSoftLimitChars = Math.max(1, prefetchSoftLimitChars);
+        this.submissionIds = new ArrayList<>(new LinkedHashSet<>(submissionIds));
+
+        if (this.submissionIds.size() < 2) {
+            // nothing to save on a single submission, so it is fetched when asked for
+            batchFetch = CompletableFuture.completedFuture(0);
+            return;
+        }
+
+        this.submissionIds.forEach(submissionId -> arrivals.put(submissionId, new CompletableFuture<>()));
+        batchFetch = backendApi.streamSubmissionData(exportBatchId, this.submissionIds, projection,
+                this::streamed);
+        // whatever the response didn't include is left to the single fetch
+        batchFetch.whenComplete((count, error) -> {
+            if (error != null) {
+                logger.warn("Could not fetch submissions of export batch {} together: {}", exportBatchId,
+                        error.getMessage());
+            } else {
+                logger.info("Fetched {} of {} submissions of export batch {} together", count,
+                        this.submissionIds.size(), exportBatchId);
+            }
+            synchronized (this) {
+                arrivals.values().forEach(arrival -> arrival.complete(null));
+                prefetchFrom(handedOver + 1);
+            }
+        });
+    }
+
+    /**
+     * Waits for the submission to arrive, fetching it on its own if the batch can't provide it, and starts fetching
+     * the ones after it.
+     */
+    public Submission get(final String submissionId) throws Exception {
+        final CompletableFuture<Submission> arrival;
+        synchronized (this) {
+            awaited = submissionId;
+            notifyAll();
+            arrival = arrivals.get(submissionId);
+        }
+
+        final Submission submission;
+        try {
+            submission = arrival == null ? null : arrival.join();
+        } catch (CompletionException e) {
+            // a failed single fetch fails the same way it would have here
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        } finally {
+            synchronized (this) {
+                awaited = null;
+                arrivals.remove(submissionId);
+                release(submissionId);
+                handedOver = Math.max(handedOver, submissionIds.indexOf(submissionId));
+                prefetchFrom(handedOver + 1);
+            }
+        }
+
+        if (submission != null) {
+            return submission;
+        }
+        if (arrival != null) {
+            logger.info("Submission {} did not arrive with its batch, fetching it on its own", submissionId);
+        }
+        return backendApi.getSubmissionData(exportBatchId, submissionId, projection);
+    }
+
+    public synchronized long getPeakHeldChars() {
+        return peakHeldChars;
+    }
+
+    @Override
+    public void close() {
+        batchFetch.cancel(true);
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+            arrivals.values().forEach(arrival -> arrival.complete(null));
+        }
+        logger.info("Closed submissions of export batch {}, peak read-ahead {} of {} characters", exportBatchId,
+                getPeakHeldChars(), prefetchSoftLimitChars);
+    }
+
+    /**
+     * Takes a submission read off the batch response, returning whether to read on. Runs on the HTTP client's
+     * dispatcher, so it never waits.
+     */
+    private boolean streamed(final String submissionId, final Submission submission, final long size) {
+        final CompletableFuture<Submission> arrival;
+        final boolean readOn;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            arrival = arrivals.get(submissionId);
+            if (arrival == null || arrival.isDone()) {
+                return true;
+            }
+            hold(submissionId, size);
+            readOn = heldChars < prefetchSoftLimitChars;
+        }
+        arrival.complete(submission);
+        if (!readOn) {
+            logger.info("Read-ahead soft limit of {} characters reached, leaving the rest of export batch {} to single "
+                    + "fetches", prefetchSoftLimitChars, exportBatchId);
+        }
+        return readOn;
+    }
+
+    /**
+     * Starts single fetches for those of the next few submissions that the batch request didn't provide. Must be
+     * called holding this.
+     */
+    private void prefetchFrom(final int start) {
+        if (closed) {
+            return;
+        }
+
+        for (int i = start; i < Math.min(submissionIds.size(), start + prefetchDepth); i++) {
+            final String nextId = submissionIds.get(i);
+            final CompletableFuture<Submission> arrival = arrivals.get(nextId);
+            // still on its way, already here, already handed over, already failed or being fetched by its caller
+            if (arrival == null || !arrival.isDone() || arrival.isCompletedExceptionally()
+                    || arrival.join() != null || nextId.equals(awaited)) {
+                continue;
+            }
+
+            final CompletableFuture<Submission> prefetch = new CompletableFuture<>();
+            arrivals.put(nextId, prefetch);
+            logger.info("Prefetching submission {}", nextId);
+            prefetchExecutor.execute(() -> {
+                try {
+                    final AtomicLong size = new AtomicLong();
+                    final Submission submission = backendApi.getSubmissionData(exportBatchId, nextId,
+                            projection, size::set);
+                    synchronized (this) {
+                        admit(nextId, size.get());
+                    }
+                    prefetch.complete(submission);
+                } catch (Exception e) {
+                    prefetch.completeExceptionally(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Waits until a single fetch can be held within the read-ahead limits. Must be called holding this, and only
+     * once its response has been read and closed, so the character limit only decides when a submission already in
+     * memory is held, not whether it is read.
+     */
+    private void admit(final String submissionId, final long size) throws InterruptedException {
+        while (!closed && !held.isEmpty()
+                && (held.size() >= prefetchDepth || heldChars + size > prefetchSoftLimitChars)
+                && (awaited == null || held.containsKey(awaited))) {
+            wait();
+        }
+        hold(submissionId, size);
+    }
+
+    private void hold(final String submissionId, final long size) {
+        held.put(submissionId, size);
+        heldChars += size;
+        peakHeldChars = Math.max(peakHeldChars, heldChars);
+    }
+
+    private void release(final String submissionId) {
+        final Long size = held.remove(submissionId);
+        if (size != null) {
+            heldChars -= size;
+            notifyAll();
+        }
+    }
+
+}
@@ -1,27 +1,44 @@
 package gov.cabinetoffice.gap.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import gov.cabinetoffice.gap.enums.SubmissionProjection;
+import gov.cabinetoffice.gap.exceptions.UnsupportedBackendOperationException;
 import gov.cabinetoffice.gap.model.Submission;
 import gov.cabinetoffice.gap.model.SubmissionSection;
+import gov.cabinetoffice.gap.utils.CountingReader;
+import gov.cabinetoffice.gap.utils.JsonCodec;
 import okhttp3.OkHttpClient;
+import okhttp3.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
 
 public class SubmissionService {
 
     private static final Logger logger = LoggerFactory.getLogger(SubmissionService.class);
 
+    private static final String SUBMISSIONS_FIELD = "submissions";
+
+    private static final String SUBMISSION_IDS_PARAM = "submissionIds";
+
+    /**
+     * Cleared once the backend has turned the batch fetch down, so later invocations in this container fetch each
+     * submission on its own straight away
+     */
+    private static final AtomicBoolean batchEndpointSupported = new AtomicBoolean(true);
+
     public static void addSubmissionSectionsJsonToSubmissionModel(Submission submissionModel,
-            String submissionSectionsJson) throws JsonMappingException, JsonProcessingException {
-        ObjectMapper om = new ObjectMapper();
-        List<SubmissionSection> sections = om.readValue(submissionSectionsJson,
-                new TypeReference<List<SubmissionSection>>() {
-                });
+            String submissionSectionsJson) {
+        List<SubmissionSection> sections = JsonCodec.listFromJson(submissionSectionsJson, SubmissionSection.class);
 
         submissionModel.setSections(sections);
 
@@ -32,4 +49,141 @@ public class SubmissionService {
         logger.info("Sending getRequest to {}", getEndpoint);
         return RestService.sendGetRequest(restClient, null, getEndpoint, Submission.class);
     }
+
+    /**
+     * Fetches a submission, deserialising only the parts of each question the projection asks for.
+     */
+    public static Submission getSubmissionData(OkHttpClient restClient, String batchId, String submissionId,
+            SubmissionProjection projection) throws Exception {
+        return getSubmissionData(restClient, batchId, submissionId, projection, size -> { });
+    }
+
+    /**
+     * As {@link #getSubmissionData(OkHttpClient, String, String, SubmissionProjection)}, also reporting the size of
+     * the body read, in characters, to {@code onSize}.
+     */
+    public static Submission getSubmissionData(OkHttpClient restClient, String batchId, String submissionId,
+            SubmissionProjection projection, LongConsumer onSize) throws Exception {
+        String getEndpoint = "/submissions/" + submissionId + "/export-batch/" + batchId + "/submission";
+        logger.info("Sending getRequest to {} for the {} projection", getEndpoint, projection);
+        try (Response response = RestService.openGetRequest(restClient, null, getEndpoint)) {
+            final CountingReader body = new CountingReader(response.body().charStream());
+            final Submission submission = JsonCodec.fromJson(body, Submission.class, projection);
+            onSize.accept(body.getCount());
+            return submission;
+        }
+    }
+
+    @FunctionalInterface
+    public interface StreamedSubmissionHandler {
+
+        /**
+         * Receives a submission read off a batch response along with roughly how many characters of the body it
+         * took up, and returns whether to read on. It runs on OkHttp's dispatcher while the response is open and
+         * counting against the call's deadline, so it must not block; returning false leaves the rest unread.
+         */
+        boolean handle(String submissionId, Submission submission, long size);
+
+    }
+
+    /**
+     * Fetches several submissions of a batch in one request, handing each one to {@code onSubmission} as soon as it
+     * has been read off the response, so the first can be worked on while the rest are still arriving. The future
+     * completes with the number of submissions read. Submissions the backend doesn't return, or that come after
+     * {@code onSubmission} asked to stop, are simply not handed over.
+     * <p>
+     * Once the backend has turned the batch endpoint down, later calls in this container fail straight away with
+     * {@link UnsupportedBackendOperationException} rather than asking again.
+     */
+    public static CompletableFuture<Integer> streamSubmissionData(OkHttpClient restClient, String batchId,
+            List<String> submissionIds, SubmissionProjection projection,
+            StreamedSubmissionHandler onSubmission) {
+        if (!batchEndpointSupported.get()) {
+            return CompletableFuture.failedFuture(
+                    new UnsupportedBackendOperationException("Batch submission fetch is not supported"));
+        }
+
+        String getEndpoint = "/submissions/export-batch/" + batchId + "/submissions";
+        logger.info("Sending streaming getRequest to {} for {} submissions", getEndpoint, submissionIds.size());
+        final CompletableFuture<Integer> fetch = RestService.streamGetRequestAsync(restClient,
+                Map.of(SUBMISSION_IDS_PARAM, String.join(",", submissionIds)), getEndpoint,
+                body -> readSubmissions(body, JsonCodec.gson(projection), onSubmission));
+        fetch.whenComplete((count, error) -> {
+            if (error instanceof UnsupportedBackendOperationException) {
+                batchEndpointSupported.set(false);
+            }
+        });
+        // handed back as is, so cancelling it cancels the call
+        return fetch;
+    }
+
+    static void resetEndpointSupport() {
+        batchEndpointSupported.set(true);
+    }
+
+    /**
+     * Reads {@code {"submissions": [{"submissionId": ..., "submission": {...}}, ...]}} one element at a time.
+     */
+    private static int readSubmissions(Reader body, Gson gson, StreamedSubmissionHandler onSubmission)
+            throws IOException {
+        final CountingReader countingBody = new CountingReader(body);
+        final JsonReader reader = new JsonReader(countingBody);
+        int count = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!SUBMISSIONS_FIELD.equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                final long start = countingBody.getCount();
+                String submissionId = null;
+                Submission submission = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "submissionId" -> submissionId = gson.fromJson(reader, String.class);
+                        case "submission" -> submission = gson.fromJson(reader, Submission.class);
+                        default -> reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if (submissionId != null && submission != null) {
+                    count++;
+                    if (!onSubmission.handle(submissionId, submission, countingBody.getCount() - start)) {
+                        // the response is closed along with the rest of the body
+                        return count;
+                    }
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        return count;
+    }
+
+    public static CompletableFuture<Submission> getSubmissionDataAsync(OkHttpClient restClient, String batchId,
+            String submissionId) {
+        String getEndpoint = "/submissions/" + submissionId + "/export-batch/" + batchId + "/submission";
+        logger.info("Sending async getRequest to {}", getEndpoint);
+        return RestService.sendGetRequestAsync(restClient, null, getEndpoint, Submission.class);
+    }
+
+    /**
+     * Non-blocking counterpart of
+     * {@link #getSubmissionData(OkHttpClient, String, String, SubmissionProjection, LongConsumer)}. The body is read
+     * on OkHttp's dispatcher, and {@code onSize} called there.
+     */
+    public static CompletableFuture<Submission> getSubmissionDataAsync(OkHttpClient restClient, String batchId,
+            String submissionId, SubmissionProjection projection, LongConsumer onSize) {
+        String getEndpoint = "/submissions/" + submissionId + "/export-batch/" + batchId + "/submission";
+        logger.info("Sending async getRequest to {} for the {} projection", getEndpoint, projection);
+        return RestService.sendGetRequestAsync(restClient, null, getEndpoint, response -> {
+            final CountingReader body = new CountingReader(response);
+            final Submission submission = JsonCodec.fromJson(body, Submission.class, projection);
+            onSize.accept(body.getCount());
+            return submission;
+        });
+    }
 }
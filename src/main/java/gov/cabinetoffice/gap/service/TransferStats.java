@@ -0,0 +1,82 @@
+package gov.cabinetoffice.gap.service;
+
+import lombok.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bytes sent to and received from each backend endpoint, both as the body was handed over and as it travelled on
+ * the wire, recorded by {@link CompressionInterceptor}. Endpoints are keyed as in {@link ResilienceInterceptor}.
+ */
+public class TransferStats {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransferStats.class);
+
+    @Value
+    public static class EndpointTransfer {
+
+        long requestBytes;
+
+        long requestWireBytes;
+
+        long responseBytes;
+
+        long responseWireBytes;
+
+    }
+
+    private static class Counters {
+
+        private final LongAdder requestBytes = new LongAdder();
+
+        private final LongAdder requestWireBytes = new LongAdder();
+
+        private final LongAdder responseBytes = new LongAdder();
+
+        private final LongAdder responseWireBytes = new LongAdder();
+
+    }
+
+    private final Map<String, Counters> endpoints = new ConcurrentHashMap<>();
+
+    void recordRequest(final String endpoint, final long bytes, final long wireBytes) {
+        final Counters counters = counters(endpoint);
+        counters.requestBytes.add(bytes);
+        counters.requestWireBytes.add(wireBytes);
+    }
+
+    void recordResponse(final String endpoint, final long bytes, final long wireBytes) {
+        final Counters counters = counters(endpoint);
+        counters.responseBytes.add(bytes);
+        counters.responseWireBytes.add(wireBytes);
+    }
+
+    public Map<String, EndpointTransfer> snapshot() {
+        final Map<String, EndpointTransfer> snapshot = new TreeMap<>();
+        endpoints.forEach((endpoint, counters) -> snapshot.put(endpoint, new EndpointTransfer(
+                counters.requestBytes.sum(), counters.requestWireBytes.sum(), counters.responseBytes.sum(),
+                counters.responseWireBytes.sum())));
+        return snapshot;
+    }
+
+    /**
+     * Logs what each endpoint transferred since the last call and starts counting again.
+     */
+    public void logAndReset() {
+        snapshot().forEach((endpoint, transfer) -> logger.info(
+                "Transferred with {}: sent {} bytes ({} on the wire), received {} bytes ({} on the wire)", endpoint,
+                transfer.getRequestBytes(), transfer.getRequestWireBytes(), transfer.getResponseBytes(),
+                transfer.getResponseWireBytes()));
+        endpoints.clear();
+    }
+
+    private Counters counters(final String endpoint) {
+        return endpoints.computeIfAbsent(endpoint, key -> new Counters());
+    }
+
+}
@@ -0,0 +1,193 @@
+package gov.cabinetoffice.gap.service;
+
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the messages of one invocation hidden from other consumers for as long as they are being exported, so a
+ * large export that runs past the queue's visibility timeout isn't delivered, and exported, a second time.
+ * <p>
+ * Every {@code interval} the visibility of each message still {@link #track tracked} is extended by the queue's own
+ * visibility timeout, or by {@code visibilityTimeout} if that is longer or the queue's can't be read, as long as
+ * the export has {@link #recordProgress recorded progress} within
+ * {@code stallTimeout}. Once it stops making progress the extensions stop too, and its messages go back to the
+ * queue when their visibility runs out. A failed extension is logged and tried again on the next beat.
+ * <p>
+ * A message that has been exported stays tracked, as SQS only deletes it once the invocation returns; letting it
+ * become visible before then would have it delivered, and exported, again. Only a message being handed back to the
+ * queue is {@link #release released} early. {@link #close()} stops the extensions when the invocation returns, and
+ * the messages left with time to spare are deleted or handed back as usual.
+ */
+public class VisibilityHeartbeat implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(VisibilityHeartbeat.class);
+
+    private static final ScheduledExecutorService heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                final Thread thread = new Thread(runnable, "visibility-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final QueueClient queueClient;
+
+    private final VisibilityHeartbeatSettings settings;
+
+    private final Clock clock;
+
+    // the fields below are guarded by this
+
+    // receipt handles by message ID, grouped by queue URL
+    private final Map<String, Map<String, String>> trackedMessages = new LinkedHashMap<>();
+
+    private Instant lastProgress;
+
+    private boolean stalled;
+
+    private ScheduledFuture<?> beats;
+
+    private boolean closed;
+
+    public VisibilityHeartbeat(final QueueClient queueClient, final VisibilityHeartbeatSettings settings) {
+        this(queueClient, settings, Clock.systemUTC());
+    }
+
+    public VisibilityHeartbeat(final QueueClient queueClient, final VisibilityHeartbeatSettings settings,
+            final Clock clock) {
+        this.queueClient = queueClient;
+        this.settings = settings;
+        this.clock = clock;
+        this.lastProgress = clock.instant();
+    }
+
+    /**
+     * Starts extending the visibility of the given message. Beats start with the first message tracked.
+     */
+    public synchronized void track(final SQSEvent.SQSMessage message) {
+        if (!settings.isEnabled() || closed) {
+            return;
+        }
+        final String queueUrl = queueUrl(message.getEventSourceArn());
+        if (queueUrl == null || message.getReceiptHandle() == null) {
+            logger.warn("Cannot extend the visibility of message {}, it has no queue or receipt handle",
+                    message.getMessageId());
+            return;
+        }
+        trackedMessages.computeIfAbsent(queueUrl, key -> new LinkedHashMap<>())
+                .put(message.getMessageId(), message.getReceiptHandle());
+
+        if (beats == null) {
+            final long intervalMillis = settings.getInterval().toMillis();
+            beats = heartbeatExecutor.scheduleAtFixedRate(this::beat, intervalMillis, intervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops extending the visibility of the given message, once it is being handed back to the queue.
+     */
+    public synchronized void release(final SQSEvent.SQSMessage message) {
+        trackedMessages.values().forEach(messages -> messages.remove(message.getMessageId()));
+        trackedMessages.values().removeIf(Map::isEmpty);
+    }
+
+    /**
+     * Notes that the export is still moving, so the visibility of its messages keeps being extended.
+     */
+    public synchronized void recordProgress() {
+        lastProgress = clock.instant();
+        if (stalled) {
+            logger.info("Export is making progress again, extending message visibility");
+            stalled = false;
+        }
+    }
+
+    /**
+     * Extends the visibility of every tracked message, unless the export has stalled.
+     */
+    void beat() {
+        final Map<String, List<String>> receiptHandlesByQueue = new LinkedHashMap<>();
+        synchronized (this) {
+            if (closed || trackedMessages.isEmpty()) {
+                return;
+            }
+            final Duration sinceProgress = Duration.between(lastProgress, clock.instant());
+            if (sinceProgress.compareTo(settings.getStallTimeout()) > 0) {
+                if (!stalled) {
+                    logger.warn("Export has made no progress for {} s, no longer extending message visibility",
+                            sinceProgress.toSeconds());
+                    stalled = true;
+                }
+                return;
+            }
+            trackedMessages.forEach((queueUrl, messages) ->
+                    receiptHandlesByQueue.put(queueUrl, new ArrayList<>(messages.values())));
+        }
+
+        receiptHandlesByQueue.forEach((queueUrl, receiptHandles) -> {
+            try {
+                final Duration timeout = visibilityTimeout(queueUrl);
+                queueClient.changeVisibility(queueUrl, receiptHandles, timeout);
+                logger.info("Extended the visibility of {} messages on {} by {} s", receiptHandles.size(), queueUrl,
+                        timeout.toSeconds());
+            } catch (RuntimeException e) {
+                logger.warn("Could not extend the visibility of messages on {}: {}", queueUrl, e.toString());
+            }
+        });
+    }
+
+    /**
+     * The timeout to extend the messages of the given queue by: the queue's own, unless the settings ask for longer.
+     */
+    private Duration visibilityTimeout(final String queueUrl) {
+        final Duration configured = settings.getVisibilityTimeout();
+        final Duration queueTimeout;
+        try {
+            queueTimeout = queueClient.getVisibilityTimeout(queueUrl);
+        } catch (RuntimeException e) {
+            logger.warn("Could not read the visibility timeout of {}, extending by {} s: {}", queueUrl,
+                    configured.toSeconds(), e.toString());
+            return configured;
+        }
+        return queueTimeout != null && queueTimeout.compareTo(configured) > 0 ? queueTimeout : configured;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        trackedMessages.clear();
+        if (beats != null) {
+            beats.cancel(false);
+        }
+    }
+
+    /**
+     * The URL of the queue with the given ARN, e.g. {@code https://sqs.eu-west-2.amazonaws.com/123456789012/exports}
+     * for {@code arn:aws:sqs:eu-west-2:123456789012:exports}. Null if it isn't the ARN of a queue.
+     */
+    static String queueUrl(final String eventSourceArn) {
+        if (eventSourceArn == null) {
+            return null;
+        }
+        final String[] parts = eventSourceArn.split(":");
+        if (parts.length != 6 || !"arn".equals(parts[0]) || !"sqs".equals(parts[2])) {
+            return null;
+        }
+        final String domain = parts[1].equals("aws-cn") ? "amazonaws.com.cn" : "amazonaws.com";
+        return "https://sqs." + parts[3] + "." + domain + "/" + parts[4] + "/" + parts[5];
+    }
+
+}
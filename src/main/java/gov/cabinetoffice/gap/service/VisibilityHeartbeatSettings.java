@@ -0,0 +1,47 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.utils.EnvUtils;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * How a {@link VisibilityHeartbeat} keeps the messages being exported hidden from other consumers.
+ */
+@Value
+@Builder(toBuilder = true)
+public class VisibilityHeartbeatSettings {
+
+    /** Whether the visibility of messages is extended at all. */
+    @Builder.Default
+    boolean enabled = true;
+
+    /** Time between extensions. Well below {@link #visibilityTimeout}, so one failed call doesn't let it lapse. */
+    @Builder.Default
+    Duration interval = Duration.ofSeconds(60);
+
+    /**
+     * The least visibility timeout set on each extension, counted from when it is made. The queue's own visibility
+     * timeout is set instead when it is longer, so an extension never hides a message for less than the queue does.
+     */
+    @Builder.Default
+    Duration visibilityTimeout = Duration.ofSeconds(180);
+
+    /**
+     * Extensions stop once the export has made no progress for this long, so a stuck export lets its messages go
+     * back to the queue rather than holding them until the function times out.
+     */
+    @Builder.Default
+    Duration stallTimeout = Duration.ofSeconds(600);
+
+    public static VisibilityHeartbeatSettings fromEnvironment() {
+        return VisibilityHeartbeatSettings.builder()
+                .enabled(EnvUtils.getBoolean("VISIBILITY_HEARTBEAT_ENABLED", true))
+                .interval(Duration.ofSeconds(EnvUtils.getLong("VISIBILITY_HEARTBEAT_INTERVAL_SECONDS", 60)))
+                .visibilityTimeout(Duration.ofSeconds(EnvUtils.getLong("VISIBILITY_TIMEOUT_SECONDS", 180)))
+                .stallTimeout(Duration.ofSeconds(EnvUtils.getLong("VISIBILITY_HEARTBEAT_STALL_SECONDS", 600)))
+                .build();
+    }
+
+}
@@ -0,0 +1,142 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.exceptions.EphemeralStorageQuotaExceededException;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.UUID;
+
+/**
+ * Hands each export its own directory under the workspace root and accounts for the bytes written into them
+ * against an ephemeral storage quota, so concurrent exports never share or delete each other's files.
+ * <p>
+ * A manager built with an object cache owns that cache too, and its bytes count against the same quota, so current
+ * and peak usage cover everything the function keeps in {@code /tmp}. Where a file's size is known before it is
+ * written, such as an attachment from its listing, it can be {@link ExportWorkspace#reserve reserved} so the quota
+ * is checked before any byte is written; otherwise it is checked as files are tracked after being written.
+ * <p>
+ * A quota of zero or less disables enforcement; usage is still tracked so the function's ephemeral storage can
+ * be sized from the reported peak.
+ */
+public class WorkspaceManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkspaceManager.class);
+
+    private final File root;
+
+    private final long quotaBytes;
+
+    private final S3ObjectCache objectCache;
+
+    // the fields below are guarded by this
+
+    private long currentBytes;
+
+    private long peakBytes;
+
+    public WorkspaceManager(final File root, final long quotaBytes) {
+        this(root, quotaBytes, null, 0);
+    }
+
+    /**
+     * A manager that also keeps an {@link S3ObjectCache} of up to {@code cacheMaxBytes} in {@code cacheDir},
+     * available to its workspaces through {@link ExportWorkspace#getObjectCache()}.
+     */
+    public WorkspaceManager(final File root, final long quotaBytes, final File cacheDir, final long cacheMaxBytes) {
+        this.root = root;
+        this.quotaBytes = quotaBytes;
+        // workspaces left behind by an invocation that was killed before it could clean up
+        FileUtils.deleteQuietly(root);
+        this.objectCache = cacheDir == null ? null : new S3ObjectCache(cacheDir, cacheMaxBytes, this);
+    }
+
+    public ExportWorkspace open(final String name) {
+        final File directory = new File(root, name + "-" + UUID.randomUUID());
+        if (!directory.mkdirs()) {
+            throw new RuntimeException("Could not create workspace directory " + directory);
+        }
+        logger.info("Opened workspace {}", directory);
+        return new ExportWorkspace(name, directory, this);
+    }
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public synchronized long getPeakBytes() {
+        return peakBytes;
+    }
+
+    public long getQuotaBytes() {
+        return quotaBytes;
+    }
+
+    S3ObjectCache getObjectCache() {
+        return objectCache;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("currentBytes=%d peakBytes=%d quotaBytes=%d cacheBytes=%d", getCurrentBytes(),
+                getPeakBytes(), quotaBytes, objectCache == null ? 0 : objectCache.getCurrentBytes());
+    }
+
+    /**
+     * Accounts for bytes a workspace has already written, throwing if they took usage over the quota.
+     */
+    synchronized void recordWrite(final ExportWorkspace workspace, final long deltaBytes) {
+        add(deltaBytes);
+
+        if (quotaBytes > 0 && deltaBytes > 0 && currentBytes > quotaBytes) {
+            throw new EphemeralStorageQuotaExceededException(String.format(
+                    "Workspace %s took tmp usage to %d bytes, over the quota of %d bytes",
+                    workspace.getDirectory(), currentBytes, quotaBytes));
+        }
+    }
+
+    /**
+     * Accounts for bytes a workspace is about to write, throwing without counting them if they would take usage
+     * over the quota.
+     */
+    synchronized void reserve(final ExportWorkspace workspace, final File file, final long bytes) {
+        if (!fits(bytes)) {
+            throw new EphemeralStorageQuotaExceededException(String.format(
+                    "Writing %d bytes to %s would take tmp usage to %d bytes, over the quota of %d bytes", bytes,
+                    file, currentBytes + bytes, quotaBytes));
+        }
+        add(bytes);
+    }
+
+    /**
+     * Accounts for bytes the object cache is about to write, unless they would take usage over the quota.
+     */
+    synchronized boolean tryReserve(final long bytes) {
+        if (!fits(bytes)) {
+            return false;
+        }
+        add(bytes);
+        return true;
+    }
+
+    synchronized void releaseBytes(final long bytes) {
+        currentBytes -= bytes;
+    }
+
+    void release(final ExportWorkspace workspace, final long bytesHeld) {
+        FileUtils.deleteQuietly(workspace.getDirectory());
+        releaseBytes(bytesHeld);
+        logger.info("Released workspace {}, tmp usage: {}", workspace.getDirectory(), this);
+    }
+
+    private boolean fits(final long bytes) {
+        return quotaBytes <= 0 || bytes <= 0 || currentBytes + bytes <= quotaBytes;
+    }
+
+    private void add(final long bytes) {
+        currentBytes += bytes;
+        peakBytes = Math.max(peakBytes, currentBytes);
+    }
+
+}
@@ -5,16 +5,28 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.ListObjectsV2Request;
 import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.PutObjectResult;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import gov.cabinetoffice.gap.model.GrantExportDTO;
-import org.apache.commons.io.FileUtils;
+import gov.cabinetoffice.gap.utils.ByteBudget;
+import gov.cabinetoffice.gap.utils.EnvUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -22,8 +34,6 @@ public class ZipService {
 
     private static final Logger logger = LoggerFactory.getLogger(ZipService.class);
 
-    private static final String TMP_DIR = "/tmp/";
-
     private static final String LOCAL_ZIP_FILE_NAME = "submission.zip";
 
     private static final String SUBMISSION_ATTACHMENTS_BUCKET_NAME = System
@@ -40,60 +50,130 @@ public class ZipService {
 
     private static final String FAILED_ATTACHMENTS_FILE_NAME = "failed_attachment_downloads.txt";
 
-    public static void createSuperZip(List<GrantExportDTO> completedGrantExports) throws IOException {
-        logger.info("Creating super zip with {} submissions", completedGrantExports.size());
+    private static final long UNKNOWN_SIZE = -1;
+
+    private static final int DOWNLOAD_CONCURRENCY = Math.max(1, EnvUtils.getInt("ZIP_DOWNLOAD_CONCURRENCY", 4));
+
+    // downloads are written to /tmp, and stay in the page cache, which counts against the function's memory, until
+    // the zip writer reads them back. So how far they may run ahead of the writer is a quarter of whichever is
+    // smaller, the function's memory or its ephemeral storage quota, or 128 MB when neither is known.
+    private static final long READ_AHEAD_BYTE_BUDGET = Math.max(1, EnvUtils.getLong("ZIP_READ_AHEAD_MB",
+            defaultReadAheadMb(EnvUtils.getLong("AWS_LAMBDA_FUNCTION_MEMORY_SIZE", 0),
+                    EnvUtils.getLong("EPHEMERAL_STORAGE_QUOTA_MB", 0)))) * 1024 * 1024;
+
+    private static final ExecutorService downloadExecutor = Executors.newFixedThreadPool(DOWNLOAD_CONCURRENCY,
+            runnable -> {
+                final Thread thread = new Thread(runnable, "zip-download");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    // entries are only ever written by the thread handling the export, one at a time, so each writer thread keeps
+    // one copy buffer for the life of the container. Downloads and uploads go through the S3 SDK's file-based
+    // getObject and putObject, which own their transfer buffers, so there is nothing else here to pool.
+    private static final ThreadLocal<byte[]> copyBuffers = ThreadLocal.withInitial(() -> new byte[COPY_BUFFER_SIZE]);
 
-        final List<String> filenames = new ArrayList<>();
+    private record PendingDownload(ZipSource source, Future<?> download, long reservation) {
+    }
+
+    record ZipSource(String key, long size) {
 
-        for (GrantExportDTO grantExport: completedGrantExports) {
-            final String location = grantExport.getLocation();
-            filenames.add(location);
-            downloadFile(location, SUBMISSION_EXPORTS_BUCKET_NAME);
+        long reservation(final long unknownSizeReservation) {
+            return size < 0 ? unknownSizeReservation : size;
         }
 
-        zipFiles(filenames,"");
+    }
 
-        logger.info("Super zip file created");
+    public static void createSuperZip(final ExportWorkspace workspace,
+                                      final List<GrantExportDTO> completedGrantExports) throws Exception {
+        createSuperZip(workspace, completedGrantExports.iterator());
     }
 
-    public static void createZip(final AmazonS3 client, final String filename, final String applicationId,
-                                 final String submissionId, final boolean addOdt) throws Exception {
-        s3Client = client;
-        final List<String> submissionAttachmentFileNames = getSubmissionAttachmentFileNames(client, applicationId,
-                submissionId);
-        final List<String> failedAttachmentFilenames = new ArrayList<>();
-        for (String attachmentFilename : submissionAttachmentFileNames) {
-            logger.info("Downloading attachment file: {}", attachmentFilename);
-            try {
-                downloadFile(attachmentFilename, SUBMISSION_ATTACHMENTS_BUCKET_NAME);
-            } catch (AmazonServiceException e) {
-                logger.info("Downloading attachment file with name: {} failed.", attachmentFilename);
-                failedAttachmentFilenames.add(attachmentFilename);
+    /**
+     * Builds the super zip from exports read one at a time, starting each download as soon as its export has been
+     * read rather than once the whole listing has arrived.
+     */
+    public static void createSuperZip(final ExportWorkspace workspace,
+                                      final Iterator<GrantExportDTO> completedGrantExports) throws Exception {
+        final Iterator<ZipSource> sources = new Iterator<>() {
+
+            @Override
+            public boolean hasNext() {
+                return completedGrantExports.hasNext();
+            }
+
+            @Override
+            public ZipSource next() {
+                return new ZipSource(completedGrantExports.next().getLocation(), UNKNOWN_SIZE);
             }
+        };
+        logger.info("Creating super zip");
+
+        final File localZipFile = workspace.resolve(LOCAL_ZIP_FILE_NAME);
+        final AtomicInteger index = new AtomicInteger(1);
+        try (
+            final FileOutputStream fout = new FileOutputStream(localZipFile);
+            final ZipOutputStream zout = new ZipOutputStream(fout)) {
+            downloadIntoZip(s3Client, sources, SUBMISSION_EXPORTS_BUCKET_NAME, workspace, zout, index, "", false,
+                    READ_AHEAD_BYTE_BUDGET);
         }
+        workspace.track(localZipFile);
+
+        logger.info("Super zip file created with {} submissions", index.get() - 1);
+    }
 
-        submissionAttachmentFileNames.removeAll(failedAttachmentFilenames);
-        final List<String> fileNamesToZIP = new ArrayList<>(submissionAttachmentFileNames);
+    public static void createZip(final AmazonS3 client, final ExportWorkspace workspace, final String filename,
+                                 final String applicationId, final String submissionId, final boolean addOdt)
+            throws Exception {
+        s3Client = client;
+        final String path = applicationId + "/" + submissionId + "/";
 
-        if(failedAttachmentFilenames.isEmpty() && addOdt) {
-            fileNamesToZIP.add(filename + ".odt");
-        } else if(failedAttachmentFilenames.size() > 0) {
-            final String failedAttachmentFilename = addFailedAttachmentsToFile(failedAttachmentFilenames);
-            if(failedAttachmentFilename != null)
-                fileNamesToZIP.add(failedAttachmentFilename);
+        if (workspace.getAttachmentListing() == null) {
+            workspace.setAttachmentListing(getSubmissionAttachments(client, applicationId, submissionId));
+        } else {
+            logger.info("Reusing attachment listing already fetched for submission with ID {}", submissionId);
         }
+        final List<ZipSource> sources = workspace.getAttachmentListing().stream()
+                .map(objectSummary -> new ZipSource(objectSummary.getKey(), objectSummary.getSize()))
+                .collect(Collectors.toList());
 
-        zipFiles(fileNamesToZIP, applicationId + "/" + submissionId + "/");
+        final File localZipFile = workspace.resolve(LOCAL_ZIP_FILE_NAME);
+        try (
+            final FileOutputStream fout = new FileOutputStream(localZipFile);
+            final ZipOutputStream zout = new ZipOutputStream(fout)) {
+            final AtomicInteger index = new AtomicInteger(1);
+            final List<String> failedAttachmentFilenames = downloadIntoZip(client, sources.iterator(),
+                    SUBMISSION_ATTACHMENTS_BUCKET_NAME, workspace, zout, index, path, true, READ_AHEAD_BYTE_BUDGET);
+
+            if(failedAttachmentFilenames.isEmpty() && addOdt) {
+                addFileToZip(workspace, filename + ".odt", zout, index.getAndIncrement(), path);
+            } else if(failedAttachmentFilenames.size() > 0) {
+                final String failedAttachmentFilename = addFailedAttachmentsToFile(workspace, failedAttachmentFilenames);
+                if(failedAttachmentFilename != null)
+                    addFileToZip(workspace, failedAttachmentFilename, zout, index.getAndIncrement(), path);
+            }
+        } catch (FileNotFoundException e) {
+            logger.error("Could not create the locally zipped file: " + LOCAL_ZIP_FILE_NAME, e);
+            throw e;
+        }
+        workspace.track(localZipFile);
 
         logger.info("Zip file created");
     }
 
-    public static String uploadZip(final String id, final String zipFilename) {
+    public static String uploadZip(final ExportWorkspace workspace, final String id, final String zipFilename) {
         try {
             final String objectKey = id + "/" + zipFilename + ".zip";
-            s3Client.putObject(System.getenv("SUBMISSION_EXPORTS_BUCKET_NAME"), objectKey,
-                    new File(TMP_DIR + LOCAL_ZIP_FILE_NAME));
+            final File localZipFile = workspace.resolve(LOCAL_ZIP_FILE_NAME);
+            final PutObjectResult result = s3Client.putObject(SUBMISSION_EXPORTS_BUCKET_NAME, objectKey, localZipFile);
             logger.info("Zip file uploaded to S3");
+            // the super zip for this batch may be built by this container, so keep a copy of what was uploaded
+            final S3ObjectCache objectCache = workspace.getObjectCache();
+            if (result != null && objectCache != null) {
+                objectCache.put(SUBMISSION_EXPORTS_BUCKET_NAME, objectKey, result.getETag(), localZipFile);
+            }
             return objectKey;
         } catch (Exception e) {
             logger.error("Could not upload to S3", e);
@@ -104,6 +184,14 @@ public class ZipService {
     public static List<String> getSubmissionAttachmentFileNames(final AmazonS3 s3Client,
                                                                 final String applicationId,
                                                                 final String submissionId) {
+        return getSubmissionAttachments(s3Client, applicationId, submissionId).stream()
+                .map(S3ObjectSummary::getKey)
+                .collect(Collectors.toList());
+    }
+
+    private static List<S3ObjectSummary> getSubmissionAttachments(final AmazonS3 s3Client,
+                                                                  final String applicationId,
+                                                                  final String submissionId) {
         logger.info("Getting attachment filenames for submission with ID {}", submissionId);
         final ListObjectsV2Request req = new ListObjectsV2Request().withBucketName(SUBMISSION_ATTACHMENTS_BUCKET_NAME)
                 .withPrefix(applicationId + "/" + submissionId);
@@ -117,8 +205,7 @@ public class ZipService {
                     return matchingObjectSummaries.stream()
                       .allMatch(os -> os.getLastModified().before(objectSummary.getLastModified()) || os.getLastModified().equals(objectSummary.getLastModified()));
                 })
-                .map(S3ObjectSummary::getKey)
-                .filter(filename -> filename.contains("."))
+                .filter(objectSummary -> objectSummary.getKey().contains("."))
                 .collect(Collectors.toList());
     }
 
@@ -128,11 +215,22 @@ public class ZipService {
                 .collect(Collectors.toList());
     }
 
-    private static void downloadFile(final String fileName, final String bucketName) {
+    private static void downloadFile(final AmazonS3 client, final ExportWorkspace workspace, final String fileName,
+                                     final String bucketName) {
         try {
             logger.info("Creating local file with filename: {} and bucket name: {}", fileName, bucketName);
-            File localFile = new File(TMP_DIR + fileName);
-            s3Client.getObject(new GetObjectRequest(bucketName, fileName), localFile);
+            File localFile = workspace.resolve(fileName);
+            try {
+                final S3ObjectCache objectCache = workspace.getObjectCache();
+                if (objectCache != null) {
+                    objectCache.fetch(client, bucketName, fileName, localFile);
+                } else {
+                    client.getObject(new GetObjectRequest(bucketName, fileName), localFile);
+                }
+            } finally {
+                // settles any reservation made for the file, whether or not the download finished
+                workspace.track(localFile);
+            }
         } catch (AmazonServiceException e) {
             logger.error("Could not download file: " + fileName + " from bucket: " + bucketName, e);
             throw e;
@@ -152,42 +250,127 @@ public class ZipService {
         return truncatedFileName.concat("_" + suffix + fileExtension);
     }
 
-    public static void deleteTmpDirContents() {
+    /**
+     * Downloads the given objects on the download executor and writes each one into the zip as soon as it and
+     * every object before it has arrived, so entries keep their listing order. Downloads are only dispatched while
+     * their size fits in the read-ahead budget, and the budget is handed back once an entry has been written, so
+     * downloads never run more than {@code readAheadBytes} ahead of the zip writer. Objects the workspace already
+     * holds are zipped from disk without going back to S3.
+     * <p>
+     * Bodies are streamed to files in the workspace through fixed-size buffers, so heap use doesn't grow with the
+     * size of the attachments; the budget bounds disk and page cache, not heap. Downloaded files stay in the
+     * workspace, counted against its quota, until it is closed, as the attachments-only zip of a failed export reuses
+     * them.
+     * <p>
+     * Sources are only taken from the iterator when there is budget to dispatch them, so a listing that is itself
+     * still arriving starts downloading from its first entry and is never held in memory as a whole.
+     *
+     * @return the keys that could not be downloaded, when {@code skipFailedDownloads} is set
+     */
+    static List<String> downloadIntoZip(final AmazonS3 client, final Iterator<ZipSource> sources,
+                                        final String bucketName, final ExportWorkspace workspace,
+                                        final ZipOutputStream zout, final AtomicInteger index,
+                                        final String path, final boolean skipFailedDownloads,
+                                        final long readAheadBytes)
+            throws Exception {
+        final ByteBudget budget = new ByteBudget(readAheadBytes);
+        final long unknownSizeReservation = Math.max(1, readAheadBytes / DOWNLOAD_CONCURRENCY);
+        final Deque<PendingDownload> inFlight = new ArrayDeque<>();
+        final List<String> failedDownloads = new ArrayList<>();
+        ZipSource undispatched = null;
+        int entries = 0;
+
         try {
-            FileUtils.cleanDirectory(new File(TMP_DIR));
-        } catch (IOException e) {
-            logger.error("Could not delete the contents of the tmp directory", e);
+            while (true) {
+                // the entry about to be waited on always gets its reservation, as nothing ahead of it is in flight
+                while (undispatched != null || sources.hasNext()) {
+                    final ZipSource next = undispatched != null ? undispatched : sources.next();
+                    undispatched = null;
+                    if (workspace.isFetched(next.key())) {
+                        logger.info("File {} already downloaded, skipping", next.key());
+                        inFlight.add(new PendingDownload(next, CompletableFuture.completedFuture(null), 0));
+                        continue;
+                    }
+                    if (next.size() >= 0) {
+                        // the quota is checked before the download starts, not once it is on disk
+                        workspace.reserve(workspace.resolve(next.key()), next.size());
+                    }
+                    final long reservation = next.reservation(unknownSizeReservation);
+                    if (inFlight.isEmpty()) {
+                        budget.acquire(reservation);
+                    } else if (!budget.tryAcquire(reservation)) {
+                        undispatched = next;
+                        break;
+                    }
+                    inFlight.add(new PendingDownload(next, downloadExecutor.submit(() -> {
+                        logger.info("Downloading file: {}", next.key());
+                        downloadFile(client, workspace, next.key(), bucketName);
+                        workspace.markFetched(next.key());
+                        return null;
+                    }), reservation));
+                }
+
+                final PendingDownload pending = inFlight.poll();
+                if (pending == null) {
+                    break;
+                }
+                entries++;
+                try {
+                    awaitDownload(pending.download());
+                    addFileToZip(workspace, pending.source().key(), zout, index.getAndIncrement(), path);
+                } catch (AmazonServiceException e) {
+                    if (!skipFailedDownloads) {
+                        throw e;
+                    }
+                    logger.info("Downloading file with name: {} failed.", pending.source().key());
+                    failedDownloads.add(pending.source().key());
+                } finally {
+                    budget.release(pending.reservation());
+                }
+            }
+        } finally {
+            inFlight.forEach(pending -> pending.download().cancel(true));
         }
+
+        logger.info("Zipped {} downloaded files, peak read-ahead bytes {} of {}", entries - failedDownloads.size(),
+                budget.getPeakInFlight(), budget.getCapacity());
+        return failedDownloads;
     }
 
-    private static void zipFiles(final List<String> files, final String path) throws IOException {
-        try (
-            final FileOutputStream fout = new FileOutputStream(TMP_DIR + LOCAL_ZIP_FILE_NAME);
-            final ZipOutputStream zout = new ZipOutputStream(fout)) {
-            int index = 1;
-            for (String filename : files) {
-                addFileToZip(filename, zout, index, path);
-                index++;
+    /**
+     * A quarter of the smaller of the function's memory and its ephemeral storage quota, in MB, ignoring either
+     * when it isn't set
+     */
+    static long defaultReadAheadMb(final long functionMemoryMb, final long ephemeralStorageQuotaMb) {
+        final long limitMb = LongStream.of(functionMemoryMb, ephemeralStorageQuotaMb)
+                .filter(mb -> mb > 0)
+                .min()
+                .orElse(0);
+        return limitMb > 0 ? Math.max(1, limitMb / 4) : 128;
+    }
+
+    private static void awaitDownload(final Future<?> download) throws Exception {
+        try {
+            download.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
             }
-        } catch (FileNotFoundException e) {
-            logger.error("Could not create the locally zipped file: " + LOCAL_ZIP_FILE_NAME, e);
-            throw e;
-        } catch (IOException e) {
-            logger.error("IO exception while creating the empty zipped file", e);
             throw e;
         }
     }
 
-    private static void addFileToZip(final String filename, final ZipOutputStream zout,
-                                     final int index, final String path) throws IOException {
-        try (final FileInputStream fis = new FileInputStream(TMP_DIR + filename)) {
+    private static void addFileToZip(final ExportWorkspace workspace, final String filename,
+                                     final ZipOutputStream zout, final int index, final String path)
+            throws IOException {
+        try (final FileInputStream fis = new FileInputStream(workspace.resolve(filename))) {
             // Create zip entry within the zipped file
 
             final ZipEntry ze = new ZipEntry(parseFileName(filename, index, path));
             zout.putNextEntry(ze);
             // Copy file contents over to zip entry
+            final byte[] buffer = copyBuffers.get();
             int length;
-            byte[] buffer = new byte[1024];
             while ((length = fis.read(buffer)) > 0) {
                 zout.write(buffer, 0, length);
             }
@@ -202,10 +385,11 @@ public class ZipService {
         }
     }
 
-    private static String addFailedAttachmentsToFile(final List<String> failedAttachmentFilenames) {
+    private static String addFailedAttachmentsToFile(final ExportWorkspace workspace,
+                                                     final List<String> failedAttachmentFilenames) {
         try {
             logger.info("Creating text file with {} failed attachment downloads.", failedAttachmentFilenames.size());
-            final File localFile = new File(TMP_DIR + FAILED_ATTACHMENTS_FILE_NAME);
+            final File localFile = workspace.resolve(FAILED_ATTACHMENTS_FILE_NAME);
             final FileWriter myWriter = new FileWriter(localFile);
 
             for (String filename : failedAttachmentFilenames) {
@@ -213,6 +397,7 @@ public class ZipService {
             }
 
             myWriter.close();
+            workspace.track(localFile);
 
             return FAILED_ATTACHMENTS_FILE_NAME;
         } catch (Exception e) {
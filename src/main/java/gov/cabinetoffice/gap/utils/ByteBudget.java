@@ -0,0 +1,69 @@
+package gov.cabinetoffice.gap.utils;
+
+/**
+ * Counts bytes that have been fetched but not yet consumed. Callers reserve the
+ * size of an object before fetching it and release it once it has been written
+ * out, so the amount of staged data never exceeds the capacity.
+ * <p>
+ * A reservation larger than the whole budget is clamped to the capacity, which
+ * means an oversized object is still fetched, just on its own.
+ */
+public class ByteBudget {
+
+    private final long capacity;
+
+    private long inFlight;
+
+    private long peakInFlight;
+
+    public ByteBudget(final long capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Byte budget capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    public synchronized boolean tryAcquire(final long bytes) {
+        final long reservation = clamp(bytes);
+        if (inFlight + reservation > capacity) {
+            return false;
+        }
+        reserve(reservation);
+        return true;
+    }
+
+    public synchronized void acquire(final long bytes) throws InterruptedException {
+        final long reservation = clamp(bytes);
+        while (inFlight + reservation > capacity) {
+            wait();
+        }
+        reserve(reservation);
+    }
+
+    public synchronized void release(final long bytes) {
+        inFlight = Math.max(0, inFlight - clamp(bytes));
+        notifyAll();
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized long getPeakInFlight() {
+        return peakInFlight;
+    }
+
+    private void reserve(final long reservation) {
+        inFlight += reservation;
+        peakInFlight = Math.max(peakInFlight, inFlight);
+    }
+
+    private long clamp(final long bytes) {
+        return Math.min(Math.max(bytes, 0), capacity);
+    }
+
+}
@@ -0,0 +1,88 @@
+package gov.cabinetoffice.gap.utils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Consecutive-failure circuit breaker.
+ * <p>
+ * After {@code failureThreshold} failures in a row the breaker opens and rejects calls for {@code openDuration}.
+ * It then lets a single trial call through: success closes it again, failure re-opens it for another period.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+
+    private final Duration openDuration;
+
+    private final Clock clock;
+
+    private State state = State.CLOSED;
+
+    private int consecutiveFailures;
+
+    private Instant openedAt;
+
+    private boolean trialInFlight;
+
+    public CircuitBreaker(final int failureThreshold, final Duration openDuration) {
+        this(failureThreshold, openDuration, Clock.systemUTC());
+    }
+
+    public CircuitBreaker(final int failureThreshold, final Duration openDuration, final Clock clock) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("failureThreshold must be positive but was " + failureThreshold);
+        }
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns whether a call may go ahead. Every permitted call must be followed by
+     * {@link #recordSuccess()} or {@link #recordFailure()}.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN && !clock.instant().isBefore(openedAt.plus(openDuration))) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> false;
+            case HALF_OPEN -> {
+                if (trialInFlight) {
+                    yield false;
+                }
+                trialInFlight = true;
+                yield true;
+            }
+        };
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = clock.instant();
+            trialInFlight = false;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+}
@@ -0,0 +1,50 @@
+package gov.cabinetoffice.gap.utils;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Counts the characters read through it, so the size of a body can be measured while it is parsed as a stream.
+ * <p>
+ * Parsers read ahead into their own buffers, so the count runs ahead of what has been parsed by at most one
+ * buffer.
+ */
+public class CountingReader extends FilterReader {
+
+    private long count;
+
+    public CountingReader(final Reader in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int c = super.read();
+        if (c >= 0) {
+            count++;
+        }
+        return c;
+    }
+
+    @Override
+    public int read(final char[] buffer, final int offset, final int length) throws IOException {
+        final int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            count += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        final long skipped = super.skip(n);
+        count += skipped;
+        return skipped;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+}
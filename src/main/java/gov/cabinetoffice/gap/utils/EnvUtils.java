@@ -0,0 +1,48 @@
+package gov.cabinetoffice.gap.utils;
+
+public class EnvUtils {
+
+    private EnvUtils() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Get environment variable or system property (for local testing)
+     * Checks environment variable first, then falls back to system property
+     */
+    public static String getEnvOrProperty(final String name) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            value = System.getProperty(name);
+        }
+        return value;
+    }
+
+    public static String getString(final String name, final String defaultValue) {
+        final String value = getEnvOrProperty(name);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    public static int getInt(final String name, final int defaultValue) {
+        return (int) getLong(name, defaultValue);
+    }
+
+    public static long getLong(final String name, final long defaultValue) {
+        final String value = getEnvOrProperty(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new RuntimeException(String.format("%s must be a whole number but was '%s'", name, value));
+        }
+    }
+
+    public static boolean getBoolean(final String name, final boolean defaultValue) {
+        final String value = getEnvOrProperty(name);
+        return value == null || value.isBlank() ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+}
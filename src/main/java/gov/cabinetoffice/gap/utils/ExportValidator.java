@@ -0,0 +1,80 @@
+package gov.cabinetoffice.gap.utils;
+
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import gov.cabinetoffice.gap.exceptions.InvalidExportException;
+import gov.cabinetoffice.gap.model.Submission;
+import gov.cabinetoffice.gap.model.SubmissionQuestion;
+import gov.cabinetoffice.gap.model.SubmissionSection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Checks a message and its submission have everything the export needs before any work is done on them, so an
+ * export that can never succeed fails before the attachments are downloaded rather than part way through.
+ */
+public class ExportValidator {
+
+    public static final List<String> REQUIRED_MESSAGE_ATTRIBUTES = List.of("submissionId", "emailAddress",
+            "exportBatchId", "applicationId", "schemeId");
+
+    private ExportValidator() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static void validateMessage(final SQSEvent.SQSMessage message) {
+        final Map<String, SQSEvent.MessageAttribute> attributes = message.getMessageAttributes();
+        final List<String> missing = REQUIRED_MESSAGE_ATTRIBUTES.stream()
+                .filter(name -> attributes == null || attributes.get(name) == null
+                        || isBlank(attributes.get(name).getStringValue()))
+                .toList();
+        if (!missing.isEmpty()) {
+            throw new InvalidExportException(String.format("Message %s is missing %s", message.getMessageId(),
+                    String.join(", ", missing)));
+        }
+    }
+
+    /**
+     * Checks the submission has the section and applicant name its file name is built from, and a GAP ID.
+     */
+    public static void validateSubmission(final String submissionId, final Submission submission) {
+        if (submission == null) {
+            throw new InvalidExportException("Submission " + submissionId + " was not found");
+        }
+
+        final List<String> problems = new ArrayList<>();
+        if (isBlank(submission.getGapId())) {
+            problems.add("it has no GAP ID");
+        }
+
+        final String detailsSectionId = Objects.equals(submission.getSchemeVersion(), 1) ? "ESSENTIAL"
+                : "ORGANISATION_DETAILS";
+        final Optional<SubmissionSection> detailsSection = submission.getSections() == null ? Optional.empty()
+                : submission.getSections().stream()
+                        .filter(section -> Objects.equals(section.getSectionId(), detailsSectionId))
+                        .findFirst();
+        if (detailsSection.isEmpty()) {
+            problems.add("it has no " + detailsSectionId + " section");
+        } else {
+            final Optional<SubmissionQuestion> orgName = detailsSection.get().getQuestions() == null
+                    ? Optional.empty()
+                    : detailsSection.get().mayGetQuestionById("APPLICANT_ORG_NAME");
+            if (orgName.isEmpty() || isBlank(orgName.get().getResponse())) {
+                problems.add("it has no APPLICANT_ORG_NAME answer in its " + detailsSectionId + " section");
+            }
+        }
+
+        if (!problems.isEmpty()) {
+            throw new InvalidExportException(String.format("Submission %s can't be exported: %s", submissionId,
+                    String.join(", ", problems)));
+        }
+    }
+
+    private static boolean isBlank(final String value) {
+        return value == null || value.isBlank();
+    }
+
+}
@@ -0,0 +1,141 @@
+package gov.cabinetoffice.gap.utils;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.retry.RetryUtils;
+import gov.cabinetoffice.gap.enums.FailureKind;
+import gov.cabinetoffice.gap.exceptions.BackendResponseException;
+import gov.cabinetoffice.gap.exceptions.CircuitBreakerOpenException;
+import gov.cabinetoffice.gap.exceptions.EphemeralStorageQuotaExceededException;
+import gov.cabinetoffice.gap.exceptions.InvalidExportException;
+
+import javax.net.ssl.SSLException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.nio.file.FileSystemException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sorts export failures into {@link FailureKind}s.
+ * <p>
+ * The exception and its causes are looked at in turn, so a failure wrapped by an executor or a zip step is
+ * classified by what went wrong underneath. Anything not recognised as transient is treated as permanent, as
+ * every failure was before.
+ * <p>
+ * Only IO on the way to the backend or S3 is transient: timeouts, refused or dropped connections, an open circuit
+ * breaker, and anything else raised by the OkHttp or AWS SDK call paths. IO on the local workspace, such as a file
+ * that can't be opened or written, fails the same way on every delivery, so it is permanent.
+ */
+public class FailureClassifier {
+
+    private static final Set<Integer> RETRYABLE_BACKEND_STATUSES = Set.of(408, 429);
+
+    private static final List<Class<? extends IOException>> TRANSPORT_FAILURES = List.of(
+            InterruptedIOException.class, SocketException.class, UnknownHostException.class, SSLException.class,
+            CircuitBreakerOpenException.class);
+
+    private static final List<Class<? extends IOException>> LOCAL_FILE_FAILURES = List.of(
+            FileNotFoundException.class, FileSystemException.class);
+
+    // IO raised from inside these is on the way to the backend or S3
+    private static final List<String> CLIENT_PACKAGES = List.of("okhttp3.", "okio.", "com.amazonaws.",
+            "org.apache.http.");
+
+    // JDK classes that only ever do IO on local files
+    private static final List<String> LOCAL_FILE_CLASSES = List.of("java.io.FileInputStream",
+            "java.io.FileOutputStream", "java.io.RandomAccessFile", "sun.nio.ch.FileChannelImpl", "sun.nio.fs.");
+
+    private static final List<String> JDK_PACKAGES = List.of("java.", "javax.", "jdk.", "sun.", "com.sun.");
+
+    private FailureClassifier() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static FailureKind classify(final Throwable failure) {
+        final Map<Throwable, Boolean> seen = new IdentityHashMap<>();
+        for (Throwable current = failure; current != null && seen.put(current, true) == null;
+                current = current.getCause()) {
+            final FailureKind kind = classifyOne(current);
+            if (kind != null) {
+                return kind;
+            }
+        }
+        return FailureKind.PERMANENT;
+    }
+
+    /**
+     * Null when this exception alone doesn't decide, e.g. a plain RuntimeException wrapping the real failure.
+     */
+    private static FailureKind classifyOne(final Throwable failure) {
+        if (failure instanceof InvalidExportException || failure instanceof EphemeralStorageQuotaExceededException) {
+            return FailureKind.PERMANENT;
+        }
+        if (failure instanceof BackendResponseException backendFailure) {
+            final int status = backendFailure.getStatusCode();
+            return status >= 500 || RETRYABLE_BACKEND_STATUSES.contains(status) ? FailureKind.RETRYABLE
+                    : FailureKind.PERMANENT;
+        }
+        if (failure instanceof AmazonServiceException serviceFailure) {
+            return RetryUtils.isRetryableServiceException(serviceFailure)
+                    || RetryUtils.isThrottlingException(serviceFailure)
+                    || RetryUtils.isClockSkewError(serviceFailure) ? FailureKind.RETRYABLE : FailureKind.PERMANENT;
+        }
+        if (failure instanceof SdkClientException clientFailure) {
+            // e.g. "Unable to store object contents to disk" is decided by the IO underneath
+            if (clientFailure.getCause() instanceof IOException) {
+                return null;
+            }
+            return clientFailure.isRetryable() ? FailureKind.RETRYABLE : FailureKind.PERMANENT;
+        }
+        if (failure instanceof IOException ioFailure) {
+            return isTransportFailure(ioFailure) ? FailureKind.RETRYABLE : FailureKind.PERMANENT;
+        }
+        if (failure instanceof InterruptedException) {
+            return FailureKind.RETRYABLE;
+        }
+        return null;
+    }
+
+    private static boolean isTransportFailure(final IOException failure) {
+        if (LOCAL_FILE_FAILURES.stream().anyMatch(type -> type.isInstance(failure)) || thrownByLocalFileIo(failure)) {
+            return false;
+        }
+        return TRANSPORT_FAILURES.stream().anyMatch(type -> type.isInstance(failure)) || thrownByClient(failure);
+    }
+
+    /**
+     * Whether the JDK frames the failure was thrown from, before any of ours or a library's, read or write a file.
+     */
+    private static boolean thrownByLocalFileIo(final Throwable failure) {
+        for (final StackTraceElement frame : failure.getStackTrace()) {
+            final String className = frame.getClassName();
+            if (LOCAL_FILE_CLASSES.stream().anyMatch(className::startsWith)) {
+                return true;
+            }
+            if (JDK_PACKAGES.stream().noneMatch(className::startsWith)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the first frame outside the JDK that the failure was thrown from belongs to the HTTP or S3 clients.
+     */
+    private static boolean thrownByClient(final Throwable failure) {
+        for (final StackTraceElement frame : failure.getStackTrace()) {
+            final String className = frame.getClassName();
+            if (JDK_PACKAGES.stream().noneMatch(className::startsWith)) {
+                return CLIENT_PACKAGES.stream().anyMatch(className::startsWith);
+            }
+        }
+        return false;
+    }
+
+}
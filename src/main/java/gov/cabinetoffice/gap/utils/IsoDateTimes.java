@@ -0,0 +1,135 @@
+package gov.cabinetoffice.gap.utils;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+/**
+ * ISO-8601 offset date-time parsing with a fast path for the shapes the backend actually sends:
+ * {@code yyyy-MM-ddTHH:mm[:ss[.fraction]]} followed by {@code Z} or {@code ±HH:MM}.
+ * <p>
+ * Anything else, including out-of-range values, falls back to {@link OffsetDateTime#parse(CharSequence)}, so the
+ * accepted inputs and the exceptions thrown are the same as the JDK parser's.
+ */
+public class IsoDateTimes {
+
+    private IsoDateTimes() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static OffsetDateTime parseOffsetDateTime(final String text) {
+        final OffsetDateTime parsed = tryParseFast(text);
+        return parsed != null ? parsed : OffsetDateTime.parse(text);
+    }
+
+    public static Instant parseInstant(final String text) {
+        return parseOffsetDateTime(text).toInstant();
+    }
+
+    public static ZonedDateTime parseZonedDateTime(final String text) {
+        return parseOffsetDateTime(text).toZonedDateTime();
+    }
+
+    private static OffsetDateTime tryParseFast(final String text) {
+        final int length = text.length();
+        if (length < 17 || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T'
+                || text.charAt(13) != ':') {
+            return null;
+        }
+
+        final int year = digits(text, 0, 4);
+        final int month = digits(text, 5, 2);
+        final int day = digits(text, 8, 2);
+        final int hour = digits(text, 11, 2);
+        final int minute = digits(text, 14, 2);
+        if ((year | month | day | hour | minute) < 0) {
+            return null;
+        }
+
+        int position = 16;
+        int second = 0;
+        int nano = 0;
+        if (position < length && text.charAt(position) == ':') {
+            second = digits(text, position + 1, 2);
+            if (second < 0) {
+                return null;
+            }
+            position += 3;
+
+            if (position < length && text.charAt(position) == '.') {
+                final int fractionStart = ++position;
+                while (position < length && isDigit(text.charAt(position))) {
+                    position++;
+                }
+                final int fractionDigits = position - fractionStart;
+                if (fractionDigits == 0 || fractionDigits > 9) {
+                    return null;
+                }
+                nano = digits(text, fractionStart, fractionDigits);
+                for (int i = fractionDigits; i < 9; i++) {
+                    nano *= 10;
+                }
+            }
+        }
+
+        final ZoneOffset offset = parseOffset(text, position);
+        if (offset == null) {
+            return null;
+        }
+
+        try {
+            return OffsetDateTime.of(year, month, day, hour, minute, second, nano, offset);
+        } catch (DateTimeException e) {
+            // let the JDK parser report invalid values in its usual way
+            return null;
+        }
+    }
+
+    private static ZoneOffset parseOffset(final String text, final int position) {
+        final int remaining = text.length() - position;
+        if (remaining == 1 && text.charAt(position) == 'Z') {
+            return ZoneOffset.UTC;
+        }
+        if (remaining != 6 || text.charAt(position + 3) != ':') {
+            return null;
+        }
+
+        final char sign = text.charAt(position);
+        final int hours = digits(text, position + 1, 2);
+        final int minutes = digits(text, position + 4, 2);
+        if ((sign != '+' && sign != '-') || (hours | minutes) < 0 || hours > 18 || minutes > 59) {
+            return null;
+        }
+        try {
+            return sign == '+' ? ZoneOffset.ofHoursMinutes(hours, minutes)
+                    : ZoneOffset.ofHoursMinutes(-hours, -minutes);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses {@code count} ASCII digits starting at {@code start}, or returns -1 if any of them isn't a digit.
+     */
+    private static int digits(final String text, final int start, final int count) {
+        if (start + count > text.length()) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            final char c = text.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+}
@@ -0,0 +1,86 @@
+package gov.cabinetoffice.gap.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import gov.cabinetoffice.gap.enums.GrantExportStatus;
+import gov.cabinetoffice.gap.enums.ResponseTypeEnum;
+import gov.cabinetoffice.gap.enums.SubmissionProjection;
+import gov.cabinetoffice.gap.enums.SubmissionSectionStatus;
+import gov.cabinetoffice.gap.model.Submission;
+import gov.cabinetoffice.gap.model.SubmissionQuestion;
+import gov.cabinetoffice.gap.model.SubmissionQuestionValidation;
+import gov.cabinetoffice.gap.model.SubmissionSection;
+
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * The lambda's single JSON stack.
+ * <p>
+ * The submission models, read for every export, have hand-written Gson adapters registered here, so they are not
+ * discovered through reflection at runtime; JsonCodecTest checks them against the models' fields. The small DTOs
+ * exchanged once or twice per export go through Gson's reflective adapters, so their JSON always follows their
+ * fields. Dates go through {@link IsoDateTimes}. The Gson instance is built once per container and is thread-safe.
+ */
+public class JsonCodec {
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(Instant.class, ModelAdapters.INSTANT)
+            .registerTypeAdapter(ZonedDateTime.class, ModelAdapters.ZONED_DATE_TIME)
+            .registerTypeAdapter(GrantExportStatus.class, ModelAdapters.enumAdapter(GrantExportStatus.class))
+            .registerTypeAdapter(ResponseTypeEnum.class, ModelAdapters.enumAdapter(ResponseTypeEnum.class))
+            .registerTypeAdapter(SubmissionSectionStatus.class,
+                    ModelAdapters.enumAdapter(SubmissionSectionStatus.class))
+            .registerTypeAdapter(Submission.class, ModelAdapters.SUBMISSION)
+            .registerTypeAdapter(SubmissionSection.class, ModelAdapters.SUBMISSION_SECTION)
+            .registerTypeAdapter(SubmissionQuestion.class, ModelAdapters.SUBMISSION_QUESTION)
+            .registerTypeAdapter(SubmissionQuestionValidation.class, ModelAdapters.SUBMISSION_QUESTION_VALIDATION)
+            .create();
+
+    private static final Gson EXPORT_GSON = GSON.newBuilder()
+            .registerTypeAdapter(Submission.class, ModelAdapters.SUBMISSION_EXPORT)
+            .registerTypeAdapter(SubmissionSection.class, ModelAdapters.SUBMISSION_SECTION_EXPORT)
+            .registerTypeAdapter(SubmissionQuestion.class, ModelAdapters.SUBMISSION_QUESTION_EXPORT)
+            .create();
+
+    private JsonCodec() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static Gson gson() {
+        return GSON;
+    }
+
+    /**
+     * The codec to read submission models with, given how much of each question the caller needs.
+     */
+    public static Gson gson(final SubmissionProjection projection) {
+        return projection == SubmissionProjection.EXPORT ? EXPORT_GSON : GSON;
+    }
+
+    public static <T> T fromJson(final Reader reader, final Class<T> clazz) {
+        return GSON.fromJson(reader, clazz);
+    }
+
+    public static <T> T fromJson(final Reader reader, final Class<T> clazz, final SubmissionProjection projection) {
+        return gson(projection).fromJson(reader, clazz);
+    }
+
+    public static <T> T fromJson(final String json, final Class<T> clazz) {
+        return GSON.fromJson(json, clazz);
+    }
+
+    public static <T> List<T> listFromJson(final String json, final Class<T> elementClass) {
+        final Type listType = TypeToken.getParameterized(List.class, elementClass).getType();
+        return GSON.fromJson(json, listType);
+    }
+
+    public static String toJson(final Object value) {
+        return GSON.toJson(value);
+    }
+
+}
@@ -0,0 +1,91 @@
+package gov.cabinetoffice.gap.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records latencies in microseconds into log-linear buckets, in the manner of an HDR histogram.
+ * <p>
+ * Values below {@value #SUB_BUCKETS} µs are kept exactly; above that each power of two is split into
+ * {@value #HALF_SUB_BUCKETS} buckets, so a percentile is never more than about 6% above the true value. Recording
+ * is lock-free, and the whole histogram takes a fixed few kilobytes whatever the range of values.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * HALF_SUB_BUCKETS + SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder totalMicros = new LongAdder();
+
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void record(final long nanos) {
+        final long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(bucketOf(micros));
+        count.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long maxMicros() {
+        return maxMicros.get();
+    }
+
+    public long meanMicros() {
+        final long recorded = count();
+        return recorded == 0 ? 0 : totalMicros.sum() / recorded;
+    }
+
+    /**
+     * The highest value in the bucket holding the given percentile, capped at the largest value recorded. Zero if
+     * nothing has been recorded.
+     */
+    public long percentileMicros(final double percentile) {
+        final long recorded = count();
+        if (recorded == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * recorded));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(highestValueIn(bucket), maxMicros());
+            }
+        }
+        return maxMicros();
+    }
+
+    static int bucketOf(final long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        final int magnitude = Long.SIZE - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return magnitude * HALF_SUB_BUCKETS + (int) (micros >>> magnitude);
+    }
+
+    static long highestValueIn(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int magnitude = bucket / HALF_SUB_BUCKETS - 1;
+        final long subBucket = bucket % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << magnitude) - 1;
+    }
+
+}
@@ -0,0 +1,418 @@
+package gov.cabinetoffice.gap.utils;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import gov.cabinetoffice.gap.enums.ResponseTypeEnum;
+import gov.cabinetoffice.gap.enums.SubmissionSectionStatus;
+import gov.cabinetoffice.gap.model.Submission;
+import gov.cabinetoffice.gap.model.SubmissionQuestion;
+import gov.cabinetoffice.gap.model.SubmissionQuestionValidation;
+import gov.cabinetoffice.gap.model.SubmissionSection;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Hand-written Gson adapters for the submission models and the dates and enums in them, see {@link JsonCodec}.
+ * Field names match the Java fields, unknown fields are skipped and nulls are left out when writing, the same as
+ * Gson's reflective defaults. A field added to a submission model has to be added to its adapter too.
+ */
+final class ModelAdapters {
+
+    private ModelAdapters() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    static final TypeAdapter<Instant> INSTANT = new TypeAdapter<Instant>() {
+
+        @Override
+        public void write(final JsonWriter out, final Instant value) throws IOException {
+            out.value(value == null ? null : value.toString());
+        }
+
+        @Override
+        public Instant read(final JsonReader in) throws IOException {
+            final String text = nextString(in);
+            return text == null ? null : IsoDateTimes.parseInstant(text);
+        }
+    };
+
+    static final TypeAdapter<ZonedDateTime> ZONED_DATE_TIME = new TypeAdapter<ZonedDateTime>() {
+
+        @Override
+        public void write(final JsonWriter out, final ZonedDateTime value) throws IOException {
+            out.value(value == null ? null : DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(value));
+        }
+
+        @Override
+        public ZonedDateTime read(final JsonReader in) throws IOException {
+            final String text = nextString(in);
+            return text == null ? null : IsoDateTimes.parseZonedDateTime(text);
+        }
+    };
+
+    static <E extends Enum<E>> TypeAdapter<E> enumAdapter(final Class<E> enumClass) {
+        return new TypeAdapter<E>() {
+
+            @Override
+            public void write(final JsonWriter out, final E value) throws IOException {
+                out.value(value == null ? null : value.name());
+            }
+
+            @Override
+            public E read(final JsonReader in) throws IOException {
+                return nextEnum(in, enumClass);
+            }
+        };
+    }
+
+    static final TypeAdapter<SubmissionQuestionValidation> SUBMISSION_QUESTION_VALIDATION =
+            new TypeAdapter<SubmissionQuestionValidation>() {
+
+        @Override
+        public void write(final JsonWriter out, final SubmissionQuestionValidation value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("mandatory").value(value.isMandatory());
+            out.name("minLength").value(value.getMinLength());
+            out.name("maxLength").value(value.getMaxLength());
+            out.name("minWords").value(value.getMinWords());
+            out.name("maxWords").value(value.getMaxWords());
+            out.name("greaterThanZero").value(value.isGreaterThanZero());
+            out.name("validInput").value(value.getValidInput());
+            out.name("maxFileSizeMB").value(value.getMaxFileSizeMB());
+            out.name("allowedTypes");
+            writeStringArray(out, value.getAllowedTypes());
+            out.endObject();
+        }
+
+        @Override
+        public SubmissionQuestionValidation read(final JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            final SubmissionQuestionValidation validation = new SubmissionQuestionValidation();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "mandatory" -> validation.setMandatory(nextBoolean(in));
+                    case "minLength" -> validation.setMinLength(nextInteger(in));
+                    case "maxLength" -> validation.setMaxLength(nextInteger(in));
+                    case "minWords" -> validation.setMinWords(nextInteger(in));
+                    case "maxWords" -> validation.setMaxWords(nextInteger(in));
+                    case "greaterThanZero" -> validation.setGreaterThanZero(nextBoolean(in));
+                    case "validInput" -> validation.setValidInput(nextString(in));
+                    case "maxFileSizeMB" -> {
+                        final Integer maxFileSizeMB = nextInteger(in);
+                        validation.setMaxFileSizeMB(maxFileSizeMB == null ? 0 : maxFileSizeMB);
+                    }
+                    case "allowedTypes" -> validation.setAllowedTypes(nextStringArray(in));
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return validation;
+        }
+    };
+
+    static final TypeAdapter<SubmissionQuestion> SUBMISSION_QUESTION = questionAdapter(null);
+
+    /**
+     * Reads only the question fields used to build the export document. The rest are skipped in the reader without
+     * being materialised.
+     */
+    static final TypeAdapter<SubmissionQuestion> SUBMISSION_QUESTION_EXPORT = questionAdapter(
+            Set.of("questionId", "fieldTitle", "displayText", "responseType", "response", "multiResponse"));
+
+    static final TypeAdapter<SubmissionSection> SUBMISSION_SECTION = sectionAdapter(SUBMISSION_QUESTION);
+
+    static final TypeAdapter<SubmissionSection> SUBMISSION_SECTION_EXPORT = sectionAdapter(SUBMISSION_QUESTION_EXPORT);
+
+    static final TypeAdapter<Submission> SUBMISSION = submissionAdapter(SUBMISSION_SECTION);
+
+    static final TypeAdapter<Submission> SUBMISSION_EXPORT = submissionAdapter(SUBMISSION_SECTION_EXPORT);
+
+    /**
+     * @param readFields the fields to read, or null for all of them
+     */
+    private static TypeAdapter<SubmissionQuestion> questionAdapter(final Set<String> readFields) {
+        return new TypeAdapter<SubmissionQuestion>() {
+
+            @Override
+            public void write(final JsonWriter out, final SubmissionQuestion value) throws IOException {
+                if (value == null) {
+                    out.nullValue();
+                    return;
+                }
+                out.beginObject();
+                out.name("attachmentId")
+                        .value(value.getAttachmentId() == null ? null : value.getAttachmentId().toString());
+                out.name("questionId").value(value.getQuestionId());
+                out.name("fieldTitle").value(value.getFieldTitle());
+                out.name("hintText").value(value.getHintText());
+                out.name("displayText").value(value.getDisplayText());
+                out.name("questionSuffix").value(value.getQuestionSuffix());
+                out.name("profileField").value(value.getProfileField());
+                out.name("fieldPrefix").value(value.getFieldPrefix());
+                out.name("adminSummary").value(value.getAdminSummary());
+                out.name("responseType")
+                        .value(value.getResponseType() == null ? null : value.getResponseType().name());
+                out.name("validation");
+                SUBMISSION_QUESTION_VALIDATION.write(out, value.getValidation());
+                out.name("options");
+                writeStringArray(out, value.getOptions());
+                out.name("response").value(value.getResponse());
+                out.name("multiResponse");
+                writeStringArray(out, value.getMultiResponse());
+                out.endObject();
+            }
+
+            @Override
+            public SubmissionQuestion read(final JsonReader in) throws IOException {
+                if (skipNull(in)) {
+                    return null;
+                }
+                final SubmissionQuestion question = new SubmissionQuestion();
+                in.beginObject();
+                while (in.hasNext()) {
+                    final String name = in.nextName();
+                    if (readFields != null && !readFields.contains(name)) {
+                        in.skipValue();
+                        continue;
+                    }
+                    switch (name) {
+                        case "attachmentId" -> question.setAttachmentId(nextUuid(in));
+                        case "questionId" -> question.setQuestionId(nextString(in));
+                        case "fieldTitle" -> question.setFieldTitle(nextString(in));
+                        case "hintText" -> question.setHintText(nextString(in));
+                        case "displayText" -> question.setDisplayText(nextString(in));
+                        case "questionSuffix" -> question.setQuestionSuffix(nextString(in));
+                        case "profileField" -> question.setProfileField(nextString(in));
+                        case "fieldPrefix" -> question.setFieldPrefix(nextString(in));
+                        case "adminSummary" -> question.setAdminSummary(nextString(in));
+                        case "responseType" -> question.setResponseType(nextEnum(in, ResponseTypeEnum.class));
+                        case "validation" -> question.setValidation(SUBMISSION_QUESTION_VALIDATION.read(in));
+                        case "options" -> question.setOptions(nextStringArray(in));
+                        case "response" -> question.setResponse(nextString(in));
+                        case "multiResponse" -> question.setMultiResponse(nextStringArray(in));
+                        default -> in.skipValue();
+                    }
+                }
+                in.endObject();
+                return question;
+            }
+        };
+    }
+
+    private static TypeAdapter<SubmissionSection> sectionAdapter(final TypeAdapter<SubmissionQuestion> questions) {
+        return new TypeAdapter<SubmissionSection>() {
+
+            @Override
+            public void write(final JsonWriter out, final SubmissionSection value) throws IOException {
+                if (value == null) {
+                    out.nullValue();
+                    return;
+                }
+                out.beginObject();
+                out.name("sectionId").value(value.getSectionId());
+                out.name("sectionTitle").value(value.getSectionTitle());
+                out.name("sectionStatus")
+                        .value(value.getSectionStatus() == null ? null : value.getSectionStatus().name());
+                out.name("questions");
+                writeList(out, value.getQuestions(), questions);
+                out.endObject();
+            }
+
+            @Override
+            public SubmissionSection read(final JsonReader in) throws IOException {
+                if (skipNull(in)) {
+                    return null;
+                }
+                final SubmissionSection section = new SubmissionSection();
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "sectionId" -> section.setSectionId(nextString(in));
+                        case "sectionTitle" -> section.setSectionTitle(nextString(in));
+                        case "sectionStatus" ->
+                                section.setSectionStatus(nextEnum(in, SubmissionSectionStatus.class));
+                        case "questions" -> section.setQuestions(readList(in, questions));
+                        default -> in.skipValue();
+                    }
+                }
+                in.endObject();
+                return section;
+            }
+        };
+    }
+
+    private static TypeAdapter<Submission> submissionAdapter(final TypeAdapter<SubmissionSection> sections) {
+        return new TypeAdapter<Submission>() {
+
+            @Override
+            public void write(final JsonWriter out, final Submission value) throws IOException {
+                if (value == null) {
+                    out.nullValue();
+                    return;
+                }
+                out.beginObject();
+                out.name("schemeId").value(value.getSchemeId());
+                out.name("schemeName").value(value.getSchemeName());
+                out.name("legalName").value(value.getLegalName());
+                out.name("gapId").value(value.getGapId());
+                out.name("submissionName").value(value.getSubmissionName());
+                out.name("submittedDate");
+                ZONED_DATE_TIME.write(out, value.getSubmittedDate());
+                out.name("sections");
+                writeList(out, value.getSections(), sections);
+                out.name("email").value(value.getEmail());
+                out.name("schemeVersion").value(value.getSchemeVersion());
+                out.name("hasAttachments").value(value.isHasAttachments());
+                out.endObject();
+            }
+
+            @Override
+            public Submission read(final JsonReader in) throws IOException {
+                if (skipNull(in)) {
+                    return null;
+                }
+                final Submission submission = new Submission();
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "schemeId" -> submission.setSchemeId(nextString(in));
+                        case "schemeName" -> submission.setSchemeName(nextString(in));
+                        case "legalName" -> submission.setLegalName(nextString(in));
+                        case "gapId" -> submission.setGapId(nextString(in));
+                        case "submissionName" -> submission.setSubmissionName(nextString(in));
+                        case "submittedDate" -> submission.setSubmittedDate(ZONED_DATE_TIME.read(in));
+                        case "sections" -> submission.setSections(readList(in, sections));
+                        case "email" -> submission.setEmail(nextString(in));
+                        case "schemeVersion" -> submission.setSchemeVersion(nextInteger(in));
+                        case "hasAttachments" -> submission.setHasAttachments(nextBoolean(in));
+                        default -> in.skipValue();
+                    }
+                }
+                in.endObject();
+                return submission;
+            }
+        };
+    }
+
+    private static boolean skipNull(final JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    static String nextString(final JsonReader in) throws IOException {
+        return switch (in.peek()) {
+            case NULL -> {
+                in.nextNull();
+                yield null;
+            }
+            case BOOLEAN -> Boolean.toString(in.nextBoolean());
+            default -> in.nextString();
+        };
+    }
+
+    private static Integer nextInteger(final JsonReader in) throws IOException {
+        return skipNull(in) ? null : in.nextInt();
+    }
+
+    private static boolean nextBoolean(final JsonReader in) throws IOException {
+        return switch (in.peek()) {
+            case NULL -> {
+                in.nextNull();
+                yield false;
+            }
+            case STRING -> Boolean.parseBoolean(in.nextString());
+            default -> in.nextBoolean();
+        };
+    }
+
+    private static UUID nextUuid(final JsonReader in) throws IOException {
+        final String text = nextString(in);
+        return text == null ? null : UUID.fromString(text);
+    }
+
+    /**
+     * Unknown constants read as null, as with Gson's built-in enum handling.
+     */
+    private static <E extends Enum<E>> E nextEnum(final JsonReader in, final Class<E> enumClass) throws IOException {
+        final String name = nextString(in);
+        if (name == null) {
+            return null;
+        }
+        try {
+            return Enum.valueOf(enumClass, name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static String[] nextStringArray(final JsonReader in) throws IOException {
+        if (skipNull(in)) {
+            return null;
+        }
+        final List<String> values = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            values.add(nextString(in));
+        }
+        in.endArray();
+        return values.toArray(new String[0]);
+    }
+
+    static <T> List<T> readList(final JsonReader in, final TypeAdapter<T> elementAdapter) throws IOException {
+        if (skipNull(in)) {
+            return null;
+        }
+        final List<T> values = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            values.add(elementAdapter.read(in));
+        }
+        in.endArray();
+        return values;
+    }
+
+    private static void writeStringArray(final JsonWriter out, final String[] values) throws IOException {
+        if (values == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (final String value : values) {
+            out.value(value);
+        }
+        out.endArray();
+    }
+
+    private static <T> void writeList(final JsonWriter out, final List<T> values, final TypeAdapter<T> elementAdapter)
+            throws IOException {
+        if (values == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (final T value : values) {
+            elementAdapter.write(out, value);
+        }
+        out.endArray();
+    }
+
+}
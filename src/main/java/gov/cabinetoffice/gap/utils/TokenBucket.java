@@ -0,0 +1,59 @@
+package gov.cabinetoffice.gap.utils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Token-bucket rate limiter.
+ * <p>
+ * The bucket holds up to {@code burst} permits and refills at {@code permitsPerSecond}. A caller that finds it
+ * empty still takes its permit straight away, leaving the bucket in debt, and is told how long to wait before using
+ * it. Later callers queue behind the debt, so permits are handed out in the order they were asked for.
+ */
+public class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final int permitsPerSecond;
+
+    private final int burst;
+
+    private final Clock clock;
+
+    private double tokens;
+
+    private Instant refilledAt;
+
+    public TokenBucket(final int permitsPerSecond, final int burst) {
+        this(permitsPerSecond, burst, Clock.systemUTC());
+    }
+
+    public TokenBucket(final int permitsPerSecond, final int burst, final Clock clock) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive but was " + permitsPerSecond);
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.clock = clock;
+        this.tokens = this.burst;
+        this.refilledAt = clock.instant();
+    }
+
+    /**
+     * Takes a permit and returns how long to wait before using it, zero if it can be used straight away.
+     */
+    public synchronized Duration reserve() {
+        final Instant now = clock.instant();
+        final long elapsedNanos = Math.max(0, Duration.between(refilledAt, now).toNanos());
+        tokens = Math.min(burst, tokens + elapsedNanos * permitsPerSecond / NANOS_PER_SECOND);
+        refilledAt = now;
+
+        tokens -= 1;
+        if (tokens >= 0) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos((long) Math.ceil(-tokens * NANOS_PER_SECOND / permitsPerSecond));
+    }
+
+}
@@ -0,0 +1,64 @@
+package gov.cabinetoffice.gap.benchmark;
+
+import gov.cabinetoffice.gap.service.AuthHeaderProvider;
+import gov.cabinetoffice.gap.service.RestService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares encrypting the Authorization header on every call with the cached provider.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main
+ * -Dexec.args=AuthHeaderBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class AuthHeaderBenchmark {
+
+    private static final String SECRET = "test-api-secret";
+
+    private static final String PUBLIC_KEY = "MIIBIjANBgkqhkiG9w0BAQEFAAOCAQ8AMIIBCgKCAQEA1Cg0wsx+v3KKqn9sveTVifxX60m09u96wq00/Ip/gg3g2h5pvpB0sDooC+aOVXIuJGO9f6aiwEqfT8Jkm21rs05ytIa99GmbGBC1a9Tb+JROiK0FG8tqQ2ol3Xfz6ygXlxm83eSTZmpmKi5/AfY5d0n7XXuuqRoYpmkq9jEyxnxN9maCvFQN5gBxlEbfc1mdwfe3for5E/1E7uuFc3M7MqyH/UbZZdMayJItNDU6F7eYF99mD8xh19WWLU9mhlaX2UqYJ8DriWTkSHqRPGgeY7Kr8tuIBgYutJ2BUl1tZsVUSe1R2aDiz5Il9vAS3sbJeAiGE7wFMCYRBst0MTk1kQIDAQAB";
+
+    private AuthHeaderProvider uncachedProvider;
+
+    private AuthHeaderProvider cachedProvider;
+
+    @Setup
+    public void setup() {
+        uncachedProvider = new AuthHeaderProvider(SECRET, PUBLIC_KEY, Duration.ZERO);
+        cachedProvider = new AuthHeaderProvider(SECRET, PUBLIC_KEY, Duration.ofMinutes(5));
+    }
+
+    @Benchmark
+    public String encryptPerCall() {
+        return RestService.encrypt(SECRET, PUBLIC_KEY);
+    }
+
+    @Benchmark
+    public String parsedKeyPerThreadCipher() {
+        return uncachedProvider.getHeader();
+    }
+
+    @Benchmark
+    public String cachedHeader() {
+        return cachedProvider.getHeader();
+    }
+
+}
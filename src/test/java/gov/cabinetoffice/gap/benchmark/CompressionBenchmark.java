@@ -0,0 +1,148 @@
+package gov.cabinetoffice.gap.benchmark;
+
+import gov.cabinetoffice.gap.service.CompressionInterceptor;
+import gov.cabinetoffice.gap.service.TransferStats;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ByteString;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares fetching a large submission body as it is and gzipped through {@link CompressionInterceptor}, from a
+ * stand-in backend that sends at most {@code kilobytesPerSecond}. The {@code fetch} benchmark shows the transfer
+ * time; {@code gzip} and {@code gunzip} show the CPU cost of compressing and decompressing the body alone.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main
+ * -Dexec.args=CompressionBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+    private static final List<String> WORDS = List.of("the", "project", "will", "deliver", "community", "support",
+            "funding", "local", "outcomes", "training", "young", "people", "services", "measure", "impact", "our",
+            "organisation", "partners", "volunteers", "across", "region", "years", "budget", "costs", "staff");
+
+    @Param({ "false", "true" })
+    public boolean gzipped;
+
+    @Param({ "8192" })
+    public int kilobytesPerSecond;
+
+    private ByteString body;
+
+    private ByteString gzippedBody;
+
+    private MockWebServer server;
+
+    private OkHttpClient client;
+
+    /**
+     * A submission with 200 long answers of about 300 words each, roughly 500KB
+     */
+    private static String largeSubmission() {
+        final Random random = new Random(42);
+        final StringBuilder json = new StringBuilder("{\"gapId\":\"GAP-1\",\"sections\":[{\"questions\":[");
+        for (int question = 0; question < 200; question++) {
+            json.append(question == 0 ? "" : ",").append("{\"questionId\":\"Q").append(question)
+                    .append("\",\"responseType\":\"LongAnswer\",\"response\":\"");
+            for (int word = 0; word < 300; word++) {
+                json.append(WORDS.get(random.nextInt(WORDS.size()))).append(' ');
+            }
+            json.append("\"}");
+        }
+        return json.append("]}]}").toString();
+    }
+
+    private static ByteString gzip(final ByteString body) throws IOException {
+        final Buffer gzipped = new Buffer();
+        try (BufferedSink sink = Okio.buffer(new GzipSink(gzipped))) {
+            sink.write(body);
+        }
+        return gzipped.readByteString();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        body = ByteString.encodeUtf8(largeSubmission());
+        gzippedBody = gzip(body);
+
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+
+            @NotNull
+            @Override
+            public MockResponse dispatch(@NotNull final RecordedRequest request) {
+                final MockResponse response = new MockResponse()
+                        .throttleBody(kilobytesPerSecond * 1024L / 100, 10, TimeUnit.MILLISECONDS);
+                if (gzipped && "gzip".equals(request.getHeader("Accept-Encoding"))) {
+                    return response.setHeader("Content-Encoding", "gzip").setBody(new Buffer().write(gzippedBody));
+                }
+                return response.setBody(new Buffer().write(body));
+            }
+        });
+        server.start();
+
+        final OkHttpClient.Builder builder = new OkHttpClient.Builder();
+        if (gzipped) {
+            builder.addInterceptor(new CompressionInterceptor(0, new TransferStats()));
+        }
+        client = builder.build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Benchmark
+    public long fetch() throws IOException {
+        try (Response response = client.newCall(new Request.Builder().url(server.url("/submission")).build())
+                .execute()) {
+            return response.body().source().readAll(Okio.blackhole());
+        }
+    }
+
+    @Benchmark
+    public ByteString gzip() throws IOException {
+        return gzip(body);
+    }
+
+    @Benchmark
+    public long gunzip() throws IOException {
+        return Okio.buffer(new GzipSource(new Buffer().write(gzippedBody))).readAll(Okio.blackhole());
+    }
+
+}
@@ -0,0 +1,142 @@
+package gov.cabinetoffice.gap.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializer;
+import gov.cabinetoffice.gap.enums.SubmissionProjection;
+import gov.cabinetoffice.gap.model.Submission;
+import gov.cabinetoffice.gap.model.SubmissionSection;
+import gov.cabinetoffice.gap.utils.IsoDateTimes;
+import gov.cabinetoffice.gap.utils.JsonCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous JSON handling (reflective Gson, a new Jackson ObjectMapper per call, JDK date parsing) with
+ * {@link JsonCodec} and {@link IsoDateTimes}. The {@code cold*} benchmarks run once per fresh JVM to show the cost a
+ * newly started lambda pays on its first submission.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main
+ * -Dexec.args=JsonCodecBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    private static final String TIMESTAMP = "2023-03-14T09:26:53.123456+01:00";
+
+    private static final String SECTIONS_JSON = """
+            [{"sectionId":"ESSENTIAL","sectionTitle":"Essential Information","sectionStatus":"COMPLETED","questions":[
+              {"questionId":"APPLICANT_ORG_NAME","fieldTitle":"Enter the name of your organisation",
+               "responseType":"ShortAnswer","validation":{"mandatory":true,"maxLength":250},"response":"Some company"},
+              {"questionId":"APPLICANT_ORG_ADDRESS","fieldTitle":"Enter your organisation's address",
+               "responseType":"AddressInput","validation":{"mandatory":true},
+               "multiResponse":["1 Street","","London","","AB1 2CD"]},
+              {"questionId":"APPLICANT_TYPE","fieldTitle":"Choose your organisation type","responseType":"Dropdown",
+               "options":["Limited company","Charity","Other"],"response":"Charity"}]},
+             {"sectionId":"CUSTOM","sectionTitle":"Project details","sectionStatus":"COMPLETED","questions":[
+              {"questionId":"Q1","fieldTitle":"Describe your project","responseType":"LongAnswer",
+               "validation":{"mandatory":true,"minWords":1,"maxWords":500},"response":"A long answer"},
+              {"questionId":"Q2","fieldTitle":"Upload a file","responseType":"SingleFileUpload",
+               "attachmentId":"a1b2c3d4-0000-4000-8000-000000000001","response":"plan.pdf",
+               "validation":{"maxFileSizeMB":300,"allowedTypes":["pdf","docx"]}}]}]""";
+
+    private static final String SUBMISSION_JSON = """
+            {"schemeId":"1","schemeName":"Test scheme","legalName":"Some company","gapId":"GAP-1",
+             "submissionName":"My application","submittedDate":"%s","email":"test@example.com",
+             "schemeVersion":2,"hasAttachments":true,"sections":%s}""".formatted(TIMESTAMP, SECTIONS_JSON);
+
+    private final Gson reflectiveGson = reflectiveGson();
+
+    private static Gson reflectiveGson() {
+        return new GsonBuilder().registerTypeAdapter(ZonedDateTime.class,
+                (JsonDeserializer<ZonedDateTime>) (json, type, context) -> OffsetDateTime
+                        .parse(json.getAsJsonPrimitive().getAsString()).toZonedDateTime())
+                .create();
+    }
+
+    private static List<SubmissionSection> jacksonPerCall() throws Exception {
+        return new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .readValue(SECTIONS_JSON, new TypeReference<List<SubmissionSection>>() {
+                });
+    }
+
+    @Benchmark
+    public Submission reflectiveGsonSubmission() {
+        return reflectiveGson.fromJson(SUBMISSION_JSON, Submission.class);
+    }
+
+    @Benchmark
+    public Submission codecSubmission() {
+        return JsonCodec.fromJson(SUBMISSION_JSON, Submission.class);
+    }
+
+    @Benchmark
+    public Submission codecExportProjectionSubmission() {
+        return JsonCodec.gson(SubmissionProjection.EXPORT).fromJson(SUBMISSION_JSON, Submission.class);
+    }
+
+    @Benchmark
+    public List<SubmissionSection> jacksonObjectMapperPerCallSections() throws Exception {
+        return jacksonPerCall();
+    }
+
+    @Benchmark
+    public List<SubmissionSection> codecSections() {
+        return JsonCodec.listFromJson(SECTIONS_JSON, SubmissionSection.class);
+    }
+
+    @Benchmark
+    public OffsetDateTime jdkDateParse() {
+        return OffsetDateTime.parse(TIMESTAMP);
+    }
+
+    @Benchmark
+    public OffsetDateTime fastDateParse() {
+        return IsoDateTimes.parseOffsetDateTime(TIMESTAMP);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public Submission coldReflectiveGsonAndJackson() throws Exception {
+        final Submission submission = reflectiveGson().fromJson(SUBMISSION_JSON, Submission.class);
+        submission.setSections(jacksonPerCall());
+        return submission;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public Submission coldCodec() {
+        final Submission submission = JsonCodec.fromJson(SUBMISSION_JSON, Submission.class);
+        submission.setSections(JsonCodec.listFromJson(SECTIONS_JSON, SubmissionSection.class));
+        return submission;
+    }
+
+}
@@ -12,8 +12,10 @@ import com.amazonaws.services.sns.AmazonSNSClientBuilder;
 import com.amazonaws.services.sns.model.PublishRequest;
 import com.amazonaws.services.sns.model.PublishResult;
 import gov.cabinetoffice.gap.enums.GrantExportStatus;
-import gov.cabinetoffice.gap.model.GrantExportDTO;
-import gov.cabinetoffice.gap.model.GrantExportListDTO;
+import gov.cabinetoffice.gap.enums.SubmissionProjection;
+import gov.cabinetoffice.gap.model.ExportCompletionDTO;
+import gov.cabinetoffice.gap.model.ExportRecordUpdateDTO;
+import gov.cabinetoffice.gap.model.Submission;
 import gov.cabinetoffice.gap.service.*;
 import gov.cabinetoffice.gap.testData.TestContext;
 import gov.cabinetoffice.gap.utils.HelperUtils;
@@ -25,10 +27,14 @@ import org.mockito.MockedStatic;
 import org.mockito.stubbing.Answer;
 
 import java.io.File;
-import java.time.Instant;
-import java.util.Collections;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.SocketException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static gov.cabinetoffice.gap.testData.SubmissionTestData.SCHEME_ID;
 import static gov.cabinetoffice.gap.testData.SubmissionTestData.V1_SUBMISSION_WITH_ESSENTIAL_SECTION;
@@ -77,6 +83,19 @@ public class HandlerTest {
         mockedSubmissionService.clearInvocations();
         mockedSnsBuilder.clearInvocations();
         mockedNotifyService.clearInvocations();
+
+        mockedExportService.when(() -> ExportRecordService.updateExportRecordsAsync(any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        mockedExportService.when(() -> ExportRecordService.updateGrantExportBatchRecordStatusAsync(any(), anyString(), any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        mockedExportService.when(() -> ExportRecordService.getRemainingExportsCountAsync(any(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(0L));
+        mockedExportService.when(() -> ExportRecordService.getFailedExportsCountAsync(any(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(0L));
+        mockedExportService.when(() -> ExportRecordService.getOutstandingExportsCountAsync(any(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(0L));
+        mockedExportService.when(() -> ExportRecordService.completeExportRecord(any(), anyString(), anyString(), any()))
+                .thenReturn(new ExportCompletionDTO(0L, 0L));
     }
 
     @AfterAll
@@ -89,6 +108,16 @@ public class HandlerTest {
         mockedNotifyService.close();
     }
 
+    private static List<ExportRecordUpdateDTO> statusUpdate(final String exportBatchId, final String submissionId,
+            final GrantExportStatus status) {
+        return List.of(new ExportRecordUpdateDTO(exportBatchId, submissionId, status, null, false));
+    }
+
+    private static List<ExportRecordUpdateDTO> locationUpdate(final String exportBatchId, final String submissionId,
+            final String s3ObjectKey) {
+        return List.of(new ExportRecordUpdateDTO(exportBatchId, submissionId, null, s3ObjectKey, true));
+    }
+
     private Context createContext() {
         return new TestContext();
     }
@@ -114,16 +143,129 @@ public class HandlerTest {
         final String exportBatchId = event.getRecords().get(0).getMessageAttributes().get("exportBatchId")
                 .getStringValue();
 
-        when(SubmissionService.getSubmissionData(any(), anyString(), anyString())).thenThrow(new RuntimeException());
+        when(SubmissionService.getSubmissionData(any(), anyString(), anyString(), any())).thenThrow(new RuntimeException());
 
         final Handler handler = new Handler();
         handler.handleRequest(event, contextMock);
 
-        mockedExportService.verify(() -> ExportRecordService.updateExportRecordStatus(any(), eq(exportBatchId), eq(submissionId),
-                eq(GrantExportStatus.PROCESSING)));
-        mockedSubmissionService.verify(() -> SubmissionService.getSubmissionData(any(), eq(exportBatchId), eq(submissionId)));
-        mockedExportService.verify(() -> ExportRecordService.updateExportRecordStatus(any(), eq(exportBatchId), eq(submissionId),
-                eq(GrantExportStatus.FAILED)));
+        mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(any(),
+                eq(statusUpdate(exportBatchId, submissionId, GrantExportStatus.PROCESSING))));
+        mockedSubmissionService.verify(() -> SubmissionService.getSubmissionData(any(), eq(exportBatchId), eq(submissionId), eq(SubmissionProjection.EXPORT)));
+        mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(any(),
+                eq(statusUpdate(exportBatchId, submissionId, GrantExportStatus.FAILED))));
+        mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(any(),
+                argThat(updates -> updates.stream().anyMatch(ExportRecordUpdateDTO::isS3ObjectKeyChanged))),
+                never());
+    }
+
+    @Test
+    void handsTheMessageBackToTheQueueWhenExportFailsForAReasonThatMayPass() throws Exception {
+        final SQSEvent event = EventLoader.loadSQSEvent("testEvent.json");
+        final Context contextMock = createContext();
+        final String messageId = event.getRecords().get(0).getMessageId();
+
+        when(SubmissionService.getSubmissionData(any(), anyString(), anyString(), any()))
+                .thenThrow(new SocketException("Connection reset"));
+
+        final Handler handler = new Handler();
+        final SQSBatchResponse response = handler.handleRequest(event, contextMock);
+
+        assertEquals(new SQSBatchResponse(List.of(new SQSBatchResponse.BatchItemFailure(messageId))), response);
+        mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(any(),
+                argThat(updates -> updates.stream().anyMatch(update -> update.getStatus() == GrantExportStatus.FAILED))),
+                never());
+        mockedExportService.verify(() -> ExportRecordService.getRemainingExportsCountAsync(any(), anyString()), never());
+    }
+
+    @Test
+    void marksTheExportFailedWhenItsLastDeliveryFailsForAReasonThatMayPass() throws Exception {
+        final SQSEvent event = EventLoader.loadSQSEvent("testEvent.json");
+        final Context contextMock = createContext();
+        event.getRecords().get(0).setAttributes(new HashMap<>(Map.of("ApproximateReceiveCount", "3")));
+        final String submissionId = event.getRecords().get(0).getMessageAttributes().get("submissionId")
+                .getStringValue();
+        final String exportBatchId = event.getRecords().get(0).getMessageAttributes().get("exportBatchId")
+                .getStringValue();
+
+        when(SubmissionService.getSubmissionData(any(), anyString(), anyString(), any()))
+                .thenThrow(new SocketException("Connection reset"));
+
+        final Handler handler = new Handler();
+        final SQSBatchResponse response = handler.handleRequest(event, contextMock);
+
+        assertEquals(new SQSBatchResponse(List.of()), response);
+        mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(any(),
+                eq(statusUpdate(exportBatchId, submissionId, GrantExportStatus.FAILED))));
+    }
+
+    @Test
+    void failsAnInvalidSubmissionBeforeDownloadingItsAttachments() throws Exception {
+        final SQSEvent event = EventLoader.loadSQSEvent("testEvent.json");
+        final Context contextMock = createContext();
+        final String submissionId = event.getRecords().get(0).getMessageAttributes().get("submissionId")
+                .getStringValue();
+        final String exportBatchId = event.getRecords().get(0).getMessageAttributes().get("exportBatchId")
+                .getStringValue();
+
+        when(SubmissionService.getSubmissionData(any(), anyString(), anyString(), any()))
+                .thenReturn(Submission.builder().schemeVersion(1).gapId("GAP-LL-20220927-00001")
+                        .sections(List.of()).build());
+
+        try (final MockedStatic<ZipService> mockedZipService = mockStatic(ZipService.class)) {
+            final Handler handler = new Handler();
+            final SQSBatchResponse response = handler.handleRequest(event, contextMock);
+
+            assertEquals(new SQSBatchResponse(List.of()), response);
+            mockedZipService.verify(() -> ZipService.createZip(any(), any(), anyString(), anyString(), anyString(), eq(true)),
+                    never());
+            mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(any(),
+                    eq(statusUpdate(exportBatchId, submissionId, GrantExportStatus.FAILED))));
+        }
+    }
+
+    @Test
+    void dropsAMessageMissingAnAttributeWithoutFailingTheOthers() {
+        final SQSEvent event = EventLoader.loadSQSEvent("testEvent.json");
+        final Context contextMock = createContext();
+        final String submissionId = event.getRecords().get(0).getMessageAttributes().get("submissionId")
+                .getStringValue();
+        final String exportBatchId = event.getRecords().get(0).getMessageAttributes().get("exportBatchId")
+                .getStringValue();
+        event.getRecords().get(0).getMessageAttributes().remove("emailAddress");
+
+        final Handler handler = new Handler();
+        final SQSBatchResponse response = handler.handleRequest(event, contextMock);
+
+        assertEquals(new SQSBatchResponse(List.of()), response);
+        mockedSubmissionService.verify(() -> SubmissionService.getSubmissionData(any(), anyString(), anyString(), any()),
+                never());
+        mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(any(),
+                eq(statusUpdate(exportBatchId, submissionId, GrantExportStatus.FAILED))));
+        // without an email address the batch is left for the backend to finish
+        mockedNotifyService.verify(() -> NotifyService.sendConfirmationEmail(any(), anyString(), anyString(), anyString(),
+                anyString()), never());
+    }
+
+    @Test
+    void finishesTheBatchWhenADroppedMessageWasItsLastExport() {
+        final SQSEvent event = EventLoader.loadSQSEvent("testEvent.json");
+        final Context contextMock = createContext();
+        final Map<String, SQSEvent.MessageAttribute> attributes = event.getRecords().get(0).getMessageAttributes();
+        final String submissionId = attributes.get("submissionId").getStringValue();
+        final String exportBatchId = attributes.get("exportBatchId").getStringValue();
+        final String emailAddress = attributes.get("emailAddress").getStringValue();
+        final String schemeId = attributes.get("schemeId").getStringValue();
+        attributes.remove("applicationId");
+
+        final Handler handler = new Handler();
+        final SQSBatchResponse response = handler.handleRequest(event, contextMock);
+
+        assertEquals(new SQSBatchResponse(List.of()), response);
+        mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(any(),
+                eq(statusUpdate(exportBatchId, submissionId, GrantExportStatus.FAILED))));
+        mockedExportService.verify(() -> ExportRecordService.getRemainingExportsCountAsync(any(), eq(exportBatchId)));
+        mockedNotifyService.verify(() -> NotifyService.sendConfirmationEmail(any(), eq(emailAddress), eq(exportBatchId),
+                eq(schemeId), eq(submissionId)));
     }
 
     @Test
@@ -139,7 +281,7 @@ public class HandlerTest {
 
         final String expectedFilename = "test_org_name_GAP_LL_20220927_00001";
 
-        mockedSubmissionService.when(() -> SubmissionService.getSubmissionData(any(), anyString(), anyString()))
+        mockedSubmissionService.when(() -> SubmissionService.getSubmissionData(any(), anyString(), anyString(), any()))
                 .thenReturn(V1_SUBMISSION_WITH_ESSENTIAL_SECTION);
 
         mockedHelperUtils
@@ -151,51 +293,106 @@ public class HandlerTest {
         mockedHelperUtils.when(() -> HelperUtils.getRedirectUrl(SCHEME_ID, exportBatchId))
                 .thenReturn("test.co.uk/testing");
 
-        mockedExportService.when(() -> ExportRecordService.getOutstandingExportsCount(any(), eq(exportBatchId))).thenReturn(0L);
+        mockedExportService.when(() -> ExportRecordService.getOutstandingExportsCountAsync(any(), eq(exportBatchId))).thenReturn(CompletableFuture.completedFuture(0L));
 
         try (final MockedStatic<OdtService> mockedOdtService = mockStatic(OdtService.class);
              final MockedStatic<ZipService> mockedZipService = mockStatic(ZipService.class)) {
 
-            mockedZipService.when(() -> ZipService.createZip(any(), anyString(), anyString(), anyString(), eq(true)))
+            mockedZipService.when(() -> ZipService.createZip(any(), any(), anyString(), anyString(), anyString(), eq(true)))
                     .thenThrow(new RuntimeException());
 
-            mockedZipService.when(() -> ZipService.createZip(any(), anyString(), anyString(), anyString(), eq(false)))
+            mockedZipService.when(() -> ZipService.createZip(any(), any(), anyString(), anyString(), anyString(), eq(false)))
                     .thenAnswer((Answer<Void>) invocation -> null);
 
             final String mockS3Key = V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getGapId() + "/attachments.zip";
 
-            mockedZipService.when(() -> ZipService.uploadZip(eq(V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getGapId()), any()))
+            mockedZipService.when(() -> ZipService.uploadZip(any(), eq(V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getGapId()), any()))
                     .thenReturn(mockS3Key);
 
             Handler handler = new Handler();
             SQSBatchResponse response = handler.handleRequest(event, contextMock);
 
-            assertEquals(new SQSBatchResponse(), response);
+            assertEquals(new SQSBatchResponse(List.of()), response);
 
             // STEP 0
-            mockedExportService.verify(() -> ExportRecordService.updateExportRecordStatus(any(), eq(exportBatchId), eq(submissionId),
-                    eq(GrantExportStatus.PROCESSING)), atLeastOnce());
+            mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(any(),
+                    eq(statusUpdate(exportBatchId, submissionId, GrantExportStatus.PROCESSING))), atLeastOnce());
 
             // STEP 1
-            mockedSubmissionService.verify(() -> SubmissionService.getSubmissionData(any(), eq(exportBatchId), eq(submissionId)), atLeastOnce());
+            mockedSubmissionService.verify(() -> SubmissionService.getSubmissionData(any(), eq(exportBatchId), eq(submissionId), eq(SubmissionProjection.EXPORT)), atLeastOnce());
 
             // STEP 2
             mockedOdtService
-                    .verify(() -> OdtService.generateSingleOdt(V1_SUBMISSION_WITH_ESSENTIAL_SECTION, expectedFilename));
+                    .verify(() -> OdtService.generateSingleOdt(eq(V1_SUBMISSION_WITH_ESSENTIAL_SECTION), eq(expectedFilename), any()));
 
             // STEP 3
-            mockedZipService.verify(() -> ZipService.createZip(s3client, expectedFilename, applicationId, submissionId, true));
+            mockedZipService.verify(() -> ZipService.createZip(eq(s3client), any(), eq(expectedFilename), eq(applicationId), eq(submissionId), eq(true)));
 
             // Inside catch block
-            mockedZipService.verify(() -> ZipService.createZip(s3client, expectedFilename, applicationId, submissionId, false));
+            mockedZipService.verify(() -> ZipService.createZip(eq(s3client), any(), eq(expectedFilename), eq(applicationId), eq(submissionId), eq(false)));
 
-            mockedZipService.verify(() -> ZipService.uploadZip(V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getGapId(), "attachments"));
+            mockedZipService.verify(() -> ZipService.uploadZip(any(), eq(V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getGapId()), eq("attachments")));
 
-            mockedExportService.verify(() -> ExportRecordService.addS3ObjectKeyToExportRecord(any(), eq(exportBatchId), eq(submissionId),
-                    eq(mockS3Key)));
+            // FAILED and the attachments location are each sent in the background as their stage ends
+            mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(any(),
+                    eq(statusUpdate(exportBatchId, submissionId, GrantExportStatus.FAILED))));
+            mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(any(),
+                    eq(locationUpdate(exportBatchId, submissionId, mockS3Key))));
+        }
+    }
 
-            mockedExportService.verify(() -> ExportRecordService.updateExportRecordStatus(any(), eq(exportBatchId), eq(submissionId),
-                    eq(GrantExportStatus.FAILED)), atLeastOnce());
+    @Test
+    void fetchesTheSubmissionsOfAMultiRecordEventTogether() {
+        final SQSEvent event = EventLoader.loadSQSEvent("multiRecordTestEvent.json");
+        final Context contextMock = createContext();
+        final String firstSubmissionId = event.getRecords().get(0).getMessageAttributes().get("submissionId")
+                .getStringValue();
+        final String secondSubmissionId = event.getRecords().get(1).getMessageAttributes().get("submissionId")
+                .getStringValue();
+        final String exportBatchId = event.getRecords().get(0).getMessageAttributes().get("exportBatchId")
+                .getStringValue();
+
+        mockedSubmissionService.when(() -> SubmissionService.streamSubmissionData(any(), anyString(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    final SubmissionService.StreamedSubmissionHandler onSubmission = invocation.getArgument(4);
+                    onSubmission.handle(firstSubmissionId, V1_SUBMISSION_WITH_ESSENTIAL_SECTION, 100);
+                    onSubmission.handle(secondSubmissionId, V1_SUBMISSION_WITH_ESSENTIAL_SECTION, 100);
+                    return CompletableFuture.completedFuture(2);
+                });
+
+        mockedHelperUtils
+                .when(() -> HelperUtils.generateFilename("test org name", V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getGapId()))
+                .thenCallRealMethod();
+
+        // other exports of the batch are still outstanding, so neither record builds the super zip
+        mockedExportService.when(() -> ExportRecordService.completeExportRecord(any(), anyString(), anyString(), any()))
+                .thenReturn(new ExportCompletionDTO(1L, 0L));
+
+        try (final MockedStatic<OdtService> mockedOdtService = mockStatic(OdtService.class);
+             final MockedStatic<ZipService> mockedZipService = mockStatic(ZipService.class)) {
+
+            mockedZipService.when(() -> ZipService.createZip(any(), any(), anyString(), anyString(), anyString(), anyBoolean()))
+                    .thenAnswer((Answer<Void>) invocation -> null);
+
+            mockedZipService.when(() -> ZipService.uploadZip(any(), anyString(), any()))
+                    .thenReturn("mock_filename.zip");
+
+            Handler handler = new Handler();
+            SQSBatchResponse response = handler.handleRequest(event, contextMock);
+
+            assertEquals(new SQSBatchResponse(List.of()), response);
+
+            // STEP 1 - one request for both submissions
+            mockedSubmissionService.verify(() -> SubmissionService.streamSubmissionData(any(), eq(exportBatchId),
+                    eq(List.of(firstSubmissionId, secondSubmissionId)), eq(SubmissionProjection.EXPORT), any()));
+            mockedSubmissionService.verify(() -> SubmissionService.getSubmissionData(any(), anyString(), anyString(), any()), never());
+
+            // STEPS 3, 5 & 6 - both records are exported
+            mockedZipService.verify(() -> ZipService.createZip(eq(s3client), any(), anyString(), anyString(), eq(firstSubmissionId), eq(true)));
+            mockedZipService.verify(() -> ZipService.createZip(eq(s3client), any(), anyString(), anyString(), eq(secondSubmissionId), eq(true)));
+            mockedExportService.verify(() -> ExportRecordService.completeExportRecord(any(), eq(exportBatchId), eq(firstSubmissionId), any()));
+            mockedExportService.verify(() -> ExportRecordService.completeExportRecord(any(), eq(exportBatchId), eq(secondSubmissionId), any()));
+            mockedNotifyService.verify(() -> NotifyService.sendConfirmationEmail(any(), anyString(), anyString(), anyString(), anyString()), never());
         }
     }
 
@@ -215,22 +412,15 @@ public class HandlerTest {
         final String expectedFilename = "test_org_name_GAP_LL_20220927_00001";
 
         final UUID exportId = UUID.randomUUID();
-        final List<GrantExportDTO> grantExports = Collections.singletonList(new GrantExportDTO(
-                exportId,
-                UUID.randomUUID(),
-                1,
-                GrantExportStatus.COMPLETE,
-                "test-email@gamil.com",
-                Instant.now(),
-                1,
-                null,
-                "location.zip"));
-        final GrantExportListDTO completedGrantExportsMock = new GrantExportListDTO(exportId, grantExports);
-
-        mockedExportService.when(() -> ExportRecordService.getCompletedExportRecordsByBatchId(any(), anyString()))
+        final CompletedExportPages completedGrantExportsMock = new CompletedExportPages(
+                page -> new GrantExportIterator(new StringReader("{\"exportBatchId\":\"" + exportId
+                        + "\",\"grantExports\":[{\"exportBatchId\":\"" + exportId
+                        + "\",\"status\":\"COMPLETE\",\"location\":\"location.zip\"}]}")));
+
+        mockedExportService.when(() -> ExportRecordService.streamCompletedExportRecordsByBatchId(any(), anyString()))
                 .thenReturn(completedGrantExportsMock);
 
-        mockedSubmissionService.when(() -> SubmissionService.getSubmissionData(any(), anyString(), anyString()))
+        mockedSubmissionService.when(() -> SubmissionService.getSubmissionData(any(), anyString(), anyString(), any()))
                 .thenReturn(V1_SUBMISSION_WITH_ESSENTIAL_SECTION);
 
         mockedHelperUtils
@@ -242,58 +432,54 @@ public class HandlerTest {
         mockedHelperUtils.when(() -> HelperUtils.getRedirectUrl(SCHEME_ID, exportBatchId))
                 .thenReturn("test.co.uk/testing");
 
-        mockedExportService.when(() -> ExportRecordService.getRemainingExportsCount(any(), eq(exportBatchId))).thenReturn(0L);
+        mockedExportService.when(() -> ExportRecordService.completeExportRecord(any(), eq(exportBatchId), eq(submissionId), any()))
+                .thenReturn(new ExportCompletionDTO(0L, 0L));
 
         try (final MockedStatic<OdtService> mockedOdtService = mockStatic(OdtService.class);
              final MockedStatic<ZipService> mockedZipService = mockStatic(ZipService.class)) {
 
-            mockedZipService.when(() -> ZipService.createZip(any(), anyString(), anyString(), anyString(), anyBoolean()))
+            mockedZipService.when(() -> ZipService.createZip(any(), any(), anyString(), anyString(), anyString(), anyBoolean()))
                     .thenAnswer((Answer<Void>) invocation -> null);
 
-            mockedZipService.when(() -> ZipService.createSuperZip(completedGrantExportsMock.getGrantExports()))
+            mockedZipService.when(() -> ZipService.createSuperZip(any(), eq(completedGrantExportsMock)))
                     .thenAnswer((Answer<Void>) invocation -> null);
 
             final String mockS3Key = V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getGapId() + "/mock_filename.zip";
             final String mockBatchS3Key = V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getSchemeName() + "/location.zip";
 
-            mockedZipService.when(() -> ZipService.uploadZip(eq(V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getGapId()), any()))
+            mockedZipService.when(() -> ZipService.uploadZip(any(), eq(V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getGapId()), any()))
                     .thenReturn(mockS3Key);
 
-            mockedZipService.when(() -> ZipService.uploadZip(eq(V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getSchemeId()), any()))
+            mockedZipService.when(() -> ZipService.uploadZip(any(), eq(V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getSchemeId()), any()))
                     .thenReturn(mockBatchS3Key);
 
             Handler handler = new Handler();
             SQSBatchResponse response = handler.handleRequest(event, contextMock);
 
-            assertEquals(new SQSBatchResponse(), response);
+            assertEquals(new SQSBatchResponse(List.of()), response);
 
             // STEP 0
-            mockedExportService.verify(() -> ExportRecordService.updateExportRecordStatus(any(), eq(exportBatchId), eq(submissionId),
-                    eq(GrantExportStatus.PROCESSING)), atLeastOnce());
+            mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(any(),
+                    eq(statusUpdate(exportBatchId, submissionId, GrantExportStatus.PROCESSING))), atLeastOnce());
 
             // STEP 1
-            mockedSubmissionService.verify(() -> SubmissionService.getSubmissionData(any(), eq(exportBatchId), eq(submissionId)), atLeastOnce());
+            mockedSubmissionService.verify(() -> SubmissionService.getSubmissionData(any(), eq(exportBatchId), eq(submissionId), eq(SubmissionProjection.EXPORT)), atLeastOnce());
 
             // STEP 2
             mockedOdtService
-                    .verify(() -> OdtService.generateSingleOdt(V1_SUBMISSION_WITH_ESSENTIAL_SECTION, expectedFilename));
+                    .verify(() -> OdtService.generateSingleOdt(eq(V1_SUBMISSION_WITH_ESSENTIAL_SECTION), eq(expectedFilename), any()));
 
             // STEP 3
-            mockedZipService.verify(() -> ZipService.createZip(s3client, expectedFilename, applicationId, submissionId, true));
+            mockedZipService.verify(() -> ZipService.createZip(eq(s3client), any(), eq(expectedFilename), eq(applicationId), eq(submissionId), eq(true)));
 
             // STEP 4
-            mockedZipService.verify(() -> ZipService.uploadZip(V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getGapId(), expectedFilename));
+            mockedZipService.verify(() -> ZipService.uploadZip(any(), eq(V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getGapId()), eq(expectedFilename)));
 
-            // STEP 5
-            mockedExportService.verify(() -> ExportRecordService.addS3ObjectKeyToExportRecord(any(), eq(exportBatchId), eq(submissionId),
+            // STEPS 5 & 6
+            mockedExportService.verify(() -> ExportRecordService.completeExportRecord(any(), eq(exportBatchId), eq(submissionId),
                     eq(mockS3Key)));
 
-            // STEP 6
-            mockedExportService.verify(() -> ExportRecordService.updateExportRecordStatus(any(), eq(exportBatchId), eq(submissionId),
-                    eq(GrantExportStatus.COMPLETE)));
-
             // STEP 7
-            mockedExportService.verify(() -> ExportRecordService.getRemainingExportsCount(any(), eq(exportBatchId)), atLeastOnce());
             mockedNotifyService.verify(() -> NotifyService.sendConfirmationEmail(any(), eq(emailAddress), eq(exportBatchId),
                     eq(V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getSchemeId()), eq(submissionId)));
         }
@@ -310,7 +496,7 @@ public class HandlerTest {
 
         when(s3client.putObject(anyString(), anyString(), any(File.class))).thenReturn(new PutObjectResult());
 
-        mockedSubmissionService.when(() -> SubmissionService.getSubmissionData(any(), eq(exportBatchId), eq(submissionId)))
+        mockedSubmissionService.when(() -> SubmissionService.getSubmissionData(any(), eq(exportBatchId), eq(submissionId), eq(SubmissionProjection.EXPORT)))
                 .thenReturn(V1_SUBMISSION_WITH_ESSENTIAL_SECTION);
 
         mockedHelperUtils
@@ -322,15 +508,16 @@ public class HandlerTest {
         mockedHelperUtils.when(() -> HelperUtils.getRedirectUrl(SCHEME_ID, exportBatchId))
                 .thenReturn("test.co.uk/testing");
 
-        mockedExportService.when(() -> ExportRecordService.getRemainingExportsCount(any(), eq(exportBatchId))).thenReturn(10L);
+        mockedExportService.when(() -> ExportRecordService.completeExportRecord(any(), eq(exportBatchId), eq(submissionId), any()))
+                .thenReturn(new ExportCompletionDTO(10L, 0L));
 
         try (final MockedStatic<OdtService> ignored = mockStatic(OdtService.class);
              final MockedStatic<ZipService> mockedZipService = mockStatic(ZipService.class)) {
 
-            mockedZipService.when(() -> ZipService.createZip(any(), anyString(), anyString(), anyString(), anyBoolean()))
+            mockedZipService.when(() -> ZipService.createZip(any(), any(), anyString(), anyString(), anyString(), anyBoolean()))
                     .thenAnswer((Answer<Void>) invocation -> null);
 
-            mockedZipService.when(() -> ZipService.uploadZip(eq(V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getGapId()), any()))
+            mockedZipService.when(() -> ZipService.uploadZip(any(), eq(V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getGapId()), any()))
                     .thenReturn(V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getGapId() + "/mock_filename.zip");
 
             Handler handler = new Handler();
@@ -354,7 +541,7 @@ public class HandlerTest {
         final String emailAddress = event.getRecords().get(0).getMessageAttributes().get("emailAddress")
                 .getStringValue();
 
-        mockedSubmissionService.when(() -> SubmissionService.getSubmissionData(any(), anyString(), anyString()))
+        mockedSubmissionService.when(() -> SubmissionService.getSubmissionData(any(), anyString(), anyString(), any()))
                 .thenReturn(V1_SUBMISSION_WITH_ESSENTIAL_SECTION);
 
         mockedHelperUtils
@@ -366,34 +553,31 @@ public class HandlerTest {
         mockedHelperUtils.when(() -> HelperUtils.getRedirectUrl(SCHEME_ID, exportBatchId))
                 .thenReturn("test.co.uk/testing");
 
-        mockedExportService.when(() -> ExportRecordService.getOutstandingExportsCount(any(), eq(exportBatchId))).thenReturn(0L);
-        when(ExportRecordService.getCompletedExportRecordsByBatchId(any(), any())).thenThrow(new RuntimeException());
+        mockedExportService.when(() -> ExportRecordService.getOutstandingExportsCountAsync(any(), eq(exportBatchId))).thenReturn(CompletableFuture.completedFuture(0L));
+        when(ExportRecordService.streamCompletedExportRecordsByBatchId(any(), any())).thenThrow(new RuntimeException());
 
         try (final MockedStatic<OdtService> mockedOdtService = mockStatic(OdtService.class);
              final MockedStatic<ZipService> mockedZipService = mockStatic(ZipService.class)) {
 
-            mockedZipService.when(() -> ZipService.createZip(any(), anyString(), anyString(), anyString(), anyBoolean()))
+            mockedZipService.when(() -> ZipService.createZip(any(), any(), anyString(), anyString(), anyString(), anyBoolean()))
                     .thenAnswer((Answer<Void>) invocation -> null);
 
             final String mockS3Key = V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getGapId() + "/mock_filename.zip";
 
-            mockedZipService.when(() -> ZipService.uploadZip(eq(V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getGapId()), any()))
+            mockedZipService.when(() -> ZipService.uploadZip(any(), eq(V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getGapId()), any()))
                     .thenReturn(mockS3Key);
 
             final Handler handler = new Handler();
             handler.handleRequest(event, contextMock);
 
-            mockedExportService.verify(() -> ExportRecordService.updateExportRecordStatus(any(), eq(exportBatchId), eq(submissionId),
-                    eq(GrantExportStatus.PROCESSING)), atLeastOnce());
+            mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(any(),
+                    eq(statusUpdate(exportBatchId, submissionId, GrantExportStatus.PROCESSING))), atLeastOnce());
 
-            mockedSubmissionService.verify(() -> SubmissionService.getSubmissionData(any(), eq(exportBatchId), eq(submissionId)), atLeastOnce());
+            mockedSubmissionService.verify(() -> SubmissionService.getSubmissionData(any(), eq(exportBatchId), eq(submissionId), eq(SubmissionProjection.EXPORT)), atLeastOnce());
 
-            mockedExportService.verify(() -> ExportRecordService.addS3ObjectKeyToExportRecord(any(), eq(exportBatchId), eq(submissionId),
+            mockedExportService.verify(() -> ExportRecordService.completeExportRecord(any(), eq(exportBatchId), eq(submissionId),
                     eq(mockS3Key)), atLeastOnce());
 
-            mockedExportService.verify(() -> ExportRecordService.updateExportRecordStatus(any(), eq(exportBatchId), eq(submissionId),
-                    eq(GrantExportStatus.COMPLETE)), atLeastOnce());
-
             mockedExportService.verify(() -> ExportRecordService.updateGrantExportBatchRecordStatus(any(), eq(exportBatchId),
                     eq(GrantExportStatus.FAILED)), atLeastOnce());
 
@@ -412,9 +596,9 @@ public class HandlerTest {
                 .getStringValue();
         final PublishResult mockResult = new PublishResult().withMessageId("MESSAGE_ID");
 
-        when(SubmissionService.getSubmissionData(any(), anyString(), anyString())).thenThrow(new RuntimeException());
-        mockedExportService.when(() -> ExportRecordService.getRemainingExportsCount(any(), eq(exportBatchId))).thenReturn(0L);
-        mockedExportService.when(() -> ExportRecordService.getFailedExportsCount(any(), eq(exportBatchId))).thenReturn(2L);
+        when(SubmissionService.getSubmissionData(any(), anyString(), anyString(), any())).thenThrow(new RuntimeException());
+        mockedExportService.when(() -> ExportRecordService.getRemainingExportsCountAsync(any(), eq(exportBatchId))).thenReturn(CompletableFuture.completedFuture(0L));
+        mockedExportService.when(() -> ExportRecordService.getFailedExportsCountAsync(any(), eq(exportBatchId))).thenReturn(CompletableFuture.completedFuture(2L));
 
         mockedSnsBuilder.when(AmazonSNSClientBuilder::defaultClient).thenReturn(mockedSnsClient);
         when(mockedSnsClient.publish(any(PublishRequest.class))).thenReturn(mockResult);
@@ -423,9 +607,71 @@ public class HandlerTest {
         handler.handleRequest(event, contextMock);
 
         verify(mockedSnsClient).publish(any());
-        mockedExportService.verify(() -> ExportRecordService.getRemainingExportsCount(any(), eq(exportBatchId)), atLeastOnce());
-        mockedExportService.verify(() -> ExportRecordService.getFailedExportsCount(any(), eq(exportBatchId)), atLeastOnce()
+        mockedExportService.verify(() -> ExportRecordService.getRemainingExportsCountAsync(any(), eq(exportBatchId)), atLeastOnce());
+        mockedExportService.verify(() -> ExportRecordService.getFailedExportsCountAsync(any(), eq(exportBatchId)), atLeastOnce()
         );
     }
 
+    @Test
+    void runsAnExportAgainstTheGivenClients() throws Exception {
+        final SQSEvent event = EventLoader.loadSQSEvent("testEvent.json");
+        final SQSEvent.SQSMessage message = event.getRecords().get(0);
+        final String submissionId = message.getMessageAttributes().get("submissionId").getStringValue();
+        final String exportBatchId = message.getMessageAttributes().get("exportBatchId").getStringValue();
+        final String applicationId = message.getMessageAttributes().get("applicationId").getStringValue();
+        final AmazonS3 givenS3Client = mock(AmazonS3.class);
+        final SnsService givenSnsService = mock(SnsService.class);
+        final InMemoryBackendApi backendApi = new InMemoryBackendApi();
+        backendApi.addSubmission(exportBatchId, submissionId, V1_SUBMISSION_WITH_ESSENTIAL_SECTION);
+
+        mockedHelperUtils.when(() -> HelperUtils.generateFilename(anyString(), anyString())).thenCallRealMethod();
+
+        try (final MockedStatic<OdtService> mockedOdtService = mockStatic(OdtService.class);
+             final MockedStatic<ZipService> mockedZipService = mockStatic(ZipService.class)) {
+
+            mockedZipService.when(() -> ZipService.uploadZip(any(), anyString(), any()))
+                    .thenReturn("submission.zip", "batch.zip");
+
+            final Handler handler = new Handler(backendApi, givenS3Client, () -> givenSnsService,
+                    new InMemoryQueueClient(), VisibilityHeartbeatSettings.builder().build());
+            final SQSBatchResponse response = handler.handleRequest(event, createContext());
+
+            assertEquals(new SQSBatchResponse(List.of()), response);
+            mockedZipService.verify(() -> ZipService.createZip(eq(givenS3Client), any(), anyString(),
+                    eq(applicationId), eq(submissionId), eq(true)));
+            verifyNoInteractions(givenSnsService);
+            assertEquals(GrantExportStatus.COMPLETE, backendApi.getExportRecord(exportBatchId, submissionId).getStatus());
+            assertEquals("submission.zip", backendApi.getExportRecord(exportBatchId, submissionId).getLocation());
+            assertEquals(GrantExportStatus.COMPLETE, backendApi.getBatchStatus(exportBatchId));
+            assertEquals("batch.zip", backendApi.getBatchLocation(exportBatchId));
+            assertEquals(List.of("test@domain.com"), backendApi.getConfirmationEmails());
+        }
+    }
+
+    @Test
+    void reportsFailedExportsThroughTheGivenSnsService() throws Exception {
+        final SQSEvent event = EventLoader.loadSQSEvent("testEvent.json");
+        final SQSEvent.SQSMessage message = event.getRecords().get(0);
+        final String submissionId = message.getMessageAttributes().get("submissionId").getStringValue();
+        final String exportBatchId = message.getMessageAttributes().get("exportBatchId").getStringValue();
+        final SnsService givenSnsService = mock(SnsService.class);
+        final InMemoryBackendApi backendApi = new InMemoryBackendApi();
+        backendApi.addSubmission(exportBatchId, submissionId, V1_SUBMISSION_WITH_ESSENTIAL_SECTION);
+
+        try (final MockedStatic<OdtService> mockedOdtService = mockStatic(OdtService.class);
+             final MockedStatic<ZipService> mockedZipService = mockStatic(ZipService.class)) {
+
+            mockedOdtService.when(() -> OdtService.generateSingleOdt(any(), any(), any()))
+                    .thenThrow(new RuntimeException());
+
+            final Handler handler = new Handler(backendApi, mock(AmazonS3.class), () -> givenSnsService,
+                    new InMemoryQueueClient(), VisibilityHeartbeatSettings.builder().build());
+            handler.handleRequest(event, createContext());
+
+            assertEquals(GrantExportStatus.FAILED, backendApi.getExportRecord(exportBatchId, submissionId).getStatus());
+            verify(givenSnsService).failureInExport(V1_SUBMISSION_WITH_ESSENTIAL_SECTION.getSchemeName(), 1L);
+            assertEquals(List.of("test@domain.com"), backendApi.getConfirmationEmails());
+        }
+    }
+
 }
@@ -0,0 +1,96 @@
+package gov.cabinetoffice.gap.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AuthHeaderProviderTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-01T10:00:00Z");
+
+    private final Clock clock = mock(Clock.class);
+
+    private KeyPair keyPair;
+
+    private AuthHeaderProvider provider;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+        final String publicKey = Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded());
+
+        when(clock.instant()).thenReturn(NOW);
+        provider = new AuthHeaderProvider("test-api-secret", publicKey, Duration.ofMinutes(5), clock);
+    }
+
+    @Nested
+    class getHeader {
+
+        @Test
+        void encryptsTheSecretWithThePublicKey() throws Exception {
+            final Cipher decryptCipher = Cipher.getInstance("RSA");
+            decryptCipher.init(Cipher.DECRYPT_MODE, keyPair.getPrivate());
+
+            final byte[] decrypted = decryptCipher.doFinal(Base64.getDecoder().decode(provider.getHeader()));
+
+            assertThat(new String(decrypted, StandardCharsets.UTF_8)).isEqualTo("test-api-secret");
+        }
+
+        @Test
+        void reusesTheHeaderWithinItsTimeToLive() {
+            final String first = provider.getHeader();
+            when(clock.instant()).thenReturn(NOW.plus(Duration.ofMinutes(4)));
+
+            assertThat(provider.getHeader()).isEqualTo(first);
+        }
+
+        @Test
+        void encryptsANewHeaderOnceExpired() {
+            final String first = provider.getHeader();
+            when(clock.instant()).thenReturn(NOW.plus(Duration.ofMinutes(5)));
+
+            assertThat(provider.getHeader()).isNotEqualTo(first);
+        }
+
+        @Test
+        void encryptsOnEveryCallWithoutATimeToLive() {
+            final AuthHeaderProvider uncached = new AuthHeaderProvider("test-api-secret",
+                    Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()), Duration.ZERO, clock);
+
+            assertThat(uncached.getHeader()).isNotEqualTo(uncached.getHeader());
+        }
+
+        @Test
+        void cachesTheHeaderOnceEncryptedAfterExpiry() {
+            final String first = provider.getHeader();
+            when(clock.instant()).thenReturn(NOW.plus(Duration.ofMinutes(5)));
+            final String refreshed = provider.getHeader();
+
+            assertThat(refreshed).isNotEqualTo(first);
+            assertThat(provider.getHeader()).isEqualTo(refreshed);
+        }
+    }
+
+    @Test
+    void rejectsAMalformedPublicKey() {
+        assertThatThrownBy(() -> new AuthHeaderProvider("test-api-secret", "wrongFormattedKey", Duration.ZERO))
+                .isInstanceOf(RuntimeException.class);
+    }
+
+}
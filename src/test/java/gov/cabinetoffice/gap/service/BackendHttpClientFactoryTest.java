@@ -0,0 +1,107 @@
+package gov.cabinetoffice.gap.service;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+public class BackendHttpClientFactoryTest {
+
+    private final RetryPolicy retryPolicy = RetryPolicy.builder().callDeadline(Duration.ofSeconds(20)).build();
+
+    private final ConnectionSettings settings = ConnectionSettings.builder()
+            .connectTimeout(Duration.ofSeconds(1))
+            .readTimeout(Duration.ofSeconds(2))
+            .writeTimeout(Duration.ofSeconds(3))
+            .maxConcurrentRequests(8)
+            .build();
+
+    @Nested
+    class create {
+
+        @Test
+        void appliesTheConnectionSettings() {
+            final OkHttpClient client = BackendHttpClientFactory.create(retryPolicy, settings);
+
+            assertThat(client.connectTimeoutMillis()).isEqualTo(1000);
+            assertThat(client.readTimeoutMillis()).isEqualTo(2000);
+            assertThat(client.writeTimeoutMillis()).isEqualTo(3000);
+            assertThat(client.callTimeoutMillis()).isEqualTo(20000);
+            assertThat(client.dispatcher().getMaxRequests()).isEqualTo(8);
+            assertThat(client.dispatcher().getMaxRequestsPerHost()).isEqualTo(8);
+            assertThat(client.protocols()).isEqualTo(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1));
+            assertThat(client.interceptors().get(0)).isInstanceOf(LatencyInterceptor.class);
+            assertThat(client.interceptors().get(1)).isInstanceOf(StaleConnectionInterceptor.class);
+            assertThat(client.interceptors().get(2)).isInstanceOf(ResilienceInterceptor.class);
+            assertThat(client.interceptors().get(3)).isInstanceOf(RateLimitInterceptor.class);
+            assertThat(client.interceptors().get(4)).isInstanceOf(CompressionInterceptor.class);
+        }
+
+        @Test
+        void speaksOnlyHttp1WhenHttp2IsDisabled() {
+            final OkHttpClient client = BackendHttpClientFactory.create(retryPolicy,
+                    settings.toBuilder().http2Enabled(false).build());
+
+            assertThat(client.protocols()).isEqualTo(List.of(Protocol.HTTP_1_1));
+        }
+
+    }
+
+    @Nested
+    class warmUp {
+
+        private MockWebServer server;
+
+        @BeforeEach
+        void beforeEach() throws IOException {
+            server = new MockWebServer();
+            server.start();
+        }
+
+        @AfterEach
+        void afterEach() throws IOException {
+            server.shutdown();
+        }
+
+        @Test
+        void leavesAConnectionInThePool() throws Exception {
+            server.enqueue(new MockResponse().setResponseCode(404));
+            final OkHttpClient client = BackendHttpClientFactory.create(retryPolicy, settings);
+
+            BackendHttpClientFactory.warmUp(client, server.url("/api").toString());
+
+            final RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+            assertThat(request.getMethod()).isEqualTo("HEAD");
+            assertThat(request.getPath()).isEqualTo("/api");
+
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (client.connectionPool().idleConnectionCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(client.connectionPool().idleConnectionCount()).isEqualTo(1);
+        }
+
+        @Test
+        void skipsAnInvalidUrl() {
+            final OkHttpClient client = BackendHttpClientFactory.create(retryPolicy, settings);
+
+            BackendHttpClientFactory.warmUp(client, null);
+
+            assertThat(client.dispatcher().runningCallsCount()).isEqualTo(0);
+        }
+
+    }
+
+}
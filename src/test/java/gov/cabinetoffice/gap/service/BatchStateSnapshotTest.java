@@ -0,0 +1,136 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.model.ExportCompletionDTO;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+
+public class BatchStateSnapshotTest {
+
+    private static final String EXPORT_BATCH_ID = "a1b2c3d4-0000-4000-8000-000000000001";
+
+    private static final String SUBMISSION_ID = "a1b2c3d4-0000-4000-8000-000000000002";
+
+    private final OkHttpClient restClient = mock(OkHttpClient.class);
+
+    private MockedStatic<ExportRecordService> mockedExportService;
+
+    @BeforeEach
+    void beforeEach() {
+        mockedExportService = mockStatic(ExportRecordService.class);
+        mockedExportService.when(() -> ExportRecordService.getRemainingExportsCountAsync(restClient, EXPORT_BATCH_ID))
+                .thenReturn(CompletableFuture.completedFuture(3L));
+        mockedExportService.when(() -> ExportRecordService.getFailedExportsCountAsync(restClient, EXPORT_BATCH_ID))
+                .thenReturn(CompletableFuture.completedFuture(1L));
+        mockedExportService.when(() -> ExportRecordService.getOutstandingExportsCountAsync(restClient, EXPORT_BATCH_ID))
+                .thenReturn(CompletableFuture.completedFuture(2L));
+    }
+
+    @AfterEach
+    void afterEach() {
+        mockedExportService.close();
+    }
+
+    private void verifyCountsFetched(final int remaining, final int failed, final int outstanding) {
+        mockedExportService.verify(() -> ExportRecordService.getRemainingExportsCountAsync(restClient, EXPORT_BATCH_ID),
+                times(remaining));
+        mockedExportService.verify(() -> ExportRecordService.getFailedExportsCountAsync(restClient, EXPORT_BATCH_ID),
+                times(failed));
+        mockedExportService.verify(() -> ExportRecordService.getOutstandingExportsCountAsync(restClient, EXPORT_BATCH_ID),
+                times(outstanding));
+    }
+
+    @Nested
+    class getRemainingCount {
+
+        @Test
+        void fetchesOnlyTheRemainingCountAndOnlyOnce() throws Exception {
+            final BatchStateSnapshot batchState = new BatchStateSnapshot(restClient, EXPORT_BATCH_ID);
+
+            assertThat(batchState.getRemainingCount()).isEqualTo(3L);
+            assertThat(batchState.getRemainingCount()).isEqualTo(3L);
+
+            verifyCountsFetched(1, 0, 0);
+        }
+
+        @Test
+        void reusesEachCountOnceFetched() throws Exception {
+            final BatchStateSnapshot batchState = new BatchStateSnapshot(restClient, EXPORT_BATCH_ID);
+
+            assertThat(batchState.getRemainingCount()).isEqualTo(3L);
+            assertThat(batchState.getFailedCount()).isEqualTo(1L);
+            assertThat(batchState.getOutstandingCount()).isEqualTo(2L);
+            assertThat(batchState.getFailedCount()).isEqualTo(1L);
+
+            verifyCountsFetched(1, 1, 1);
+        }
+
+        @Test
+        void rethrowsTheCauseWhenACountCannotBeFetched() {
+            final IOException failure = new IOException("backend unavailable");
+            mockedExportService.when(() -> ExportRecordService.getRemainingExportsCountAsync(restClient, EXPORT_BATCH_ID))
+                    .thenReturn(CompletableFuture.failedFuture(failure));
+            final BatchStateSnapshot batchState = new BatchStateSnapshot(restClient, EXPORT_BATCH_ID);
+
+            assertThatThrownBy(batchState::getRemainingCount).isSameAs(failure);
+        }
+    }
+
+    @Nested
+    class invalidate {
+
+        @Test
+        void refetchesOnlyTheCountsReadAgain() throws Exception {
+            final BatchStateSnapshot batchState = new BatchStateSnapshot(restClient, EXPORT_BATCH_ID);
+            batchState.getRemainingCount();
+            batchState.getFailedCount();
+
+            batchState.invalidate();
+            batchState.getRemainingCount();
+
+            verifyCountsFetched(2, 1, 0);
+        }
+    }
+
+    @Nested
+    class completeExportRecord {
+
+        @Test
+        void reusesTheCountsReturnedWithTheCompletion() throws Exception {
+            mockedExportService.when(() -> ExportRecordService.completeExportRecord(restClient, EXPORT_BATCH_ID,
+                    SUBMISSION_ID, "key.zip")).thenReturn(new ExportCompletionDTO(0L, 4L));
+            final BatchStateSnapshot batchState = new BatchStateSnapshot(restClient, EXPORT_BATCH_ID);
+
+            assertThat(batchState.completeExportRecord(SUBMISSION_ID, "key.zip")).isEqualTo(0L);
+            assertThat(batchState.getRemainingCount()).isEqualTo(0L);
+            assertThat(batchState.getFailedCount()).isEqualTo(4L);
+
+            verifyCountsFetched(0, 0, 0);
+        }
+
+        @Test
+        void fetchesOnlyTheOutstandingCountWhenItIsNeeded() throws Exception {
+            mockedExportService.when(() -> ExportRecordService.completeExportRecord(restClient, EXPORT_BATCH_ID,
+                    SUBMISSION_ID, "key.zip")).thenReturn(new ExportCompletionDTO(0L, 4L));
+            final BatchStateSnapshot batchState = new BatchStateSnapshot(restClient, EXPORT_BATCH_ID);
+            batchState.completeExportRecord(SUBMISSION_ID, "key.zip");
+
+            assertThat(batchState.getOutstandingCount()).isEqualTo(2L);
+
+            verifyCountsFetched(0, 0, 1);
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.model.GrantExportDTO;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+
+public class CompletedExportPagesTest {
+
+    private static GrantExportIterator page(final boolean last, final String... locations) {
+        final StringBuilder json = new StringBuilder("{\"grantExports\":[");
+        for (int i = 0; i < locations.length; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"location\":\"").append(locations[i]).append("\"}");
+        }
+        return new GrantExportIterator(new StringReader(json.append("],\"last\":").append(last).append('}')
+                .toString()));
+    }
+
+    private static List<String> readLocations(final CompletedExportPages pages) throws Exception {
+        final List<String> locations = new ArrayList<>();
+        try (pages) {
+            pages.forEachRemaining(export -> locations.add(export.getLocation()));
+        }
+        return locations;
+    }
+
+    @Test
+    void readsEveryPageUntilTheLastOne() throws Exception {
+        final List<Integer> openedPages = new ArrayList<>();
+        final CompletedExportPages pages = new CompletedExportPages(page -> {
+            openedPages.add(page);
+            return switch (page) {
+                case 0 -> page(false, "first.zip", "second.zip");
+                case 1 -> page(true, "third.zip");
+                default -> throw new AssertionError("page " + page + " should not be requested");
+            };
+        });
+
+        assertThat(readLocations(pages)).isEqualTo(List.of("first.zip", "second.zip", "third.zip"));
+        assertThat(openedPages).isEqualTo(List.of(0, 1));
+    }
+
+    @Test
+    void opensTheNextPageOnlyOnceTheCurrentOneIsRead() {
+        final List<Integer> openedPages = new ArrayList<>();
+        final CompletedExportPages pages = new CompletedExportPages(page -> {
+            openedPages.add(page);
+            return page == 0 ? page(false, "first.zip") : page(true, "second.zip");
+        });
+
+        final GrantExportDTO first = pages.next();
+
+        assertThat(first.getLocation()).isEqualTo("first.zip");
+        assertThat(openedPages).isEqualTo(List.of(0));
+    }
+
+    @Test
+    void closesEachPageBeforeHandingOutItsExports() {
+        final AtomicBoolean closed = new AtomicBoolean();
+        final CompletedExportPages pages = new CompletedExportPages(page -> new GrantExportIterator(
+                new StringReader("{\"grantExports\":[{\"location\":\"first.zip\"},{\"location\":\"second.zip\"}]}") {
+
+                    @Override
+                    public void close() {
+                        closed.set(true);
+                        super.close();
+                    }
+                }));
+
+        assertThat(pages.next().getLocation()).isEqualTo("first.zip");
+        assertThat(closed.get()).isTrue();
+        assertThat(pages.next().getLocation()).isEqualTo("second.zip");
+    }
+
+    @Test
+    void stopsAtAnEmptyPageEvenIfItIsNotMarkedLast() throws Exception {
+        final List<Integer> openedPages = new ArrayList<>();
+        final CompletedExportPages pages = new CompletedExportPages(page -> {
+            openedPages.add(page);
+            return page == 0 ? page(false, "first.zip") : page(false);
+        });
+
+        assertThat(readLocations(pages)).isEqualTo(List.of("first.zip"));
+        assertThat(openedPages).isEqualTo(List.of(0, 1));
+    }
+
+    @Test
+    void readsAnUnpagedListingAsASinglePage() throws Exception {
+        final CompletedExportPages pages = new CompletedExportPages(
+                page -> new GrantExportIterator(new StringReader("{\"grantExports\":[{\"location\":\"only.zip\"}]}")));
+
+        assertThat(readLocations(pages)).isEqualTo(List.of("only.zip"));
+    }
+
+    @Test
+    void reportsAPageThatCannotBeOpened() {
+        final CompletedExportPages pages = new CompletedExportPages(page -> {
+            throw new Exception("backend unavailable");
+        });
+
+        assertThatThrownBy(pages::hasNext).isInstanceOf(RuntimeException.class)
+                .hasMessageContaining("page 0");
+    }
+
+    @Test
+    void throwsOnceClosed() throws Exception {
+        final CompletedExportPages pages = new CompletedExportPages(page -> page(true, "first.zip"));
+
+        pages.close();
+
+        assertThat(pages.hasNext()).isFalse();
+        assertThatThrownBy(pages::next).isInstanceOf(NoSuchElementException.class);
+    }
+
+}
@@ -0,0 +1,130 @@
+package gov.cabinetoffice.gap.service;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+public class CompressionInterceptorTest {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private static final String LARGE_BODY = "{\"response\":\"" + "a long answer ".repeat(1000) + "\"}";
+
+    private final TransferStats transferStats = new TransferStats();
+
+    private MockWebServer server;
+
+    private OkHttpClient client;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        client = new OkHttpClient.Builder().addInterceptor(new CompressionInterceptor(1024, transferStats)).build();
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        server.shutdown();
+    }
+
+    private static Buffer gzip(final String body) throws IOException {
+        final Buffer gzipped = new Buffer();
+        try (BufferedSink sink = Okio.buffer(new GzipSink(gzipped))) {
+            sink.writeUtf8(body);
+        }
+        return gzipped;
+    }
+
+    private TransferStats.EndpointTransfer transferOf(final String path) {
+        return transferStats.snapshot().get("GET " + server.getHostName() + path);
+    }
+
+    @Test
+    void decompressesGzippedResponsesAndCountsBothSizes() throws Exception {
+        final Buffer gzipped = gzip(LARGE_BODY);
+        final long wireSize = gzipped.size();
+        server.enqueue(new MockResponse().setHeader("Content-Encoding", "gzip").setBody(gzipped));
+
+        try (Response response = client.newCall(new Request.Builder().url(server.url("/submission")).build())
+                .execute()) {
+            assertThat(response.header("Content-Encoding")).isNull();
+            assertThat(response.body().string()).isEqualTo(LARGE_BODY);
+        }
+
+        assertThat(server.takeRequest().getHeader("Accept-Encoding")).isEqualTo("gzip");
+        assertThat(transferOf("/submission").getResponseBytes()).isEqualTo(LARGE_BODY.length());
+        assertThat(transferOf("/submission").getResponseWireBytes()).isEqualTo(wireSize);
+    }
+
+    @Test
+    void countsUncompressedResponsesOnce() throws Exception {
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        try (Response response = client.newCall(new Request.Builder().url(server.url("/count")).build()).execute()) {
+            assertThat(response.body().string()).isEqualTo("{}");
+        }
+
+        assertThat(transferOf("/count").getResponseBytes()).isEqualTo(2);
+        assertThat(transferOf("/count").getResponseWireBytes()).isEqualTo(2);
+    }
+
+    @Test
+    void gzipsRequestBodiesAboveTheThreshold() throws Exception {
+        server.enqueue(new MockResponse());
+
+        client.newCall(new Request.Builder().url(server.url("/updates"))
+                .post(RequestBody.create(LARGE_BODY, JSON)).build()).execute().close();
+
+        final RecordedRequest request = server.takeRequest();
+        assertThat(request.getHeader("Content-Encoding")).isEqualTo("gzip");
+        assertThat(Okio.buffer(new GzipSource(request.getBody())).readUtf8()).isEqualTo(LARGE_BODY);
+        final TransferStats.EndpointTransfer transfer = transferStats.snapshot()
+                .get("POST " + server.getHostName() + "/updates");
+        assertThat(transfer.getRequestBytes()).isEqualTo(LARGE_BODY.length());
+        assertThat(transfer.getRequestWireBytes()).isEqualTo(request.getBodySize());
+    }
+
+    @Test
+    void sendsSmallRequestBodiesAsTheyAre() throws Exception {
+        server.enqueue(new MockResponse());
+
+        client.newCall(new Request.Builder().url(server.url("/updates"))
+                .post(RequestBody.create("{}", JSON)).build()).execute().close();
+
+        final RecordedRequest request = server.takeRequest();
+        assertThat(request.getHeader("Content-Encoding")).isNull();
+        assertThat(request.getBody().readUtf8()).isEqualTo("{}");
+    }
+
+    @Test
+    void leavesResponsesAloneWhenTheCallerChoosesItsOwnEncoding() throws Exception {
+        final Buffer gzipped = gzip(LARGE_BODY);
+        final long wireSize = gzipped.size();
+        server.enqueue(new MockResponse().setHeader("Content-Encoding", "gzip").setBody(gzipped));
+
+        try (Response response = client.newCall(new Request.Builder().url(server.url("/raw"))
+                .header("Accept-Encoding", "gzip").build()).execute()) {
+            assertThat(response.header("Content-Encoding")).isEqualTo("gzip");
+            assertThat(response.body().bytes().length).isEqualTo((int) wireSize);
+        }
+    }
+
+}
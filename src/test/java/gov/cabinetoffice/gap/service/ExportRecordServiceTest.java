@@ -1,18 +1,30 @@
 package gov.cabinetoffice.gap.service;
 
 import gov.cabinetoffice.gap.enums.GrantExportStatus;
+import gov.cabinetoffice.gap.exceptions.BackendResponseException;
 import gov.cabinetoffice.gap.model.*;
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.MockedStatic;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -31,6 +43,17 @@ public class ExportRecordServiceTest {
         reset(mockedHttpClient);
     }
 
+    /**
+     * RestService always targets BACKEND_API_URL, so send its requests to the stand-in instead
+     */
+    private static OkHttpClient clientFor(MockWebServer backend) {
+        return new OkHttpClient.Builder().addInterceptor(chain -> {
+            final HttpUrl url = chain.request().url().newBuilder().scheme("http").host(backend.getHostName())
+                    .port(backend.getPort()).build();
+            return chain.proceed(chain.request().newBuilder().url(url).build());
+        }).build();
+    }
+
     @Nested
     class updateExportRecordStatus {
 
@@ -173,6 +196,100 @@ public class ExportRecordServiceTest {
         }
     }
 
+    @Nested
+    class streamCompletedExportRecordsByBatchId {
+
+        private MockWebServer backend;
+        private OkHttpClient backendClient;
+
+        @BeforeEach
+        void startBackend() throws IOException {
+            backend = new MockWebServer();
+            backend.start();
+            backendClient = clientFor(backend);
+        }
+
+        @AfterEach
+        void stopBackend() throws IOException {
+            backend.shutdown();
+        }
+
+        @Test
+        void readsThePagesInTurn() throws Exception {
+            backend.enqueue(new MockResponse().setBody("{\"grantExports\":[{\"location\":\"first.zip\"}],\"last\":false}"));
+            backend.enqueue(new MockResponse().setBody("{\"grantExports\":[{\"location\":\"second.zip\"}],\"last\":true}"));
+
+            final List<String> locations = new ArrayList<>();
+            try (CompletedExportPages pages = ExportRecordService.streamCompletedExportRecordsByBatchId(backendClient,
+                    mockExportId.toString())) {
+                pages.forEachRemaining(export -> locations.add(export.getLocation()));
+            }
+
+            assertThat(locations).isEqualTo(List.of("first.zip", "second.zip"));
+            final String endpoint = "/api/grant-export/" + mockExportId + "/completed";
+            final RecordedRequest firstPage = backend.takeRequest();
+            assertThat(firstPage.getRequestUrl().encodedPath()).isEqualTo(endpoint);
+            assertThat(firstPage.getRequestUrl().queryParameter("page")).isEqualTo("0");
+            assertThat(firstPage.getRequestUrl().queryParameter("size")).isEqualTo("500");
+            assertThat(backend.takeRequest().getRequestUrl().queryParameter("page")).isEqualTo("1");
+            assertThat(backend.getRequestCount()).isEqualTo(2);
+        }
+
+        @Test
+        void readsAnUnpagedListingInOneRequest() throws Exception {
+            backend.enqueue(new MockResponse().setBody("{\"grantExports\":[{\"location\":\"first.zip\"},"
+                    + "{\"location\":\"second.zip\"}]}"));
+
+            final List<String> locations = new ArrayList<>();
+            try (CompletedExportPages pages = ExportRecordService.streamCompletedExportRecordsByBatchId(backendClient,
+                    mockExportId.toString())) {
+                pages.forEachRemaining(export -> locations.add(export.getLocation()));
+            }
+
+            assertThat(locations).isEqualTo(List.of("first.zip", "second.zip"));
+            assertThat(backend.getRequestCount()).isEqualTo(1);
+        }
+
+        @Test
+        void keepsReadingWhileTheExportsOfAPageTakeLongerThanTheCallDeadline() throws Exception {
+            // large enough that the page can't sit in the socket buffers waiting to be read
+            final StringBuilder firstPage = new StringBuilder("{\"grantExports\":[");
+            for (int i = 0; i < 20000; i++) {
+                firstPage.append(i == 0 ? "" : ",").append("{\"location\":\"").append(UUID.randomUUID())
+                        .append("/submission-export.zip\"}");
+            }
+            backend.enqueue(new MockResponse().setBody(firstPage.append("],\"last\":false}").toString()));
+            backend.enqueue(new MockResponse()
+                    .setBody("{\"grantExports\":[{\"location\":\"last.zip\"}],\"last\":true}"));
+            final OkHttpClient deadlineClient = clientFor(backend).newBuilder()
+                    .callTimeout(Duration.ofSeconds(1)).build();
+
+            final List<String> locations = new ArrayList<>();
+            try (CompletedExportPages pages = ExportRecordService.streamCompletedExportRecordsByBatchId(deadlineClient,
+                    mockExportId.toString())) {
+                locations.add(pages.next().getLocation());
+                // zipping the first export outlasts the deadline of the call that listed it
+                Thread.sleep(1500);
+                pages.forEachRemaining(export -> locations.add(export.getLocation()));
+            }
+
+            assertThat(locations.size()).isEqualTo(20001);
+            assertThat(locations.get(20000)).isEqualTo("last.zip");
+        }
+
+        @Test
+        void throwsWhenAPageCannotBeFetched() throws Exception {
+            backend.enqueue(new MockResponse().setBody("{\"grantExports\":[{\"location\":\"first.zip\"}],\"last\":false}"));
+            backend.enqueue(new MockResponse().setResponseCode(400));
+
+            try (CompletedExportPages pages = ExportRecordService.streamCompletedExportRecordsByBatchId(backendClient,
+                    mockExportId.toString())) {
+                pages.next();
+                assertThrows(RuntimeException.class, pages::hasNext);
+            }
+        }
+    }
+
     @Nested
     class getFailedExportsCount {
         @Test
@@ -297,4 +414,383 @@ public class ExportRecordServiceTest {
             }
         }
     }
+
+    @Nested
+    class updateExportRecordStatusAsync {
+
+        ArgumentCaptor<String> grantExportStatusArgumentCaptor = ArgumentCaptor
+                .forClass(String.class);
+
+        @Test
+        void successfullyUpdateStatus() throws Exception {
+            try (MockedStatic<RestService> mockedRestService = mockStatic(RestService.class)) {
+                mockedRestService.when(() -> RestService.sendPostRequestAsync(any(), anyString(), anyString()))
+                        .thenReturn(CompletableFuture.completedFuture(null));
+
+                ExportRecordService.updateExportRecordStatusAsync(mockedHttpClient, mockExportId.toString(),
+                        mockSubmissionId.toString(), GrantExportStatus.PROCESSING).get();
+
+                mockedRestService.verify(() -> RestService.sendPostRequestAsync(any(), grantExportStatusArgumentCaptor.capture(),
+                        eq("/submissions/" + mockSubmissionId + "/export-batch/" + mockExportId + "/status")));
+
+                assertThat(grantExportStatusArgumentCaptor.getValue()).isEqualTo("\"PROCESSING\"");
+            }
+        }
+    }
+
+    @Nested
+    class getRemainingExportsCountAsync {
+        @Test
+        void successfullyGetRemainingExportsCount() throws Exception {
+            try (MockedStatic<RestService> mockedRestService = mockStatic(RestService.class)) {
+                mockedRestService.when(() -> RestService.sendGetRequestAsync(any(), any(), anyString(), eq(OutstandingExportCountDTO.class)))
+                        .thenReturn(CompletableFuture.completedFuture(new OutstandingExportCountDTO(3L)));
+
+                final long response = ExportRecordService.getRemainingExportsCountAsync(mockedHttpClient, mockExportId.toString()).get();
+
+                assertThat(response).isEqualTo(3L);
+            }
+        }
+
+        @Test
+        void ShouldCompleteExceptionallyWhenRequestFails() {
+            try (MockedStatic<RestService> mockedRestService = mockStatic(RestService.class)) {
+                mockedRestService.when(() -> RestService.sendGetRequestAsync(any(), any(), anyString(), eq(OutstandingExportCountDTO.class)))
+                        .thenReturn(CompletableFuture.failedFuture(new RuntimeException()));
+
+                assertThat(ExportRecordService.getRemainingExportsCountAsync(mockedHttpClient, mockExportId.toString())
+                        .isCompletedExceptionally()).isTrue();
+            }
+        }
+    }
+
+    @Nested
+    class getOutstandingExportsCountAsync {
+        @Test
+        void successfullyGetOutstandingExportsCount() throws Exception {
+            try (MockedStatic<RestService> mockedRestService = mockStatic(RestService.class)) {
+                final ArgumentCaptor<String> endpointCaptor = ArgumentCaptor.forClass(String.class);
+                mockedRestService.when(() -> RestService.sendGetRequestAsync(any(), any(), anyString(), eq(OutstandingExportCountDTO.class)))
+                        .thenReturn(CompletableFuture.completedFuture(new OutstandingExportCountDTO(4L)));
+
+                final long response = ExportRecordService.getOutstandingExportsCountAsync(mockedHttpClient, mockExportId.toString()).get();
+
+                mockedRestService.verify(() -> RestService.sendGetRequestAsync(any(), any(), endpointCaptor.capture(), eq(OutstandingExportCountDTO.class)));
+                assertThat(endpointCaptor.getValue()).isEqualTo("/grant-export/" + mockExportId + "/outstandingCount");
+                assertThat(response).isEqualTo(4L);
+            }
+        }
+    }
+
+    @Nested
+    class completeExportRecord {
+
+        private final String exportId = mockExportId.toString();
+        private final String submissionId = mockSubmissionId.toString();
+        private final String submissionPath = "/api/submissions/" + submissionId + "/export-batch/" + exportId;
+
+        private MockWebServer backend;
+        private OkHttpClient backendClient;
+
+        @BeforeEach
+        void startBackend() throws IOException {
+            backend = new MockWebServer();
+            backend.start();
+            ExportRecordService.resetEndpointSupport();
+            backendClient = clientFor(backend);
+        }
+
+        @AfterEach
+        void stopBackend() throws IOException {
+            backend.shutdown();
+            ExportRecordService.resetEndpointSupport();
+        }
+
+        private void enqueueSeparateCalls(long remainingCount, long failedCount) {
+            backend.enqueue(new MockResponse());
+            backend.enqueue(new MockResponse());
+            backend.enqueue(new MockResponse().setBody("{\"outstandingCount\":" + remainingCount + "}"));
+            backend.enqueue(new MockResponse().setBody("{\"failedCount\":" + failedCount + "}"));
+        }
+
+        private void assertSeparateCallsMade() throws InterruptedException {
+            final RecordedRequest location = backend.takeRequest();
+            assertThat(location.getMethod()).isEqualTo("PATCH");
+            assertThat(location.getPath()).isEqualTo(submissionPath + "/s3-object-key");
+            assertThat(location.getBody().readUtf8()).isEqualTo("{\"s3ObjectKey\":\"key.zip\"}");
+
+            final RecordedRequest status = backend.takeRequest();
+            assertThat(status.getPath()).isEqualTo(submissionPath + "/status");
+            assertThat(status.getBody().readUtf8()).isEqualTo("\"COMPLETE\"");
+
+            assertThat(backend.takeRequest().getPath()).isEqualTo("/api/grant-export/" + exportId + "/remainingCount");
+            assertThat(backend.takeRequest().getPath()).isEqualTo("/api/grant-export/" + exportId + "/failedCount");
+        }
+
+        @Test
+        void recordsLocationAndStatusInOneCall() throws Exception {
+            backend.enqueue(new MockResponse().setBody("{\"remainingCount\":0,\"failedCount\":2}"));
+
+            final ExportCompletionDTO completion = ExportRecordService.completeExportRecord(backendClient, exportId,
+                    submissionId, "key.zip");
+
+            assertThat(completion).isEqualTo(new ExportCompletionDTO(0L, 2L));
+            assertThat(backend.getRequestCount()).isEqualTo(1);
+            final RecordedRequest request = backend.takeRequest();
+            assertThat(request.getMethod()).isEqualTo("POST");
+            assertThat(request.getPath()).isEqualTo(submissionPath + "/complete");
+            assertThat(request.getHeader("Authorization")).isNotNull();
+            assertThat(request.getBody().readUtf8()).isEqualTo("{\"s3ObjectKey\":\"key.zip\",\"status\":\"COMPLETE\"}");
+        }
+
+        @Test
+        void fallsBackToSeparateCallsWhenTheBackendLacksTheEndpoint() throws Exception {
+            backend.enqueue(new MockResponse().setResponseCode(404).setBody("{\"status\":404,\"error\":\"Not Found\","
+                    + "\"path\":\"" + submissionPath + "/complete\"}"));
+            enqueueSeparateCalls(3L, 1L);
+
+            final ExportCompletionDTO completion = ExportRecordService.completeExportRecord(backendClient, exportId,
+                    submissionId, "key.zip");
+
+            assertThat(completion).isEqualTo(new ExportCompletionDTO(3L, 1L));
+            assertThat(backend.takeRequest().getPath()).isEqualTo(submissionPath + "/complete");
+            assertSeparateCallsMade();
+        }
+
+        @Test
+        void stopsTryingTheEndpointOnceItIsKnownToBeMissing() throws Exception {
+            backend.enqueue(new MockResponse().setResponseCode(501));
+            enqueueSeparateCalls(3L, 0L);
+            ExportRecordService.completeExportRecord(backendClient, exportId, submissionId, "key.zip");
+            backend.takeRequest();
+            assertSeparateCallsMade();
+
+            enqueueSeparateCalls(2L, 0L);
+            final ExportCompletionDTO completion = ExportRecordService.completeExportRecord(backendClient, exportId,
+                    submissionId, "key.zip");
+
+            assertThat(completion).isEqualTo(new ExportCompletionDTO(2L, 0L));
+            assertSeparateCallsMade();
+            assertThat(backend.getRequestCount()).isEqualTo(9);
+        }
+
+        @Test
+        void doesNotFallBackOnOtherErrors() {
+            backend.enqueue(new MockResponse().setResponseCode(500));
+
+            assertThrows(RuntimeException.class, () -> ExportRecordService.completeExportRecord(backendClient,
+                    exportId, submissionId, "key.zip"));
+            assertThat(backend.getRequestCount()).isEqualTo(1);
+        }
+        @Test
+        void keepsUsingTheEndpointWhenItCannotFindTheRecord() throws Exception {
+            backend.enqueue(new MockResponse().setResponseCode(404)
+                    .setBody("{\"message\":\"Export record not found\",\"path\":\"" + submissionPath + "/complete\"}"));
+            backend.enqueue(new MockResponse().setBody("{\"remainingCount\":0,\"failedCount\":0}"));
+
+            final BackendResponseException failure = assertThrows(BackendResponseException.class,
+                    () -> ExportRecordService.completeExportRecord(backendClient, exportId, submissionId, "key.zip"));
+            ExportRecordService.completeExportRecord(backendClient, exportId, submissionId, "key.zip");
+
+            assertThat(failure.getStatusCode()).isEqualTo(404);
+            assertThat(backend.getRequestCount()).isEqualTo(2);
+            assertThat(backend.takeRequest().getPath()).isEqualTo(submissionPath + "/complete");
+            assertThat(backend.takeRequest().getPath()).isEqualTo(submissionPath + "/complete");
+        }
+    }
+
+    @Nested
+    class completeExportRecordAsync {
+
+        private final String exportId = mockExportId.toString();
+        private final String submissionId = mockSubmissionId.toString();
+        private final String submissionPath = "/api/submissions/" + submissionId + "/export-batch/" + exportId;
+
+        private MockWebServer backend;
+        private OkHttpClient backendClient;
+
+        @BeforeEach
+        void startBackend() throws IOException {
+            backend = new MockWebServer();
+            backend.start();
+            ExportRecordService.resetEndpointSupport();
+            backendClient = clientFor(backend);
+        }
+
+        @AfterEach
+        void stopBackend() throws IOException {
+            backend.shutdown();
+            ExportRecordService.resetEndpointSupport();
+        }
+
+        /**
+         * Answers the combined endpoint with the given status and the separate calls by path, as the two counts are
+         * asked for side by side
+         */
+        private void serve(final int completeStatus, final long remainingCount, final long failedCount) {
+            backend.setDispatcher(new Dispatcher() {
+
+                @Override
+                public MockResponse dispatch(final RecordedRequest request) {
+                    final String path = request.getPath();
+                    if (path.endsWith("/complete")) {
+                        return new MockResponse().setResponseCode(completeStatus)
+                                .setBody("{\"remainingCount\":" + remainingCount + ",\"failedCount\":" + failedCount + "}");
+                    }
+                    if (path.endsWith("/remainingCount")) {
+                        return new MockResponse().setBody("{\"outstandingCount\":" + remainingCount + "}");
+                    }
+                    if (path.endsWith("/failedCount")) {
+                        return new MockResponse().setBody("{\"failedCount\":" + failedCount + "}");
+                    }
+                    return new MockResponse();
+                }
+            });
+        }
+
+        @Test
+        void recordsLocationAndStatusInOneCall() throws Exception {
+            serve(200, 0L, 2L);
+
+            final ExportCompletionDTO completion = ExportRecordService.completeExportRecordAsync(backendClient,
+                    exportId, submissionId, "key.zip").join();
+
+            assertThat(completion).isEqualTo(new ExportCompletionDTO(0L, 2L));
+            assertThat(backend.getRequestCount()).isEqualTo(1);
+            final RecordedRequest request = backend.takeRequest();
+            assertThat(request.getMethod()).isEqualTo("POST");
+            assertThat(request.getPath()).isEqualTo(submissionPath + "/complete");
+            assertThat(request.getBody().readUtf8()).isEqualTo("{\"s3ObjectKey\":\"key.zip\",\"status\":\"COMPLETE\"}");
+        }
+
+        @Test
+        void fallsBackToSeparateCallsWhenTheBackendLacksTheEndpoint() throws Exception {
+            serve(405, 3L, 1L);
+
+            final ExportCompletionDTO completion = ExportRecordService.completeExportRecordAsync(backendClient,
+                    exportId, submissionId, "key.zip").join();
+
+            assertThat(completion).isEqualTo(new ExportCompletionDTO(3L, 1L));
+            assertThat(backend.takeRequest().getPath()).isEqualTo(submissionPath + "/complete");
+            assertThat(backend.takeRequest().getPath()).isEqualTo(submissionPath + "/s3-object-key");
+            assertThat(backend.takeRequest().getPath()).isEqualTo(submissionPath + "/status");
+            assertThat(backend.getRequestCount()).isEqualTo(5);
+
+            ExportRecordService.completeExportRecordAsync(backendClient, exportId, submissionId, "key.zip").join();
+            backend.takeRequest();
+            backend.takeRequest();
+            assertThat(backend.takeRequest().getPath()).isEqualTo(submissionPath + "/s3-object-key");
+            assertThat(backend.getRequestCount()).isEqualTo(9);
+        }
+
+        @Test
+        void doesNotFallBackOnOtherErrors() {
+            serve(500, 0L, 0L);
+
+            final CompletionException failure = assertThrows(CompletionException.class,
+                    () -> ExportRecordService.completeExportRecordAsync(backendClient, exportId, submissionId,
+                            "key.zip").join());
+
+            assertThat(failure.getCause()).isInstanceOf(BackendResponseException.class);
+            assertThat(backend.getRequestCount()).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    class updateExportRecords {
+
+        private final String exportId = mockExportId.toString();
+        private final String submissionId = mockSubmissionId.toString();
+        private final String otherSubmissionId = UUID.randomUUID().toString();
+
+        private final List<ExportRecordUpdateDTO> updates = List.of(
+                new ExportRecordUpdateDTO(exportId, submissionId, GrantExportStatus.COMPLETE, "key.zip", true),
+                new ExportRecordUpdateDTO(exportId, otherSubmissionId, GrantExportStatus.FAILED, null, false));
+
+        private MockWebServer backend;
+        private OkHttpClient backendClient;
+
+        @BeforeEach
+        void startBackend() throws IOException {
+            backend = new MockWebServer();
+            backend.start();
+            ExportRecordService.resetEndpointSupport();
+            backendClient = clientFor(backend);
+        }
+
+        @AfterEach
+        void stopBackend() throws IOException {
+            backend.shutdown();
+            ExportRecordService.resetEndpointSupport();
+        }
+
+        @Test
+        void sendsEveryUpdateInOneRequest() throws Exception {
+            backend.enqueue(new MockResponse().setBody("{\"updatedCount\":2}"));
+
+            ExportRecordService.updateExportRecords(backendClient, updates);
+
+            assertThat(backend.getRequestCount()).isEqualTo(1);
+            final RecordedRequest request = backend.takeRequest();
+            assertThat(request.getMethod()).isEqualTo("POST");
+            assertThat(request.getPath()).isEqualTo("/api/submissions/export-batch/bulk-update");
+            assertThat(request.getBody().readUtf8()).isEqualTo("{\"updates\":["
+                    + "{\"exportBatchId\":\"" + exportId + "\",\"submissionId\":\"" + submissionId
+                    + "\",\"status\":\"COMPLETE\",\"s3ObjectKey\":\"key.zip\",\"s3ObjectKeyChanged\":true},"
+                    + "{\"exportBatchId\":\"" + exportId + "\",\"submissionId\":\"" + otherSubmissionId
+                    + "\",\"status\":\"FAILED\",\"s3ObjectKeyChanged\":false}]}");
+        }
+
+        @Test
+        void fallsBackToSeparateCallsWhenTheBackendLacksTheEndpoint() throws Exception {
+            backend.enqueue(new MockResponse().setResponseCode(404));
+            backend.enqueue(new MockResponse());
+            backend.enqueue(new MockResponse());
+            backend.enqueue(new MockResponse());
+
+            ExportRecordService.updateExportRecords(backendClient, updates);
+
+            backend.takeRequest();
+            // different records are updated side by side, each record's location before its status
+            final List<String> paths = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                paths.add(backend.takeRequest().getPath());
+            }
+            final String submissionPath = "/api/submissions/" + submissionId + "/export-batch/" + exportId;
+            final String otherStatusPath = "/api/submissions/" + otherSubmissionId + "/export-batch/" + exportId
+                    + "/status";
+            assertThat(paths.indexOf(submissionPath + "/s3-object-key"))
+                    .isLessThan(paths.indexOf(submissionPath + "/status"));
+            assertThat(paths.contains(otherStatusPath)).isTrue();
+            assertThat(backend.getRequestCount()).isEqualTo(4);
+        }
+
+        @Test
+        void doesNotFallBackWhenTheBackendCannotFindARecord() {
+            backend.enqueue(new MockResponse().setResponseCode(404)
+                    .setBody("{\"message\":\"Export record not found\"}"));
+
+            assertThrows(BackendResponseException.class,
+                    () -> ExportRecordService.updateExportRecords(backendClient, updates));
+            assertThat(backend.getRequestCount()).isEqualTo(1);
+        }
+
+        @Test
+        void sendsNothingForNoUpdates() throws Exception {
+            ExportRecordService.updateExportRecords(backendClient, List.of());
+
+            assertThat(backend.getRequestCount()).isZero();
+        }
+
+        @Test
+        void failsTheFutureRatherThanThrowingWhenSentInTheBackground() {
+            backend.enqueue(new MockResponse().setResponseCode(500));
+
+            final CompletableFuture<Void> update = ExportRecordService.updateExportRecordsAsync(backendClient,
+                    updates);
+
+            final CompletionException failure = assertThrows(CompletionException.class, update::join);
+            assertThat(failure.getCause()).isInstanceOf(BackendResponseException.class);
+        }
+    }
 }
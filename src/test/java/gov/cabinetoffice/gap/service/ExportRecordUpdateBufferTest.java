@@ -0,0 +1,177 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.enums.GrantExportStatus;
+import gov.cabinetoffice.gap.model.ExportRecordUpdateDTO;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+public class ExportRecordUpdateBufferTest {
+
+    private static final String EXPORT_BATCH_ID = "a1b2c3d4-0000-4000-8000-000000000001";
+
+    private final OkHttpClient restClient = mock(OkHttpClient.class);
+
+    private MockedStatic<ExportRecordService> mockedExportService;
+
+    @BeforeEach
+    void beforeEach() {
+        mockedExportService = mockStatic(ExportRecordService.class);
+        mockedExportService.when(() -> ExportRecordService.updateExportRecordsAsync(any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @AfterEach
+    void afterEach() {
+        mockedExportService.close();
+    }
+
+    @Nested
+    class flushAsync {
+
+        @Test
+        void sendsNothingUntilFlushed() {
+            final ExportRecordUpdateBuffer buffer = new ExportRecordUpdateBuffer(restClient);
+
+            buffer.updateStatus(EXPORT_BATCH_ID, "submission-1", GrantExportStatus.COMPLETE);
+
+            assertThat(buffer.hasPendingUpdates()).isTrue();
+            mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(any(), any()), never());
+        }
+
+        @Test
+        void mergesChangesPerRecordInFirstSeenOrder() {
+            final ExportRecordUpdateBuffer buffer = new ExportRecordUpdateBuffer(restClient);
+
+            buffer.updateStatus(EXPORT_BATCH_ID, "submission-1", GrantExportStatus.PROCESSING);
+            buffer.updateStatus(EXPORT_BATCH_ID, "submission-2", GrantExportStatus.FAILED);
+            buffer.updateS3ObjectKey(EXPORT_BATCH_ID, "submission-1", "one.zip");
+            buffer.updateStatus(EXPORT_BATCH_ID, "submission-1", GrantExportStatus.COMPLETE);
+            buffer.updateS3ObjectKey(EXPORT_BATCH_ID, "submission-2", null);
+            buffer.flushAsync().join();
+
+            mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(restClient, List.of(
+                    new ExportRecordUpdateDTO(EXPORT_BATCH_ID, "submission-1", GrantExportStatus.COMPLETE, "one.zip", true),
+                    new ExportRecordUpdateDTO(EXPORT_BATCH_ID, "submission-2", GrantExportStatus.FAILED, null, true))));
+            assertThat(buffer.hasPendingUpdates()).isFalse();
+        }
+
+        @Test
+        void doesNothingWhenEmpty() {
+            final ExportRecordUpdateBuffer buffer = new ExportRecordUpdateBuffer(restClient);
+
+            buffer.flushAsync().join();
+
+            mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(any(), any()), never());
+        }
+
+        @Test
+        void sendsChangesMadeDuringAFlushInTheNextOne() {
+            final CompletableFuture<Void> first = new CompletableFuture<>();
+            mockedExportService.when(() -> ExportRecordService.updateExportRecordsAsync(any(), any()))
+                    .thenReturn(first)
+                    .thenReturn(CompletableFuture.completedFuture(null));
+            final ExportRecordUpdateBuffer buffer = new ExportRecordUpdateBuffer(restClient);
+            buffer.updateStatus(EXPORT_BATCH_ID, "submission-1", GrantExportStatus.PROCESSING);
+            buffer.flushAsync();
+
+            buffer.updateStatus(EXPORT_BATCH_ID, "submission-2", GrantExportStatus.PROCESSING);
+            buffer.flushAsync();
+            buffer.updateStatus(EXPORT_BATCH_ID, "submission-3", GrantExportStatus.PROCESSING);
+            final CompletableFuture<Void> next = buffer.flushAsync();
+
+            mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(any(), any()), times(1));
+
+            first.complete(null);
+            next.join();
+
+            mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(restClient, List.of(
+                    new ExportRecordUpdateDTO(EXPORT_BATCH_ID, "submission-2", GrantExportStatus.PROCESSING, null, false),
+                    new ExportRecordUpdateDTO(EXPORT_BATCH_ID, "submission-3", GrantExportStatus.PROCESSING, null, false))));
+            mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(any(), any()), times(2));
+            assertThat(buffer.hasPendingUpdates()).isFalse();
+        }
+
+        @Test
+        void keepsARecordChangedWhileItWasBeingSent() {
+            final CompletableFuture<Void> first = new CompletableFuture<>();
+            mockedExportService.when(() -> ExportRecordService.updateExportRecordsAsync(any(), any()))
+                    .thenReturn(first);
+            final ExportRecordUpdateBuffer buffer = new ExportRecordUpdateBuffer(restClient);
+            buffer.updateStatus(EXPORT_BATCH_ID, "submission-1", GrantExportStatus.PROCESSING);
+            buffer.updateStatus(EXPORT_BATCH_ID, "submission-2", GrantExportStatus.PROCESSING);
+            final CompletableFuture<Void> flush = buffer.flushAsync();
+
+            buffer.updateStatus(EXPORT_BATCH_ID, "submission-1", GrantExportStatus.FAILED);
+            first.complete(null);
+            flush.join();
+
+            assertThat(buffer.hasPendingUpdate(EXPORT_BATCH_ID, "submission-1")).isTrue();
+            assertThat(buffer.hasPendingUpdate(EXPORT_BATCH_ID, "submission-2")).isFalse();
+        }
+
+        @Test
+        void keepsChangesForTheNextFlushWhenSendingFails() {
+            mockedExportService.when(() -> ExportRecordService.updateExportRecordsAsync(any(), any()))
+                    .thenReturn(CompletableFuture.failedFuture(new IOException("timed out")))
+                    .thenReturn(CompletableFuture.completedFuture(null));
+            final ExportRecordUpdateBuffer buffer = new ExportRecordUpdateBuffer(restClient);
+            buffer.updateStatus(EXPORT_BATCH_ID, "submission-1", GrantExportStatus.FAILED);
+
+            assertThat(buffer.flushAsync().isCompletedExceptionally()).isTrue();
+            assertThat(buffer.hasPendingUpdates()).isTrue();
+            buffer.flushAsync().join();
+
+            assertThat(buffer.hasPendingUpdates()).isFalse();
+            mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(restClient, List.of(
+                    new ExportRecordUpdateDTO(EXPORT_BATCH_ID, "submission-1", GrantExportStatus.FAILED, null, false))),
+                    times(2));
+        }
+    }
+
+    @Nested
+    class flush {
+
+        @Test
+        void rethrowsTheCauseWhenSendingFails() {
+            final IOException failure = new IOException("timed out");
+            mockedExportService.when(() -> ExportRecordService.updateExportRecordsAsync(any(), any()))
+                    .thenReturn(CompletableFuture.failedFuture(failure));
+            final ExportRecordUpdateBuffer buffer = new ExportRecordUpdateBuffer(restClient);
+            buffer.updateStatus(EXPORT_BATCH_ID, "submission-1", GrantExportStatus.FAILED);
+
+            assertThatThrownBy(buffer::flush).isSameAs(failure);
+        }
+    }
+
+    @Nested
+    class close {
+
+        @Test
+        void flushesPendingChanges() throws Exception {
+            final ExportRecordUpdateBuffer buffer = new ExportRecordUpdateBuffer(restClient);
+            buffer.updateS3ObjectKey(EXPORT_BATCH_ID, "submission-1", "one.zip");
+
+            buffer.close();
+
+            mockedExportService.verify(() -> ExportRecordService.updateExportRecordsAsync(restClient, List.of(
+                    new ExportRecordUpdateDTO(EXPORT_BATCH_ID, "submission-1", null, "one.zip", true))));
+        }
+    }
+
+}
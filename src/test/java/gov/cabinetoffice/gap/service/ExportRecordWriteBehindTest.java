@@ -0,0 +1,155 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.enums.GrantExportStatus;
+import gov.cabinetoffice.gap.model.ExportRecordUpdateDTO;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatCode;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ExportRecordWriteBehindTest {
+
+    private static final String EXPORT_BATCH_ID = "a1b2c3d4-0000-4000-8000-000000000001";
+
+    private static final String SUBMISSION_ID = "a1b2c3d4-0000-4000-8000-000000000002";
+
+    private static final String OTHER_SUBMISSION_ID = "a1b2c3d4-0000-4000-8000-000000000003";
+
+    private final BackendApi backendApi = mock(BackendApi.class);
+
+    private final ExportRecordWriteBehind writes = new ExportRecordWriteBehind(backendApi);
+
+    private static ExportRecordUpdateDTO status(final String submissionId, final GrantExportStatus status) {
+        return new ExportRecordUpdateDTO(EXPORT_BATCH_ID, submissionId, status, null, false);
+    }
+
+    @Nested
+    class updateStatus {
+
+        @Test
+        void sendsStraightAwayWithoutWaiting() {
+            when(backendApi.updateExportRecordsAsync(any())).thenReturn(new CompletableFuture<>());
+
+            writes.updateStatus(EXPORT_BATCH_ID, SUBMISSION_ID, GrantExportStatus.PROCESSING);
+
+            verify(backendApi).updateExportRecordsAsync(List.of(status(SUBMISSION_ID, GrantExportStatus.PROCESSING)));
+        }
+
+        @Test
+        void mergesChangesMadeWhileAFlushIsInFlight() {
+            final CompletableFuture<Void> processing = new CompletableFuture<>();
+            when(backendApi.updateExportRecordsAsync(any()))
+                    .thenReturn(processing)
+                    .thenReturn(CompletableFuture.completedFuture(null));
+
+            writes.updateStatus(EXPORT_BATCH_ID, SUBMISSION_ID, GrantExportStatus.PROCESSING);
+            writes.updateStatus(EXPORT_BATCH_ID, SUBMISSION_ID, GrantExportStatus.FAILED);
+            writes.updateS3ObjectKey(EXPORT_BATCH_ID, SUBMISSION_ID, "attachments.zip");
+            writes.updateStatus(EXPORT_BATCH_ID, OTHER_SUBMISSION_ID, GrantExportStatus.PROCESSING);
+
+            verify(backendApi, times(1)).updateExportRecordsAsync(any());
+
+            processing.complete(null);
+
+            verify(backendApi).updateExportRecordsAsync(List.of(
+                    new ExportRecordUpdateDTO(EXPORT_BATCH_ID, SUBMISSION_ID, GrantExportStatus.FAILED,
+                            "attachments.zip", true),
+                    status(OTHER_SUBMISSION_ID, GrantExportStatus.PROCESSING)));
+        }
+
+        @Test
+        void sendsAFailedChangeAgainWithTheNextOne() {
+            when(backendApi.updateExportRecordsAsync(any()))
+                    .thenReturn(CompletableFuture.failedFuture(new IOException("backend unavailable")))
+                    .thenReturn(CompletableFuture.completedFuture(null));
+
+            writes.updateStatus(EXPORT_BATCH_ID, SUBMISSION_ID, GrantExportStatus.PROCESSING);
+            writes.updateStatus(EXPORT_BATCH_ID, OTHER_SUBMISSION_ID, GrantExportStatus.PROCESSING);
+
+            verify(backendApi).updateExportRecordsAsync(List.of(
+                    status(SUBMISSION_ID, GrantExportStatus.PROCESSING),
+                    status(OTHER_SUBMISSION_ID, GrantExportStatus.PROCESSING)));
+        }
+    }
+
+    @Nested
+    class await {
+
+        @Test
+        void waitsForTheExportsChanges() throws Exception {
+            final CompletableFuture<Void> processing = new CompletableFuture<>();
+            when(backendApi.updateExportRecordsAsync(any())).thenReturn(processing);
+            writes.updateStatus(EXPORT_BATCH_ID, SUBMISSION_ID, GrantExportStatus.PROCESSING);
+
+            CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS)
+                    .execute(() -> processing.complete(null));
+            writes.await(EXPORT_BATCH_ID, SUBMISSION_ID);
+
+            assertThat(processing.isDone()).isTrue();
+        }
+
+        @Test
+        void rethrowsTheFailureOnceSendingAgainFails() {
+            when(backendApi.updateExportRecordsAsync(any()))
+                    .thenReturn(CompletableFuture.failedFuture(new IOException("first")))
+                    .thenReturn(CompletableFuture.failedFuture(new IOException("second")));
+            writes.updateStatus(EXPORT_BATCH_ID, SUBMISSION_ID, GrantExportStatus.PROCESSING);
+
+            assertThatThrownBy(() -> writes.await(EXPORT_BATCH_ID, SUBMISSION_ID))
+                    .isInstanceOf(IOException.class)
+                    .hasMessage("second");
+        }
+
+        @Test
+        void doesNotThrowOnceSendingAgainSucceeds() {
+            when(backendApi.updateExportRecordsAsync(any()))
+                    .thenReturn(CompletableFuture.failedFuture(new IOException("first")))
+                    .thenReturn(CompletableFuture.completedFuture(null));
+            writes.updateStatus(EXPORT_BATCH_ID, SUBMISSION_ID, GrantExportStatus.PROCESSING);
+
+            assertThatCode(() -> writes.await(EXPORT_BATCH_ID, SUBMISSION_ID)).doesNotThrowAnyException();
+            verify(backendApi, times(2)).updateExportRecordsAsync(any());
+        }
+
+        @Test
+        void doesNothingForAnExportWithoutChanges() {
+            assertThatCode(() -> writes.await(EXPORT_BATCH_ID, SUBMISSION_ID)).doesNotThrowAnyException();
+            verify(backendApi, never()).updateExportRecordsAsync(any());
+        }
+    }
+
+    @Nested
+    class close {
+
+        @Test
+        void waitsForEveryChangeWithoutThrowing() {
+            final CompletableFuture<Void> processing = new CompletableFuture<>();
+            when(backendApi.updateExportRecordsAsync(any()))
+                    .thenReturn(processing)
+                    .thenReturn(CompletableFuture.failedFuture(new IOException()));
+            writes.updateStatus(EXPORT_BATCH_ID, SUBMISSION_ID, GrantExportStatus.PROCESSING);
+            writes.updateStatus(EXPORT_BATCH_ID, OTHER_SUBMISSION_ID, GrantExportStatus.PROCESSING);
+
+            CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS)
+                    .execute(() -> processing.complete(null));
+            assertThatCode(writes::close).doesNotThrowAnyException();
+
+            assertThat(processing.isDone()).isTrue();
+            verify(backendApi, times(2)).updateExportRecordsAsync(any());
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.enums.GrantExportStatus;
+import gov.cabinetoffice.gap.model.GrantExportDTO;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+
+public class GrantExportIteratorTest {
+
+    private static List<GrantExportDTO> readAll(final String json) throws Exception {
+        final List<GrantExportDTO> exports = new ArrayList<>();
+        try (GrantExportIterator iterator = new GrantExportIterator(new StringReader(json))) {
+            iterator.forEachRemaining(exports::add);
+        }
+        return exports;
+    }
+
+    @Test
+    void readsEachExportInTurn() throws Exception {
+        final List<GrantExportDTO> exports = readAll("{\"exportBatchId\":\"a3b5c9e4-5c2b-4c4c-9d55-3a4d9a1f7c11\","
+                + "\"grantExports\":["
+                + "{\"status\":\"COMPLETE\",\"created\":\"2024-01-01T10:00:00Z\",\"location\":\"first.zip\"},"
+                + "{\"status\":\"COMPLETE\",\"location\":\"second.zip\"}]}");
+
+        assertThat(exports.size()).isEqualTo(2);
+        assertThat(exports.get(0).getLocation()).isEqualTo("first.zip");
+        assertThat(exports.get(0).getStatus()).isEqualTo(GrantExportStatus.COMPLETE);
+        assertThat(exports.get(0).getCreated()).isEqualTo(Instant.parse("2024-01-01T10:00:00Z"));
+        assertThat(exports.get(1).getLocation()).isEqualTo("second.zip");
+    }
+
+    @Test
+    void skipsFieldsAroundTheArray() throws Exception {
+        final List<GrantExportDTO> exports = readAll("{\"ignored\":{\"grantExports\":[1,2]},"
+                + "\"grantExports\":[{\"location\":\"only.zip\"}],\"exportBatchId\":null}");
+
+        assertThat(exports.size()).isEqualTo(1);
+        assertThat(exports.get(0).getLocation()).isEqualTo("only.zip");
+    }
+
+    @Test
+    void isEmptyWhenThereAreNoExports() throws Exception {
+        assertThat(readAll("{\"grantExports\":[]}").isEmpty()).isTrue();
+        assertThat(readAll("{\"exportBatchId\":null}").isEmpty()).isTrue();
+    }
+
+    @Test
+    void readsTheLastPageFlagWhereverItAppears() throws Exception {
+        try (GrantExportIterator before = new GrantExportIterator(new StringReader(
+                "{\"last\":false,\"grantExports\":[{\"location\":\"first.zip\"}]}"));
+             GrantExportIterator after = new GrantExportIterator(new StringReader(
+                "{\"grantExports\":[{\"location\":\"first.zip\"}],\"last\":false}"))) {
+            before.forEachRemaining(export -> { });
+            after.forEachRemaining(export -> { });
+
+            assertThat(before.isLastPage()).isFalse();
+            assertThat(after.isLastPage()).isFalse();
+        }
+    }
+
+    @Test
+    void treatsABodyWithoutTheFlagAsTheLastPage() throws Exception {
+        try (GrantExportIterator iterator = new GrantExportIterator(new StringReader(
+                "{\"grantExports\":[{\"location\":\"only.zip\"}]}"))) {
+            iterator.forEachRemaining(export -> { });
+
+            assertThat(iterator.isLastPage()).isTrue();
+        }
+    }
+
+    @Test
+    void throwsOnceExhausted() {
+        final GrantExportIterator iterator = new GrantExportIterator(new StringReader("{\"grantExports\":[]}"));
+
+        assertThat(iterator.hasNext()).isFalse();
+        assertThatThrownBy(iterator::next).isInstanceOf(NoSuchElementException.class);
+    }
+
+}
@@ -0,0 +1,411 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.enums.GrantExportStatus;
+import gov.cabinetoffice.gap.enums.SubmissionProjection;
+import gov.cabinetoffice.gap.model.ExportCompletionDTO;
+import gov.cabinetoffice.gap.model.ExportRecordUpdateDTO;
+import gov.cabinetoffice.gap.model.GrantExportDTO;
+import gov.cabinetoffice.gap.model.GrantExportListDTO;
+import gov.cabinetoffice.gap.model.Submission;
+import gov.cabinetoffice.gap.utils.JsonCodec;
+
+import java.io.StringReader;
+import java.net.SocketException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * A backend held in memory, for running the export in tests and locally to measure throughput and round-trip
+ * budgets.
+ * <p>
+ * Submissions are added with {@link #addSubmission}, which also creates their export record as REQUESTED. Every
+ * call then waits for {@code latency} to stand in for the round trip, and fails with a {@link SocketException} at
+ * random with probability {@code errorRate}, as a dropped connection would. Submissions are handed out as copies
+ * read back from their JSON, so each fetch pays for parsing as it would over HTTP. Batch and submission IDs must be
+ * UUIDs, as they are for the real backend. Calls are counted by method name, see {@link #getCallCount}.
+ */
+public class InMemoryBackendApi implements BackendApi {
+
+    private static final ExecutorService backendExecutor = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "in-memory-backend");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Duration latency;
+
+    private final double errorRate;
+
+    private final Random random;
+
+    private final Map<String, LongAdder> callCounts = new ConcurrentHashMap<>();
+
+    // the fields below are guarded by this
+
+    private final Map<String, String> submissionsJson = new HashMap<>();
+
+    private final Map<String, Map<String, GrantExportDTO>> exportRecords = new LinkedHashMap<>();
+
+    private final Map<String, GrantExportStatus> batchStatuses = new HashMap<>();
+
+    private final Map<String, String> batchLocations = new HashMap<>();
+
+    private final List<String> confirmationEmails = new ArrayList<>();
+
+    public InMemoryBackendApi() {
+        this(Duration.ZERO, 0, 0);
+    }
+
+    public InMemoryBackendApi(final Duration latency, final double errorRate, final long seed) {
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.random = new Random(seed);
+    }
+
+    public synchronized void addSubmission(final String exportBatchId, final String submissionId,
+            final Submission submission) {
+        submissionsJson.put(key(exportBatchId, submissionId), JsonCodec.toJson(submission));
+        exportRecords.computeIfAbsent(exportBatchId, id -> new LinkedHashMap<>()).put(submissionId,
+                new GrantExportDTO(UUID.fromString(exportBatchId), UUID.fromString(submissionId), null,
+                        GrantExportStatus.REQUESTED, null, Instant.now(), null, Instant.now(), null));
+        batchStatuses.putIfAbsent(exportBatchId, GrantExportStatus.REQUESTED);
+    }
+
+    public synchronized GrantExportDTO getExportRecord(final String exportBatchId, final String submissionId) {
+        return exportRecords.getOrDefault(exportBatchId, Map.of()).get(submissionId);
+    }
+
+    public synchronized GrantExportStatus getBatchStatus(final String exportBatchId) {
+        return batchStatuses.get(exportBatchId);
+    }
+
+    public synchronized String getBatchLocation(final String exportBatchId) {
+        return batchLocations.get(exportBatchId);
+    }
+
+    /**
+     * The email address of each confirmation email sent, in order
+     */
+    public synchronized List<String> getConfirmationEmails() {
+        return List.copyOf(confirmationEmails);
+    }
+
+    public long getCallCount(final String method) {
+        final LongAdder count = callCounts.get(method);
+        return count == null ? 0 : count.sum();
+    }
+
+    @Override
+    public void updateExportRecordStatus(final String exportBatchId, final String submissionId,
+            final GrantExportStatus newStatus) throws Exception {
+        call("updateExportRecordStatus", () -> {
+            exportRecord(exportBatchId, submissionId).setStatus(newStatus);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> updateExportRecordStatusAsync(final String exportBatchId,
+            final String submissionId, final GrantExportStatus newStatus) {
+        return callAsync("updateExportRecordStatusAsync", () -> {
+            exportRecord(exportBatchId, submissionId).setStatus(newStatus);
+            return null;
+        });
+    }
+
+    @Override
+    public void addS3ObjectKeyToExportRecord(final String exportBatchId, final String submissionId,
+            final String s3ObjectKey) throws Exception {
+        call("addS3ObjectKeyToExportRecord", () -> {
+            exportRecord(exportBatchId, submissionId).setLocation(s3ObjectKey);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> addS3ObjectKeyToExportRecordAsync(final String exportBatchId,
+            final String submissionId, final String s3ObjectKey) {
+        return callAsync("addS3ObjectKeyToExportRecordAsync", () -> {
+            exportRecord(exportBatchId, submissionId).setLocation(s3ObjectKey);
+            return null;
+        });
+    }
+
+    @Override
+    public void updateExportRecords(final List<ExportRecordUpdateDTO> updates) throws Exception {
+        call("updateExportRecords", () -> applyUpdates(updates));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateExportRecordsAsync(final List<ExportRecordUpdateDTO> updates) {
+        return callAsync("updateExportRecordsAsync", () -> applyUpdates(updates));
+    }
+
+    @Override
+    public ExportCompletionDTO completeExportRecord(final String exportBatchId, final String submissionId,
+            final String s3ObjectKey) throws Exception {
+        return call("completeExportRecord", () -> {
+            final GrantExportDTO record = exportRecord(exportBatchId, submissionId);
+            record.setLocation(s3ObjectKey);
+            record.setStatus(GrantExportStatus.COMPLETE);
+            return new ExportCompletionDTO(remainingCount(exportBatchId), failedCount(exportBatchId));
+        });
+    }
+
+    @Override
+    public CompletableFuture<ExportCompletionDTO> completeExportRecordAsync(final String exportBatchId,
+            final String submissionId, final String s3ObjectKey) {
+        return callAsync("completeExportRecordAsync", () -> {
+            final GrantExportDTO record = exportRecord(exportBatchId, submissionId);
+            record.setLocation(s3ObjectKey);
+            record.setStatus(GrantExportStatus.COMPLETE);
+            return new ExportCompletionDTO(remainingCount(exportBatchId), failedCount(exportBatchId));
+        });
+    }
+
+    @Override
+    public long getRemainingExportsCount(final String exportBatchId) throws Exception {
+        return call("getRemainingExportsCount", () -> remainingCount(exportBatchId));
+    }
+
+    @Override
+    public CompletableFuture<Long> getRemainingExportsCountAsync(final String exportBatchId) {
+        return callAsync("getRemainingExportsCountAsync", () -> remainingCount(exportBatchId));
+    }
+
+    @Override
+    public long getFailedExportsCount(final String exportBatchId) throws Exception {
+        return call("getFailedExportsCount", () -> failedCount(exportBatchId));
+    }
+
+    @Override
+    public CompletableFuture<Long> getFailedExportsCountAsync(final String exportBatchId) {
+        return callAsync("getFailedExportsCountAsync", () -> failedCount(exportBatchId));
+    }
+
+    @Override
+    public long getOutstandingExportsCount(final String exportBatchId) throws Exception {
+        return call("getOutstandingExportsCount", () -> remainingCount(exportBatchId));
+    }
+
+    @Override
+    public CompletableFuture<Long> getOutstandingExportsCountAsync(final String exportBatchId) {
+        return callAsync("getOutstandingExportsCountAsync", () -> remainingCount(exportBatchId));
+    }
+
+    /**
+     * Lists the completed exports as a single page, read back from its JSON like a response body.
+     */
+    @Override
+    public CompletedExportPages streamCompletedExportRecordsByBatchId(final String exportBatchId) {
+        return new CompletedExportPages(page -> call("streamCompletedExportRecordsByBatchId", () -> {
+            final List<GrantExportDTO> completed = exportRecords.getOrDefault(exportBatchId, Map.of()).values()
+                    .stream().filter(record -> record.getStatus() == GrantExportStatus.COMPLETE).toList();
+            final String json = JsonCodec.toJson(new GrantExportListDTO(UUID.fromString(exportBatchId),
+                    page == 0 ? completed : List.of()));
+            return new GrantExportIterator(new StringReader(json));
+        }));
+    }
+
+    @Override
+    public void updateGrantExportBatchRecordStatus(final String exportBatchId, final GrantExportStatus newStatus)
+            throws Exception {
+        call("updateGrantExportBatchRecordStatus", () -> batchStatuses.put(exportBatchId, newStatus));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateGrantExportBatchRecordStatusAsync(final String exportBatchId,
+            final GrantExportStatus newStatus) {
+        return callAsync("updateGrantExportBatchRecordStatusAsync", () -> {
+            batchStatuses.put(exportBatchId, newStatus);
+            return null;
+        });
+    }
+
+    @Override
+    public void addS3ObjectKeyToGrantExportBatchRecord(final String exportBatchId, final String s3ObjectKey)
+            throws Exception {
+        call("addS3ObjectKeyToGrantExportBatchRecord", () -> batchLocations.put(exportBatchId, s3ObjectKey));
+    }
+
+    @Override
+    public CompletableFuture<Void> addS3ObjectKeyToGrantExportBatchRecordAsync(final String exportBatchId,
+            final String s3ObjectKey) {
+        return callAsync("addS3ObjectKeyToGrantExportBatchRecordAsync", () -> {
+            batchLocations.put(exportBatchId, s3ObjectKey);
+            return null;
+        });
+    }
+
+    @Override
+    public Submission getSubmissionData(final String exportBatchId, final String submissionId,
+            final SubmissionProjection projection, final LongConsumer onSize) throws Exception {
+        final String json = call("getSubmissionData", () -> submissionJson(exportBatchId, submissionId));
+        onSize.accept(json.length());
+        return JsonCodec.fromJson(new StringReader(json), Submission.class, projection);
+    }
+
+    @Override
+    public CompletableFuture<Submission> getSubmissionDataAsync(final String exportBatchId,
+            final String submissionId, final SubmissionProjection projection, final LongConsumer onSize) {
+        return callAsync("getSubmissionDataAsync", () -> submissionJson(exportBatchId, submissionId))
+                .thenApply(json -> {
+                    onSize.accept(json.length());
+                    return JsonCodec.fromJson(new StringReader(json), Submission.class, projection);
+                });
+    }
+
+    /**
+     * Hands over the submissions that exist, in the order asked for, after a single round trip, until asked to stop.
+     */
+    @Override
+    public CompletableFuture<Integer> streamSubmissionData(final String exportBatchId,
+            final List<String> submissionIds, final SubmissionProjection projection,
+            final SubmissionService.StreamedSubmissionHandler onSubmission) {
+        final CompletableFuture<Integer> fetch = new CompletableFuture<>();
+        backendExecutor.execute(() -> {
+            try {
+                final Map<String, String> found = call("streamSubmissionData", () -> {
+                    final Map<String, String> submissions = new LinkedHashMap<>();
+                    submissionIds.forEach(submissionId -> {
+                        final String json = submissionsJson.get(key(exportBatchId, submissionId));
+                        if (json != null) {
+                            submissions.put(submissionId, json);
+                        }
+                    });
+                    return submissions;
+                });
+                int count = 0;
+                for (final Map.Entry<String, String> submission : found.entrySet()) {
+                    if (fetch.isDone()) {
+                        return;
+                    }
+                    count++;
+                    if (!onSubmission.handle(submission.getKey(), JsonCodec.fromJson(
+                            new StringReader(submission.getValue()), Submission.class, projection),
+                            submission.getValue().length())) {
+                        break;
+                    }
+                }
+                fetch.complete(count);
+            } catch (Exception e) {
+                fetch.completeExceptionally(e);
+            }
+        });
+        return fetch;
+    }
+
+    @Override
+    public void sendConfirmationEmail(final String emailAddress, final String exportBatchId, final String schemeId,
+            final String submissionId) throws Exception {
+        call("sendConfirmationEmail", () -> confirmationEmails.add(emailAddress));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendConfirmationEmailAsync(final String emailAddress, final String exportBatchId,
+            final String schemeId, final String submissionId) {
+        return callAsync("sendConfirmationEmailAsync", () -> {
+            confirmationEmails.add(emailAddress);
+            return null;
+        });
+    }
+
+    /**
+     * Waits out the latency, maybe fails, then runs the operation holding this
+     */
+    private <T> T call(final String method, final Callable<T> operation) throws Exception {
+        callCounts.computeIfAbsent(method, name -> new LongAdder()).increment();
+        if (!latency.isZero()) {
+            Thread.sleep(latency.toMillis());
+        }
+
+        final boolean fail;
+        synchronized (random) {
+            fail = errorRate > 0 && random.nextDouble() < errorRate;
+        }
+        if (fail) {
+            throw new SocketException("Injected failure of " + method);
+        }
+
+        synchronized (this) {
+            return operation.call();
+        }
+    }
+
+    private <T> CompletableFuture<T> callAsync(final String method, final Callable<T> operation) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        backendExecutor.execute(() -> {
+            try {
+                result.complete(call(method, operation));
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private Void applyUpdates(final List<ExportRecordUpdateDTO> updates) {
+        for (final ExportRecordUpdateDTO update : updates) {
+            final GrantExportDTO record = exportRecord(update.getExportBatchId(), update.getSubmissionId());
+            if (update.isS3ObjectKeyChanged()) {
+                record.setLocation(update.getS3ObjectKey());
+            }
+            if (update.getStatus() != null) {
+                record.setStatus(update.getStatus());
+            }
+        }
+        return null;
+    }
+
+    private GrantExportDTO exportRecord(final String exportBatchId, final String submissionId) {
+        final GrantExportDTO record = getExportRecord(exportBatchId, submissionId);
+        if (record == null) {
+            throw new RuntimeException(String.format("No export record for submission %s in export batch %s",
+                    submissionId, exportBatchId));
+        }
+        return record;
+    }
+
+    private String submissionJson(final String exportBatchId, final String submissionId) {
+        final String json = submissionsJson.get(key(exportBatchId, submissionId));
+        if (json == null) {
+            throw new RuntimeException(String.format("No submission %s in export batch %s", submissionId,
+                    exportBatchId));
+        }
+        return json;
+    }
+
+    /**
+     * Exports not yet COMPLETE or FAILED, counted here as both remaining and outstanding
+     */
+    private long remainingCount(final String exportBatchId) {
+        return exportRecords.getOrDefault(exportBatchId, Map.of()).values().stream()
+                .filter(record -> record.getStatus() != GrantExportStatus.COMPLETE
+                        && record.getStatus() != GrantExportStatus.FAILED)
+                .count();
+    }
+
+    private long failedCount(final String exportBatchId) {
+        return exportRecords.getOrDefault(exportBatchId, Map.of()).values().stream()
+                .filter(record -> record.getStatus() == GrantExportStatus.FAILED).count();
+    }
+
+    private static String key(final String exportBatchId, final String submissionId) {
+        return exportBatchId + "/" + submissionId;
+    }
+
+}
@@ -0,0 +1,172 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.enums.GrantExportStatus;
+import gov.cabinetoffice.gap.enums.SubmissionProjection;
+import gov.cabinetoffice.gap.model.ExportCompletionDTO;
+import gov.cabinetoffice.gap.model.ExportRecordUpdateDTO;
+import gov.cabinetoffice.gap.model.GrantExportDTO;
+import gov.cabinetoffice.gap.model.Submission;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+
+public class InMemoryBackendApiTest {
+
+    private static final String EXPORT_BATCH_ID = "a3f9c0e2-5d1b-4c7e-8f2a-6b9d0e1c3a57";
+
+    private static final String FIRST_SUBMISSION_ID = "1c2d3e4f-5a6b-4c7d-8e9f-0a1b2c3d4e5f";
+
+    private static final String SECOND_SUBMISSION_ID = "9f8e7d6c-5b4a-4392-8170-6f5e4d3c2b1a";
+
+    private InMemoryBackendApi backendApi;
+
+    private static Submission submission(final String gapId) {
+        final Submission submission = new Submission();
+        submission.setGapId(gapId);
+        return submission;
+    }
+
+    @BeforeEach
+    void beforeEach() {
+        backendApi = new InMemoryBackendApi();
+        backendApi.addSubmission(EXPORT_BATCH_ID, FIRST_SUBMISSION_ID, submission("GAP-1"));
+        backendApi.addSubmission(EXPORT_BATCH_ID, SECOND_SUBMISSION_ID, submission("GAP-2"));
+    }
+
+    @Nested
+    class getSubmissionData {
+
+        @Test
+        void handsOutACopyOfTheSubmission() throws Exception {
+            final Submission first = backendApi.getSubmissionData(EXPORT_BATCH_ID, FIRST_SUBMISSION_ID,
+                    SubmissionProjection.EXPORT);
+            first.setGapId("changed");
+
+            assertThat(backendApi.getSubmissionData(EXPORT_BATCH_ID, FIRST_SUBMISSION_ID,
+                    SubmissionProjection.EXPORT).getGapId()).isEqualTo("GAP-1");
+            assertThat(backendApi.getCallCount("getSubmissionData")).isEqualTo(2);
+        }
+
+        @Test
+        void failsForAnUnknownSubmission() {
+            assertThatThrownBy(() -> backendApi.getSubmissionData(EXPORT_BATCH_ID,
+                    "00000000-0000-4000-8000-000000000000", SubmissionProjection.EXPORT))
+                    .isInstanceOf(RuntimeException.class);
+        }
+
+    }
+
+    @Nested
+    class streamSubmissionData {
+
+        @Test
+        void handsOverTheSubmissionsThatExistInOrder() {
+            final List<String> handedOver = new ArrayList<>();
+
+            final int count = backendApi.streamSubmissionData(EXPORT_BATCH_ID,
+                    List.of(SECOND_SUBMISSION_ID, "00000000-0000-4000-8000-000000000000", FIRST_SUBMISSION_ID),
+                    SubmissionProjection.EXPORT,
+                    (submissionId, submission, size) -> handedOver.add(submission.getGapId())).join();
+
+            assertThat(count).isEqualTo(2);
+            assertThat(handedOver).isEqualTo(List.of("GAP-2", "GAP-1"));
+        }
+
+    }
+
+    @Nested
+    class updateExportRecordsAsync {
+
+        @Test
+        void appliesTheLocationAndStatusOfEachUpdate() {
+            backendApi.updateExportRecordsAsync(List.of(new ExportRecordUpdateDTO(EXPORT_BATCH_ID,
+                    FIRST_SUBMISSION_ID, GrantExportStatus.FAILED, "attachments.zip", true))).join();
+
+            final GrantExportDTO record = backendApi.getExportRecord(EXPORT_BATCH_ID, FIRST_SUBMISSION_ID);
+            assertThat(record.getStatus()).isEqualTo(GrantExportStatus.FAILED);
+            assertThat(record.getLocation()).isEqualTo("attachments.zip");
+        }
+
+    }
+
+    @Nested
+    class completeExportRecord {
+
+        @Test
+        void recordsTheLocationAndReportsTheCounts() throws Exception {
+            backendApi.updateExportRecords(List.of(new ExportRecordUpdateDTO(EXPORT_BATCH_ID, SECOND_SUBMISSION_ID,
+                    GrantExportStatus.FAILED, null, false)));
+
+            final ExportCompletionDTO completion = backendApi.completeExportRecord(EXPORT_BATCH_ID,
+                    FIRST_SUBMISSION_ID, "zip-key");
+
+            assertThat(completion).isEqualTo(new ExportCompletionDTO(0L, 1L));
+            final GrantExportDTO record = backendApi.getExportRecord(EXPORT_BATCH_ID, FIRST_SUBMISSION_ID);
+            assertThat(record.getStatus()).isEqualTo(GrantExportStatus.COMPLETE);
+            assertThat(record.getLocation()).isEqualTo("zip-key");
+        }
+
+        @Test
+        void leavesTheOthersRemaining() throws Exception {
+            backendApi.completeExportRecord(EXPORT_BATCH_ID, FIRST_SUBMISSION_ID, "zip-key");
+
+            assertThat(backendApi.getRemainingExportsCountAsync(EXPORT_BATCH_ID).join()).isEqualTo(1L);
+            assertThat(backendApi.getOutstandingExportsCountAsync(EXPORT_BATCH_ID).join()).isEqualTo(1L);
+            assertThat(backendApi.getFailedExportsCountAsync(EXPORT_BATCH_ID).join()).isEqualTo(0L);
+        }
+
+    }
+
+    @Nested
+    class streamCompletedExportRecordsByBatchId {
+
+        @Test
+        void listsOnlyCompletedExports() throws Exception {
+            backendApi.completeExportRecord(EXPORT_BATCH_ID, SECOND_SUBMISSION_ID, "zip-key");
+
+            final List<String> locations = new ArrayList<>();
+            try (CompletedExportPages exports = backendApi.streamCompletedExportRecordsByBatchId(EXPORT_BATCH_ID)) {
+                exports.forEachRemaining(export -> locations.add(export.getLocation()));
+            }
+
+            assertThat(locations).isEqualTo(List.of("zip-key"));
+        }
+
+    }
+
+    @Nested
+    class errorInjection {
+
+        @Test
+        void failsEveryCallAtAnErrorRateOfOne() {
+            final InMemoryBackendApi failingBackendApi = new InMemoryBackendApi(Duration.ZERO, 1, 0);
+
+            assertThatThrownBy(() -> failingBackendApi.updateGrantExportBatchRecordStatus(EXPORT_BATCH_ID,
+                    GrantExportStatus.COMPLETE)).isInstanceOf(IOException.class);
+            assertThatThrownBy(() -> failingBackendApi.getRemainingExportsCountAsync(EXPORT_BATCH_ID).join())
+                    .isInstanceOf(CompletionException.class).hasCauseInstanceOf(IOException.class);
+        }
+
+        @Test
+        void waitsOutTheLatencyOnEveryCall() throws Exception {
+            final InMemoryBackendApi slowBackendApi = new InMemoryBackendApi(Duration.ofMillis(100), 0, 0);
+
+            final long start = System.nanoTime();
+            slowBackendApi.sendConfirmationEmail("admin@example.com", EXPORT_BATCH_ID, "1", FIRST_SUBMISSION_ID);
+
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(100));
+            assertThat(slowBackendApi.getConfirmationEmails()).isEqualTo(List.of("admin@example.com"));
+        }
+
+    }
+
+}
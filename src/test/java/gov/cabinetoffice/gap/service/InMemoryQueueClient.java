@@ -0,0 +1,47 @@
+package gov.cabinetoffice.gap.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A queue held in memory, standing in for SQS in tests. It only records the visibility changes made to each
+ * message, by receipt handle, see {@link #getVisibilityChanges}. Every queue has the same visibility timeout, 30 s
+ * unless given, as SQS defaults to.
+ */
+public class InMemoryQueueClient implements QueueClient {
+
+    private final Map<String, List<Duration>> visibilityChanges = new HashMap<>();
+
+    private final Duration visibilityTimeout;
+
+    public InMemoryQueueClient() {
+        this(Duration.ofSeconds(30));
+    }
+
+    public InMemoryQueueClient(final Duration visibilityTimeout) {
+        this.visibilityTimeout = visibilityTimeout;
+    }
+
+    @Override
+    public synchronized void changeVisibility(final String queueUrl, final List<String> receiptHandles,
+            final Duration timeout) {
+        receiptHandles.forEach(receiptHandle -> visibilityChanges
+                .computeIfAbsent(receiptHandle, key -> new ArrayList<>()).add(timeout));
+    }
+
+    @Override
+    public Duration getVisibilityTimeout(final String queueUrl) {
+        return visibilityTimeout;
+    }
+
+    /**
+     * The visibility timeouts set on the given message so far, oldest first.
+     */
+    public synchronized List<Duration> getVisibilityChanges(final String receiptHandle) {
+        return List.copyOf(visibilityChanges.getOrDefault(receiptHandle, List.of()));
+    }
+
+}
@@ -0,0 +1,124 @@
+package gov.cabinetoffice.gap.service;
+
+import com.google.gson.JsonObject;
+import gov.cabinetoffice.gap.utils.JsonCodec;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+
+public class LatencyInterceptorTest {
+
+    private static final String STATUS_PATH = "/api/submissions/1a2b3c4d-0000-0000-0000-000000000001/export-batch/"
+            + "1a2b3c4d-0000-0000-0000-000000000002/status";
+
+    private static final String STATUS_ENDPOINT = "GET /api/submissions/{id}/export-batch/{id}/status";
+
+    private final LatencyInterceptor interceptor = new LatencyInterceptor();
+
+    private MockWebServer server;
+
+    private OkHttpClient client;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        client = new OkHttpClient.Builder().addInterceptor(interceptor).build();
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        server.shutdown();
+    }
+
+    private void call(final String path) throws IOException {
+        client.newCall(new Request.Builder().url(server.url(path)).build()).execute().close();
+    }
+
+    @Nested
+    class intercept {
+
+        @Test
+        void timesCallsPerEndpointWithoutTheHostOrIds() throws IOException {
+            server.enqueue(new MockResponse().setBody("{}").setHeadersDelay(50, TimeUnit.MILLISECONDS));
+            server.enqueue(new MockResponse().setBody("{}"));
+
+            call(STATUS_PATH);
+            call(STATUS_PATH);
+
+            final LatencyInterceptor.EndpointLatency latency = interceptor.snapshot().get(STATUS_ENDPOINT);
+            assertThat(latency.getCalls()).isEqualTo(2);
+            assertThat(latency.getMaxMicros()).isGreaterThanOrEqualTo(50_000L);
+            assertThat(latency.getP50Micros()).isLessThan(latency.getMaxMicros());
+        }
+
+        @Test
+        void countsClientAndServerErrors() throws IOException {
+            server.enqueue(new MockResponse().setResponseCode(404));
+            server.enqueue(new MockResponse().setResponseCode(503));
+            server.enqueue(new MockResponse().setResponseCode(500));
+
+            call(STATUS_PATH);
+            call(STATUS_PATH);
+            call(STATUS_PATH);
+
+            final LatencyInterceptor.EndpointLatency latency = interceptor.snapshot().get(STATUS_ENDPOINT);
+            assertThat(latency.getCalls()).isEqualTo(3);
+            assertThat(latency.getClientErrors()).isEqualTo(1);
+            assertThat(latency.getServerErrors()).isEqualTo(2);
+        }
+
+        @Test
+        void countsCallsThatFailedWithoutAResponse() {
+            server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+            client = client.newBuilder().retryOnConnectionFailure(false).build();
+
+            assertThatThrownBy(() -> call(STATUS_PATH)).isInstanceOf(IOException.class);
+
+            assertThat(interceptor.snapshot().get(STATUS_ENDPOINT).getNetworkErrors()).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    class logAndReset {
+
+        @Test
+        void startsCountingAgain() throws IOException {
+            server.enqueue(new MockResponse().setBody("{}"));
+            call(STATUS_PATH);
+
+            interceptor.logAndReset();
+
+            assertThat(interceptor.snapshot().isEmpty()).isTrue();
+        }
+    }
+
+    @Test
+    void writesTheSnapshotAsJson() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        call(STATUS_PATH);
+
+        final JsonObject json = JsonCodec.gson()
+                .fromJson(LatencyInterceptor.toJson(interceptor.snapshot()), JsonObject.class);
+
+        assertThat(json.get("metric").getAsString()).isEqualTo("backendLatency");
+        final JsonObject endpoint = json.getAsJsonArray("endpoints").get(0).getAsJsonObject();
+        assertThat(endpoint.get("endpoint").getAsString()).isEqualTo(STATUS_ENDPOINT);
+        assertThat(endpoint.get("calls").getAsLong()).isEqualTo(1);
+        assertThat(endpoint.get("serverErrors").getAsLong()).isEqualTo(1);
+        assertThat(endpoint.has("p99Micros")).isTrue();
+    }
+
+}
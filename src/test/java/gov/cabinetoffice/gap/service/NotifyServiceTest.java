@@ -10,6 +10,7 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.MockedStatic;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -91,4 +92,42 @@ public class NotifyServiceTest {
 
     }
 
+    @Nested
+    class sendConfirmationEmailAsync {
+
+        ArgumentCaptor<SendLambdaExportEmailDTO> sendEmailDTOCaptor = ArgumentCaptor
+                .forClass(SendLambdaExportEmailDTO.class);
+
+        @Test
+        void ShouldSuccessfullySendEmail() throws Exception {
+            final String mockEmail = "testing@and.digital";
+            final UUID mockBatchId = UUID.randomUUID();
+            final UUID mockSubmissionId = UUID.randomUUID();
+            final String mockSchemeId = "12345";
+            final String mockRedirectUrl = "http://testing.com/url-to-test";
+
+            try (MockedStatic<RestService> mockedRestService = mockStatic(RestService.class);
+                    MockedStatic<HelperUtils> mockedHelperUtils = mockStatic(HelperUtils.class)) {
+
+                mockedHelperUtils.when(() -> HelperUtils.getRedirectUrl(mockSchemeId, mockBatchId.toString()))
+                        .thenReturn(mockRedirectUrl);
+                mockedRestService.when(() -> RestService.sendPostRequestAsync(any(), any(SendLambdaExportEmailDTO.class), anyString()))
+                        .thenReturn(CompletableFuture.completedFuture(null));
+
+                NotifyService.sendConfirmationEmailAsync(mockedHttpClient, mockEmail, mockBatchId.toString(), mockSchemeId,
+                        mockSubmissionId.toString()).get();
+
+                mockedRestService.verify(() -> RestService.sendPostRequestAsync(any(), sendEmailDTOCaptor.capture(),
+                        eq("/emails/sendLambdaConfirmationEmail")));
+
+                SendLambdaExportEmailDTO capturedDTO = sendEmailDTOCaptor.getValue();
+
+                assertThat(capturedDTO.getEmailAddress()).isEqualTo(mockEmail);
+                assertThat(capturedDTO.getPersonalisation()).hasFieldOrPropertyWithValue("REDIRECT_URL",
+                        mockRedirectUrl);
+            }
+        }
+
+    }
+
 }
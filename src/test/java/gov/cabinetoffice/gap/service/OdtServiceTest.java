@@ -9,6 +9,7 @@ import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
+import java.io.File;
 import java.io.StringWriter;
 
 import static gov.cabinetoffice.gap.testdata.TestData.*;
@@ -17,9 +18,11 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 class OdtServiceTest {
 
+    private static final ExportWorkspace TMP_WORKSPACE = new ExportWorkspace("testSubmissionId", new File("/tmp"));
+
     @Test
     void compareTestGenerateSingleOdtForSchemeVersion1() throws Exception {
-        OdtService.generateSingleOdt(V1_SUBMISSION, "testFileName");
+        OdtService.generateSingleOdt(V1_SUBMISSION, "testFileName", TMP_WORKSPACE);
         final String generatedContent;
         try (OdfDocument generatedDoc = OdfDocument.loadDocument("/tmp/testFileName.odt")) {
             generatedContent = docToString(generatedDoc.getContentDom());
@@ -47,7 +50,7 @@ class OdtServiceTest {
 
     @Test
     void compareTestGenerateSingleOdtForLimitedCompanyWithCCAndCHForSchemeVersion2() throws Exception {
-        OdtService.generateSingleOdt(V2_SUBMISSION_LIMITED_COMPANY_WITH_CC_AND_CH, "testFileName2");
+        OdtService.generateSingleOdt(V2_SUBMISSION_LIMITED_COMPANY_WITH_CC_AND_CH, "testFileName2", TMP_WORKSPACE);
         final String generatedContent;
         try (OdfDocument generatedDoc = OdfDocument.loadDocument("/tmp/testFileName2.odt")) {
             generatedContent = docToString(generatedDoc.getContentDom());
@@ -77,7 +80,7 @@ class OdtServiceTest {
 
     @Test
     void compareTestGenerateSingleOdtForLimitedCompanyWithoutCCAndCHForSchemeVersion2() throws Exception {
-        OdtService.generateSingleOdt(V2_SUBMISSION_LIMITED_COMPANY_WITHOUT_CC_AND_CH, "testFileName3");
+        OdtService.generateSingleOdt(V2_SUBMISSION_LIMITED_COMPANY_WITHOUT_CC_AND_CH, "testFileName3", TMP_WORKSPACE);
         final String generatedContent;
         try (OdfDocument generatedDoc = OdfDocument.loadDocument("/tmp/testFileName3.odt")) {
             generatedContent = docToString(generatedDoc.getContentDom());
@@ -107,7 +110,7 @@ class OdtServiceTest {
 
     @Test
     void compareTestGenerateSingleOdtForNonLimitedCompanyForSchemeVersion2() throws Exception {
-        OdtService.generateSingleOdt(V2_SUBMISSION_NON_LIMITED_COMPANY, "testFileName4");
+        OdtService.generateSingleOdt(V2_SUBMISSION_NON_LIMITED_COMPANY, "testFileName4", TMP_WORKSPACE);
         final String generatedContent;
         try (OdfDocument generatedDoc = OdfDocument.loadDocument("/tmp/testFileName4.odt")) {
             generatedContent = docToString(generatedDoc.getContentDom());
@@ -137,7 +140,7 @@ class OdtServiceTest {
 
     @Test
     void compareTestGenerateSingleOdtForIndividualForSchemeVersion2() throws Exception {
-        OdtService.generateSingleOdt(V2_SUBMISSION_INDIVIDUAL, "testFileName5");
+        OdtService.generateSingleOdt(V2_SUBMISSION_INDIVIDUAL, "testFileName5", TMP_WORKSPACE);
         final String generatedContent;
         try (OdfDocument generatedDoc = OdfDocument.loadDocument("/tmp/testFileName5.odt")) {
             generatedContent = docToString(generatedDoc.getContentDom());
@@ -170,7 +173,7 @@ class OdtServiceTest {
     @Test
     void compareTestGenerateSingleOdtForLocalAuthoritiesForSchemeVersion2() throws Exception {
         final Submission submission = V2_SUBMISSION_LOCAL_AUTHORITY;
-        OdtService.generateSingleOdt(submission, "testFileName5");
+        OdtService.generateSingleOdt(submission, "testFileName5", TMP_WORKSPACE);
         final OdfDocument generatedDoc = OdfDocument.loadDocument("/tmp/testFileName5.odt");
         final String generatedContent = docToString(generatedDoc.getContentDom());
 
@@ -198,7 +201,7 @@ class OdtServiceTest {
 
     @Test
     void compareTestGenerateSingleOdtForOptionalCustomSectionQuestions() throws Exception {
-        OdtService.generateSingleOdt(V2_SUBMISSION_WITH_CUSTOM_SECTION, "testFileName6");
+        OdtService.generateSingleOdt(V2_SUBMISSION_WITH_CUSTOM_SECTION, "testFileName6", TMP_WORKSPACE);
         final String generatedContent;
         try (OdfDocument generatedDoc = OdfDocument.loadDocument("/tmp/testFileName6.odt")) {
             generatedContent = docToString(generatedDoc.getContentDom());
@@ -0,0 +1,161 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.enums.EndpointFamily;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+
+public class RateLimitInterceptorTest {
+
+    private static final String COUNT_PATH = "/api/grant-export/batchId/remainingCount";
+
+    private MockWebServer server;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        server.shutdown();
+    }
+
+    private OkHttpClient client(final RateLimitInterceptor interceptor) {
+        return new OkHttpClient.Builder().addInterceptor(interceptor).build();
+    }
+
+    private Request get(final String path) {
+        return new Request.Builder().url(server.url(path)).build();
+    }
+
+    @Nested
+    class intercept {
+
+        @Test
+        void spacesCallsBeyondTheBurstAtTheRate() throws IOException {
+            final RateLimitInterceptor interceptor = new RateLimitInterceptor(Map.of(EndpointFamily.COUNTS,
+                    RateLimit.builder().permitsPerSecond(10).burst(1).build()));
+            final OkHttpClient client = client(interceptor);
+
+            final long start = System.nanoTime();
+            for (int i = 0; i < 3; i++) {
+                server.enqueue(new MockResponse().setBody("{}"));
+                client.newCall(get(COUNT_PATH)).execute().close();
+            }
+
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(200));
+            final RateLimitInterceptor.FamilyMetrics metrics = interceptor.snapshot().get(EndpointFamily.COUNTS);
+            assertThat(metrics.getCalls()).isEqualTo(3);
+            assertThat(metrics.getDelayedCalls()).isEqualTo(2);
+            assertThat(metrics.getMaxQueueTime()).isGreaterThanOrEqualTo(Duration.ofMillis(90));
+        }
+
+        @Test
+        void holdsACallBackUntilTheOneBeforeHasClosedItsBody() throws Exception {
+            final RateLimitInterceptor interceptor = new RateLimitInterceptor(Map.of(EndpointFamily.COUNTS,
+                    RateLimit.builder().maxConcurrent(1).build()));
+            final OkHttpClient client = client(interceptor);
+            server.enqueue(new MockResponse().setBody("first"));
+            server.enqueue(new MockResponse().setBody("second"));
+
+            final Response first = client.newCall(get(COUNT_PATH)).execute();
+            final Call second = client.newCall(get(COUNT_PATH));
+            final Thread secondCall = new Thread(() -> {
+                try {
+                    second.execute().close();
+                } catch (IOException ignored) {
+                }
+            });
+            secondCall.start();
+
+            assertThat(server.takeRequest(300, TimeUnit.MILLISECONDS)).isNotNull();
+            // still waiting for the first body to be closed
+            assertThat(server.takeRequest(300, TimeUnit.MILLISECONDS)).isNull();
+
+            first.close();
+            secondCall.join(5000);
+
+            assertThat(server.getRequestCount()).isEqualTo(2);
+            assertThat(interceptor.snapshot().get(EndpointFamily.COUNTS).getPeakInFlight()).isEqualTo(1);
+        }
+
+        @Test
+        void failsACallCancelledWhileItWaits() throws Exception {
+            final RateLimitInterceptor interceptor = new RateLimitInterceptor(Map.of(EndpointFamily.COUNTS,
+                    RateLimit.builder().maxConcurrent(1).build()));
+            final OkHttpClient client = client(interceptor);
+            server.enqueue(new MockResponse().setBody("first"));
+
+            try (Response ignored = client.newCall(get(COUNT_PATH)).execute()) {
+                final Call second = client.newCall(get(COUNT_PATH));
+                new Thread(() -> {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException ignoredInterrupt) {
+                    }
+                    second.cancel();
+                }).start();
+
+                assertThatThrownBy(second::execute).isInstanceOf(IOException.class);
+            }
+
+            assertThat(server.getRequestCount()).isEqualTo(1);
+        }
+
+        @Test
+        void leavesFamiliesWithoutLimitsAlone() throws IOException {
+            final RateLimitInterceptor interceptor = new RateLimitInterceptor(Map.of(EndpointFamily.COUNTS,
+                    RateLimit.builder().maxConcurrent(1).build()));
+            server.enqueue(new MockResponse().setBody("{}"));
+
+            client(interceptor).newCall(get("/api/emails/sendLambdaConfirmationEmail")).execute().close();
+
+            assertThat(interceptor.snapshot().get(EndpointFamily.EMAILS)).isNull();
+            assertThat(interceptor.snapshot().get(EndpointFamily.COUNTS).getCalls()).isEqualTo(0);
+        }
+    }
+
+    @Nested
+    class endpointFamily {
+
+        @Test
+        void groupsTheBackendEndpoints() {
+            assertThat(EndpointFamily.of(List.of("api", "submissions", "id", "export-batch", "batchId", "status")))
+                    .isEqualTo(EndpointFamily.STATUS_UPDATES);
+            assertThat(EndpointFamily.of(List.of("api", "submissions", "export-batch", "bulk-update")))
+                    .isEqualTo(EndpointFamily.STATUS_UPDATES);
+            assertThat(EndpointFamily.of(List.of("api", "grant-export", "batchId", "batch", "s3-object-key")))
+                    .isEqualTo(EndpointFamily.STATUS_UPDATES);
+            assertThat(EndpointFamily.of(List.of("api", "grant-export", "batchId", "failedCount")))
+                    .isEqualTo(EndpointFamily.COUNTS);
+            assertThat(EndpointFamily.of(List.of("api", "submissions", "id", "export-batch", "batchId", "submission")))
+                    .isEqualTo(EndpointFamily.SUBMISSIONS);
+            assertThat(EndpointFamily.of(List.of("api", "submissions", "export-batch", "batchId", "submissions")))
+                    .isEqualTo(EndpointFamily.SUBMISSIONS);
+            assertThat(EndpointFamily.of(List.of("api", "grant-export", "batchId", "completed")))
+                    .isEqualTo(EndpointFamily.COMPLETED_EXPORTS);
+            assertThat(EndpointFamily.of(List.of("api", "emails", "sendLambdaConfirmationEmail")))
+                    .isEqualTo(EndpointFamily.EMAILS);
+            assertThat(EndpointFamily.of(List.of("api"))).isEqualTo(EndpointFamily.OTHER);
+        }
+    }
+
+}
@@ -0,0 +1,251 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.exceptions.CircuitBreakerOpenException;
+import gov.cabinetoffice.gap.utils.CircuitBreaker;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+
+public class ResilienceInterceptorTest {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private final RetryPolicy fastRetries = RetryPolicy.builder()
+            .maxAttempts(3)
+            .baseDelay(Duration.ofMillis(10))
+            .maxDelay(Duration.ofSeconds(2))
+            .callDeadline(Duration.ofSeconds(10))
+            .failureThreshold(10)
+            .build();
+
+    private MockWebServer server;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        server.shutdown();
+    }
+
+    private OkHttpClient client(final ResilienceInterceptor interceptor) {
+        return new OkHttpClient.Builder().addInterceptor(interceptor).build();
+    }
+
+    private Request get(final String path) {
+        return new Request.Builder().url(server.url(path)).build();
+    }
+
+    private Request post(final String path) {
+        return new Request.Builder().url(server.url(path)).post(RequestBody.create("{}", JSON)).build();
+    }
+
+    @Nested
+    class retries {
+
+        @Test
+        void retriesIdempotentRequestsOnServerErrors() throws IOException {
+            server.enqueue(new MockResponse().setResponseCode(502));
+            server.enqueue(new MockResponse().setResponseCode(500));
+            server.enqueue(new MockResponse().setBody("ok"));
+
+            try (Response response = client(new ResilienceInterceptor(fastRetries)).newCall(get("/count")).execute()) {
+                assertThat(response.code()).isEqualTo(200);
+            }
+            assertThat(server.getRequestCount()).isEqualTo(3);
+        }
+
+        @Test
+        void givesUpAfterMaxAttempts() throws IOException {
+            server.enqueue(new MockResponse().setResponseCode(500));
+            server.enqueue(new MockResponse().setResponseCode(500));
+            server.enqueue(new MockResponse().setResponseCode(500));
+            server.enqueue(new MockResponse().setBody("ok"));
+
+            try (Response response = client(new ResilienceInterceptor(fastRetries)).newCall(get("/count")).execute()) {
+                assertThat(response.code()).isEqualTo(500);
+            }
+            assertThat(server.getRequestCount()).isEqualTo(3);
+        }
+
+        @Test
+        void doesNotRetryNonIdempotentRequestsTheServerMayHaveProcessed() throws IOException {
+            server.enqueue(new MockResponse().setResponseCode(500));
+            server.enqueue(new MockResponse().setBody("ok"));
+
+            try (Response response = client(new ResilienceInterceptor(fastRetries)).newCall(post("/emails")).execute()) {
+                assertThat(response.code()).isEqualTo(500);
+            }
+            assertThat(server.getRequestCount()).isEqualTo(1);
+        }
+
+        @Test
+        void retriesNonIdempotentRequestsTaggedAsSafe() throws IOException {
+            server.enqueue(new MockResponse().setResponseCode(500));
+            server.enqueue(new MockResponse().setBody("ok"));
+            final Request request = post("/status").newBuilder()
+                    .tag(ResilienceInterceptor.Idempotency.class, ResilienceInterceptor.Idempotency.SAFE_TO_RETRY)
+                    .build();
+
+            try (Response response = client(new ResilienceInterceptor(fastRetries)).newCall(request).execute()) {
+                assertThat(response.code()).isEqualTo(200);
+            }
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        }
+
+        @Test
+        void retriesIdempotentRequestsAfterADroppedConnection() throws IOException {
+            server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+            server.enqueue(new MockResponse().setBody("ok"));
+
+            try (Response response = client(new ResilienceInterceptor(fastRetries)).newCall(get("/count")).execute()) {
+                assertThat(response.body().string()).isEqualTo("ok");
+            }
+        }
+    }
+
+    @Nested
+    class retryAfter {
+
+        @Test
+        void waitsAsLongAsTheServerAsksOnTooManyRequests() throws IOException {
+            server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+            server.enqueue(new MockResponse().setBody("ok"));
+
+            final long start = System.nanoTime();
+            try (Response response = client(new ResilienceInterceptor(fastRetries)).newCall(post("/emails")).execute()) {
+                assertThat(response.code()).isEqualTo(200);
+            }
+
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(950));
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        }
+
+        @Test
+        void returnsTheResponseWhenTheServerAsksForTooLongAWait() throws IOException {
+            server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "120"));
+            server.enqueue(new MockResponse().setBody("ok"));
+
+            try (Response response = client(new ResilienceInterceptor(fastRetries)).newCall(get("/count")).execute()) {
+                assertThat(response.code()).isEqualTo(503);
+            }
+            assertThat(server.getRequestCount()).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    class deadline {
+
+        @Test
+        void doesNotStartARetryThatWouldOverrunTheDeadline() throws IOException {
+            final RetryPolicy tightDeadline = fastRetries.toBuilder()
+                    .baseDelay(Duration.ofSeconds(1))
+                    .maxDelay(Duration.ofSeconds(1))
+                    .callDeadline(Duration.ofMillis(500))
+                    .build();
+            server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "1"));
+            server.enqueue(new MockResponse().setBody("ok"));
+
+            try (Response response = client(new ResilienceInterceptor(tightDeadline)).newCall(get("/count")).execute()) {
+                assertThat(response.code()).isEqualTo(503);
+            }
+            assertThat(server.getRequestCount()).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    class circuitBreaker {
+
+        @Test
+        void stopsCallingAnEndpointThatKeepsFailing() throws IOException {
+            final RetryPolicy noRetries = fastRetries.toBuilder()
+                    .maxAttempts(1)
+                    .failureThreshold(2)
+                    .openDuration(Duration.ofMinutes(1))
+                    .build();
+            final ResilienceInterceptor interceptor = new ResilienceInterceptor(noRetries);
+            final OkHttpClient client = client(interceptor);
+            server.enqueue(new MockResponse().setResponseCode(500));
+            server.enqueue(new MockResponse().setResponseCode(500));
+
+            client.newCall(get("/grant-export/123/remainingCount")).execute().close();
+            client.newCall(get("/grant-export/456/remainingCount")).execute().close();
+
+            assertThatThrownBy(() -> client.newCall(get("/grant-export/789/remainingCount")).execute())
+                    .isInstanceOf(CircuitBreakerOpenException.class);
+            assertThat(server.getRequestCount()).isEqualTo(2);
+            assertThat(interceptor.getCircuitState("GET " + server.getHostName() + "/grant-export/{id}/remainingCount"))
+                    .isEqualTo(CircuitBreaker.State.OPEN);
+        }
+
+        @Test
+        void recoversWhenTheTrialCallFailsWithARuntimeException() throws Exception {
+            final RetryPolicy noRetries = fastRetries.toBuilder()
+                    .maxAttempts(1)
+                    .failureThreshold(1)
+                    .openDuration(Duration.ofMillis(50))
+                    .build();
+            final AtomicBoolean failInside = new AtomicBoolean();
+            final OkHttpClient client = new OkHttpClient.Builder()
+                    .addInterceptor(new ResilienceInterceptor(noRetries))
+                    .addInterceptor(chain -> {
+                        if (failInside.getAndSet(false)) {
+                            throw new IllegalStateException("Inner interceptor failed");
+                        }
+                        return chain.proceed(chain.request());
+                    })
+                    .build();
+            server.enqueue(new MockResponse().setResponseCode(500));
+            server.enqueue(new MockResponse().setBody("ok"));
+
+            client.newCall(get("/grant-export/123/remainingCount")).execute().close();
+            Thread.sleep(100);
+            failInside.set(true);
+            assertThatThrownBy(() -> client.newCall(get("/grant-export/123/remainingCount")).execute())
+                    .isInstanceOf(IllegalStateException.class);
+            Thread.sleep(100);
+
+            try (Response response = client.newCall(get("/grant-export/123/remainingCount")).execute()) {
+                assertThat(response.code()).isEqualTo(200);
+            }
+        }
+
+        @Test
+        void keepsEndpointsIndependent() throws IOException {
+            final RetryPolicy noRetries = fastRetries.toBuilder()
+                    .maxAttempts(1)
+                    .failureThreshold(1)
+                    .openDuration(Duration.ofMinutes(1))
+                    .build();
+            final OkHttpClient client = client(new ResilienceInterceptor(noRetries));
+            server.enqueue(new MockResponse().setResponseCode(500));
+            server.enqueue(new MockResponse().setBody("ok"));
+
+            client.newCall(get("/grant-export/123/failedCount")).execute().close();
+
+            try (Response response = client.newCall(get("/grant-export/123/remainingCount")).execute()) {
+                assertThat(response.code()).isEqualTo(200);
+            }
+        }
+    }
+
+}
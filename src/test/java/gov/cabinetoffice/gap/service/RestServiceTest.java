@@ -1,7 +1,10 @@
 package gov.cabinetoffice.gap.service;
 
+import gov.cabinetoffice.gap.exceptions.BackendResponseException;
+import gov.cabinetoffice.gap.exceptions.UnsupportedBackendOperationException;
 import gov.cabinetoffice.gap.model.OutstandingExportCountDTO;
 import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -13,14 +16,21 @@ import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.MockedStatic;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
 import static org.mockito.Mockito.reset;
@@ -51,7 +61,7 @@ public class RestServiceTest {
             when(mockCall.execute()).thenReturn(mockResponse);
             when(mockResponse.isSuccessful()).thenReturn(true);
             when(mockResponse.body()).thenReturn(mockResponseBody);
-            when(mockResponseBody.string()).thenReturn("{ \"outstandingCount\": 1 }");
+            when(mockResponseBody.charStream()).thenReturn(new StringReader("{ \"outstandingCount\": 1 }"));
 
             final OutstandingExportCountDTO expectedResponse = new OutstandingExportCountDTO(1L);
 
@@ -59,6 +69,10 @@ public class RestServiceTest {
 
                 mockedRestService.when(() -> RestService.encrypt(anyString(), anyString())).thenReturn("encryptedValue");
                 mockedRestService.when(() -> RestService.defaultRequestBuilder()).thenCallRealMethod();
+                mockedRestService.when(() -> RestService.buildRequest(anyString(), any(), anyString(), any()))
+                        .thenCallRealMethod();
+                mockedRestService.when(() -> RestService.failureFor(any(), anyString(), anyBoolean()))
+                        .thenCallRealMethod();
                 mockedRestService.when(() -> RestService.sendGetRequest(any(), any(), anyString(), any()))
                         .thenCallRealMethod();
 
@@ -86,7 +100,7 @@ public class RestServiceTest {
             when(mockCall.execute()).thenReturn(mockResponse);
             when(mockResponse.isSuccessful()).thenReturn(true);
             when(mockResponse.body()).thenReturn(mockResponseBody);
-            when(mockResponseBody.string()).thenReturn("{ \"outstandingCount\": 1 }");
+            when(mockResponseBody.charStream()).thenReturn(new StringReader("{ \"outstandingCount\": 1 }"));
 
             final OutstandingExportCountDTO expectedResponse = new OutstandingExportCountDTO(1L);
 
@@ -94,6 +108,10 @@ public class RestServiceTest {
 
                 mockedRestService.when(() -> RestService.encrypt(anyString(), anyString())).thenReturn("encryptedValue");
                 mockedRestService.when(() -> RestService.defaultRequestBuilder()).thenCallRealMethod();
+                mockedRestService.when(() -> RestService.buildRequest(anyString(), any(), anyString(), any()))
+                        .thenCallRealMethod();
+                mockedRestService.when(() -> RestService.failureFor(any(), anyString(), anyBoolean()))
+                        .thenCallRealMethod();
                 mockedRestService.when(() -> RestService.sendGetRequest(any(), anyMap(), anyString(), any()))
                         .thenCallRealMethod();
 
@@ -129,6 +147,10 @@ public class RestServiceTest {
             try (MockedStatic<RestService> mockedRestService = mockStatic(RestService.class)) {
 
                 mockedRestService.when(() -> RestService.defaultRequestBuilder()).thenCallRealMethod();
+                mockedRestService.when(() -> RestService.buildRequest(anyString(), any(), anyString(), any()))
+                        .thenCallRealMethod();
+                mockedRestService.when(() -> RestService.failureFor(any(), anyString(), anyBoolean()))
+                        .thenCallRealMethod();
                 mockedRestService.when(() -> RestService.sendGetRequest(any(), any(), anyString(), any()))
                         .thenCallRealMethod();
 
@@ -156,6 +178,10 @@ public class RestServiceTest {
 
                 mockedRestService.when(() -> RestService.encrypt(anyString(), anyString())).thenReturn("encryptedValue");
                 mockedRestService.when(() -> RestService.defaultRequestBuilder()).thenCallRealMethod();
+                mockedRestService.when(() -> RestService.buildRequest(anyString(), any(), anyString(), any()))
+                        .thenCallRealMethod();
+                mockedRestService.when(() -> RestService.failureFor(any(), anyString(), anyBoolean()))
+                        .thenCallRealMethod();
                 mockedRestService.when(() -> RestService.executePost(any(), any(), anyString())).thenCallRealMethod();
                 mockedRestService
                         .when(() -> RestService.sendPostRequest(any(), any(OutstandingExportCountDTO.class), anyString()))
@@ -188,6 +214,10 @@ public class RestServiceTest {
 
                 mockedRestService.when(() -> RestService.encrypt(anyString(), anyString())).thenReturn("encryptedValue");
                 mockedRestService.when(() -> RestService.defaultRequestBuilder()).thenCallRealMethod();
+                mockedRestService.when(() -> RestService.buildRequest(anyString(), any(), anyString(), any()))
+                        .thenCallRealMethod();
+                mockedRestService.when(() -> RestService.failureFor(any(), anyString(), anyBoolean()))
+                        .thenCallRealMethod();
                 mockedRestService.when(() -> RestService.executePost(any(), any(), anyString())).thenCallRealMethod();
                 mockedRestService.when(() -> RestService.sendPostRequest(any(), any(), anyString())).thenCallRealMethod();
 
@@ -218,6 +248,10 @@ public class RestServiceTest {
 
                 mockedRestService.when(() -> RestService.encrypt(anyString(), anyString())).thenReturn("encryptedValue");
                 mockedRestService.when(() -> RestService.defaultRequestBuilder()).thenCallRealMethod();
+                mockedRestService.when(() -> RestService.buildRequest(anyString(), any(), anyString(), any()))
+                        .thenCallRealMethod();
+                mockedRestService.when(() -> RestService.failureFor(any(), anyString(), anyBoolean()))
+                        .thenCallRealMethod();
                 mockedRestService.when(() -> RestService.executePost(any(), any(), anyString())).thenCallRealMethod();
                 mockedRestService.when(() -> RestService.sendPostRequest(any(), any(), anyString())).thenCallRealMethod();
 
@@ -246,6 +280,10 @@ public class RestServiceTest {
 
                 mockedRestService.when(() -> RestService.encrypt(anyString(), anyString())).thenReturn("encryptedValue");
                 mockedRestService.when(() -> RestService.defaultRequestBuilder()).thenCallRealMethod();
+                mockedRestService.when(() -> RestService.buildRequest(anyString(), any(), anyString(), any()))
+                        .thenCallRealMethod();
+                mockedRestService.when(() -> RestService.failureFor(any(), anyString(), anyBoolean()))
+                        .thenCallRealMethod();
                 mockedRestService.when(() -> RestService.sendPatchRequest(any(), any(), anyString())).thenCallRealMethod();
 
                 RestService.sendPatchRequest(mockedHttpClient, bodyDTO, "/test/url");
@@ -276,6 +314,10 @@ public class RestServiceTest {
 
                 mockedRestService.when(() -> RestService.encrypt(anyString(), anyString())).thenReturn("encryptedValue");
                 mockedRestService.when(() -> RestService.defaultRequestBuilder()).thenCallRealMethod();
+                mockedRestService.when(() -> RestService.buildRequest(anyString(), any(), anyString(), any()))
+                        .thenCallRealMethod();
+                mockedRestService.when(() -> RestService.failureFor(any(), anyString(), anyBoolean()))
+                        .thenCallRealMethod();
                 mockedRestService.when(() -> RestService.sendPatchRequest(any(), any(), anyString())).thenCallRealMethod();
 
                 assertThrows(RuntimeException.class, () -> RestService.sendPatchRequest(mockedHttpClient, bodyDTO, "/test/url"));
@@ -284,6 +326,192 @@ public class RestServiceTest {
 
     }
 
+    @Nested
+    class sendGetRequestAsync {
+
+        @Test
+        void shouldCompleteWithTheDeserialisedBody() throws Exception {
+            final Call mockCall = mock(Call.class);
+            final Response mockResponse = mock(Response.class);
+            final ResponseBody mockResponseBody = mock(ResponseBody.class);
+            when(mockedHttpClient.newCall(any())).thenReturn(mockCall);
+            when(mockResponse.isSuccessful()).thenReturn(true);
+            when(mockResponse.body()).thenReturn(mockResponseBody);
+            when(mockResponseBody.charStream()).thenReturn(new StringReader("{ \"outstandingCount\": 1 }"));
+            doAnswer(invocation -> {
+                invocation.<Callback>getArgument(0).onResponse(mockCall, mockResponse);
+                return null;
+            }).when(mockCall).enqueue(any());
+
+            final CompletableFuture<OutstandingExportCountDTO> response = RestService.sendGetRequestAsync(
+                    mockedHttpClient, null, "/test/url", OutstandingExportCountDTO.class);
+
+            verify(mockedHttpClient).newCall(httpRequestCaptor.capture());
+            assertEquals("GET", httpRequestCaptor.getValue().method());
+            assertEquals("http://localhost:8080/api/test/url", httpRequestCaptor.getValue().url().toString());
+            assertEquals(new OutstandingExportCountDTO(1L), response.get());
+            verify(mockResponse).close();
+        }
+
+        @Test
+        void shouldCompleteExceptionallyWhenRequestIsUnsuccessful() {
+            final Call mockCall = mock(Call.class);
+            final Response mockResponse = mock(Response.class);
+            when(mockedHttpClient.newCall(any())).thenReturn(mockCall);
+            when(mockResponse.isSuccessful()).thenReturn(false);
+            doAnswer(invocation -> {
+                invocation.<Callback>getArgument(0).onResponse(mockCall, mockResponse);
+                return null;
+            }).when(mockCall).enqueue(any());
+
+            final CompletableFuture<OutstandingExportCountDTO> response = RestService.sendGetRequestAsync(
+                    mockedHttpClient, null, "/test/url", OutstandingExportCountDTO.class);
+
+            final ExecutionException thrown = assertThrows(ExecutionException.class, response::get);
+            assertInstanceOf(RuntimeException.class, thrown.getCause());
+        }
+
+        @Test
+        void shouldCancelTheCallWhenTheFutureIsCancelled() {
+            final Call mockCall = mock(Call.class);
+            when(mockedHttpClient.newCall(any())).thenReturn(mockCall);
+
+            RestService.sendGetRequestAsync(mockedHttpClient, null, "/test/url", OutstandingExportCountDTO.class)
+                    .cancel(true);
+
+            verify(mockCall).cancel();
+        }
+
+    }
+
+    @Nested
+    class sendPostRequestAsync {
+
+        @Test
+        void shouldPostTheSerialisedBody() throws Exception {
+            final Call mockCall = mock(Call.class);
+            final Response mockResponse = mock(Response.class);
+            when(mockedHttpClient.newCall(any())).thenReturn(mockCall);
+            when(mockResponse.isSuccessful()).thenReturn(true);
+            doAnswer(invocation -> {
+                invocation.<Callback>getArgument(0).onResponse(mockCall, mockResponse);
+                return null;
+            }).when(mockCall).enqueue(any());
+
+            RestService.sendPostRequestAsync(mockedHttpClient, new OutstandingExportCountDTO(1L), "/test/url").get();
+
+            verify(mockedHttpClient).newCall(httpRequestCaptor.capture());
+            final Buffer bufferToReadBody = new Buffer();
+            httpRequestCaptor.getValue().body().writeTo(bufferToReadBody);
+
+            assertEquals("POST", httpRequestCaptor.getValue().method());
+            assertEquals("{\"outstandingCount\":1}", bufferToReadBody.readUtf8());
+        }
+
+        @Test
+        void shouldCompleteExceptionallyWhenTheCallFails() {
+            final Call mockCall = mock(Call.class);
+            final IOException failure = new IOException("connection reset");
+            when(mockedHttpClient.newCall(any())).thenReturn(mockCall);
+            doAnswer(invocation -> {
+                invocation.<Callback>getArgument(0).onFailure(mockCall, failure);
+                return null;
+            }).when(mockCall).enqueue(any());
+
+            final CompletableFuture<Void> response = RestService.sendPostRequestAsync(mockedHttpClient,
+                    "MockBodyValue", "/test/url");
+
+            final ExecutionException thrown = assertThrows(ExecutionException.class, response::get);
+            assertEquals(failure, thrown.getCause());
+        }
+
+    }
+
+    @Nested
+    class sendPatchRequestAsync {
+
+        @Test
+        void shouldCompleteExceptionallyWhenRequestIsUnsuccessful() {
+            final Call mockCall = mock(Call.class);
+            final Response mockResponse = mock(Response.class);
+            when(mockedHttpClient.newCall(any())).thenReturn(mockCall);
+            when(mockResponse.isSuccessful()).thenReturn(false);
+            doAnswer(invocation -> {
+                invocation.<Callback>getArgument(0).onResponse(mockCall, mockResponse);
+                return null;
+            }).when(mockCall).enqueue(any());
+
+            final CompletableFuture<Void> response = RestService.sendPatchRequestAsync(mockedHttpClient,
+                    new OutstandingExportCountDTO(1L), "/test/url");
+
+            final ExecutionException thrown = assertThrows(ExecutionException.class, response::get);
+            assertInstanceOf(RuntimeException.class, thrown.getCause());
+        }
+
+    }
+
+    @Nested
+    class failureFor {
+
+        @Test
+        void carriesTheStatusAndErrorBody() throws Exception {
+            final Response mockResponse = mock(Response.class);
+            final ResponseBody mockResponseBody = mock(ResponseBody.class);
+            when(mockResponse.code()).thenReturn(500);
+            when(mockResponse.body()).thenReturn(mockResponseBody);
+            when(mockResponseBody.string()).thenReturn("database unavailable");
+
+            final RuntimeException failure = RestService.failureFor(mockResponse, "/test/url", false);
+
+            final BackendResponseException backendFailure = assertInstanceOf(BackendResponseException.class, failure);
+            assertEquals(500, backendFailure.getStatusCode());
+            assertEquals("Error occurred while calling /test/url. Status: 500, Response: database unavailable",
+                    backendFailure.getMessage());
+        }
+
+        @Test
+        void reportsAMissingEndpointOnlyWhenTheEndpointIsOptional() throws Exception {
+            final Response mockResponse = mock(Response.class);
+            when(mockResponse.code()).thenReturn(404);
+
+            assertInstanceOf(UnsupportedBackendOperationException.class,
+                    RestService.failureFor(mockResponse, "/test/url", true));
+            assertInstanceOf(BackendResponseException.class, RestService.failureFor(mockResponse, "/test/url", false));
+        }
+
+    }
+
+    @Nested
+    class isUnsupportedEndpoint {
+
+        @Test
+        void isTrueForMethodNotAllowedAndNotImplemented() {
+            assertEquals(true, RestService.isUnsupportedEndpoint(405, "{\"message\":\"Method not allowed\"}"));
+            assertEquals(true, RestService.isUnsupportedEndpoint(501, ""));
+        }
+
+        @Test
+        void isTrueForANotFoundThatNoHandlerAnswered() {
+            assertEquals(true, RestService.isUnsupportedEndpoint(404, ""));
+            assertEquals(true, RestService.isUnsupportedEndpoint(404,
+                    "{\"status\":404,\"error\":\"Not Found\",\"path\":\"/api/submissions/1/complete\"}"));
+            assertEquals(true, RestService.isUnsupportedEndpoint(404,
+                    "{\"title\":\"Not Found\",\"detail\":\"No static resource api/submissions/1/complete.\"}"));
+        }
+
+        @Test
+        void isFalseForANotFoundFromTheBackendsOwnHandlers() {
+            assertEquals(false, RestService.isUnsupportedEndpoint(404,
+                    "{\"message\":\"Export record not found\",\"path\":\"/api/submissions/1/complete\"}"));
+            assertEquals(false, RestService.isUnsupportedEndpoint(404, "Export record not found"));
+        }
+
+        @Test
+        void isFalseForOtherErrors() {
+            assertEquals(false, RestService.isUnsupportedEndpoint(500, ""));
+        }
+    }
+
     @Nested
     class encrypt {
         @Test
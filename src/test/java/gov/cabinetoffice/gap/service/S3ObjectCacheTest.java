@@ -0,0 +1,118 @@
+package gov.cabinetoffice.gap.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class S3ObjectCacheTest {
+
+    private final AmazonS3 s3Client = mock(AmazonS3.class);
+
+    @TempDir
+    Path tmpDir;
+
+    private S3ObjectCache cache;
+
+    @BeforeEach
+    void beforeEach() {
+        cache = new S3ObjectCache(tmpDir.resolve("cache").toFile(), 1024);
+    }
+
+    @Nested
+    class fetch {
+
+        @Test
+        void downloadsObjectsItHasNotSeenWithoutCachingThem() throws Exception {
+            final File destination = tmpDir.resolve("first/attachment.txt").toFile();
+            final ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setHeader("ETag", "etag-1");
+            when(s3Client.getObject(any(GetObjectRequest.class), any(File.class))).thenAnswer(invocation -> {
+                final File file = invocation.getArgument(1);
+                file.getParentFile().mkdirs();
+                Files.writeString(file.toPath(), "attachment body");
+                return metadata;
+            });
+
+            cache.fetch(s3Client, "bucket", "key", destination);
+
+            assertThat(Files.readString(destination.toPath())).isEqualTo("attachment body");
+            assertThat(cache.getCurrentBytes()).isZero();
+        }
+
+        @Test
+        void revalidatesAndCopiesCachedObjectWhenNotModified() throws Exception {
+            final File uploaded = tmpDir.resolve("submission.zip").toFile();
+            Files.writeString(uploaded.toPath(), "zip body");
+            cache.put("bucket", "key", "etag-1", uploaded);
+            when(s3Client.getObject(any(GetObjectRequest.class), any(File.class))).thenReturn(null);
+            final ArgumentCaptor<GetObjectRequest> requestCaptor = ArgumentCaptor.forClass(GetObjectRequest.class);
+            final File destination = tmpDir.resolve("super/submission.zip").toFile();
+
+            cache.fetch(s3Client, "bucket", "key", destination);
+
+            verify(s3Client).getObject(requestCaptor.capture(), any(File.class));
+            assertThat(requestCaptor.getValue().getNonmatchingETagConstraints()).isEqualTo(List.of("etag-1"));
+            assertThat(Files.readString(destination.toPath())).isEqualTo("zip body");
+        }
+
+        @Test
+        void replacesCachedObjectWhenItHasChanged() throws Exception {
+            final File uploaded = tmpDir.resolve("submission.zip").toFile();
+            Files.writeString(uploaded.toPath(), "old body");
+            cache.put("bucket", "key", "etag-1", uploaded);
+            final ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setHeader("ETag", "etag-2");
+            when(s3Client.getObject(any(GetObjectRequest.class), any(File.class))).thenAnswer(invocation -> {
+                final File file = invocation.getArgument(1);
+                Files.writeString(file.toPath(), "new body");
+                return metadata;
+            });
+            final File destination = tmpDir.resolve("changed.zip").toFile();
+
+            cache.fetch(s3Client, "bucket", "key", destination);
+
+            assertThat(Files.readString(destination.toPath())).isEqualTo("new body");
+            assertThat(cache.getCurrentBytes()).isEqualTo("new body".length());
+        }
+    }
+
+    @Nested
+    class put {
+
+        @Test
+        void evictsLeastRecentlyUsedEntriesOnceFull() throws Exception {
+            final File large = tmpDir.resolve("large.zip").toFile();
+            Files.write(large.toPath(), new byte[600]);
+
+            cache.put("bucket", "first", "etag-1", large);
+            cache.put("bucket", "second", "etag-2", large);
+
+            assertThat(cache.getCurrentBytes()).isEqualTo(600);
+        }
+
+        @Test
+        void skipsObjectsLargerThanTheCache() throws Exception {
+            final File huge = tmpDir.resolve("huge.zip").toFile();
+            Files.write(huge.toPath(), new byte[2048]);
+
+            cache.put("bucket", "key", "etag-1", huge);
+
+            assertThat(cache.getCurrentBytes()).isZero();
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package gov.cabinetoffice.gap.service;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatCode;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SqsQueueClientTest {
+
+    private static final String QUEUE_URL = "https://sqs.eu-west-2.amazonaws.com/123456789012/exports";
+
+    private final AmazonSQS sqs = mock(AmazonSQS.class);
+
+    @Nested
+    class changeVisibility {
+
+        @Test
+        void changesTenMessagesAtATime() {
+            when(sqs.changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class)))
+                    .thenReturn(new ChangeMessageVisibilityBatchResult());
+            final List<String> receiptHandles = IntStream.range(0, 12).mapToObj(i -> "receipt-" + i)
+                    .collect(Collectors.toList());
+
+            new SqsQueueClient(() -> sqs).changeVisibility(QUEUE_URL, receiptHandles, Duration.ofSeconds(180));
+
+            final ArgumentCaptor<ChangeMessageVisibilityBatchRequest> requests =
+                    ArgumentCaptor.forClass(ChangeMessageVisibilityBatchRequest.class);
+            verify(sqs, times(2)).changeMessageVisibilityBatch(requests.capture());
+            final ChangeMessageVisibilityBatchRequest first = requests.getAllValues().get(0);
+            assertThat(first.getQueueUrl()).isEqualTo(QUEUE_URL);
+            assertThat(first.getEntries().size()).isEqualTo(10);
+            assertThat(first.getEntries().get(0).getReceiptHandle()).isEqualTo("receipt-0");
+            assertThat(first.getEntries().get(0).getVisibilityTimeout()).isEqualTo(180);
+            assertThat(requests.getAllValues().get(1).getEntries().size()).isEqualTo(2);
+            assertThat(requests.getAllValues().get(1).getEntries().get(1).getReceiptHandle())
+                    .isEqualTo("receipt-11");
+        }
+
+        @Test
+        void skipsMessagesTheQueueRefusesToChange() {
+            when(sqs.changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class)))
+                    .thenReturn(new ChangeMessageVisibilityBatchResult().withFailed(new BatchResultErrorEntry()
+                            .withId("0").withCode("ReceiptHandleIsInvalid").withSenderFault(true)));
+
+            assertThatCode(() -> new SqsQueueClient(() -> sqs).changeVisibility(QUEUE_URL, List.of("receipt-0"),
+                    Duration.ofSeconds(180))).doesNotThrowAnyException();
+        }
+
+        @Test
+        void buildsTheSqsClientOnceOnFirstUse() {
+            when(sqs.changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class)))
+                    .thenReturn(new ChangeMessageVisibilityBatchResult());
+            final AtomicInteger built = new AtomicInteger();
+            final SqsQueueClient queueClient = new SqsQueueClient(() -> {
+                built.incrementAndGet();
+                return sqs;
+            });
+
+            assertThat(built.get()).isEqualTo(0);
+
+            queueClient.changeVisibility(QUEUE_URL, List.of("receipt-0"), Duration.ofSeconds(180));
+            queueClient.changeVisibility(QUEUE_URL, List.of("receipt-0"), Duration.ofSeconds(180));
+
+            assertThat(built.get()).isEqualTo(1);
+        }
+
+    }
+
+    @Nested
+    class getVisibilityTimeout {
+
+        @Test
+        void readsTheQueueAttributeOnce() {
+            when(sqs.getQueueAttributes(any(GetQueueAttributesRequest.class)))
+                    .thenReturn(new GetQueueAttributesResult().withAttributes(Map.of("VisibilityTimeout", "900")));
+            final SqsQueueClient queueClient = new SqsQueueClient(() -> sqs);
+
+            assertThat(queueClient.getVisibilityTimeout(QUEUE_URL)).isEqualTo(Duration.ofSeconds(900));
+            assertThat(queueClient.getVisibilityTimeout(QUEUE_URL)).isEqualTo(Duration.ofSeconds(900));
+
+            final ArgumentCaptor<GetQueueAttributesRequest> request =
+                    ArgumentCaptor.forClass(GetQueueAttributesRequest.class);
+            verify(sqs).getQueueAttributes(request.capture());
+            assertThat(request.getValue().getQueueUrl()).isEqualTo(QUEUE_URL);
+            assertThat(request.getValue().getAttributeNames()).isEqualTo(List.of("VisibilityTimeout"));
+        }
+
+        @Test
+        void isNullWhenTheQueueDoesNotSayAndAsksAgainNextTime() {
+            when(sqs.getQueueAttributes(any(GetQueueAttributesRequest.class)))
+                    .thenReturn(new GetQueueAttributesResult());
+            final SqsQueueClient queueClient = new SqsQueueClient(() -> sqs);
+
+            assertThat(queueClient.getVisibilityTimeout(QUEUE_URL)).isNull();
+            assertThat(queueClient.getVisibilityTimeout(QUEUE_URL)).isNull();
+
+            verify(sqs, times(2)).getQueueAttributes(any(GetQueueAttributesRequest.class));
+        }
+
+    }
+
+}
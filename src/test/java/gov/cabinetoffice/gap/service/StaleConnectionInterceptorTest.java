@@ -0,0 +1,76 @@
+package gov.cabinetoffice.gap.service;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StaleConnectionInterceptorTest {
+
+    private final Clock clock = mock(Clock.class);
+
+    private final ConnectionPool connectionPool = new ConnectionPool();
+
+    private MockWebServer server;
+
+    private OkHttpClient client;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        when(clock.millis()).thenReturn(0L);
+        client = new OkHttpClient.Builder().connectionPool(connectionPool)
+                .addInterceptor(new StaleConnectionInterceptor(connectionPool, Duration.ofSeconds(10), clock))
+                .build();
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        server.shutdown();
+    }
+
+    private void call() throws IOException {
+        server.enqueue(new MockResponse().setBody("ok"));
+        try (Response response = client.newCall(new Request.Builder().url(server.url("/count")).build()).execute()) {
+            response.body().string();
+        }
+    }
+
+    @Test
+    void reusesConnectionsBetweenCallsCloseTogether() throws Exception {
+        call();
+        when(clock.millis()).thenReturn(5_000L);
+        call();
+
+        assertThat(server.takeRequest().getSequenceNumber()).isEqualTo(0);
+        // the second request on the same connection
+        assertThat(server.takeRequest().getSequenceNumber()).isEqualTo(1);
+    }
+
+    @Test
+    void opensNewConnectionsAfterAQuietSpell() throws Exception {
+        call();
+        when(clock.millis()).thenReturn(60_000L);
+        call();
+
+        assertThat(server.takeRequest().getSequenceNumber()).isEqualTo(0);
+        // the first request on a new connection
+        assertThat(server.takeRequest().getSequenceNumber()).isEqualTo(0);
+        assertThat(connectionPool.connectionCount()).isEqualTo(1);
+    }
+
+}
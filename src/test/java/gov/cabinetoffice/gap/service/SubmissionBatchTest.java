@@ -0,0 +1,195 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.enums.SubmissionProjection;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+public class SubmissionBatchTest {
+
+    private static final String BATCH_PATH = "/api/submissions/export-batch/batchId/submissions";
+
+    private MockWebServer backend;
+
+    private OkHttpClient backendClient;
+
+    @BeforeEach
+    void startBackend() throws IOException {
+        backend = new MockWebServer();
+        backend.start();
+        SubmissionService.resetEndpointSupport();
+
+        // RestService always targets BACKEND_API_URL, so send its requests to the stand-in instead
+        backendClient = new OkHttpClient.Builder().addInterceptor(chain -> {
+            final HttpUrl url = chain.request().url().newBuilder().scheme("http").host(backend.getHostName())
+                    .port(backend.getPort()).build();
+            return chain.proceed(chain.request().newBuilder().url(url).build());
+        }).build();
+    }
+
+    @AfterEach
+    void stopBackend() throws IOException {
+        backend.shutdown();
+        SubmissionService.resetEndpointSupport();
+    }
+
+    private static String submissionJson(final String gapId) {
+        return "{\"gapId\":\"" + gapId + "\",\"sections\":[]}";
+    }
+
+    private static String singlePath(final String submissionId) {
+        return "/api/submissions/" + submissionId + "/export-batch/batchId/submission";
+    }
+
+    /**
+     * Answers the batch request with the given submissions, in order, and single fetches of any submission
+     */
+    private void serve(final MockResponse batchResponse) {
+        backend.setDispatcher(new Dispatcher() {
+
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) {
+                final String path = request.getRequestUrl().encodedPath();
+                if (path.equals(BATCH_PATH)) {
+                    return batchResponse;
+                }
+                return new MockResponse().setBody(submissionJson("single-" + path.split("/")[3]));
+            }
+        });
+    }
+
+    private static MockResponse batchOf(final String... submissionIds) {
+        return batchOf(Arrays.stream(submissionIds).collect(Collectors.toMap(Function.identity(),
+                submissionId -> submissionJson("GAP-" + submissionId), (a, b) -> a, LinkedHashMap::new)));
+    }
+
+    private static MockResponse batchOf(final Map<String, String> submissions) {
+        return new MockResponse().setBody(submissions.entrySet().stream()
+                .map(entry -> "{\"submissionId\":\"" + entry.getKey() + "\",\"submission\":" + entry.getValue() + "}")
+                .collect(Collectors.joining(",", "{\"submissions\":[", "]}")));
+    }
+
+    @Test
+    void fetchesASingleSubmissionOnItsOwn() throws Exception {
+        serve(new MockResponse().setResponseCode(500));
+
+        try (SubmissionBatch batch = new SubmissionBatch(backendClient, "batchId", List.of("first"),
+                SubmissionProjection.EXPORT)) {
+            assertThat(batch.get("first").getGapId()).isEqualTo("single-first");
+        }
+
+        assertThat(backend.getRequestCount()).isEqualTo(1);
+        assertThat(backend.takeRequest().getRequestUrl().encodedPath()).isEqualTo(singlePath("first"));
+    }
+
+    @Test
+    void fetchesEverySubmissionInOneRequest() throws Exception {
+        serve(batchOf("first", "second"));
+
+        try (SubmissionBatch batch = new SubmissionBatch(backendClient, "batchId", List.of("first", "second"),
+                SubmissionProjection.EXPORT)) {
+            assertThat(batch.get("first").getGapId()).isEqualTo("GAP-first");
+            assertThat(batch.get("second").getGapId()).isEqualTo("GAP-second");
+        }
+
+        assertThat(backend.getRequestCount()).isEqualTo(1);
+        final RecordedRequest request = backend.takeRequest();
+        assertThat(request.getRequestUrl().encodedPath()).isEqualTo(BATCH_PATH);
+        assertThat(request.getRequestUrl().queryParameter("submissionIds")).isEqualTo("first,second");
+    }
+
+    @Test
+    void prefetchesWhatTheBatchLeftOutOnceThePreviousOneIsHandedOver() throws Exception {
+        serve(batchOf("first"));
+
+        try (SubmissionBatch batch = new SubmissionBatch(backendClient, "batchId", List.of("first", "second"),
+                SubmissionProjection.EXPORT)) {
+            assertThat(batch.get("first").getGapId()).isEqualTo("GAP-first");
+
+            // requested in the background before it is asked for
+            backend.takeRequest();
+            final RecordedRequest prefetch = backend.takeRequest(5, TimeUnit.SECONDS);
+            assertThat(prefetch.getRequestUrl().encodedPath()).isEqualTo(singlePath("second"));
+
+            assertThat(batch.get("second").getGapId()).isEqualTo("single-second");
+        }
+
+        assertThat(backend.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    void prefetchesEachSubmissionOnItsOwnWhenTheBackendLacksTheBatchEndpoint() throws Exception {
+        serve(new MockResponse().setResponseCode(404));
+
+        try (SubmissionBatch batch = new SubmissionBatch(backendClient, "batchId",
+                List.of("first", "second", "third"), SubmissionProjection.EXPORT, 2, Long.MAX_VALUE)) {
+            assertThat(batch.get("first").getGapId()).isEqualTo("single-first");
+            assertThat(batch.get("second").getGapId()).isEqualTo("single-second");
+            assertThat(batch.get("third").getGapId()).isEqualTo("single-third");
+        }
+
+        // the batch request, then one request per submission
+        assertThat(backend.getRequestCount()).isEqualTo(4);
+    }
+
+    @Test
+    void leavesTheRestOfTheBatchToSingleFetchesOnceTheReadAheadSoftLimitIsReached() throws Exception {
+        final String padding = "x".repeat(20_000);
+        final String large = "{\"gapId\":\"GAP\",\"submissionName\":\"" + padding + "\",\"sections\":[]}";
+        final Map<String, String> submissions = new LinkedHashMap<>();
+        List.of("first", "second", "third").forEach(submissionId -> submissions.put(submissionId, large));
+        serve(batchOf(submissions));
+
+        try (SubmissionBatch batch = new SubmissionBatch(backendClient, "batchId",
+                List.of("first", "second", "third"), SubmissionProjection.EXPORT, 1, 1)) {
+            batch.get("first");
+            // give the reader time to run ahead if it were allowed to
+            Thread.sleep(500);
+            assertThat(batch.get("second").getGapId()).isEqualTo("single-second");
+            assertThat(batch.get("third").getGapId()).isEqualTo("single-third");
+
+            assertThat(batch.getPeakHeldChars()).isLessThan(2L * large.length());
+        }
+    }
+
+    @Test
+    void readsTheWholeBatchWhileTheFirstSubmissionTakesLongerThanTheCallDeadline() throws Exception {
+        final String padding = "x".repeat(20_000);
+        final Map<String, String> submissions = new LinkedHashMap<>();
+        List.of("first", "second", "third", "fourth").forEach(submissionId -> submissions.put(submissionId,
+                "{\"gapId\":\"GAP-" + submissionId + "\",\"submissionName\":\"" + padding + "\",\"sections\":[]}"));
+        serve(batchOf(submissions));
+        final OkHttpClient deadlineClient = backendClient.newBuilder().callTimeout(Duration.ofSeconds(1)).build();
+
+        try (SubmissionBatch batch = new SubmissionBatch(deadlineClient, "batchId",
+                List.of("first", "second", "third", "fourth"), SubmissionProjection.EXPORT, 1, Long.MAX_VALUE)) {
+            batch.get("first");
+            // exporting the first submission outlasts the deadline of the call that fetched the batch
+            Thread.sleep(1500);
+            assertThat(batch.get("second").getGapId()).isEqualTo("GAP-second");
+            assertThat(batch.get("third").getGapId()).isEqualTo("GAP-third");
+            assertThat(batch.get("fourth").getGapId()).isEqualTo("GAP-fourth");
+        }
+
+        assertThat(backend.getRequestCount()).isEqualTo(1);
+    }
+
+}
@@ -1,16 +1,42 @@
 package gov.cabinetoffice.gap.service;
 
-import com.fasterxml.jackson.databind.JsonMappingException;
+import com.google.gson.JsonSyntaxException;
+import gov.cabinetoffice.gap.enums.ResponseTypeEnum;
+import gov.cabinetoffice.gap.enums.SubmissionProjection;
+import gov.cabinetoffice.gap.exceptions.UnsupportedBackendOperationException;
 import gov.cabinetoffice.gap.model.Submission;
+import gov.cabinetoffice.gap.model.SubmissionQuestion;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static gov.cabinetoffice.gap.testData.SubmissionTestData.SINGLE_EMPTY_SECTION_OBJ;
 import static gov.cabinetoffice.gap.testData.SubmissionTestData.SUBMISSION_SINGLE_EMPTY_SECTION_ARRAY_JSON_STRING;
 import static gov.cabinetoffice.gap.testData.SubmissionTestData.SUBMISSION_SINGLE_SECTION_AS_OBJECT_JSON_STRING;
 import static gov.cabinetoffice.gap.testData.SubmissionTestData.V1_SUBMISSION_WITHOUT_SECTIONS;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class SubmissionServiceTest {
 
@@ -32,7 +58,150 @@ public class SubmissionServiceTest {
 
             Submission submissionToTest = V1_SUBMISSION_WITHOUT_SECTIONS;
 
-            assertThrows(JsonMappingException.class, () -> SubmissionService.addSubmissionSectionsJsonToSubmissionModel(submissionToTest, SUBMISSION_SINGLE_SECTION_AS_OBJECT_JSON_STRING));
+            assertThrows(JsonSyntaxException.class, () -> SubmissionService.addSubmissionSectionsJsonToSubmissionModel(submissionToTest, SUBMISSION_SINGLE_SECTION_AS_OBJECT_JSON_STRING));
+        }
+    }
+
+    @Nested
+    class getSubmissionData {
+
+        private static final String SUBMISSION_JSON = """
+                {"gapId":"GAP-1","schemeVersion":2,"sections":[{"sectionId":"ESSENTIAL","sectionTitle":"Essential",
+                 "questions":[{"questionId":"APPLICANT_ORG_NAME","fieldTitle":"Name","displayText":"Your name",
+                  "hintText":"A hint","adminSummary":"Org name","options":["a","b"],"responseType":"ShortAnswer",
+                  "validation":{"mandatory":true,"maxLength":250},"response":"Some company","multiResponse":["x"]}]}]}""";
+
+        private SubmissionQuestion fetchQuestion(SubmissionProjection projection) throws Exception {
+            final OkHttpClient restClient = mock(OkHttpClient.class);
+            final Response response = mock(Response.class);
+            final ResponseBody body = mock(ResponseBody.class);
+            when(response.body()).thenReturn(body);
+            when(body.charStream()).thenReturn(new StringReader(SUBMISSION_JSON));
+
+            try (MockedStatic<RestService> mockedRestService = mockStatic(RestService.class)) {
+                mockedRestService.when(() -> RestService.openGetRequest(any(), isNull(), any())).thenReturn(response);
+
+                final Submission submission = SubmissionService.getSubmissionData(restClient, "batchId",
+                        "submissionId", projection);
+
+                mockedRestService.verify(() -> RestService.openGetRequest(eq(restClient), isNull(),
+                        eq("/submissions/submissionId/export-batch/batchId/submission")));
+                verify(response).close();
+                assertEquals("GAP-1", submission.getGapId());
+                return submission.getQuestionById("ESSENTIAL", "APPLICANT_ORG_NAME");
+            }
+        }
+
+        @Test
+        void exportProjectionKeepsOnlyTheFieldsTheDocumentUses() throws Exception {
+            final SubmissionQuestion question = fetchQuestion(SubmissionProjection.EXPORT);
+
+            assertEquals("Name", question.getFieldTitle());
+            assertEquals("Your name", question.getDisplayText());
+            assertEquals(ResponseTypeEnum.ShortAnswer, question.getResponseType());
+            assertEquals("Some company", question.getResponse());
+            assertEquals("x", question.getMultiResponse()[0]);
+            assertNull(question.getHintText());
+            assertNull(question.getAdminSummary());
+            assertNull(question.getOptions());
+            assertNull(question.getValidation());
+        }
+
+        @Test
+        void fullProjectionKeepsEveryField() throws Exception {
+            final SubmissionQuestion question = fetchQuestion(SubmissionProjection.FULL);
+
+            assertEquals("A hint", question.getHintText());
+            assertEquals("Org name", question.getAdminSummary());
+            assertEquals(2, question.getOptions().length);
+            assertEquals(250, question.getValidation().getMaxLength());
+        }
+    }
+
+    @Nested
+    class streamSubmissionData {
+
+        private static final String SUBMISSIONS_JSON = """
+                {"exportBatchId":"batchId","submissions":[
+                 {"submissionId":"first","submission":{"gapId":"GAP-1","sections":[]}},
+                 {"submission":{"gapId":"GAP-2","sections":[]},"submissionId":"second"},
+                 {"submissionId":"missing","submission":null}]}""";
+
+        @AfterEach
+        void resetEndpointSupport() {
+            SubmissionService.resetEndpointSupport();
+        }
+
+        @Test
+        void handsOverEachSubmissionAsItIsRead() throws Exception {
+            final Map<String, Submission> received = new LinkedHashMap<>();
+
+            try (MockedStatic<RestService> mockedRestService = mockStatic(RestService.class)) {
+                mockedRestService.when(() -> RestService.streamGetRequestAsync(any(), any(), any(), any()))
+                        .thenAnswer(invocation -> {
+                            final RestService.BodyReader<Integer> bodyReader = invocation.getArgument(3);
+                            return CompletableFuture.completedFuture(
+                                    bodyReader.read(new StringReader(SUBMISSIONS_JSON)));
+                        });
+
+                final int count = SubmissionService.streamSubmissionData(mock(OkHttpClient.class), "batchId",
+                        List.of("first", "second", "missing"), SubmissionProjection.EXPORT,
+                        (submissionId, submission, size) -> {
+                            received.put(submissionId, submission);
+                            return true;
+                        }).join();
+
+                mockedRestService.verify(() -> RestService.streamGetRequestAsync(any(),
+                        eq(Map.of("submissionIds", "first,second,missing")),
+                        eq("/submissions/export-batch/batchId/submissions"), any()));
+                assertEquals(2, count);
+                assertEquals(List.of("first", "second"), List.copyOf(received.keySet()));
+                assertEquals("GAP-1", received.get("first").getGapId());
+                assertEquals("GAP-2", received.get("second").getGapId());
+            }
+        }
+
+        @Test
+        void leavesTheRestUnreadOnceAskedToStop() throws Exception {
+            final List<String> received = new ArrayList<>();
+
+            try (MockedStatic<RestService> mockedRestService = mockStatic(RestService.class)) {
+                mockedRestService.when(() -> RestService.streamGetRequestAsync(any(), any(), any(), any()))
+                        .thenAnswer(invocation -> {
+                            final RestService.BodyReader<Integer> bodyReader = invocation.getArgument(3);
+                            return CompletableFuture.completedFuture(
+                                    bodyReader.read(new StringReader(SUBMISSIONS_JSON)));
+                        });
+
+                final int count = SubmissionService.streamSubmissionData(mock(OkHttpClient.class), "batchId",
+                        List.of("first", "second", "missing"), SubmissionProjection.EXPORT,
+                        (submissionId, submission, size) -> {
+                            received.add(submissionId);
+                            return false;
+                        }).join();
+
+                assertEquals(1, count);
+                assertEquals(List.of("first"), received);
+            }
+        }
+
+        @Test
+        void stopsAskingOnceTheBackendLacksTheEndpoint() {
+            try (MockedStatic<RestService> mockedRestService = mockStatic(RestService.class)) {
+                mockedRestService.when(() -> RestService.streamGetRequestAsync(any(), any(), any(), any()))
+                        .thenReturn(CompletableFuture.failedFuture(new UnsupportedBackendOperationException()));
+
+                final CompletableFuture<Integer> first = SubmissionService.streamSubmissionData(
+                        mock(OkHttpClient.class), "batchId", List.of("a", "b"), SubmissionProjection.EXPORT,
+                        (submissionId, submission, size) -> true);
+                final CompletableFuture<Integer> second = SubmissionService.streamSubmissionData(
+                        mock(OkHttpClient.class), "batchId", List.of("a", "b"), SubmissionProjection.EXPORT,
+                        (submissionId, submission, size) -> true);
+
+                assertTrue(first.isCompletedExceptionally());
+                assertTrue(second.isCompletedExceptionally());
+                mockedRestService.verify(() -> RestService.streamGetRequestAsync(any(), any(), any(), any()), times(1));
+            }
         }
     }
 }
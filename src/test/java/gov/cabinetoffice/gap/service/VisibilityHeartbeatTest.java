@@ -0,0 +1,274 @@
+package gov.cabinetoffice.gap.service;
+
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatCode;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class VisibilityHeartbeatTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+    private static final String QUEUE_ARN = "arn:aws:sqs:eu-west-2:123456789012:exports";
+
+    private static final String QUEUE_URL = "https://sqs.eu-west-2.amazonaws.com/123456789012/exports";
+
+    private static final Duration VISIBILITY_TIMEOUT = Duration.ofSeconds(180);
+
+    // beats are made by hand unless a test says otherwise
+    private static final VisibilityHeartbeatSettings SETTINGS = VisibilityHeartbeatSettings.builder()
+            .interval(Duration.ofHours(1))
+            .visibilityTimeout(VISIBILITY_TIMEOUT)
+            .stallTimeout(Duration.ofSeconds(600))
+            .build();
+
+    private final Clock clock = mock(Clock.class);
+
+    private final InMemoryQueueClient queueClient = new InMemoryQueueClient();
+
+    private VisibilityHeartbeat heartbeat(final VisibilityHeartbeatSettings settings) {
+        when(clock.instant()).thenReturn(NOW);
+        return new VisibilityHeartbeat(queueClient, settings, clock);
+    }
+
+    private static SQSEvent.SQSMessage message(final String id) {
+        final SQSEvent.SQSMessage message = new SQSEvent.SQSMessage();
+        message.setMessageId(id);
+        message.setReceiptHandle("receipt-" + id);
+        message.setEventSourceArn(QUEUE_ARN);
+        return message;
+    }
+
+    @Nested
+    class beat {
+
+        @Test
+        void extendsTheVisibilityOfEveryTrackedMessage() {
+            try (final VisibilityHeartbeat heartbeat = heartbeat(SETTINGS)) {
+                heartbeat.track(message("1"));
+                heartbeat.track(message("2"));
+
+                heartbeat.beat();
+                heartbeat.beat();
+
+                assertThat(queueClient.getVisibilityChanges("receipt-1"))
+                        .isEqualTo(List.of(VISIBILITY_TIMEOUT, VISIBILITY_TIMEOUT));
+                assertThat(queueClient.getVisibilityChanges("receipt-2"))
+                        .isEqualTo(List.of(VISIBILITY_TIMEOUT, VISIBILITY_TIMEOUT));
+            }
+        }
+
+        @Test
+        void keepsExtendingAnExportedMessageWhileALaterExportRuns() {
+            final SQSEvent.SQSMessage exported = message("1");
+            try (final VisibilityHeartbeat heartbeat = heartbeat(SETTINGS)) {
+                heartbeat.track(exported);
+                heartbeat.track(message("2"));
+
+                // the first export is done, but its message is only deleted once the invocation returns
+                heartbeat.recordProgress();
+                when(clock.instant()).thenReturn(NOW.plusSeconds(300));
+                heartbeat.recordProgress();
+                heartbeat.beat();
+                when(clock.instant()).thenReturn(NOW.plusSeconds(600));
+                heartbeat.recordProgress();
+                heartbeat.beat();
+
+                assertThat(queueClient.getVisibilityChanges("receipt-1"))
+                        .isEqualTo(List.of(VISIBILITY_TIMEOUT, VISIBILITY_TIMEOUT));
+                assertThat(queueClient.getVisibilityChanges("receipt-2"))
+                        .isEqualTo(List.of(VISIBILITY_TIMEOUT, VISIBILITY_TIMEOUT));
+            }
+        }
+
+        @Test
+        void stopsExtendingAMessageOnceItIsReleased() {
+            final SQSEvent.SQSMessage first = message("1");
+            try (final VisibilityHeartbeat heartbeat = heartbeat(SETTINGS)) {
+                heartbeat.track(first);
+                heartbeat.track(message("2"));
+
+                heartbeat.release(first);
+                heartbeat.beat();
+
+                assertThat(queueClient.getVisibilityChanges("receipt-1")).isEqualTo(List.of());
+                assertThat(queueClient.getVisibilityChanges("receipt-2")).isEqualTo(List.of(VISIBILITY_TIMEOUT));
+            }
+        }
+
+        @Test
+        void stopsExtendingOnceTheExportStalls() {
+            try (final VisibilityHeartbeat heartbeat = heartbeat(SETTINGS)) {
+                heartbeat.track(message("1"));
+
+                when(clock.instant()).thenReturn(NOW.plusSeconds(601));
+                heartbeat.beat();
+
+                assertThat(queueClient.getVisibilityChanges("receipt-1")).isEqualTo(List.of());
+            }
+        }
+
+        @Test
+        void extendsAgainOnceTheExportRecordsProgress() {
+            try (final VisibilityHeartbeat heartbeat = heartbeat(SETTINGS)) {
+                heartbeat.track(message("1"));
+
+                when(clock.instant()).thenReturn(NOW.plusSeconds(601));
+                heartbeat.beat();
+                heartbeat.recordProgress();
+                heartbeat.beat();
+
+                assertThat(queueClient.getVisibilityChanges("receipt-1")).isEqualTo(List.of(VISIBILITY_TIMEOUT));
+            }
+        }
+
+        @Test
+        void keepsBeatingWhenAnExtensionFails() {
+            final QueueClient failingQueueClient = mock(QueueClient.class);
+            doThrow(new RuntimeException("Unavailable")).when(failingQueueClient)
+                    .changeVisibility(anyString(), anyList(), any());
+            when(clock.instant()).thenReturn(NOW);
+
+            try (final VisibilityHeartbeat heartbeat = new VisibilityHeartbeat(failingQueueClient, SETTINGS, clock)) {
+                heartbeat.track(message("1"));
+
+                assertThatCode(heartbeat::beat).doesNotThrowAnyException();
+                heartbeat.beat();
+
+                verify(failingQueueClient, times(2)).changeVisibility(QUEUE_URL, List.of("receipt-1"),
+                        VISIBILITY_TIMEOUT);
+            }
+        }
+
+        @Test
+        void extendsByTheQueuesVisibilityTimeoutWhenItIsLonger() {
+            final Duration queueTimeout = Duration.ofSeconds(900);
+            final InMemoryQueueClient slowQueueClient = new InMemoryQueueClient(queueTimeout);
+            when(clock.instant()).thenReturn(NOW);
+
+            try (final VisibilityHeartbeat heartbeat = new VisibilityHeartbeat(slowQueueClient, SETTINGS, clock)) {
+                heartbeat.track(message("1"));
+
+                heartbeat.beat();
+
+                assertThat(slowQueueClient.getVisibilityChanges("receipt-1")).isEqualTo(List.of(queueTimeout));
+            }
+        }
+
+        @Test
+        void extendsByTheConfiguredTimeoutWhenTheQueuesCannotBeRead() {
+            final QueueClient unreadableQueueClient = mock(QueueClient.class);
+            when(unreadableQueueClient.getVisibilityTimeout(anyString()))
+                    .thenThrow(new RuntimeException("Access denied"));
+            when(clock.instant()).thenReturn(NOW);
+
+            try (final VisibilityHeartbeat heartbeat = new VisibilityHeartbeat(unreadableQueueClient, SETTINGS,
+                    clock)) {
+                heartbeat.track(message("1"));
+
+                heartbeat.beat();
+
+                verify(unreadableQueueClient).changeVisibility(QUEUE_URL, List.of("receipt-1"), VISIBILITY_TIMEOUT);
+            }
+        }
+
+        @Test
+        void doesNothingOnceClosed() {
+            final VisibilityHeartbeat heartbeat = heartbeat(SETTINGS);
+            heartbeat.track(message("1"));
+
+            heartbeat.close();
+            heartbeat.beat();
+
+            assertThat(queueClient.getVisibilityChanges("receipt-1")).isEqualTo(List.of());
+        }
+
+    }
+
+    @Nested
+    class track {
+
+        @Test
+        void beatsEveryInterval() throws InterruptedException {
+            final QueueClient countingQueueClient = mock(QueueClient.class);
+            final CountDownLatch beats = new CountDownLatch(2);
+            doAnswer(invocation -> {
+                beats.countDown();
+                return null;
+            }).when(countingQueueClient).changeVisibility(anyString(), anyList(), any());
+
+            try (final VisibilityHeartbeat heartbeat = new VisibilityHeartbeat(countingQueueClient,
+                    SETTINGS.toBuilder().interval(Duration.ofMillis(20)).build())) {
+                heartbeat.track(message("1"));
+
+                assertThat(beats.await(5, TimeUnit.SECONDS)).isTrue();
+            }
+        }
+
+        @Test
+        void doesNothingWhenDisabled() {
+            try (final VisibilityHeartbeat heartbeat = heartbeat(SETTINGS.toBuilder().enabled(false).build())) {
+                heartbeat.track(message("1"));
+
+                heartbeat.beat();
+
+                assertThat(queueClient.getVisibilityChanges("receipt-1")).isEqualTo(List.of());
+            }
+        }
+
+        @Test
+        void skipsAMessageWithoutAQueue() {
+            final SQSEvent.SQSMessage message = message("1");
+            message.setEventSourceArn(null);
+            try (final VisibilityHeartbeat heartbeat = heartbeat(SETTINGS)) {
+                heartbeat.track(message);
+
+                heartbeat.beat();
+
+                assertThat(queueClient.getVisibilityChanges("receipt-1")).isEqualTo(List.of());
+            }
+        }
+
+    }
+
+    @Nested
+    class queueUrl {
+
+        @Test
+        void isBuiltFromTheQueueArn() {
+            assertThat(VisibilityHeartbeat.queueUrl(QUEUE_ARN)).isEqualTo(QUEUE_URL);
+        }
+
+        @Test
+        void usesTheChinaDomainInTheChinaPartition() {
+            assertThat(VisibilityHeartbeat.queueUrl("arn:aws-cn:sqs:cn-north-1:123456789012:exports"))
+                    .isEqualTo("https://sqs.cn-north-1.amazonaws.com.cn/123456789012/exports");
+        }
+
+        @Test
+        void isNullForAnythingButAQueueArn() {
+            assertThat(VisibilityHeartbeat.queueUrl("arn:aws:sns:eu-west-2:123456789012:topic")).isNull();
+            assertThat(VisibilityHeartbeat.queueUrl("exports")).isNull();
+        }
+
+    }
+
+}
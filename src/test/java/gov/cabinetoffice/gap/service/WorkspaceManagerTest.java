@@ -0,0 +1,162 @@
+package gov.cabinetoffice.gap.service;
+
+import gov.cabinetoffice.gap.exceptions.EphemeralStorageQuotaExceededException;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+
+public class WorkspaceManagerTest {
+
+    @TempDir
+    Path tmpDir;
+
+    @Nested
+    class open {
+
+        @Test
+        void givesEachExportItsOwnDirectory() {
+            final WorkspaceManager manager = new WorkspaceManager(tmpDir.resolve("exports").toFile(), 0);
+
+            final ExportWorkspace first = manager.open("submission");
+            final ExportWorkspace second = manager.open("submission");
+
+            assertThat(first.getDirectory()).isDirectory();
+            assertThat(second.getDirectory()).isDirectory();
+            assertThat(first.getDirectory()).isNotEqualTo(second.getDirectory());
+        }
+
+        @Test
+        void deletesWorkspacesLeftBehindByEarlierInvocations() throws Exception {
+            final File root = tmpDir.resolve("exports").toFile();
+            final File stale = new File(root, "stale/file.txt");
+            stale.getParentFile().mkdirs();
+            Files.writeString(stale.toPath(), "left over");
+
+            new WorkspaceManager(root, 0);
+
+            assertThat(stale).doesNotExist();
+        }
+    }
+
+    @Nested
+    class track {
+
+        @Test
+        void countsRewrittenFilesOnce() throws Exception {
+            final WorkspaceManager manager = new WorkspaceManager(tmpDir.resolve("exports").toFile(), 0);
+            final ExportWorkspace workspace = manager.open("submission");
+            final File file = workspace.resolve("submission.zip");
+
+            Files.write(file.toPath(), new byte[100]);
+            workspace.track(file);
+            Files.write(file.toPath(), new byte[150]);
+            workspace.track(file);
+
+            assertThat(workspace.getBytesHeld()).isEqualTo(150);
+            assertThat(manager.getCurrentBytes()).isEqualTo(150);
+        }
+
+        @Test
+        void throwsOnceTheQuotaIsExceeded() throws Exception {
+            final WorkspaceManager manager = new WorkspaceManager(tmpDir.resolve("exports").toFile(), 100);
+            final ExportWorkspace workspace = manager.open("submission");
+            final File file = workspace.resolve("submission.zip");
+            Files.write(file.toPath(), new byte[101]);
+
+            assertThatThrownBy(() -> workspace.track(file))
+                    .isInstanceOf(EphemeralStorageQuotaExceededException.class);
+        }
+    }
+
+    @Nested
+    class reserve {
+
+        @Test
+        void throwsBeforeAnythingIsCountedOnceTheQuotaWouldBeExceeded() {
+            final WorkspaceManager manager = new WorkspaceManager(tmpDir.resolve("exports").toFile(), 100);
+            final ExportWorkspace workspace = manager.open("submission");
+
+            assertThatThrownBy(() -> workspace.reserve(workspace.resolve("attachment.pdf"), 101))
+                    .isInstanceOf(EphemeralStorageQuotaExceededException.class);
+            assertThat(manager.getCurrentBytes()).isZero();
+        }
+
+        @Test
+        void isSettledAgainstTheSizeActuallyWritten() throws Exception {
+            final WorkspaceManager manager = new WorkspaceManager(tmpDir.resolve("exports").toFile(), 100);
+            final ExportWorkspace workspace = manager.open("submission");
+            final File file = workspace.resolve("attachment.pdf");
+
+            workspace.reserve(file, 100);
+            Files.write(file.toPath(), new byte[60]);
+            workspace.track(file);
+
+            assertThat(workspace.getBytesHeld()).isEqualTo(60);
+            assertThat(manager.getCurrentBytes()).isEqualTo(60);
+            assertThat(manager.getPeakBytes()).isEqualTo(100);
+        }
+    }
+
+    @Nested
+    class getObjectCache {
+
+        @Test
+        void countsCachedObjectsAgainstTheQuota() throws Exception {
+            final WorkspaceManager manager = new WorkspaceManager(tmpDir.resolve("exports").toFile(), 1000,
+                    tmpDir.resolve("cache").toFile(), 1000);
+            final ExportWorkspace workspace = manager.open("submission");
+            final File file = workspace.resolve("submission.zip");
+            Files.write(file.toPath(), new byte[300]);
+            workspace.track(file);
+
+            workspace.getObjectCache().put("bucket", "key", "etag-1", file);
+
+            assertThat(manager.getCurrentBytes()).isEqualTo(600);
+            workspace.close();
+            assertThat(manager.getCurrentBytes()).isEqualTo(300);
+        }
+
+        @Test
+        void skipsObjectsThatWouldTakeUsageOverTheQuota() throws Exception {
+            final WorkspaceManager manager = new WorkspaceManager(tmpDir.resolve("exports").toFile(), 500,
+                    tmpDir.resolve("cache").toFile(), 1000);
+            final ExportWorkspace workspace = manager.open("submission");
+            final File file = workspace.resolve("submission.zip");
+            Files.write(file.toPath(), new byte[300]);
+            workspace.track(file);
+
+            workspace.getObjectCache().put("bucket", "key", "etag-1", file);
+
+            assertThat(workspace.getObjectCache().getCurrentBytes()).isZero();
+            assertThat(manager.getCurrentBytes()).isEqualTo(300);
+        }
+    }
+
+    @Nested
+    class close {
+
+        @Test
+        void deletesTheDirectoryAndReleasesItsBytes() throws Exception {
+            final WorkspaceManager manager = new WorkspaceManager(tmpDir.resolve("exports").toFile(), 0);
+            final ExportWorkspace workspace = manager.open("submission");
+            final File file = workspace.resolve("submission.odt");
+            Files.write(file.toPath(), new byte[64]);
+            workspace.track(file);
+
+            workspace.close();
+            workspace.close();
+
+            assertThat(workspace.getDirectory()).doesNotExist();
+            assertThat(manager.getCurrentBytes()).isZero();
+            assertThat(manager.getPeakBytes()).isEqualTo(64);
+        }
+    }
+
+}
@@ -11,6 +11,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 
 import java.io.File;
@@ -22,15 +23,25 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class ZipServiceTest {
     private final AmazonS3 s3client = Mockito.mock(AmazonS3.class);
+    private final ExportWorkspace workspace = new ExportWorkspace("testSubmissionId", new File("/tmp"));
     private File testGapIDFile;
     private File testHelloWorldFile1;
     private File testHelloWorldFile2;
@@ -107,7 +118,7 @@ public class ZipServiceTest {
             when(s3client.getObject((GetObjectRequest) any(), any()))
                     .thenThrow(new AmazonServiceException("exception"));
 
-            ZipService.createZip(s3client, "testGapID", "random", "attachment", false);
+            ZipService.createZip(s3client, workspace, "testGapID", "random", "attachment", false);
 
             final String fileZip = "/tmp/submission.zip";
             try(final ZipInputStream zis = new ZipInputStream(new FileInputStream(fileZip))) {
@@ -123,14 +134,14 @@ public class ZipServiceTest {
 
     @Test
     void createZip_zipExists() throws Exception {
-        ZipService.createZip(s3client, "testGapID", "testApplicationId", "testSubmissionId", true);
+        ZipService.createZip(s3client, workspace, "testGapID", "testApplicationId", "testSubmissionId", true);
 
         assertTrue(Files.exists(Path.of("/tmp/submission.zip")));
     }
 
     @Test
     void createZip_zippedFilesExist() throws Exception {
-        ZipService.createZip(s3client, "testGapID", "some", "random", true);
+        ZipService.createZip(s3client, workspace, "testGapID", "some", "random", true);
 
         final String fileZip = "/tmp/submission.zip";
         try(final ZipInputStream zis = new ZipInputStream(new FileInputStream(fileZip))) {
@@ -145,7 +156,7 @@ public class ZipServiceTest {
 
     @Test
     void createZip_zipFilesContentMatches() throws Exception {
-        ZipService.createZip(s3client, "testGapID", "testApplicationId", "testSubmissionId", true);
+        ZipService.createZip(s3client, workspace, "testGapID", "testApplicationId", "testSubmissionId", true);
 
         final String fileZip = "/tmp/submission.zip";
         try(final ZipInputStream zis = new ZipInputStream(new FileInputStream(fileZip))) {
@@ -164,7 +175,7 @@ public class ZipServiceTest {
 
     @Test
     void createZip_onlyTwoFilesCreated() throws Exception {
-        ZipService.createZip(s3client, "testGapID", "testApplicationId", "testSubmissionId", true);
+        ZipService.createZip(s3client, workspace, "testGapID", "testApplicationId", "testSubmissionId", true);
 
         final String fileZip = "/tmp/submission.zip";
         try(final ZipInputStream zis = new ZipInputStream(new FileInputStream(fileZip))) {
@@ -177,6 +188,134 @@ public class ZipServiceTest {
         }
     }
 
+    @Test
+    void createZip_reusesAttachmentsFetchedByAnEarlierPass() throws Exception {
+        ZipService.createZip(s3client, workspace, "testGapID", "testApplicationId", "reusedSubmissionId", true);
+        ZipService.createZip(s3client, workspace, "testGapID", "testApplicationId", "reusedSubmissionId", false);
+
+        verify(s3client, times(1)).listObjectsV2(any(ListObjectsV2Request.class));
+        verify(s3client, times(1)).getObject(any(GetObjectRequest.class), any(File.class));
+
+        try(final ZipInputStream zis = new ZipInputStream(new FileInputStream("/tmp/submission.zip"))) {
+            assertEquals("hello-world2_1.txt", zis.getNextEntry().getName());
+            assertNull(zis.getNextEntry());
+        }
+    }
+
+    @Nested
+    class downloadIntoZip {
+
+        private static final long OBJECT_SIZE = 100;
+
+        @TempDir
+        Path tempDir;
+
+        private final List<String> started = new CopyOnWriteArrayList<>();
+
+        private List<ZipService.ZipSource> sources(final int count) {
+            final List<ZipService.ZipSource> sources = new ArrayList<>();
+            for (int i = 1; i <= count; i++) {
+                sources.add(new ZipService.ZipSource("prefix/file" + i + ".txt", OBJECT_SIZE));
+            }
+            return sources;
+        }
+
+        // each download writes its key into its file, holding the first one back until it is released
+        private void downloadsHoldingTheFirstBackUntil(final CountDownLatch firstReleased) {
+            when(s3client.getObject(any(GetObjectRequest.class), any(File.class))).thenAnswer(invocation -> {
+                final GetObjectRequest request = invocation.getArgument(0);
+                final File destination = invocation.getArgument(1);
+                started.add(request.getKey());
+                if (request.getKey().equals("prefix/file1.txt")) {
+                    firstReleased.await(5, TimeUnit.SECONDS);
+                }
+                Files.createDirectories(destination.getParentFile().toPath());
+                Files.writeString(destination.toPath(), request.getKey());
+                return null;
+            });
+        }
+
+        private List<String> zip(final List<ZipService.ZipSource> sources, final long readAheadBytes)
+                throws Exception {
+            final ExportWorkspace workspace = new ExportWorkspace("downloads", tempDir.toFile());
+            final File zipFile = tempDir.resolve("downloads.zip").toFile();
+            try (final ZipOutputStream zout = new ZipOutputStream(new FileOutputStream(zipFile))) {
+                ZipService.downloadIntoZip(s3client, sources.iterator(), "bucket", workspace, zout,
+                        new AtomicInteger(1), "", false, readAheadBytes);
+            }
+
+            final List<String> entries = new ArrayList<>();
+            try (final ZipInputStream zis = new ZipInputStream(new FileInputStream(zipFile))) {
+                ZipEntry entry;
+                while ((entry = zis.getNextEntry()) != null) {
+                    entries.add(entry.getName() + "=" + new String(zis.readAllBytes()));
+                }
+            }
+            return entries;
+        }
+
+        @Test
+        void keepsTheListingOrderWhenLaterDownloadsFinishFirst() throws Exception {
+            final CountDownLatch firstReleased = new CountDownLatch(1);
+            downloadsHoldingTheFirstBackUntil(firstReleased);
+            final Thread releaser = new Thread(() -> {
+                while (started.size() < 3) {
+                    Thread.onSpinWait();
+                }
+                firstReleased.countDown();
+            });
+            releaser.start();
+
+            final List<String> entries = zip(sources(3), 10 * OBJECT_SIZE);
+
+            assertEquals(List.of("file1_1.txt=prefix/file1.txt", "file2_2.txt=prefix/file2.txt",
+                    "file3_3.txt=prefix/file3.txt"), entries);
+        }
+
+        @Test
+        void holdsDownloadsBackOnceTheyAreTheReadAheadBudgetAheadOfTheZip() throws Exception {
+            final CountDownLatch firstReleased = new CountDownLatch(1);
+            downloadsHoldingTheFirstBackUntil(firstReleased);
+            final CompletableFuture<List<String>> entries = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return zip(sources(4), 2 * OBJECT_SIZE);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            });
+
+            Thread.sleep(300);
+            assertEquals(List.of("prefix/file1.txt", "prefix/file2.txt"), started.stream().sorted().toList());
+
+            firstReleased.countDown();
+
+            assertEquals(4, entries.get(5, TimeUnit.SECONDS).size());
+            assertEquals(4, started.size());
+        }
+
+    }
+
+    @Nested
+    class defaultReadAheadMb {
+
+        @Test
+        void isAQuarterOfTheFunctionsMemoryWhenThatIsSmaller() {
+            assertEquals(256, ZipService.defaultReadAheadMb(1024, 10240));
+        }
+
+        @Test
+        void isAQuarterOfTheStorageQuotaWhenThatIsSmaller() {
+            assertEquals(128, ZipService.defaultReadAheadMb(3008, 512));
+        }
+
+        @Test
+        void ignoresALimitThatIsNotSet() {
+            assertEquals(512, ZipService.defaultReadAheadMb(2048, 0));
+            assertEquals(128, ZipService.defaultReadAheadMb(0, 0));
+        }
+
+    }
+
     @Test
     void getSubmissionAttachmentFileNames() {
         final List<String> result = ZipService.getSubmissionAttachmentFileNames(s3client, "testApplicationId", "testSubmissionId");
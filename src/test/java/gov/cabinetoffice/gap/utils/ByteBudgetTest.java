@@ -0,0 +1,82 @@
+package gov.cabinetoffice.gap.utils;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+
+public class ByteBudgetTest {
+
+    @Nested
+    class tryAcquire {
+
+        @Test
+        void acquiresWhileThereIsRoomInTheBudget() {
+            final ByteBudget budget = new ByteBudget(100);
+
+            assertThat(budget.tryAcquire(60)).isTrue();
+            assertThat(budget.tryAcquire(40)).isTrue();
+            assertThat(budget.getInFlight()).isEqualTo(100);
+        }
+
+        @Test
+        void refusesOnceTheBudgetWouldBeExceeded() {
+            final ByteBudget budget = new ByteBudget(100);
+            budget.tryAcquire(60);
+
+            assertThat(budget.tryAcquire(41)).isFalse();
+            assertThat(budget.getInFlight()).isEqualTo(60);
+        }
+
+        @Test
+        void clampsReservationsLargerThanTheBudget() {
+            final ByteBudget budget = new ByteBudget(100);
+
+            assertThat(budget.tryAcquire(1000)).isTrue();
+            assertThat(budget.getInFlight()).isEqualTo(100);
+
+            budget.release(1000);
+
+            assertThat(budget.getInFlight()).isZero();
+        }
+    }
+
+    @Nested
+    class acquire {
+
+        @Test
+        void blocksUntilEnoughBytesAreReleased() throws Exception {
+            final ByteBudget budget = new ByteBudget(100);
+            budget.acquire(80);
+            final CountDownLatch acquired = new CountDownLatch(1);
+
+            final Thread fetcher = new Thread(() -> {
+                try {
+                    budget.acquire(50);
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            fetcher.start();
+
+            assertThat(acquired.await(200, TimeUnit.MILLISECONDS)).isFalse();
+
+            budget.release(80);
+
+            assertThat(acquired.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(budget.getInFlight()).isEqualTo(50);
+            assertThat(budget.getPeakInFlight()).isEqualTo(80);
+        }
+    }
+
+    @Test
+    void rejectsNonPositiveCapacity() {
+        assertThatThrownBy(() -> new ByteBudget(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
@@ -0,0 +1,89 @@
+package gov.cabinetoffice.gap.utils;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CircuitBreakerTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-01T10:00:00Z");
+
+    private final Clock clock = mock(Clock.class);
+
+    private CircuitBreaker openBreaker() {
+        when(clock.instant()).thenReturn(NOW);
+        final CircuitBreaker breaker = new CircuitBreaker(2, Duration.ofSeconds(30), clock);
+        breaker.recordFailure();
+        breaker.recordFailure();
+        return breaker;
+    }
+
+    @Nested
+    class recordFailure {
+
+        @Test
+        void opensAfterConsecutiveFailures() {
+            final CircuitBreaker breaker = openBreaker();
+
+            assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+            assertThat(breaker.tryAcquirePermission()).isFalse();
+        }
+
+        @Test
+        void staysClosedWhenFailuresAreInterleavedWithSuccesses() {
+            final CircuitBreaker breaker = new CircuitBreaker(2, Duration.ofSeconds(30), clock);
+
+            breaker.recordFailure();
+            breaker.recordSuccess();
+            breaker.recordFailure();
+
+            assertThat(breaker.tryAcquirePermission()).isTrue();
+        }
+    }
+
+    @Nested
+    class tryAcquirePermission {
+
+        @Test
+        void letsOneTrialCallThroughOnceTheOpenPeriodHasPassed() {
+            final CircuitBreaker breaker = openBreaker();
+            when(clock.instant()).thenReturn(NOW.plusSeconds(30));
+
+            assertThat(breaker.tryAcquirePermission()).isTrue();
+            assertThat(breaker.tryAcquirePermission()).isFalse();
+            assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        }
+
+        @Test
+        void closesWhenTheTrialCallSucceeds() {
+            final CircuitBreaker breaker = openBreaker();
+            when(clock.instant()).thenReturn(NOW.plusSeconds(30));
+            breaker.tryAcquirePermission();
+
+            breaker.recordSuccess();
+
+            assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+            assertThat(breaker.tryAcquirePermission()).isTrue();
+        }
+
+        @Test
+        void reopensWhenTheTrialCallFails() {
+            final CircuitBreaker breaker = openBreaker();
+            when(clock.instant()).thenReturn(NOW.plusSeconds(30));
+            breaker.tryAcquirePermission();
+
+            breaker.recordFailure();
+
+            assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+            assertThat(breaker.tryAcquirePermission()).isFalse();
+        }
+    }
+
+}
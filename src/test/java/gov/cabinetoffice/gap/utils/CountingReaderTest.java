@@ -0,0 +1,34 @@
+package gov.cabinetoffice.gap.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+public class CountingReaderTest {
+
+    @Test
+    void countsEveryCharacterReadOrSkipped() throws Exception {
+        try (CountingReader reader = new CountingReader(new StringReader("abcdefghij"))) {
+            reader.read();
+            reader.read(new char[4], 0, 4);
+            reader.skip(2);
+
+            assertThat(reader.getCount()).isEqualTo(7L);
+        }
+    }
+
+    @Test
+    void stopsCountingAtTheEndOfTheInput() throws Exception {
+        try (CountingReader reader = new CountingReader(new StringReader("abc"))) {
+            final char[] buffer = new char[10];
+            reader.read(buffer, 0, buffer.length);
+
+            assertThat(reader.read()).isEqualTo(-1);
+            assertThat(reader.read(buffer, 0, buffer.length)).isEqualTo(-1);
+            assertThat(reader.getCount()).isEqualTo(3L);
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+package gov.cabinetoffice.gap.utils;
+
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import gov.cabinetoffice.gap.exceptions.InvalidExportException;
+import gov.cabinetoffice.gap.model.Submission;
+import gov.cabinetoffice.gap.model.SubmissionQuestion;
+import gov.cabinetoffice.gap.model.SubmissionSection;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatCode;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+
+public class ExportValidatorTest {
+
+    private static final String SUBMISSION_ID = "a1b2c3d4-0000-4000-8000-000000000002";
+
+    private static SQSEvent.SQSMessage message(final Map<String, String> attributes) {
+        final Map<String, SQSEvent.MessageAttribute> messageAttributes = new HashMap<>();
+        attributes.forEach((name, value) -> {
+            final SQSEvent.MessageAttribute attribute = new SQSEvent.MessageAttribute();
+            attribute.setStringValue(value);
+            messageAttributes.put(name, attribute);
+        });
+        final SQSEvent.SQSMessage message = new SQSEvent.SQSMessage();
+        message.setMessageId("message-1");
+        message.setMessageAttributes(messageAttributes);
+        return message;
+    }
+
+    private static Submission submission(final int schemeVersion, final String sectionId, final String orgName) {
+        final SubmissionQuestion question = SubmissionQuestion.builder().questionId("APPLICANT_ORG_NAME")
+                .response(orgName).build();
+        final SubmissionSection section = SubmissionSection.builder().sectionId(sectionId)
+                .questions(List.of(question)).build();
+        return Submission.builder().schemeVersion(schemeVersion).gapId("GAP-LL-20220927-00001")
+                .sections(List.of(section)).build();
+    }
+
+    @Nested
+    class validateMessage {
+
+        @Test
+        void acceptsACompleteMessage() {
+            final SQSEvent.SQSMessage message = message(Map.of("submissionId", SUBMISSION_ID, "emailAddress",
+                    "test@domain.com", "exportBatchId", "batch", "applicationId", "1", "schemeId", "1"));
+
+            assertThatCode(() -> ExportValidator.validateMessage(message)).doesNotThrowAnyException();
+        }
+
+        @Test
+        void namesEveryMissingOrBlankAttribute() {
+            final SQSEvent.SQSMessage message = message(Map.of("submissionId", SUBMISSION_ID, "emailAddress", " ",
+                    "exportBatchId", "batch", "applicationId", "1"));
+
+            assertThatThrownBy(() -> ExportValidator.validateMessage(message))
+                    .isInstanceOf(InvalidExportException.class)
+                    .hasMessage("Message message-1 is missing emailAddress, schemeId");
+        }
+    }
+
+    @Nested
+    class validateSubmission {
+
+        @Test
+        void acceptsAVersionOneSubmissionWithItsEssentialSection() {
+            assertThatCode(() -> ExportValidator.validateSubmission(SUBMISSION_ID,
+                    submission(1, "ESSENTIAL", "Org"))).doesNotThrowAnyException();
+        }
+
+        @Test
+        void acceptsALaterSubmissionWithItsOrganisationDetails() {
+            assertThatCode(() -> ExportValidator.validateSubmission(SUBMISSION_ID,
+                    submission(2, "ORGANISATION_DETAILS", "Org"))).doesNotThrowAnyException();
+        }
+
+        @Test
+        void rejectsASubmissionWithoutTheSectionItsVersionNeeds() {
+            assertThatThrownBy(() -> ExportValidator.validateSubmission(SUBMISSION_ID,
+                    submission(2, "ESSENTIAL", "Org")))
+                    .isInstanceOf(InvalidExportException.class)
+                    .hasMessageContaining("no ORGANISATION_DETAILS section");
+        }
+
+        @Test
+        void rejectsABlankApplicantName() {
+            assertThatThrownBy(() -> ExportValidator.validateSubmission(SUBMISSION_ID,
+                    submission(1, "ESSENTIAL", "")))
+                    .isInstanceOf(InvalidExportException.class)
+                    .hasMessageContaining("no APPLICANT_ORG_NAME answer");
+        }
+
+        @Test
+        void rejectsAMissingSubmission() {
+            assertThatThrownBy(() -> ExportValidator.validateSubmission(SUBMISSION_ID, null))
+                    .isInstanceOf(InvalidExportException.class);
+        }
+    }
+
+}
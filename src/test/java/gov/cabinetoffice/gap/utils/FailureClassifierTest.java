@@ -0,0 +1,121 @@
+package gov.cabinetoffice.gap.utils;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import gov.cabinetoffice.gap.enums.FailureKind;
+import gov.cabinetoffice.gap.exceptions.BackendResponseException;
+import gov.cabinetoffice.gap.exceptions.CircuitBreakerOpenException;
+import gov.cabinetoffice.gap.exceptions.EphemeralStorageQuotaExceededException;
+import gov.cabinetoffice.gap.exceptions.InvalidExportException;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class FailureClassifierTest {
+
+    private static AmazonServiceException s3Failure(final int statusCode, final String errorCode) {
+        final AmazonServiceException failure = new AmazonServiceException("S3 failed");
+        failure.setStatusCode(statusCode);
+        failure.setErrorCode(errorCode);
+        return failure;
+    }
+
+    @Nested
+    class classify {
+
+        @Test
+        void retriesNetworkFailures() {
+            assertThat(FailureClassifier.classify(new SocketTimeoutException())).isEqualTo(FailureKind.RETRYABLE);
+            assertThat(FailureClassifier.classify(new CircuitBreakerOpenException("open")))
+                    .isEqualTo(FailureKind.RETRYABLE);
+            assertThat(FailureClassifier.classify(new SdkClientException("Unable to execute HTTP request")))
+                    .isEqualTo(FailureKind.RETRYABLE);
+        }
+
+        @Test
+        void retriesIoRaisedByTheHttpAndS3Clients() {
+            final IOException streamReset = new IOException("stream was reset: CANCEL");
+            streamReset.setStackTrace(new StackTraceElement[] {
+                    new StackTraceElement("okhttp3.internal.http2.Http2Stream", "takeHeaders", null, 1),
+                    new StackTraceElement("gov.cabinetoffice.gap.service.RestService", "sendGetRequest", null, 1)});
+
+            assertThat(FailureClassifier.classify(streamReset)).isEqualTo(FailureKind.RETRYABLE);
+        }
+
+        @Test
+        void failsLocalFileFailures() {
+            final FileNotFoundException missingFile = assertThrows(FileNotFoundException.class,
+                    () -> new FileInputStream("/tmp/exports/no-such-export/submission.odt"));
+
+            assertThat(FailureClassifier.classify(missingFile)).isEqualTo(FailureKind.PERMANENT);
+            assertThat(FailureClassifier.classify(new UncheckedIOException(missingFile)))
+                    .isEqualTo(FailureKind.PERMANENT);
+            assertThat(FailureClassifier.classify(new SdkClientException("Unable to store object contents to disk",
+                    missingFile))).isEqualTo(FailureKind.PERMANENT);
+        }
+
+        @Test
+        void failsIoRaisedOutsideTheClients() {
+            assertThat(FailureClassifier.classify(new IOException("Could not write zip entry")))
+                    .isEqualTo(FailureKind.PERMANENT);
+        }
+
+        @Test
+        void retriesBackendServerErrorsAndThrottling() {
+            assertThat(FailureClassifier.classify(new BackendResponseException("unavailable", 503)))
+                    .isEqualTo(FailureKind.RETRYABLE);
+            assertThat(FailureClassifier.classify(new BackendResponseException("slow down", 429)))
+                    .isEqualTo(FailureKind.RETRYABLE);
+        }
+
+        @Test
+        void failsRequestsTheBackendRejected() {
+            assertThat(FailureClassifier.classify(new BackendResponseException("bad request", 400)))
+                    .isEqualTo(FailureKind.PERMANENT);
+            assertThat(FailureClassifier.classify(new BackendResponseException("not found", 404)))
+                    .isEqualTo(FailureKind.PERMANENT);
+        }
+
+        @Test
+        void retriesS3ServerErrorsAndThrottlingButNotMissingObjects() {
+            assertThat(FailureClassifier.classify(s3Failure(503, "SlowDown"))).isEqualTo(FailureKind.RETRYABLE);
+            assertThat(FailureClassifier.classify(s3Failure(500, "InternalError"))).isEqualTo(FailureKind.RETRYABLE);
+            assertThat(FailureClassifier.classify(s3Failure(404, "NoSuchKey"))).isEqualTo(FailureKind.PERMANENT);
+        }
+
+        @Test
+        void failsInvalidExportsEvenWhenCausedByANetworkFailure() {
+            final InvalidExportException invalid = new InvalidExportException("no GAP ID");
+            invalid.initCause(new IOException());
+
+            assertThat(FailureClassifier.classify(invalid)).isEqualTo(FailureKind.PERMANENT);
+            assertThat(FailureClassifier.classify(new EphemeralStorageQuotaExceededException()))
+                    .isEqualTo(FailureKind.PERMANENT);
+        }
+
+        @Test
+        void looksThroughWrappingExceptions() {
+            final RuntimeException wrapped = new RuntimeException("Could not zip attachments",
+                    new CompletionException(new SocketTimeoutException()));
+
+            assertThat(FailureClassifier.classify(wrapped)).isEqualTo(FailureKind.RETRYABLE);
+        }
+
+        @Test
+        void treatsAnythingElseAsPermanent() {
+            assertThat(FailureClassifier.classify(new NullPointerException())).isEqualTo(FailureKind.PERMANENT);
+            assertThat(FailureClassifier.classify(new RuntimeException("Section with id ESSENTIAL does not exist")))
+                    .isEqualTo(FailureKind.PERMANENT);
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+package gov.cabinetoffice.gap.utils;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+
+public class IsoDateTimesTest {
+
+    @Nested
+    class parseOffsetDateTime {
+
+        @ParameterizedTest
+        @ValueSource(strings = { "2023-03-14T09:26:53Z", "2023-03-14T09:26:53.1Z", "2023-03-14T09:26:53.123456789Z",
+                "2023-03-14T09:26:53.123+01:00", "2023-03-14T09:26-05:30", "2024-02-29T23:59:59.999999-00:00",
+                "2023-03-14T09:26:53+14:00" })
+        void matchesTheJdkParser(final String text) {
+            assertThat(IsoDateTimes.parseOffsetDateTime(text)).isEqualTo(OffsetDateTime.parse(text));
+        }
+
+        @Test
+        void fallsBackToTheJdkParserForOtherShapes() {
+            final String text = "2023-03-14T09:26:53+0100";
+
+            assertThatThrownBy(() -> IsoDateTimes.parseOffsetDateTime(text))
+                    .isInstanceOf(DateTimeParseException.class);
+        }
+
+        @Test
+        void rejectsOutOfRangeValuesLikeTheJdkParser() {
+            assertThatThrownBy(() -> IsoDateTimes.parseOffsetDateTime("2023-02-30T09:26:53Z"))
+                    .isInstanceOf(DateTimeParseException.class);
+        }
+
+        @Test
+        void rejectsNonDigits() {
+            assertThatThrownBy(() -> IsoDateTimes.parseOffsetDateTime("2023-0x-14T09:26:53Z"))
+                    .isInstanceOf(DateTimeParseException.class);
+        }
+    }
+
+    @Nested
+    class parseInstant {
+
+        @Test
+        void normalisesTheOffset() {
+            assertThat(IsoDateTimes.parseInstant("2023-03-14T10:26:53+01:00").toString())
+                    .isEqualTo("2023-03-14T09:26:53Z");
+        }
+    }
+
+}
@@ -0,0 +1,257 @@
+package gov.cabinetoffice.gap.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import gov.cabinetoffice.gap.enums.GrantExportStatus;
+import gov.cabinetoffice.gap.enums.ResponseTypeEnum;
+import gov.cabinetoffice.gap.enums.SubmissionProjection;
+import gov.cabinetoffice.gap.enums.SubmissionSectionStatus;
+import gov.cabinetoffice.gap.model.GrantExportDTO;
+import gov.cabinetoffice.gap.model.OutstandingExportCountDTO;
+import gov.cabinetoffice.gap.model.Submission;
+import gov.cabinetoffice.gap.model.SubmissionQuestion;
+import gov.cabinetoffice.gap.model.SubmissionQuestionValidation;
+import gov.cabinetoffice.gap.model.SubmissionSection;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+public class JsonCodecTest {
+
+    private static final UUID ATTACHMENT_ID = UUID.fromString("a1b2c3d4-0000-4000-8000-000000000001");
+
+    private static Submission submission() {
+        final SubmissionQuestion question = SubmissionQuestion.builder()
+                .attachmentId(ATTACHMENT_ID)
+                .questionId("APPLICANT_ORG_NAME")
+                .fieldTitle("Enter the name of your organisation")
+                .responseType(ResponseTypeEnum.ShortAnswer)
+                .validation(SubmissionQuestionValidation.builder().mandatory(true).maxLength(250).build())
+                .options(new String[] { "Yes", "No" })
+                .response("Some company")
+                .multiResponse(new String[] { "1 Street", "London" })
+                .build();
+        final SubmissionSection section = SubmissionSection.builder()
+                .sectionId("ESSENTIAL")
+                .sectionTitle("Essential Information")
+                .sectionStatus(SubmissionSectionStatus.COMPLETED)
+                .questions(List.of(question))
+                .build();
+        return Submission.builder()
+                .schemeId("1")
+                .schemeName("Test scheme")
+                .legalName("Some company")
+                .gapId("GAP-1")
+                .submissionName("My application")
+                .submittedDate(ZonedDateTime.parse("2023-03-14T09:26:53.123Z"))
+                .sections(List.of(section))
+                .email("test@example.com")
+                .schemeVersion(2)
+                .hasAttachments(true)
+                .build();
+    }
+
+    @Nested
+    class fromJson {
+
+        @Test
+        void roundTripsASubmission() {
+            final Submission original = submission();
+
+            final Submission parsed = JsonCodec.fromJson(JsonCodec.toJson(original), Submission.class);
+
+            assertThat(parsed).isEqualTo(original);
+        }
+
+        @Test
+        void ignoresUnknownFields() {
+            final String json = """
+                    {"schemeId":"1","unexpected":{"nested":[1,2,3]},"sections":[
+                      {"sectionId":"CUSTOM","extra":true,"questions":[{"questionId":"Q1","newField":"x"}]}
+                    ]}""";
+
+            final Submission parsed = JsonCodec.fromJson(json, Submission.class);
+
+            assertThat(parsed.getSchemeId()).isEqualTo("1");
+            assertThat(parsed.getSections().get(0).getQuestions().get(0).getQuestionId()).isEqualTo("Q1");
+        }
+
+        @Test
+        void readsUnknownEnumConstantsAsNull() {
+            final Submission parsed = JsonCodec.fromJson("{\"sections\":[{\"sectionStatus\":\"ARCHIVED\"}]}",
+                    Submission.class);
+
+            assertThat(parsed.getSections().get(0).getSectionStatus()).isNull();
+        }
+
+        @Test
+        void parsesGrantExportTimestampsFromAReader() {
+            final String json = """
+                    {"exportBatchId":"a1b2c3d4-0000-4000-8000-000000000002","status":"COMPLETE",
+                     "created":"2023-03-14T10:26:53.5+01:00","lastUpdated":null,"location":"a/b.zip"}""";
+
+            final GrantExportDTO parsed = JsonCodec.fromJson(new StringReader(json), GrantExportDTO.class);
+
+            assertThat(parsed.getStatus()).isEqualTo(GrantExportStatus.COMPLETE);
+            assertThat(parsed.getCreated()).isEqualTo(Instant.parse("2023-03-14T09:26:53.5Z"));
+            assertThat(parsed.getLastUpdated()).isNull();
+            assertThat(parsed.getLocation()).isEqualTo("a/b.zip");
+        }
+    }
+
+    /**
+     * The hand-written submission adapters have to keep up with the models: every declared field is written, and
+     * read back from what Gson's reflective adapter writes for it.
+     */
+    @Nested
+    class submissionAdapters {
+
+        private final List<Class<?>> models = List.of(Submission.class, SubmissionSection.class,
+                SubmissionQuestion.class, SubmissionQuestionValidation.class);
+
+        // writes the models reflectively, straight from their fields
+        private final Gson reflectiveGson = new GsonBuilder()
+                .registerTypeAdapter(ZonedDateTime.class, ModelAdapters.ZONED_DATE_TIME)
+                .create();
+
+        @Test
+        void writesEveryDeclaredField() throws Exception {
+            for (final Class<?> model : models) {
+                final JsonObject json = JsonParser.parseString(JsonCodec.toJson(populated(model)))
+                        .getAsJsonObject();
+
+                assertThat(json.keySet()).as(model.getSimpleName()).isEqualTo(declaredFields(model));
+            }
+        }
+
+        @Test
+        void readsEveryDeclaredField() throws Exception {
+            for (final Class<?> model : models) {
+                final Object original = populated(model);
+
+                final Object parsed = JsonCodec.fromJson(reflectiveGson.toJson(original), model);
+
+                assertThat(parsed).as(model.getSimpleName()).isEqualTo(original);
+            }
+        }
+
+        @Test
+        void readsOnlyTheFieldsTheExportNeeds() throws Exception {
+            final SubmissionQuestion parsed = JsonCodec.fromJson(
+                    new StringReader(reflectiveGson.toJson(populated(SubmissionQuestion.class))),
+                    SubmissionQuestion.class, SubmissionProjection.EXPORT);
+
+            final Set<String> read = new HashSet<>();
+            for (final Field field : SubmissionQuestion.class.getDeclaredFields()) {
+                field.setAccessible(true);
+                if (field.get(parsed) != null) {
+                    read.add(field.getName());
+                }
+            }
+            assertThat(read).isEqualTo(Set.of("questionId", "fieldTitle", "displayText", "responseType", "response",
+                    "multiResponse"));
+        }
+
+        private static Set<String> declaredFields(final Class<?> model) {
+            final Set<String> names = new HashSet<>();
+            for (final Field field : model.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
+                    names.add(field.getName());
+                }
+            }
+            return names;
+        }
+
+        /**
+         * An instance of the model with a value in every field, so a field an adapter misses shows up as a
+         * difference.
+         */
+        private static Object populated(final Class<?> model) throws Exception {
+            final Object instance = model.getDeclaredConstructor().newInstance();
+            for (final Field field : model.getDeclaredFields()) {
+                if (declaredFields(model).contains(field.getName())) {
+                    field.setAccessible(true);
+                    field.set(instance, sampleValue(field));
+                }
+            }
+            return instance;
+        }
+
+        private static Object sampleValue(final Field field) throws Exception {
+            final Class<?> type = field.getType();
+            if (type == String.class) {
+                return field.getName();
+            }
+            if (type == boolean.class || type == Boolean.class) {
+                return true;
+            }
+            if (type == int.class || type == Integer.class) {
+                return 7;
+            }
+            if (type == UUID.class) {
+                return ATTACHMENT_ID;
+            }
+            if (type == ZonedDateTime.class) {
+                return ZonedDateTime.parse("2023-03-14T09:26:53.123Z");
+            }
+            if (type.isEnum()) {
+                return type.getEnumConstants()[0];
+            }
+            if (type == String[].class) {
+                return new String[] { field.getName() };
+            }
+            if (type == List.class) {
+                final Type elementType = ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+                return List.of(populated((Class<?>) elementType));
+            }
+            if (type.getPackage() == Submission.class.getPackage()) {
+                return populated(type);
+            }
+            throw new IllegalStateException("No sample value for " + field);
+        }
+    }
+
+    @Nested
+    class listFromJson {
+
+        @Test
+        void parsesAnArrayOfSections() {
+            final List<SubmissionSection> sections = JsonCodec.listFromJson(
+                    "[{\"sectionId\":\"A\"},{\"sectionId\":\"B\"}]", SubmissionSection.class);
+
+            assertThat(sections.size()).isEqualTo(2);
+            assertThat(sections.get(1).getSectionId()).isEqualTo("B");
+        }
+    }
+
+    @Nested
+    class toJson {
+
+        @Test
+        void omitsNullFields() {
+            assertThat(JsonCodec.toJson(new OutstandingExportCountDTO(1L))).isEqualTo("{\"outstandingCount\":1}");
+            assertThat(JsonCodec.toJson(new OutstandingExportCountDTO(null))).isEqualTo("{}");
+        }
+
+        @Test
+        void writesEnumsByName() {
+            assertThat(JsonCodec.toJson(GrantExportStatus.COMPLETE)).isEqualTo("\"COMPLETE\"");
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package gov.cabinetoffice.gap.utils;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+public class LatencyHistogramTest {
+
+    private static long millis(final long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Nested
+    class percentileMicros {
+
+        @Test
+        void isZeroWhenNothingWasRecorded() {
+            assertThat(new LatencyHistogram().percentileMicros(99)).isZero();
+        }
+
+        @Test
+        void staysWithinTheBucketPrecision() {
+            final LatencyHistogram histogram = new LatencyHistogram();
+            for (long value = 1; value <= 1000; value++) {
+                histogram.record(millis(value));
+            }
+
+            assertThat(histogram.percentileMicros(50)).isBetween(500_000L, 531_250L);
+            assertThat(histogram.percentileMicros(99)).isBetween(990_000L, 1_051_875L);
+            assertThat(histogram.percentileMicros(100)).isEqualTo(1_000_000L);
+        }
+
+        @Test
+        void separatesASlowTail() {
+            final LatencyHistogram histogram = new LatencyHistogram();
+            for (int i = 0; i < 98; i++) {
+                histogram.record(millis(10));
+            }
+            histogram.record(millis(2000));
+            histogram.record(millis(2000));
+
+            assertThat(histogram.percentileMicros(50)).isBetween(10_000L, 10_624L);
+            assertThat(histogram.percentileMicros(99)).isEqualTo(2_000_000L);
+        }
+
+        @Test
+        void keepsSmallValuesExact() {
+            final LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(7));
+
+            assertThat(histogram.percentileMicros(50)).isEqualTo(7);
+        }
+    }
+
+    @Test
+    void tracksCountMeanAndMax() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(millis(1));
+        histogram.record(millis(3));
+
+        assertThat(histogram.count()).isEqualTo(2);
+        assertThat(histogram.meanMicros()).isEqualTo(2000);
+        assertThat(histogram.maxMicros()).isEqualTo(3000);
+    }
+
+    @Test
+    void bucketsCoverEveryValueWithoutGaps() {
+        for (long value = 0; value < 100_000; value++) {
+            final int bucket = LatencyHistogram.bucketOf(value);
+            assertThat(LatencyHistogram.highestValueIn(bucket)).isGreaterThanOrEqualTo(value);
+            if (bucket > 0) {
+                assertThat(LatencyHistogram.highestValueIn(bucket - 1)).isLessThan(value);
+            }
+        }
+        assertThat(LatencyHistogram.bucketOf(Long.MAX_VALUE)).isGreaterThan(0);
+    }
+
+}
@@ -0,0 +1,75 @@
+package gov.cabinetoffice.gap.utils;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TokenBucketTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-01T10:00:00Z");
+
+    private final Clock clock = mock(Clock.class);
+
+    @Nested
+    class reserve {
+
+        @Test
+        void handsOutTheBurstStraightAway() {
+            when(clock.instant()).thenReturn(NOW);
+            final TokenBucket bucket = new TokenBucket(10, 3, clock);
+
+            assertThat(bucket.reserve()).isEqualTo(Duration.ZERO);
+            assertThat(bucket.reserve()).isEqualTo(Duration.ZERO);
+            assertThat(bucket.reserve()).isEqualTo(Duration.ZERO);
+        }
+
+        @Test
+        void queuesCallersBeyondTheBurstInOrder() {
+            when(clock.instant()).thenReturn(NOW);
+            final TokenBucket bucket = new TokenBucket(10, 1, clock);
+            bucket.reserve();
+
+            assertThat(bucket.reserve()).isEqualTo(Duration.ofMillis(100));
+            assertThat(bucket.reserve()).isEqualTo(Duration.ofMillis(200));
+        }
+
+        @Test
+        void refillsAtTheRate() {
+            when(clock.instant()).thenReturn(NOW);
+            final TokenBucket bucket = new TokenBucket(10, 2, clock);
+            bucket.reserve();
+            bucket.reserve();
+
+            when(clock.instant()).thenReturn(NOW.plusMillis(100));
+
+            assertThat(bucket.reserve()).isEqualTo(Duration.ZERO);
+            assertThat(bucket.reserve()).isEqualTo(Duration.ofMillis(100));
+        }
+
+        @Test
+        void neverHoldsMoreThanTheBurst() {
+            when(clock.instant()).thenReturn(NOW);
+            final TokenBucket bucket = new TokenBucket(10, 2, clock);
+
+            when(clock.instant()).thenReturn(NOW.plusSeconds(60));
+            bucket.reserve();
+            bucket.reserve();
+
+            assertThat(bucket.reserve()).isEqualTo(Duration.ofMillis(100));
+        }
+    }
+
+    @Test
+    void rejectsANonPositiveRate() {
+        assertThatThrownBy(() -> new TokenBucket(0, 1, clock)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+}